@@ -15,6 +15,7 @@
 
 package org.usfirst.frc.team339.Hardware;
 
+import org.usfirst.frc.team339.HardwareInterfaces.ButtonEventBus;
 import org.usfirst.frc.team339.HardwareInterfaces.DoubleThrowSwitch;
 import org.usfirst.frc.team339.HardwareInterfaces.IRSensor;
 import org.usfirst.frc.team339.HardwareInterfaces.KilroyCamera;
@@ -25,15 +26,23 @@ import org.usfirst.frc.team339.HardwareInterfaces.SixPositionSwitch;
 import org.usfirst.frc.team339.HardwareInterfaces.UltraSonic;
 import org.usfirst.frc.team339.HardwareInterfaces.transmission.Transmission_old;
 import org.usfirst.frc.team339.Utils.Drive;
+import org.usfirst.frc.team339.Utils.DriveOdometry;
 import org.usfirst.frc.team339.Utils.ErrorMessage;
 import org.usfirst.frc.team339.Utils.Guidance;
+import org.usfirst.frc.team339.Utils.LoopProfiler;
 import org.usfirst.frc.team339.Utils.ManipulatorArm;
+import org.usfirst.frc.team339.Utils.MotionExecutor;
+import org.usfirst.frc.team339.Utils.TaskScheduler;
+import org.usfirst.frc.team339.Utils.Telemetry;
 import org.usfirst.frc.team339.Vision.ImageProcessor;
+import org.usfirst.frc.team339.Vision.TargetTracker;
 import org.usfirst.frc.team339.Vision.VisionScript;
+import org.usfirst.frc.team339.Vision.VisionWorker;
 import org.usfirst.frc.team339.Vision.opencv.VisionProcessor;
 import org.usfirst.frc.team339.Vision.opencv.VisionProcessor.CameraModel;
 import org.usfirst.frc.team339.Vision.operators.ConvexHullOperator;
 import org.usfirst.frc.team339.Vision.operators.HSLColorThresholdOperator;
+import org.usfirst.frc.team339.Vision.operators.RegionOfInterestOperator;
 import org.usfirst.frc.team339.Vision.operators.RemoveSmallObjectsOperator;
 import edu.wpi.first.wpilibj.Compressor;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
@@ -44,6 +53,7 @@ import edu.wpi.first.wpilibj.MotorSafetyHelper;
 import edu.wpi.first.wpilibj.PowerDistributionPanel;
 import edu.wpi.first.wpilibj.Relay;
 import edu.wpi.first.wpilibj.Solenoid;
+import edu.wpi.first.wpilibj.SpeedController;
 import edu.wpi.first.wpilibj.TalonSRX;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.VictorSP;
@@ -90,6 +100,10 @@ public static final double ULTRASONIC_SCALING_FACTOR = 0.050548;
 
 public static final double MINIMUM_POT_SCALING_VALUE = .1;
 
+// How far apart the left and right drive wheels are, in inches (twice
+// Drive's turning radius)
+public static final double DRIVE_TRACK_WIDTH = 22.5;
+
 public static final double CAMERA_FOCAL_LENGTH_MM = 4.4;
 
 public static final double CAMERA_FOCAL_LENGTH_PIXELS = 390.099;
@@ -99,6 +113,21 @@ public static final double VISION_GOAL_HEIGHT_FT = 5.5;
 
 public static final double CAMERA_MOUNT_ANGLE_ABOVE_HORIZONTAL_RADIANS = .9599;
 
+// The bottom of the part of the picture the goal can be in, as a fraction
+// of the image height from the top. Lined up, the goal is 16% of the way
+// down (Teleop's CAMERA_Y_AXIS_ADJUSTED_PROPORTIONAL_CENTER of -.68). With
+// the camera tilted up CAMERA_MOUNT_ANGLE_ABOVE_HORIZONTAL_RADIANS (55
+// degrees) and 390 pixels of focal length in a 240 pixel high picture, 3/4
+// of the way down is 46 degrees above level, where a goal
+// VISION_GOAL_HEIGHT_FT above the camera is about 5.3 ft away. So the band
+// holds the goal from lined up (about 2.4 ft away) out to about 5.3 ft; past
+// that the alignment has to get closer before it can see it.
+public static final double VISION_GOAL_BAND_BOTTOM = .75;
+
+// The size of the window, as a fraction of the image, we search around the
+// goal once we've found it
+public static final double VISION_TRACKING_WINDOW = .5;
+
 // ---------------------------------
 // denote whether we are running in
 // the lab or not. This will allow
@@ -319,8 +348,15 @@ public static UltraSonic ultrasonic = new UltraSonic(4,
 // public static USBCamera usbCam = new USBCamera("cam0"); // AHK @cameratesting
 
 
+// Crops each picture to the band of the frame the goal shows up in with the
+// camera tilted up at CAMERA_MOUNT_ANGLE_ABOVE_HORIZONTAL_RADIANS, so the
+// rest of the script only works on that part of the picture.
+public static RegionOfInterestOperator goalRegionOfInterest = new RegionOfInterestOperator(
+        0.0, 0.0, 1.0, VISION_GOAL_BAND_BOTTOM);
+
 // Declares the Axis camera
 public static VisionScript doubleGreenRingScript = new VisionScript(
+        goalRegionOfInterest,
         new HSLColorThresholdOperator(55, 147, 14, 255, 78, 255),
         new RemoveSmallObjectsOperator(1, true),
         new ConvexHullOperator(false));
@@ -335,6 +371,14 @@ public static KilroyCamera axisCamera = new KilroyCamera(false);
 public static ImageProcessor imageProcessor = new ImageProcessor(
         axisCamera, doubleGreenRingScript);
 
+// Follows the goal from frame to frame and moves goalRegionOfInterest with it
+public static TargetTracker goalTracker = new TargetTracker(
+        goalRegionOfInterest);
+
+// Runs imageProcessor in the background so the robot loop never waits on it
+public static VisionWorker visionWorker = new VisionWorker(
+        imageProcessor);
+
 public static VisionProcessor testVision = new VisionProcessor(
         "10.3.39.11", CameraModel.AXIS_M1013);
 
@@ -362,14 +406,20 @@ public static Joystick leftOperator = new Joystick(2);
 
 public static Joystick rightOperator = new Joystick(3);
 
+// reads all four joysticks' buttons once a loop
+public static final ButtonEventBus buttons = new ButtonEventBus(leftDriver,
+        rightDriver, leftOperator, rightOperator);
+
+// fed from the button bus every loop in Teleop.periodic()
 public static MomentarySwitch cameraToggleButton = new MomentarySwitch(
-        leftOperator, 2, false);
+        false);
 
 public static MomentarySwitch forwardToggleButton = new MomentarySwitch(
         leftDriver, 8, false);
 
-public static MomentarySwitch overrideDemoPot = new MomentarySwitch(
-        leftDriver, 7, false);
+// fed from the button bus too
+public static MomentarySwitch overrideDemoPot = new MomentarySwitch(false);
+
 
 // **********************************************************
 // Kilroy's Ancillary classes
@@ -397,6 +447,22 @@ public static Transmission_old transmission = new Transmission_old(
 public static Drive drive = new Drive(transmission, axisCamera,
         ringLightRelay);
 
+// keeps track of where the robot is from the drive encoders, on its own
+// 200 Hz Notifier. Reset the encoders through it, not directly.
+public static final DriveOdometry odometry = new DriveOdometry(
+        leftRearEncoder, rightRearEncoder, DRIVE_TRACK_WIDTH);
+
+// drives autonomous turns and straight drives on its own 200 Hz Notifier,
+// reading the encoders and setting the motors itself (reversed, like the
+// transmission's joysticks in autonomous)
+public static final MotionExecutor motionExecutor = new MotionExecutor(
+        leftRearEncoder, rightRearEncoder, DRIVE_TRACK_WIDTH,
+        new SpeedController[]
+            {leftFrontMotor, leftRearMotor},
+        new SpeedController[]
+            {rightFrontMotor, rightRearMotor},
+        true);
+
 // -------------------
 // Assembly classes (e.g. forklift)
 // -------------------
@@ -426,6 +492,21 @@ public static final Timer testingTimer = new Timer();
 public static final ErrorMessage errorMessage = new ErrorMessage(
         true /* append timelog */);
 
+// Times every periodic loop and logs the ones that take too long
+public static final LoopProfiler loopProfiler = new LoopProfiler(
+        errorMessage);
+
+// Runs the slow periodic jobs (the dashboard) on their own thread, each at
+// its own rate, instead of in the robot loop. One worker and a 50 ms tick
+// are plenty: the drive and the arm stay in the robot loop, and nothing
+// scheduled runs more often than every 100 ms.
+public static final TaskScheduler scheduler = new TaskScheduler(
+        errorMessage, 1, 0.05);
+
+// Records sensors, motors and states every loop while we're enabled
+public static final Telemetry telemetry = new Telemetry(
+        "/home/lvuser/telemetry");
+
 public static final MotorSafetyHelper leftRearMotorSafety = new MotorSafetyHelper(
         leftRearMotor);
 
@@ -0,0 +1,166 @@
+package org.usfirst.frc.team339.HardwareInterfaces;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Joystick;
+
+/**
+ * Reads all the buttons on all the joysticks at once, once a loop, so
+ * nothing else has to call getRawButton().
+ *
+ * sample() gets each joystick's buttons from the DriverStation as one int
+ * (bit 0 is button 1, bit 1 is button 2, ...), and keeps last loop's too.
+ * Then whether a button (or a chord: a set of buttons, made with
+ * chord()) is down, was just pressed or was just let go is just a few
+ * bitwise operations, however many buttons we ask about.
+ *
+ * A chord counts as pressed when the last of its buttons goes down, and
+ * let go when the first one comes up.
+ *
+ * Everything is made when the bus is, so sampling doesn't make any
+ * objects. It's meant to be used from the robot loop only.
+ *
+ * @author Kilroy
+ *
+ */
+public class ButtonEventBus
+{
+
+/**
+ * Creates the bus.
+ *
+ * @param joysticks
+ *            Every joystick whose buttons we want
+ */
+public ButtonEventBus (Joystick... joysticks)
+{
+    this.ports = new int[joysticks.length];
+    for (int i = 0; i < joysticks.length; i++)
+        {
+        this.ports[i] = joysticks[i].getPort();
+        }
+}
+
+/**
+ * Makes a chord out of button numbers.
+ *
+ * @param buttons
+ *            The buttons, numbered from 1 like getRawButton()
+ * @return
+ *         The chord, for the other methods.
+ */
+public static int chord (int... buttons)
+{
+    int mask = 0;
+    for (int i = 0; i < buttons.length; i++)
+        {
+        mask |= 1 << (buttons[i] - 1);
+        }
+    return mask;
+}
+
+/**
+ * Reads every joystick's buttons. Call this once at the start of each loop.
+ */
+public void sample ()
+{
+    final DriverStation driverStation = DriverStation.getInstance();
+    for (int i = 0; i < this.ports.length; i++)
+        {
+        final int port = this.ports[i];
+        this.previous[port] = this.current[port];
+        this.current[port] = driverStation.getStickButtons(port);
+        }
+}
+
+/**
+ * @param joystick
+ *            One of the bus's joysticks
+ * @param button
+ *            A button number, from 1
+ * @return
+ *         true if the button was down at the last sample.
+ */
+public boolean isDown (Joystick joystick, int button)
+{
+    return (this.current[joystick.getPort()] & (1 << (button - 1))) != 0;
+}
+
+/**
+ * @param joystick
+ *            One of the bus's joysticks
+ * @param chord
+ *            From chord()
+ * @return
+ *         true if all the chord's buttons were down at the last sample.
+ */
+public boolean isHeld (Joystick joystick, int chord)
+{
+    return (this.current[joystick.getPort()] & chord) == chord;
+}
+
+/**
+ * @param joystick
+ *            One of the bus's joysticks
+ * @param chord
+ *            From chord()
+ * @return
+ *         true if the chord was pressed at the last sample: all its
+ *         buttons are down now, and they weren't all down the sample
+ *         before.
+ */
+public boolean wasPressed (Joystick joystick, int chord)
+{
+    final int port = joystick.getPort();
+    return (this.current[port] & chord) == chord
+            && (this.previous[port] & chord) != chord;
+}
+
+/**
+ * @param joystick
+ *            One of the bus's joysticks
+ * @param chord
+ *            From chord()
+ * @return
+ *         true if the chord was let go at the last sample.
+ */
+public boolean wasReleased (Joystick joystick, int chord)
+{
+    final int port = joystick.getPort();
+    return (this.current[port] & chord) != chord
+            && (this.previous[port] & chord) == chord;
+}
+
+/**
+ * @param joystick
+ *            One of the bus's joysticks
+ * @return
+ *         Every button that went down at the last sample, as bits.
+ */
+public int getPressed (Joystick joystick)
+{
+    final int port = joystick.getPort();
+    return this.current[port] & ~this.previous[port];
+}
+
+/**
+ * @param joystick
+ *            One of the bus's joysticks
+ * @return
+ *         Every button that came up at the last sample, as bits.
+ */
+public int getReleased (Joystick joystick)
+{
+    final int port = joystick.getPort();
+    return this.previous[port] & ~this.current[port];
+}
+
+// the DriverStation has this many joystick ports
+private static final int NUM_PORTS = 6;
+
+private final int[] ports;
+
+// each port's buttons at the last sample, and the one before
+private final int[] current = new int[NUM_PORTS];
+
+private final int[] previous = new int[NUM_PORTS];
+}
@@ -19,8 +19,6 @@
 
 package org.usfirst.frc.team339.HardwareInterfaces;
 
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import edu.wpi.first.wpilibj.image.ColorImage;
 import edu.wpi.first.wpilibj.image.HSLImage;
 import edu.wpi.first.wpilibj.image.NIVisionException;
@@ -50,6 +48,14 @@ public static final int noCameraIntReturnValue = -1;
 
 private static String KILROY_CAMERA_IP = "10.3.39.11";
 
+private static String IMAGE_DIRECTORY = "/home/lvuser/images";
+
+private static String TEXT_DIRECTORY = "/home/lvuser/TextFiles";
+
+// Pulls and saves pictures and text files on its own thread
+private static final SnapshotWriter snapshotWriter = new SnapshotWriter(
+        KILROY_CAMERA_IP);
+
 private static int imageNumber = 0;
 
 private static int txtNumber = 0;
@@ -110,19 +116,9 @@ public KilroyCamera (boolean hasCamera)
  */
 public void clearAllImages ()
 {
-    try
-        {
-        // rm -rf removes a directory
-        Runtime.getRuntime()
-                .exec("/bin/rm -rf /home/lvuser/images");
-        // saves new file
-        }  // end try
-    catch (final IOException e)
-        {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-        } // catch any errors
-
+    // emptied by the snapshot writer's thread, after any pictures still
+    // waiting to be saved
+    snapshotWriter.clearDirectory(IMAGE_DIRECTORY);
 } // end clearAllImages
 
 public boolean freshImage ()
@@ -369,55 +365,16 @@ public double getVerticalResolution ()
  * Takes an image from the camera and stores it in the specified file path.
  * This will override old images of the same name.
  *
+ * The picture is pulled and saved by the snapshot writer's thread, so this
+ * returns right away. If a bunch of pictures are already waiting to be saved,
+ * this one is skipped.
+ *
  * @param fileName
  *            no extensions necessary
  */
-
-// TODO Merge commands and fix comments, etc (Everything)
 public void saveImage (String fileName)
 {
-    // System.out.println("\n\n\nthe command is : " );
-
-    // Pre-creates the directory for images in all cases
-    try
-        {
-        Runtime.getRuntime()
-                .exec("/bin/mkdir -p /home/lvuser/images");
-        // saves new file
-        }
-    catch (final IOException e)
-        {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-        }
-    // Erases any pre-existing files that have previously been created
-    try
-        {
-        Runtime.getRuntime()
-                .exec("/bin/rm -rf /home/lvuser/images/" + fileName
-                        + ".jpg");
-        // saves new file
-        }
-    catch (final IOException e)
-        {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-        }
-    // Creates new image, keep a log of the creation of the file
-    try
-        {
-        Runtime.getRuntime()
-                .exec("/usr/bin/wget http://" + KILROY_CAMERA_IP
-                        + "/jpg/image.jpg "
-                        + "-O /home/lvuser/images/" + fileName
-                        + ".jpg >> /home/lvuser/images/log.txt");
-        // saves new file
-        }
-    catch (final IOException e)
-        {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-        }
+    snapshotWriter.saveImage(IMAGE_DIRECTORY, fileName + ".jpg");
 }
 
 // public void saveImageWithTypeName (String typeName)
@@ -480,26 +437,10 @@ public void saveImagesSafely ()
 
 public void saveTextSafely (String text)
 {
-    // Pre-creates the directory for files in all cases
-    try
-        {
-        Runtime.getRuntime()
-                .exec("/bin/mkdir -p /home/lvuser/TextFiles");
-        // echo the text to the shell and pipe it into a new file
-        Runtime.getRuntime()
-                .exec("echo " + text + " > "
-                        + "/home/lvuser/TextFiles/RoboRIO_Out_"
-                        + txtNumber + ".txt"); // @TEST
-        txtNumber++;
-        }
-    catch (FileNotFoundException e)// Shouldn't actually happen.
-        {
-        System.out.println("Failed to save the text file!");
-        }
-    catch (final IOException e)
-        {
-        System.out.println("Failed to make text directory!");
-        }
+    // saved by the snapshot writer's thread
+    snapshotWriter.saveText(TEXT_DIRECTORY,
+            "RoboRIO_Out_" + txtNumber + ".txt", text);
+    txtNumber++;
 }
 
 
@@ -40,10 +40,10 @@
 // ====================================================================
 package org.usfirst.frc.team339.HardwareInterfaces;
 
+import org.usfirst.frc.team339.Utils.PIDCore;
 import edu.wpi.first.wpilibj.Encoder;
-import edu.wpi.first.wpilibj.PIDController;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.SpeedController;
-import edu.wpi.first.wpilibj.command.PIDSubsystem;
 
 /**
  * This class acts as a PID controller when regulating a motor's
@@ -54,19 +54,60 @@ import edu.wpi.first.wpilibj.command.PIDSubsystem;
  * value.
  * (the time derivative of the initial equation)
  *
+ * The math is done by a PIDCore. All the enabled controllers are stepped
+ * one after the other from a single shared Notifier, instead of each one
+ * having its own PIDSubsystem thread. The gains are the same as they were
+ * with PIDSubsystem (per step of PERIOD seconds), so old tuning still
+ * works.
+ *
  * @class PIDVelocityController
  * @author Noah Golmant
  * @written 11 Feb 2014
  */
-public class PIDVelocityController extends PIDSubsystem
+public class PIDVelocityController
 {
 
+// How often all the controllers are stepped. This is WPILib's
+// PIDController default, which is what the gains were tuned at.
+private static final double PERIOD = 0.05;
+
+// The controllers that are enabled, stepped in order by the loop.
+private static PIDVelocityController[] running =
+        new PIDVelocityController[4];
+
+private static int numRunning = 0;
+
+// Guards running and numRunning, and every step.
+private static final Object LOCK = new Object();
+
+// The one thread that steps every enabled controller.
+private static final Notifier LOOP = new Notifier(new Runnable()
+{
+@Override
+public void run ()
+{
+    stepAll();
+}
+});
+
 // The motor that will be controlled by the PID controller & loop.
 private final SpeedController motor;
 
 // The encoder that acts as the input for the PID controller.
 private final Encoder encoder;
 
+// The PID math, in per-second gains.
+private final PIDCore core;
+
+// The gains as they were given to us, per step.
+private double Kp;
+
+private double Ki;
+
+private double Kd;
+
+private double Kf;
+
 // The speed of the motor to be adjusted based on
 // the PID-calculated error.
 private double setSpeed = 0.0;
@@ -82,6 +123,16 @@ private double motorDirection = 1.0;
 
 private double maxOutputDelta = .25;
 
+// The range the setpoint is kept within, if max > min
+private double minInput = 0.0;
+
+private double maxInput = 0.0;
+
+// Percent of the input range we can be off by and still be on target
+private double percentTolerance = 0.0;
+
+private boolean enabled = false;
+
 /**
  * Initializes the PID controller, the output motor, and the input
  * encoder without a feedforward coefficient (Kf).
@@ -103,13 +154,7 @@ PIDVelocityController (final SpeedController motor,
         final Encoder encoder,
         double Kp, double Ki, double Kd)
 {
-    // Initialize the PIDController using the base PIDSubsystem constructor
-    super(Kp, Ki, Kd);
-
-    // Set the PID input, output, and initial speed.
-    this.motor = motor;
-    this.encoder = encoder;
-    this.setSpeed = motor.get();
+    this(motor, encoder, Kp, Ki, Kd, 0.0);
 }
 
 /**
@@ -135,33 +180,86 @@ public PIDVelocityController (final SpeedController motor,
         final Encoder encoder,
         double Kp, double Ki, double Kd, double Kf)
 {
-    super(Kp, Ki, Kd);
-    this.getPIDController().setPID(Kp, Ki, Kd, Kf);
+    this.core = new PIDCore(0.0, 0.0, 0.0, 0.0);
+    this.setPID(Kp, Ki, Kd, Kf);
     this.motor = motor;
     this.encoder = encoder;
     this.setSpeed = motor.get();
 }
 
 /**
- * Gets the speed we're setting the motor to based on our output
- *
- * @return the current set speed
+ * Steps every enabled controller once; the shared Notifier calls this.
  */
-public double getSetSpeed ()
+private static void stepAll ()
 {
-    return this.setSpeed;
+    synchronized (LOCK)
+        {
+        for (int i = 0; i < numRunning; i++)
+            {
+            running[i].step();
+            }
+        }
+}
+
+/**
+ * Starts the loop stepping this controller.
+ */
+public void enable ()
+{
+    synchronized (LOCK)
+        {
+        if (this.enabled == true)
+            return;
+        if (numRunning == running.length)
+            {
+            final PIDVelocityController[] bigger =
+                    new PIDVelocityController[running.length * 2];
+            System.arraycopy(running, 0, bigger, 0, numRunning);
+            running = bigger;
+            }
+        running[numRunning++] = this;
+        this.enabled = true;
+        if (numRunning == 1)
+            LOOP.startPeriodic(PERIOD);
+        }
+}
+
+/**
+ * Stops the loop stepping this controller. The motor is left where it is.
+ */
+public void disable ()
+{
+    synchronized (LOCK)
+        {
+        if (this.enabled == false)
+            return;
+        int i = 0;
+        while (running[i] != this)
+            i++;
+        System.arraycopy(running, i + 1, running, i, numRunning - 1 - i);
+        running[--numRunning] = null;
+        this.enabled = false;
+        if (numRunning == 0)
+            LOOP.stop();
+        }
 }
 
 /**
- * Called when the subsystem is initially created as a command.
- * Has to be implemented in any Subsystem-extended class.
+ * @return whether the loop is stepping this controller
+ */
+public boolean isEnabled ()
+{
+    return this.enabled;
+}
+
+/**
+ * Gets the speed we're setting the motor to based on our output
  *
- * @author Noah Golmant
- * @written 11 Feb 2014
+ * @return the current set speed
  */
-@Override
-protected void initDefaultCommand ()
+public double getSetSpeed ()
 {
+    return this.setSpeed;
 }
 
 /**
@@ -187,28 +285,120 @@ protected double limit (double output)
 }
 
 /**
- * Call to reset the PIDController object from the subsystem
+ * Call to reset the PID math, forgetting the built-up error.
  *
  * @author Noah Golmant
  * @written 11 Feb 2014
  */
 public void reset ()
 {
-    this.getPIDController().reset();
+    synchronized (LOCK)
+        {
+        this.core.reset();
+        }
+}
+
+/**
+ * Sets the gains, in the same units as PIDSubsystem used (per step).
+ *
+ * @param Kp
+ *            Proportional coefficient
+ * @param Ki
+ *            Integral coefficient
+ * @param Kd
+ *            Derivative coefficient
+ * @param Kf
+ *            Feedforward coefficient
+ */
+public void setPID (double Kp, double Ki, double Kd, double Kf)
+{
+    synchronized (LOCK)
+        {
+        this.Kp = Kp;
+        this.Ki = Ki;
+        this.Kd = Kd;
+        this.Kf = Kf;
+        // PIDSubsystem added up the error once a step, and took the
+        // change in error per step; the core does both per second.
+        this.core.setPID(Kp, Ki / PERIOD, Kd * PERIOD, Kf);
+        }
+}
+
+public double getP ()
+{
+    return this.Kp;
+}
+
+public double getI ()
+{
+    return this.Ki;
+}
+
+public double getD ()
+{
+    return this.Kd;
+}
+
+public double getF ()
+{
+    return this.Kf;
 }
 
 /**
- * Overrides the pidGet of our controller's input.
- * We still plan to use the current rate of our encoder as the input.
+ * Sets the speed (encoder rate) we want.
  *
- * @return Current rate of the encoder in inches/second.
- * @author Noah Golmant
- * @written 11 Feb 2014
+ * @param setpoint
+ *            the rate, in the encoder's units per second. Kept within the
+ *            input range, if there is one.
  */
-@Override
-protected double returnPIDInput ()
+public void setSetpoint (double setpoint)
+{
+    if (this.maxInput > this.minInput)
+        setpoint = Math.max(this.minInput,
+                Math.min(this.maxInput, setpoint));
+    synchronized (LOCK)
+        {
+        this.core.setSetpoint(setpoint);
+        }
+}
+
+public double getSetpoint ()
+{
+    return this.core.getSetpoint();
+}
+
+/**
+ * Sets the range the setpoint is kept within, which percent tolerance is
+ * a percentage of.
+ *
+ * @param minimumInput
+ *            smallest setpoint
+ * @param maximumInput
+ *            biggest setpoint
+ */
+public void setInputRange (double minimumInput, double maximumInput)
 {
-    return this.encoder.getRate();
+    this.minInput = minimumInput;
+    this.maxInput = maximumInput;
+}
+
+/**
+ * @param percent
+ *            How far off we can be and still be on target, as a percent of
+ *            the input range
+ */
+public void setPercentTolerance (double percent)
+{
+    this.percentTolerance = percent;
+}
+
+/**
+ * @return whether the last error was within the tolerance
+ */
+public boolean onTarget ()
+{
+    return Math.abs(this.core.getError()) < this.percentTolerance / 100.0
+            * (this.maxInput - this.minInput);
 }
 
 /**
@@ -252,7 +442,6 @@ public void setMotorReversed (boolean isReversed)
  * @author Noah Golmant
  * @written 11 Feb 2014
  */
-@Override
 public void setOutputRange (double minRange, double maxRange)
 {
     this.minRange = minRange;
@@ -260,26 +449,20 @@ public void setOutputRange (double minRange, double maxRange)
 }
 
 /**
- * Overrides the pidWrite method of our controller's output.
- * Sets the output with the calculated PID output value.
+ * One step of the loop: reads the encoder's rate, and adds the PID output
+ * to the motor.
  *
- * @param output
- *            The output of the PIDController calculations
- * @see PIDController calculate()
  * @author Noah Golmant
  * @written 11 Feb 2014
  */
-@Override
-protected void usePIDOutput (double output)
+private void step ()
 {
-    // Add the error speed to the motor controller.
+    final double output = this.core.calculate(this.encoder.getRate(),
+            PERIOD);
 
+    // Add the error speed to the motor controller.
     this.setSpeed = this.motor.get() + this.limit(output);
 
-    // TODO: Debug flag
-    System.out
-            .println("MOTOR.GET " + this.motor.get() + " / " + "OUT: " +
-                    output);
     // Check against our max and min motor voltages
     if (this.setSpeed > this.maxRange)
         {
@@ -291,7 +474,6 @@ protected void usePIDOutput (double output)
         }
 
     // this.setSpeed *= this.motorDirection;
-    System.out.println("SETSPEED: " + this.setSpeed);
     this.motor.set(this.setSpeed);
 }
 
@@ -20,6 +20,10 @@
 // NOTE: pin order is 2,1,3 on the potentiometer.
 // Wiring: Red = 2, White = 1, Black = 3
 //
+// The pot is read (averaged by the FPGA) at most once per robot loop;
+// every get() in the same loop uses that reading. Robot calls
+// RobotPotentiometer.startLoop() at the start of each loop.
+//
 // NOTE: Please do not release this code without permission from
 // Team 339.
 // ====================================================================
@@ -62,6 +66,26 @@ private final static double kDEFAULT_MAX_DEGREES = 270.0;
  */
 private final static double kTOTAL_RAW_UNITS = 4055;
 
+/**
+ * ------------------------------------------------------
+ *
+ * @description how many samples the FPGA averages for each reading, as a
+ *              power of 2 (4 = 16 samples), to take out the noise
+ * @author Kilroy
+ *          --------------------------------------------------------
+ */
+private final static int kDEFAULT_AVERAGE_BITS = 4;
+
+/**
+ * ------------------------------------------------------
+ *
+ * @description which robot loop we're in; bumped by startLoop(). A pot
+ *              read in an earlier loop reads again.
+ * @author Kilroy
+ *          --------------------------------------------------------
+ */
+private static volatile int currentLoop = 0;
+
 /**
  * ------------------------------------------------------
  *
@@ -95,6 +119,39 @@ private boolean printToScreen = false;
  */
 private boolean isReversed = false;
 
+/**
+ * ------------------------------------------------------
+ *
+ * @description the calibration table: raw readings, going up, and the
+ *              degrees at each one. null for a straight line from 0 to
+ *              maxDegreesForPotentiometer.
+ * @author Kilroy
+ *          --------------------------------------------------------
+ */
+private double[] calibrationRaw = null;
+
+private double[] calibrationDegrees = null;
+
+/**
+ * ------------------------------------------------------
+ *
+ * @description the degrees (not reversed) from the reading in
+ *              sampledLoop
+ * @author Kilroy
+ *          --------------------------------------------------------
+ */
+private volatile double cachedDegrees = 0.0;
+
+/**
+ * ------------------------------------------------------
+ *
+ * @description the loop cachedDegrees was read in; -1 if it has to be
+ *              read again
+ * @author Kilroy
+ *          --------------------------------------------------------
+ */
+private volatile int sampledLoop = -1;
+
 // -------------------------------------------------------
 /**
  * Create an instance of a Potentiometer class. Creates a analog channel
@@ -111,6 +168,7 @@ public RobotPotentiometer (final int channel)
 {
     super(channel);
     this.maxDegreesForPotentiometer = kDEFAULT_MAX_DEGREES;
+    this.setAverageBits(kDEFAULT_AVERAGE_BITS);
 } // end LightSensor
 
 // -------------------------------------------------------
@@ -132,8 +190,168 @@ public RobotPotentiometer (final int channel, final double maxDegrees)
 {
     super(channel);
     this.maxDegreesForPotentiometer = maxDegrees;
+    this.setAverageBits(kDEFAULT_AVERAGE_BITS);
 } // end LightSensor
 
+// -------------------------------------------------------
+/**
+ * Starts a new robot loop: every pot reads again the first time it's asked
+ * for something in this loop. Call this at the start of each periodic.
+ *
+ * @method startLoop
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+public static void startLoop ()
+{
+    currentLoop++;
+} // end startLoop
+
+// -------------------------------------------------------
+/**
+ * Sets a calibration table for a pot that isn't linear (or isn't mounted
+ * to use its whole range). Angles in between the points are interpolated
+ * in a straight line; past the ends, the end pieces are carried on.
+ *
+ * @method setCalibration
+ * @param rawValues
+ *            - raw readings (0 to kTOTAL_RAW_UNITS), going up
+ * @param degrees
+ *            - the angle at each of the raw readings
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+public void setCalibration (final double[] rawValues,
+        final double[] degrees)
+{
+    if (rawValues.length != degrees.length || rawValues.length < 2)
+        throw new IllegalArgumentException(
+                "calibration needs at least 2 points, and as many "
+                        + "angles as readings");
+    for (int i = 1; i < rawValues.length; i++)
+        {
+        if (rawValues[i] <= rawValues[i - 1])
+            throw new IllegalArgumentException(
+                    "calibration readings have to go up");
+        }
+    this.calibrationRaw = rawValues.clone();
+    this.calibrationDegrees = degrees.clone();
+    this.sampledLoop = -1;
+} // end setCalibration
+
+// -------------------------------------------------------
+/**
+ * Goes back to a straight line from 0 to the max degrees.
+ *
+ * @method clearCalibration
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+public void clearCalibration ()
+{
+    this.calibrationRaw = null;
+    this.calibrationDegrees = null;
+    this.sampledLoop = -1;
+} // end clearCalibration
+
+// -------------------------------------------------------
+/**
+ * The angle, not cut down to a whole number like get() is.
+ *
+ * @method getAngle
+ * @return double - the potentiometer degrees, reversed if the pot is
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+public double getAngle ()
+{
+    if (this.isReversed == false)
+        return this.getDegrees();
+    return this.maxDegreesForPotentiometer - this.getDegrees();
+} // end getAngle
+
+// -------------------------------------------------------
+/**
+ * Reads the pot now, skipping this loop's reading (and not changing it).
+ * For control loops that run faster than the robot loop, on their own
+ * thread.
+ *
+ * @method readAngle
+ * @return double - the potentiometer degrees, reversed if the pot is
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+public double readAngle ()
+{
+    final double degrees = this.toDegrees(this.getAverageValue());
+    if (this.isReversed == false)
+        return degrees;
+    return this.maxDegreesForPotentiometer - degrees;
+} // end readAngle
+
+// -------------------------------------------------------
+/**
+ * The angle (not reversed) for this loop, reading the pot if it hasn't
+ * been read yet this loop.
+ *
+ * @method getDegrees
+ * @return double - the calibrated degrees
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+private double getDegrees ()
+{
+    final int loop = currentLoop;
+    if (this.sampledLoop != loop)
+        {
+        this.cachedDegrees = this.toDegrees(this.getAverageValue());
+        this.sampledLoop = loop;
+        }
+    return this.cachedDegrees;
+} // end getDegrees
+
+// -------------------------------------------------------
+/**
+ * How far along its range the pot is, not reversed.
+ *
+ * @method getFraction
+ * @return double - 0.0 to 1.0
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+private double getFraction ()
+{
+    return this.getDegrees() / this.maxDegreesForPotentiometer;
+} // end getFraction
+
+// -------------------------------------------------------
+/**
+ * Turns a raw reading into degrees, using the calibration table if there
+ * is one.
+ *
+ * @method toDegrees
+ * @param raw
+ *            - the raw (averaged) reading
+ * @return double - the degrees
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+private double toDegrees (final double raw)
+{
+    final double[] rawValues = this.calibrationRaw;
+    final double[] degrees = this.calibrationDegrees;
+    if (rawValues == null)
+        return (raw / kTOTAL_RAW_UNITS) * this.maxDegreesForPotentiometer;
+    // find the piece the reading is on; the end pieces carry on past
+    // the ends
+    int i = 1;
+    while (i < rawValues.length - 1 && raw > rawValues[i])
+        i++;
+    return degrees[i - 1] + (raw - rawValues[i - 1])
+            * (degrees[i] - degrees[i - 1])
+            / (rawValues[i] - rawValues[i - 1]);
+} // end toDegrees
+
 
 // -------------------------------------------------------
 /**
@@ -151,8 +369,7 @@ public RobotPotentiometer (final int channel, final double maxDegrees)
 @Override
 public int get ()
 {
-    int retValue = (int) ((this.getValue() / kTOTAL_RAW_UNITS)
-            * this.maxDegreesForPotentiometer);
+    int retValue = (int) this.getDegrees();
     // --------------------------------
     // if the pot is not reversed -
     // compute the normalized degrees
@@ -172,9 +389,8 @@ public int get ()
     // we are reversed so compute the value
     // for a reversed pot
     // --------------------------------
-    retValue = (int) ((this.maxDegreesForPotentiometer
-            - (this.getValue() / kTOTAL_RAW_UNITS)
-                    * this.maxDegreesForPotentiometer));
+    retValue = (int) (this.maxDegreesForPotentiometer
+            - this.getDegrees());
     // ---------------------------------
     // if we requested to print out the Normalized
     // value
@@ -247,8 +463,7 @@ public double get (double range)
 @Override
 public double get (double minRange, double maxRange)
 {
-    double retVal = ((this.getValue() / kTOTAL_RAW_UNITS)
-            * (maxRange - minRange))
+    double retVal = (this.getFraction() * (maxRange - minRange))
             + minRange;
     if (this.isReversed == false)
         {
@@ -289,7 +504,7 @@ public double get (double minRange, double maxRange)
 @Override
 public int get (int degrees)
 {
-    int retVal = (int) ((this.getValue() / kTOTAL_RAW_UNITS) * degrees);
+    int retVal = (int) (this.getFraction() * degrees);
     if (this.isReversed == false)
         {
         // ---------------------------------
@@ -301,7 +516,7 @@ public int get (int degrees)
         return retVal;
         } // if
     retVal = (int) (this.maxDegreesForPotentiometer
-            - ((this.getValue() / kTOTAL_RAW_UNITS) * degrees));
+            - (this.getFraction() * degrees));
     // ---------------------------------
     // if we requested to print out the Normalized
     // value
@@ -414,6 +629,7 @@ public boolean isReversed ()
  */
 public double setMaxDegrees (final double maxDegrees)
 {
+    this.sampledLoop = -1;
     return (this.maxDegreesForPotentiometer = maxDegrees);
 } // end setMaxDegrees
 
@@ -0,0 +1,371 @@
+// ====================================================================
+// FILE NAME: SnapshotWriter.java (Team 339 - Kilroy)
+//
+// CREATED ON: Oct 17, 2026
+// MODIFIED ON:
+// MODIFIED BY:
+// ABSTRACT:
+// Saves camera pictures and text files to the roboRIO on its own
+// thread, so the robot loop never waits on the camera's web server or
+// the file system and we never fork a shell to do it.
+//
+// NOTE: Please do not release this code without permission from
+// Team 339.
+// ====================================================================
+
+package org.usfirst.frc.team339.HardwareInterfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A background writer for camera snapshots and text files.
+ *
+ * saveImage(), saveText() and clearDirectory() only put a request on a small
+ * queue and return right away. A daemon thread takes the requests off, pulls
+ * the JPEG straight from the Axis camera's web server over HTTP, and writes
+ * it with NIO. If the queue is full (someone is holding the picture button)
+ * the request is dropped instead of making the caller wait.
+ *
+ * Files are written to a temporary name and then moved over the old one, so
+ * a picture being looked at on the roboRIO is never half written.
+ *
+ * @author Kilroy
+ *
+ */
+public class SnapshotWriter implements Runnable
+{
+
+/**
+ * Creates a snapshot writer. The thread starts on the first request.
+ *
+ * @param cameraIP
+ *            The IP address of the Axis camera to pull pictures from
+ */
+public SnapshotWriter (String cameraIP)
+{
+    this(cameraIP, DEFAULT_QUEUE_SIZE);
+}
+
+/**
+ * Creates a snapshot writer. The thread starts on the first request.
+ *
+ * @param cameraIP
+ *            The IP address of the Axis camera to pull pictures from
+ * @param queueSize
+ *            How many requests can be waiting before new ones are dropped
+ */
+public SnapshotWriter (String cameraIP, int queueSize)
+{
+    this.imageURL = "http://" + cameraIP + "/jpg/image.jpg";
+    this.queue = new ArrayBlockingQueue<Request>(Math.max(1, queueSize));
+}
+
+/**
+ * Queues up a picture from the camera to be saved. Never blocks.
+ *
+ * @param directory
+ *            The directory to save it in; made if it doesn't exist
+ * @param fileName
+ *            The file name, including the extension. An old file with the
+ *            same name is replaced.
+ * @return
+ *         true if the request was queued, false if it was dropped because
+ *         the queue was full.
+ */
+public boolean saveImage (String directory, String fileName)
+{
+    return this.offer(new Request(Request.IMAGE, directory, fileName,
+            null));
+}
+
+/**
+ * Queues up a text file to be saved. Never blocks.
+ *
+ * @param directory
+ *            The directory to save it in; made if it doesn't exist
+ * @param fileName
+ *            The file name, including the extension. An old file with the
+ *            same name is replaced.
+ * @param text
+ *            What to put in the file
+ * @return
+ *         true if the request was queued, false if it was dropped because
+ *         the queue was full.
+ */
+public boolean saveText (String directory, String fileName, String text)
+{
+    return this.offer(new Request(Request.TEXT, directory, fileName,
+            text));
+}
+
+/**
+ * Queues up deleting every file in a directory (not any directories inside
+ * it). Never blocks. Requests queued before this one are finished first.
+ *
+ * @param directory
+ *            The directory to empty
+ * @return
+ *         true if the request was queued, false if it was dropped because
+ *         the queue was full.
+ */
+public boolean clearDirectory (String directory)
+{
+    return this.offer(new Request(Request.CLEAR, directory, null, null));
+}
+
+/**
+ * @return
+ *         How many requests have been dropped because the queue was full.
+ */
+public int getDroppedCount ()
+{
+    return this.droppedCount.get();
+}
+
+/**
+ * @return
+ *         How many requests are waiting to be written.
+ */
+public int getPendingCount ()
+{
+    return this.queue.size();
+}
+
+/**
+ * The writer loop. Don't call this directly; the thread is started by the
+ * first request.
+ */
+@Override
+public void run ()
+{
+    while (Thread.currentThread().isInterrupted() == false)
+        {
+        final Request request;
+        try
+            {
+            request = this.queue.take();
+            }
+        catch (final InterruptedException e)
+            {
+            Thread.currentThread().interrupt();
+            break;
+            }
+        try
+            {
+            switch (request.type)
+                {
+                case Request.IMAGE:
+                    this.writeImage(request);
+                    break;
+                case Request.TEXT:
+                    this.writeText(request);
+                    break;
+                case Request.CLEAR:
+                    this.clear(request);
+                    break;
+                default:
+                    break;
+                }
+            }
+        catch (final IOException e)
+            {
+            System.out.println("SnapshotWriter: failed on "
+                    + request.directory + "/" + request.fileName + ": "
+                    + e.getMessage());
+            }
+        catch (final RuntimeException e)
+            {
+            // never let one bad request kill the thread
+            e.printStackTrace();
+            }
+        }
+}
+
+/**
+ * Queues a request, starting the thread the first time.
+ */
+private boolean offer (Request request)
+{
+    this.startIfNeeded();
+    if (this.queue.offer(request) == true)
+        return true;
+    this.droppedCount.incrementAndGet();
+    return false;
+}
+
+private synchronized void startIfNeeded ()
+{
+    if (this.thread == null)
+        {
+        this.thread = new Thread(this, "SnapshotWriter");
+        this.thread.setDaemon(true);
+        // saving pictures is the least important thing we do
+        this.thread.setPriority(Thread.MIN_PRIORITY);
+        this.thread.start();
+        }
+}
+
+/**
+ * Pulls a JPEG from the camera into the reused buffer and writes it out.
+ */
+private void writeImage (Request request) throws IOException
+{
+    final HttpURLConnection connection = (HttpURLConnection) new URL(
+            this.imageURL).openConnection();
+    connection.setConnectTimeout(HTTP_TIMEOUT_MS);
+    connection.setReadTimeout(HTTP_TIMEOUT_MS);
+    int length = 0;
+    try
+        {
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+            throw new IOException("camera returned HTTP "
+                    + connection.getResponseCode());
+        final InputStream in = connection.getInputStream();
+        try
+            {
+            int read;
+            while ((read = in.read(this.imageBuffer, length,
+                    this.imageBuffer.length - length)) != -1)
+                {
+                length += read;
+                if (length == this.imageBuffer.length)
+                    {
+                    // bigger picture than we've seen; grow once and keep it
+                    final byte[] bigger = new byte[this.imageBuffer.length
+                            * 2];
+                    System.arraycopy(this.imageBuffer, 0, bigger, 0,
+                            length);
+                    this.imageBuffer = bigger;
+                    }
+                }
+            }
+        finally
+            {
+            in.close();
+            }
+        }
+    finally
+        {
+        connection.disconnect();
+        }
+    this.write(request, ByteBuffer.wrap(this.imageBuffer, 0, length));
+}
+
+private void writeText (Request request) throws IOException
+{
+    this.write(request,
+            ByteBuffer.wrap(request.text.getBytes(StandardCharsets.UTF_8)));
+}
+
+/**
+ * Writes <data> to a temporary file next to the real one, then moves it over
+ * the real one.
+ */
+private void write (Request request, ByteBuffer data) throws IOException
+{
+    final Path directory = Paths.get(request.directory);
+    Files.createDirectories(directory);
+    final Path file = directory.resolve(request.fileName);
+    final Path temp = directory.resolve(request.fileName + ".tmp");
+    final FileChannel channel = FileChannel.open(temp,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    try
+        {
+        while (data.hasRemaining() == true)
+            {
+            channel.write(data);
+            }
+        }
+    finally
+        {
+        channel.close();
+        }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+}
+
+private void clear (Request request) throws IOException
+{
+    final Path directory = Paths.get(request.directory);
+    if (Files.isDirectory(directory) == false)
+        return;
+    final DirectoryStream<Path> files = Files
+            .newDirectoryStream(directory);
+    try
+        {
+        for (final Path file : files)
+            {
+            if (Files.isRegularFile(file) == true)
+                Files.delete(file);
+            }
+        }
+    finally
+        {
+        files.close();
+        }
+}
+
+/**
+ * One thing for the writer thread to do.
+ */
+private static class Request
+{
+private static final int IMAGE = 0;
+
+private static final int TEXT = 1;
+
+private static final int CLEAR = 2;
+
+private final int type;
+
+private final String directory;
+
+private final String fileName;
+
+private final String text;
+
+private Request (int type, String directory, String fileName,
+        String text)
+{
+    this.type = type;
+    this.directory = directory;
+    this.fileName = fileName;
+    this.text = text;
+}
+}
+
+private static final int DEFAULT_QUEUE_SIZE = 8;
+
+// The camera is right there on the robot's network; if it takes longer than
+// this something is wrong.
+private static final int HTTP_TIMEOUT_MS = 2000;
+
+// An Axis JPEG at our resolutions is well under this; grows if it isn't
+private static final int INITIAL_IMAGE_BUFFER_SIZE = 64 * 1024;
+
+private final String imageURL;
+
+private final ArrayBlockingQueue<Request> queue;
+
+private Thread thread = null;
+
+// only touched by the writer thread
+private byte[] imageBuffer = new byte[INITIAL_IMAGE_BUFFER_SIZE];
+
+// the robot loop and the writer thread can both drop requests
+private final AtomicInteger droppedCount = new AtomicInteger(0);
+}
@@ -29,7 +29,9 @@
 
 package org.usfirst.frc.team339.HardwareInterfaces;
 
+import org.usfirst.frc.team339.Utils.HampelFilter;
 import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.Notifier;
 
 // -------------------------------------------------------
 /** This class is used to control an ultrasonic rangefinder.
@@ -50,6 +52,13 @@ public final class UltraSonic extends AnalogInput
 
     private final double WEIGHT_FACTOR = 1.4;
 
+    // ---------------------------------
+    // how many standard deviations from the
+    // values around it a value has to be
+    // before we throw it out
+    // ---------------------------------
+    private static final double CONFIDENCE_SIGMAS = 3.0;
+
     // ---------------------------------
     // amount of time to keep past sonar values
     // in seconds. usually about 1 sec
@@ -57,19 +66,45 @@ public final class UltraSonic extends AnalogInput
     private double amountOfTimeToKeepPastValues = 1.0;
 
     // ---------------------------------
-    // array which stores the sonars values
-    // after they have been processed for
-    // confidence. This means that if we get
-    // a value that doesn't make sense we
-    // throw it out. In other words, values
-    // need to be near the last value.
+    // filter which the sonar values go
+    // through for confidence. This means
+    // that if we get a value that doesn't
+    // make sense we throw it out. In other
+    // words, values need to be near the
+    // values around them.
+    // ---------------------------------
+    private HampelFilter confidenceFilter =
+        new HampelFilter(5, CONFIDENCE_SIGMAS, 0.0);
+
+    // ---------------------------------
+    // the last value that came out of the
+    // confidence filter. Written by the
+    // sampler, read by everyone else.
     // ---------------------------------
-    private final int[] confidenceValueArray =
-    // new int[(int)((1000.0 / this.sensorPeriodicity)
-    // /* num of responces from sonar per second 1000 / 50 (ms per
-    // response)*/ *
-    // amountOfTimeToKeepPastValues )];
-        new int[200];
+    private volatile int filteredValue = java.lang.Integer.MAX_VALUE;
+
+    // ---------------------------------
+    // how far the distance can really change
+    // between two samples. The distance traveled
+    // is what Kilroy can travel and what
+    // another robot can travel towards Kilroy
+    // (*2)
+    // ---------------------------------
+    private double distanceTraveledPerTic;
+
+    // ---------------------------------
+    // reads the sonar every sensorPeriodicity
+    // ms in the background, so we don't have
+    // to when someone wants the distance
+    // ---------------------------------
+    private final Notifier sampler = new Notifier(new Runnable()
+        {
+            @Override
+            public void run ()
+                {
+                UltraSonic.this.sample();
+                }
+        });
 
     // ---------------------------------
     // Counter variable used for print
@@ -88,27 +123,14 @@ public final class UltraSonic extends AnalogInput
     private int distanceFromNearestBumper = 0;
 
     // ---------------------------------
-    // the last good value found (when using
-    // confidence) by the sonar. Since the
-    // values are very poor, we keep the last
-    // good value to return if the value we just
-    // got seems bad
-    // ---------------------------------
-    private int lastGoodValue = java.lang.Integer.MAX_VALUE;
-
-    // ---------------------------------
-    // number of items in the stored value
-    // array to check backwards for past
-    // values to make sure that they are
-    // "good"
+    // number of values in a row that have to
+    // agree before we believe that the
+    // distance has really changed. The
+    // filter keeps twice this many values
+    // less one.
     // ----------------------------------
     private int numberOfItemsToCheckForValidity = 3;
 
-    // ---------------------------------
-    // present index into the confidenceArray
-    // ---------------------------------
-    private int presentConfidenceValueIndex = 0;
-
     // ---------------------------------
     // variable used to determine the state of
     // print to screen option, default to
@@ -159,6 +181,7 @@ public final class UltraSonic extends AnalogInput
     public UltraSonic (final int channel)
         {
         super(channel);
+        this.setSensorPeriodicity(this.sensorPeriodicity);
         } // end UltraSonic()
 
     // -------------------------------------------------------
@@ -179,6 +202,7 @@ public final class UltraSonic extends AnalogInput
         {
         super(channel);
         this.setScalingFactor(scalingFactor);
+        this.setSensorPeriodicity(this.sensorPeriodicity);
         } // end UltraSonic()
 
     // -------------------------------------------------------
@@ -309,145 +333,6 @@ public final class UltraSonic extends AnalogInput
         return (normalizedDistance);
         } // end getKilroyDistanceValue()
 
-    // -------------------------------------------------------
-    /** This function returns the distance value using the
-     * confidence array. This function is using weighted proximity.
-     * If the latest value is close to the last 2 values, then this
-     * is considered good. If the latest value is < 10 ft, then it
-     * is considered better than a value that is > 10 ft.
-     *
-     * @return int - distance from an object we presently are
-     * @method getDistanceValueWithConfidence
-     * @author Bob Brown
-     * @written Jan 14, 2012
-     *          ------------------------------------------------------- */
-    private int getDistanceValueWithConfidence ()
-        {
-        int possibleGoodValue = java.lang.Integer.MAX_VALUE;
-        int numberToCheck = this.numberOfItemsToCheckForValidity;
-        int index = 0;
-        boolean outlier = false;
-        int workConfidenceValueIndex = this.presentConfidenceValueIndex;
-        double distanceTraveledPerTic =
-            (this.DISTANCE_TRAVELED_IN_SEC / this.sensorPeriodicity) * 2;
-        // The distance traveled is what Kilroy can
-        // travel and what another robot can travel
-        // towards Kilroy (*2)
-        // -------------------------------------
-        // determine the number of items that
-        // need to be in a row that we are going
-        // to check. Make sure that that the
-        // number that we are requesting fits
-        // within the table itself
-        // -------------------------------------
-        if (numberToCheck >= (this.confidenceValueArray.length - 1))
-        {
-        numberToCheck = this.confidenceValueArray.length - 1;
-        }
-        // -------------------------------------
-        // if we haven't populated enough entries
-        // in the table yet, return the value as
-        // the gospel
-        // -------------------------------------
-        if ((this.confidenceValueArray[this.presentConfidenceValueIndex] == java.lang.Integer.MAX_VALUE) &&
-        (this.presentConfidenceValueIndex < numberToCheck))
-        {
-        this.lastGoodValue =
-            this.confidenceValueArray[this.presentConfidenceValueIndex - 1];
-        // -------------------------------------
-        // otherwise there are enough entries in
-        // stored array to check to make sure that we
-        // don't have an outlier
-        // -------------------------------------
-        }
-        else
-        {
-        // -------------------------------------
-        // loop for all the requested entries until
-        // we run out of entries or we find an outlier
-        // -------------------------------------
-        for (index = 1; (index <= (numberToCheck + 1)) &&
-            (outlier == false); index++)
-            {
-            // -------------------------------------
-            // if the working index == 0, then we
-            // need to set it to the last item in
-            // the array
-            // -------------------------------------
-            if (workConfidenceValueIndex == 0)
-                {
-                workConfidenceValueIndex =
-                    this.confidenceValueArray.length - 1;
-                // -------------------------------------
-                // otherwise go back in the array to get
-                // the last value
-                // -------------------------------------
-                }
-            else
-                {
-                workConfidenceValueIndex--;
-                }
-            // -------------------------------------
-            // if the distance we are checking on is
-            // within the weight area, then we will allow
-            // for double the distance
-            // -------------------------------------
-            if (index == 1)
-                {
-                // System.out.println("Original Distance value is "
-                // +
-                // confidenceValueArray[workConfidenceValueIndex]);
-                possibleGoodValue =
-                    this.confidenceValueArray[workConfidenceValueIndex];
-                if (this.confidenceValueArray[workConfidenceValueIndex] < this.weightedDistance)
-                    {
-                    distanceTraveledPerTic =
-                        distanceTraveledPerTic * this.WEIGHT_FACTOR;
-                    }
-                } // if
-            // -------------------------------------
-            // if this is not the zeroth item and
-            // the distance is too large, then set
-            // the outlier to TRUE
-            // -------------------------------------
-            if (workConfidenceValueIndex != 0)
-                if (Math
-                    .abs(this.confidenceValueArray[workConfidenceValueIndex] -
-                        this.confidenceValueArray[workConfidenceValueIndex - 1]) > distanceTraveledPerTic)
-                    {
-                    outlier = true;
-                    }
-            // -------------------------------------
-            // if this is the zeroth item, then we need
-            // to be carefull that we wrap around, and it
-            // the distance between the two items is
-            // greater than we want then set this as
-            // an outlier
-            // -------------------------------------
-            if ((workConfidenceValueIndex == 0) &&
-                (Math
-                    .abs(this.confidenceValueArray[workConfidenceValueIndex] -
-                        this.confidenceValueArray[this.confidenceValueArray.length - 1]) > distanceTraveledPerTic))
-                {
-                outlier = true;
-                }
-            } // for
-        // -------------------------------------
-        // if there wasn't an outlier, then we
-        // need to save the last good value in
-        // case we don't get a good value next
-        // time
-        // -------------------------------------
-        if (outlier == false)
-            {
-            this.lastGoodValue = possibleGoodValue;
-            }
-        } // else
-
-        // System.out.println("Distance with Confidence is " + lastGoodValue);
-        return (this.lastGoodValue);
-        } // end getDistanceValueWithConfidence
-
     // -------------------------------------------------------
     /** This function returns the number of items that we
      * are going to search backwards in the value array to
@@ -498,7 +383,9 @@ public final class UltraSonic extends AnalogInput
 
     // -------------------------------------------------------
     /** This function returns the distance from the ultrasonic board that the
-     * nearest object is.
+     * nearest object is. When using confidence, this is the latest value
+     * from the confidence filter, which is kept up to date in the
+     * background, so this costs nothing.
      *
      * @return int - returns the distance from the ultrasonic board
      * @method getRefinedDistanceValue
@@ -507,24 +394,17 @@ public final class UltraSonic extends AnalogInput
      *          ------------------------------------------------------- */
     public int getRefinedDistanceValue ()
         {
-        int value = (int) (this.getValue() * this.scalingFactor);
-
-        // System.out.println("Raw distance is: " + value);
         // -------------------------------------
         // if we are using confidence with our
-        // values, we will need to save this
-        // value into the confidence array.
-        // Increment the index for next time and
-        // make sure that it is in range. Then
-        // get the value with confidence back and
-        // return it to the caller
+        // values, the sampler has already put
+        // the latest value through the filter.
+        // Otherwise just read the sonar.
         // -------------------------------------
         if (this.getConfidenceCalculationStatus() == true)
         {
-        this.setDistanceValueIntoConfidenceArray(value);
-        value = this.getDistanceValueWithConfidence();
+        return (this.filteredValue);
         } // if
-        return (value);
+        return ((int) (this.getValue() * this.scalingFactor));
         } // end getRefinedDistanceValue()
 
     // -------------------------------------------------------
@@ -624,7 +504,7 @@ public final class UltraSonic extends AnalogInput
 
     // -------------------------------------------------------
 
-    /** This function resets the confidence array so that it is initialized.
+    /** This function resets the confidence filter so that it is initialized.
      * This would normally be done at the beginning of the run and any time
      * that the sensor is moved.
      *
@@ -634,10 +514,11 @@ public final class UltraSonic extends AnalogInput
      *          ------------------------------------------------------- */
     public void resetConfidenceArray ()
         {
-        for (int index = 0; index < this.confidenceValueArray.length; index++)
-        {
-        this.confidenceValueArray[index] = java.lang.Integer.MAX_VALUE;
-        }
+        synchronized (this.sampler)
+            {
+            this.confidenceFilter.reset();
+            this.filteredValue = java.lang.Integer.MAX_VALUE;
+            }
         } // end resetConfidenceArray()
 
     // -------------------------------------------------------
@@ -674,33 +555,46 @@ public final class UltraSonic extends AnalogInput
      *          ------------------------------------------------------- */
     public boolean setConfidenceCalculationsOn (boolean on)
         {
+        if (on == true && this.useConfidenceCalculations == false)
+            {
+            // what's in the filter is from before it was turned off
+            this.resetConfidenceArray();
+            }
         this.useConfidenceCalculations = on;
+        this.restartSampler();
         return (this.getConfidenceCalculationStatus());
         } // end setConfidenceCalculationsOn()
 
     // -------------------------------------------------------
 
-    /** This function adds the value being place in and then updates
-     * the index into the array. Then it calculates whether or not
-     * the index is now out of range and if so, resets it.
+    /** This function reads the sonar and puts the value through the
+     * confidence filter. The sampler calls this every sensorPeriodicity
+     * ms. If the value is further from the values around it than the
+     * robots could have moved, it's thrown out and the filter's median
+     * is used. Within the weighted distance we allow for more movement.
      *
-     * @param newValue
-     *            - value to be placed into the confidenceArray
-     * @return int - the value that was placed into the confidence array
-     * @method setDistanceValueIntoConfidenceArray
-     * @author Bob Brown
-     * @written Jan 14, 2012
+     * @method sample
+     * @author Kilroy
      *          ------------------------------------------------------- */
-    private int setDistanceValueIntoConfidenceArray (int newValue)
+    private void sample ()
         {
-        this.confidenceValueArray[this.presentConfidenceValueIndex] = newValue;
-        this.presentConfidenceValueIndex++;
-        this.presentConfidenceValueIndex =
-            this.presentConfidenceValueIndex % this.confidenceValueArray.length;
-        // System.out.println("Ultrasonic Confidence Index is presently " +
-        // this.onfidenceValueIndex);
-        return (newValue);
-        } // end setDistanceValueIntoConfidenceArray()
+        final int value = (int) (this.getValue() * this.scalingFactor);
+
+        synchronized (this.sampler)
+            {
+            if (this.filteredValue < this.weightedDistance)
+                {
+                this.confidenceFilter.setGate(
+                    this.distanceTraveledPerTic * this.WEIGHT_FACTOR);
+                }
+            else
+                {
+                this.confidenceFilter.setGate(this.distanceTraveledPerTic);
+                }
+            this.filteredValue =
+                (int) Math.round(this.confidenceFilter.add(value));
+            }
+        } // end sample()
 
     // -------------------------------------------------------
 
@@ -720,7 +614,13 @@ public final class UltraSonic extends AnalogInput
      *          ------------------------------------------------------- */
     public int setNumberOfItemsToCheckBackwardForValidity (int newValue)
         {
-        this.numberOfItemsToCheckForValidity = newValue;
+        this.numberOfItemsToCheckForValidity = Math.max(2, newValue);
+        synchronized (this.sampler)
+            {
+            this.confidenceFilter = new HampelFilter(
+                (2 * this.numberOfItemsToCheckForValidity) - 1,
+                CONFIDENCE_SIGMAS, this.distanceTraveledPerTic);
+            }
         return (this.getNumberOfItemsToCheckBackwardForValidity());
         } // end setNumberOfItemsToCheckBackwardForValidity()
 
@@ -788,6 +688,7 @@ public final class UltraSonic extends AnalogInput
     // -------------------------------------------------------
     /** This function sets and returns the sensor Periodicity. It is usually
      * about 50 ms. unless changed by a call setSensorPeriodicity()
+     * The sonar is read this often in the background.
      *
      * @param newValue
      *            - the new sensor periodicity
@@ -799,9 +700,31 @@ public final class UltraSonic extends AnalogInput
     public double setSensorPeriodicity (double newValue)
         {
         this.sensorPeriodicity = newValue;
+        this.distanceTraveledPerTic =
+            this.DISTANCE_TRAVELED_IN_SEC * (this.sensorPeriodicity / 1000.0)
+                * 2;
+        this.restartSampler();
         return (this.getSensorPeriodicity());
         } // end setSensorPeriodicity()
 
+    // -------------------------------------------------------
+    /** This function stops the sampler and, if we are using confidence,
+     * starts it again at the sensor periodicity. Without confidence
+     * getRefinedDistanceValue() reads the sonar itself, so there's no
+     * reason to keep sampling in the background.
+     *
+     * @method restartSampler
+     * @author Kilroy
+     *          ------------------------------------------------------- */
+    private void restartSampler ()
+        {
+        this.sampler.stop();
+        if (this.useConfidenceCalculations == true)
+            {
+            this.sampler.startPeriodic(this.sensorPeriodicity / 1000.0);
+            }
+        } // end restartSampler()
+
     // -------------------------------------------------------
     /** This function sets and returns the weighted distance where withing
      * we give more weight to the values input from the sonar
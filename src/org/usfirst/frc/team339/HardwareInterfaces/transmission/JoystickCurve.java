@@ -0,0 +1,167 @@
+package org.usfirst.frc.team339.HardwareInterfaces.transmission;
+
+/**
+ * Turns a joystick value into a motor value: takes out the deadband,
+ * bends it along the driver's curve, and scales it to the gear's percentage.
+ *
+ * All of that is worked out ahead of time into a small table, and only
+ * again when the deadband, curve or scale is changed. Shaping a value is
+ * then one check for the deadband and two table reads to interpolate
+ * between, however many motors we shape each loop.
+ *
+ * The curve is a mix of straight and cubic:
+ * out = (1 - expo) * x + expo * x^3, where x is how far past the deadband
+ * the stick is (0 to 1). An expo of 0 is straight (what we've always had),
+ * and 1 is all cubic, for finer control near the middle of the stick.
+ * Either way, the stick at the edge of the deadband gives 0 and all the way
+ * over gives the scale.
+ *
+ * @author Kilroy
+ *
+ */
+public class JoystickCurve
+{
+
+/**
+ * Creates a straight curve.
+ *
+ * @param deadband
+ *            How far the stick has to move before anything happens, 0.0 to
+ *            under 1.0
+ * @param scale
+ *            The motor value with the stick all the way over
+ */
+public JoystickCurve (double deadband, double scale)
+{
+    this.deadband = deadband;
+    this.scale = scale;
+    this.rebuild();
+}
+
+/**
+ * Shapes a joystick value.
+ *
+ * @param joystickValue
+ *            The joystick value, -1.0 to 1.0
+ * @return
+ *         The motor value, the same sign as the joystick value. Anything
+ *         past 1.0 gets what 1.0 gets.
+ */
+public double shape (double joystickValue)
+{
+    // read once, so a rebuild on another thread can't mix two tables
+    final double[] values = this.table;
+    final double magnitude = Math.abs(joystickValue) - this.deadband;
+    if (magnitude <= 0.0)
+        return 0.0;
+
+    final double position = Math.min(magnitude * this.stepsPerUnit,
+            TABLE_STEPS);
+    final int index = Math.min((int) position, TABLE_STEPS - 1);
+    final double shaped = values[index]
+            + (position - index) * (values[index + 1] - values[index]);
+    if (joystickValue < 0.0)
+        return -shaped;
+    return shaped;
+}
+
+/**
+ * @param deadband
+ *            How far the stick has to move before anything happens, 0.0 to
+ *            under 1.0
+ */
+public synchronized void setDeadband (double deadband)
+{
+    if (deadband == this.deadband)
+        return;
+    this.deadband = deadband;
+    this.rebuild();
+}
+
+/**
+ * @return
+ *         The deadband.
+ */
+public double getDeadband ()
+{
+    return this.deadband;
+}
+
+/**
+ * @param expo
+ *            0.0 for straight, up to 1.0 for all cubic
+ */
+public synchronized void setExpo (double expo)
+{
+    expo = Math.max(0.0, Math.min(1.0, expo));
+    if (expo == this.expo)
+        return;
+    this.expo = expo;
+    this.rebuild();
+}
+
+/**
+ * @return
+ *         How cubic the curve is, 0.0 to 1.0.
+ */
+public double getExpo ()
+{
+    return this.expo;
+}
+
+/**
+ * @param scale
+ *            The motor value with the stick all the way over (the gear
+ *            percentage)
+ */
+public synchronized void setScale (double scale)
+{
+    if (scale == this.scale)
+        return;
+    this.scale = scale;
+    this.rebuild();
+}
+
+/**
+ * @return
+ *         The motor value with the stick all the way over.
+ */
+public double getScale ()
+{
+    return this.scale;
+}
+
+/**
+ * Works the table out again. The new table is swapped in all at once.
+ */
+private void rebuild ()
+{
+    final double[] values = new double[TABLE_STEPS + 1];
+    for (int i = 0; i <= TABLE_STEPS; i++)
+        {
+        final double x = (double) i / TABLE_STEPS;
+        values[i] = this.scale
+                * ((1.0 - this.expo) * x + this.expo * x * x * x);
+        }
+    this.stepsPerUnit = TABLE_STEPS / Math.max(1.0 - this.deadband,
+            MIN_RANGE);
+    this.table = values;
+}
+
+// gaps in the table; plenty for a cubic to be off by less than the
+// joystick's own noise
+private static final int TABLE_STEPS = 32;
+
+// so a deadband of 1.0 doesn't divide by 0
+private static final double MIN_RANGE = 0.001;
+
+private volatile double deadband;
+
+private volatile double stepsPerUnit;
+
+private volatile double expo = 0.0;
+
+private volatile double scale;
+
+private volatile double[] table;
+}
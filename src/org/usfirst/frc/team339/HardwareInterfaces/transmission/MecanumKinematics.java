@@ -0,0 +1,280 @@
+package org.usfirst.frc.team339.HardwareInterfaces.transmission;
+
+/**
+ * The math for a mecanum drive, and nothing else: no motors, no WPILib, so
+ * it can be timed or checked on its own.
+ *
+ * Inverse kinematics turns how we want the robot to move (strafe right,
+ * forward, and turn clockwise, or a joystick's magnitude, direction and
+ * twist) into the four wheel speeds. Forward kinematics turns wheel speeds
+ * back into how the robot is moving.
+ *
+ * The rollers make an X, so each wheel pushes at 45 degrees:
+ *
+ * LEFT FRONT: \\ RIGHT FRONT: //
+ * LEFT REAR: // RIGHT REAR: \\
+ *
+ * and with x to the right, y forward and r clockwise:
+ * left front = (y + x) / sqrt(2) + r, right front = (y - x) / sqrt(2) - r,
+ * left rear = (y - x) / sqrt(2) + r, right rear = (y + x) / sqrt(2) - r.
+ * (Which is the same as sin and cos of the direction plus 45 degrees, the
+ * way TransmissionMecanum always did it.)
+ *
+ * If any wheel comes out past 1.0, they're all divided down by the same
+ * amount, so the robot still goes the way it was asked, just slower.
+ *
+ * A joystick direction within the directional deadzone of straight ahead,
+ * back, left or right is snapped to it, and the sin and cos of those four
+ * are kept in a table, so snapped directions don't need any trig. Giving a
+ * heading makes it field oriented: the direction is taken as on the field
+ * (0 is away from the drivers), and turned into the robot's own by taking
+ * off the heading.
+ *
+ * Results go into arrays the caller hands in, so nothing is made per call.
+ * It isn't safe to change the deadzone from one thread while another is
+ * using it.
+ *
+ * @author Kilroy
+ *
+ */
+public class MecanumKinematics
+{
+
+/**
+ * Where each wheel is in a wheel speed array.
+ */
+public static final int LEFT_FRONT = 0;
+
+public static final int RIGHT_FRONT = 1;
+
+public static final int LEFT_REAR = 2;
+
+public static final int RIGHT_REAR = 3;
+
+public static final int NUM_WHEELS = 4;
+
+/**
+ * Where each part is in a robot motion array: strafing right, forward, and
+ * turning clockwise.
+ */
+public static final int X = 0;
+
+public static final int Y = 1;
+
+public static final int ROTATION = 2;
+
+/**
+ * Creates the kinematics with no directional deadzone.
+ */
+public MecanumKinematics ()
+{
+}
+
+/**
+ * @param degrees
+ *            How close (in degrees) a joystick direction has to be to
+ *            straight ahead, back, left or right to be snapped to it
+ */
+public void setDirectionalDeadzone (double degrees)
+{
+    this.directionalDeadzone = Math.abs(degrees);
+}
+
+/**
+ * @return
+ *         The directional deadzone, in degrees.
+ */
+public double getDirectionalDeadzone ()
+{
+    return this.directionalDeadzone;
+}
+
+/**
+ * Wheel speeds for a joystick-style move, robot oriented.
+ *
+ * @param magnitude
+ *            How fast, 0.0 to 1.0
+ * @param direction
+ *            Which way, in degrees: 0 is forward, +90 is right, -90 is left
+ *            and +/-180 is back
+ * @param rotation
+ *            How much to turn, -1.0 to 1.0, positive clockwise
+ * @param wheelSpeeds
+ *            Gets the four wheel speeds, -1.0 to 1.0
+ */
+public void inversePolar (double magnitude, double direction,
+        double rotation, double[] wheelSpeeds)
+{
+    final int snapped = this.snap(direction);
+    final double sin;
+    final double cos;
+    if (snapped >= 0)
+        {
+        sin = SNAPPED_SIN[snapped];
+        cos = SNAPPED_COS[snapped];
+        }
+    else
+        {
+        final double radians = Math.toRadians(direction);
+        sin = Math.sin(radians);
+        cos = Math.cos(radians);
+        }
+    inverse(magnitude * sin, magnitude * cos, rotation, wheelSpeeds);
+}
+
+/**
+ * Wheel speeds for a joystick-style move, field oriented.
+ *
+ * @param magnitude
+ *            How fast, 0.0 to 1.0
+ * @param direction
+ *            Which way on the field, in degrees: 0 is away from the
+ *            drivers, +90 is to their right
+ * @param rotation
+ *            How much to turn, -1.0 to 1.0, positive clockwise
+ * @param heading
+ *            Which way the robot is facing on the field, in degrees,
+ *            clockwise from away from the drivers (like a gyro)
+ * @param wheelSpeeds
+ *            Gets the four wheel speeds, -1.0 to 1.0
+ */
+public void inversePolar (double magnitude, double direction,
+        double rotation, double heading, double[] wheelSpeeds)
+{
+    // snap on the field, where the drivers are looking, then turn it
+    // into the robot's direction
+    final int snapped = this.snap(direction);
+    if (snapped >= 0)
+        direction = SNAPPED_DEGREES[snapped];
+    this.inversePolar(magnitude, direction - heading, rotation, wheelSpeeds);
+}
+
+/**
+ * Wheel speeds for a move, robot oriented.
+ *
+ * @param x
+ *            How fast to strafe right, -1.0 to 1.0
+ * @param y
+ *            How fast to go forward, -1.0 to 1.0
+ * @param rotation
+ *            How much to turn, -1.0 to 1.0, positive clockwise
+ * @param wheelSpeeds
+ *            Gets the four wheel speeds, -1.0 to 1.0
+ */
+public static void inverse (double x, double y, double rotation,
+        double[] wheelSpeeds)
+{
+    final double plus = (y + x) * INVERSE_SQRT_2;
+    final double minus = (y - x) * INVERSE_SQRT_2;
+    wheelSpeeds[LEFT_FRONT] = plus + rotation;
+    wheelSpeeds[RIGHT_FRONT] = minus - rotation;
+    wheelSpeeds[LEFT_REAR] = minus + rotation;
+    wheelSpeeds[RIGHT_REAR] = plus - rotation;
+    desaturate(wheelSpeeds);
+}
+
+/**
+ * Wheel speeds for a move, field oriented.
+ *
+ * @param x
+ *            How fast to go to the drivers' right, -1.0 to 1.0
+ * @param y
+ *            How fast to go away from the drivers, -1.0 to 1.0
+ * @param rotation
+ *            How much to turn, -1.0 to 1.0, positive clockwise
+ * @param heading
+ *            Which way the robot is facing on the field, in degrees,
+ *            clockwise from away from the drivers (like a gyro)
+ * @param wheelSpeeds
+ *            Gets the four wheel speeds, -1.0 to 1.0
+ */
+public static void inverse (double x, double y, double rotation,
+        double heading, double[] wheelSpeeds)
+{
+    final double radians = Math.toRadians(heading);
+    final double sin = Math.sin(radians);
+    final double cos = Math.cos(radians);
+    inverse(x * cos - y * sin, y * cos + x * sin, rotation, wheelSpeeds);
+}
+
+/**
+ * How the robot is moving, from its wheel speeds.
+ *
+ * @param wheelSpeeds
+ *            The four wheel speeds (motor values, or rates from encoders)
+ * @param motion
+ *            Gets x (strafing right), y (forward) and rotation (clockwise),
+ *            in the same units
+ */
+public static void forward (double[] wheelSpeeds, double[] motion)
+{
+    final double leftFront = wheelSpeeds[LEFT_FRONT];
+    final double rightFront = wheelSpeeds[RIGHT_FRONT];
+    final double leftRear = wheelSpeeds[LEFT_REAR];
+    final double rightRear = wheelSpeeds[RIGHT_REAR];
+    motion[X] = (leftFront + rightRear - rightFront - leftRear)
+            * INVERSE_SQRT_2 / 2.0;
+    motion[Y] = (leftFront + rightRear + rightFront + leftRear)
+            * INVERSE_SQRT_2 / 2.0;
+    motion[ROTATION] = (leftFront + leftRear - rightFront - rightRear)
+            / 4.0;
+}
+
+/**
+ * If any wheel speed is past 1.0 either way, divides them all down so the
+ * biggest is 1.0, keeping them in the same ratio.
+ *
+ * @param wheelSpeeds
+ *            The four wheel speeds
+ */
+public static void desaturate (double[] wheelSpeeds)
+{
+    final double biggest = Math.max(
+            Math.max(Math.abs(wheelSpeeds[LEFT_FRONT]),
+                    Math.abs(wheelSpeeds[RIGHT_FRONT])),
+            Math.max(Math.abs(wheelSpeeds[LEFT_REAR]),
+                    Math.abs(wheelSpeeds[RIGHT_REAR])));
+    if (biggest <= 1.0)
+        return;
+    final double scale = 1.0 / biggest;
+    wheelSpeeds[LEFT_FRONT] *= scale;
+    wheelSpeeds[RIGHT_FRONT] *= scale;
+    wheelSpeeds[LEFT_REAR] *= scale;
+    wheelSpeeds[RIGHT_REAR] *= scale;
+}
+
+/**
+ * @return
+ *         Which of the snapped directions (an index into the tables) a
+ *         direction is within the deadzone of, or -1 for none.
+ */
+private int snap (double direction)
+{
+    if (this.directionalDeadzone <= 0.0)
+        return -1;
+    for (int i = 0; i < SNAPPED_DEGREES.length; i++)
+        {
+        // the joystick gives -180 to +180, so back is at both ends
+        final double off = Math.abs(direction - SNAPPED_DEGREES[i]);
+        if (off <= this.directionalDeadzone
+                || Math.abs(off - 360.0) <= this.directionalDeadzone)
+            return i;
+        }
+    return -1;
+}
+
+private static final double INVERSE_SQRT_2 = 1.0 / Math.sqrt(2.0);
+
+// forward, right, back, left, and their sin and cos (exact, so a snapped
+// move doesn't pick up a little sideways drift from rounding)
+private static final double[] SNAPPED_DEGREES =
+    {0.0, 90.0, 180.0, -90.0};
+
+private static final double[] SNAPPED_SIN =
+    {0.0, 1.0, 0.0, -1.0};
+
+private static final double[] SNAPPED_COS =
+    {1.0, 0.0, -1.0, 0.0};
+
+private double directionalDeadzone = 0.0;
+}
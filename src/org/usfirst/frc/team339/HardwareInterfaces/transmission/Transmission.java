@@ -2,6 +2,7 @@ package org.usfirst.frc.team339.HardwareInterfaces.transmission;
 
 import org.usfirst.frc.team339.HardwareInterfaces.DoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
+import edu.wpi.first.wpilibj.Encoder;
 import edu.wpi.first.wpilibj.SpeedController;
 import edu.wpi.first.wpilibj.command.Subsystem;
 
@@ -62,7 +63,7 @@ public static enum MotorDirection
  * because it's too close to zero. So if we read a value around 0.1 from
  * the joystick, we probably don't want to actually send values.
  */
-private final double deadbandPercentageZone = 0.1;
+private double deadbandPercentageZone = 0.1;
 
 /**
  * If we want to print out extra debug info from Transmission, we can
@@ -143,6 +144,14 @@ private final double[] gearPercentages =
 
 private final int MAX_GEAR = this.gearPercentages.length;
 
+/**
+ * The deadband, the driver's curve and the current gear percentage, worked
+ * out ahead of time so scaleJoystickValue() is just a table lookup. It has to
+ * be told whenever any of those change.
+ */
+private final JoystickCurve joystickCurve = new JoystickCurve(
+        this.deadbandPercentageZone, this.gearPercentages[this.gear - 1]);
+
 /**
  * -----------------------------------------------------------
  *
@@ -170,6 +179,20 @@ private MotorDirection rightMotorDirection = MotorDirection.FORWARD;
 private SpeedController leftSpeedController = null;
 private MotorDirection leftMotorDirection = MotorDirection.FORWARD;
 
+/**
+ * The wheel numbers in the velocity controller. Subclasses add their
+ * wheels after these.
+ */
+protected static final int RIGHT_WHEEL = 0;
+protected static final int LEFT_WHEEL = 1;
+
+/**
+ * If this isn't null, we're in closed-loop velocity mode: the motor values
+ * we work out are fractions of the max speed, and the velocity controller
+ * holds the wheels at those speeds instead of us setting the motors.
+ */
+private WheelVelocityController velocityController = null;
+
 /**
  * Initialize a new transmission with two base speed controllers.
  * No encoders are set up with this constructor.
@@ -214,6 +237,35 @@ public Transmission (SpeedController rightSpeedController,
     this.leftSpeedController = leftSpeedController;
 }
 
+/**
+ * Stops closed-loop velocity mode and goes back to setting the motors
+ * directly. The motors are stopped.
+ */
+public void disableVelocityControl ()
+{
+    this.setVelocityController(null);
+}
+
+/**
+ * Turns on closed-loop velocity mode. From now on, the values we'd have
+ * sent to the motors are fractions of <maxInchesPerSecond>, and each wheel
+ * is held at that speed by its encoder.
+ *
+ * @param rightEncoder
+ *            encoder for the right (front) motor, in inches
+ * @param leftEncoder
+ *            encoder for the left (front) motor, in inches
+ * @param maxInchesPerSecond
+ *            the speed full joystick asks for
+ * @see WheelVelocityController
+ */
+public void enableVelocityControl (Encoder rightEncoder,
+        Encoder leftEncoder, double maxInchesPerSecond)
+{
+    this.setVelocityController(this.makeVelocityController(rightEncoder,
+            leftEncoder, maxInchesPerSecond));
+}
+
 /**
  * Move the transmission gear down one.
  *
@@ -303,6 +355,12 @@ protected void driveLeftMotor (double motorValue)
         }
 
     motorValue = this.limit(motorValue);
+    if (this.velocityController != null)
+        {
+        this.velocityController.setSpeed(LEFT_WHEEL,
+                motorValue * this.leftMotorDirection.val);
+        return;
+        }
     this.leftSpeedController
             .set(motorValue * this.leftMotorDirection.val);
 }
@@ -334,6 +392,12 @@ protected void driveRightMotor (double motorValue)
         }
 
     motorValue = this.limit(motorValue);
+    if (this.velocityController != null)
+        {
+        this.velocityController.setSpeed(RIGHT_WHEEL,
+                motorValue * this.rightMotorDirection.val);
+        return;
+        }
     this.rightSpeedController
             .set(motorValue * this.rightMotorDirection.val);
 }
@@ -432,6 +496,18 @@ public void initDefaultCommand ()
     // setDefaultCommand(new MySpecialCommand());
 }
 
+/**
+ * Gets the velocity controller, to tune it or see how fast the wheels
+ * are going.
+ *
+ * @return the velocity controller, or null if we're not in closed-loop
+ *         velocity mode
+ */
+public WheelVelocityController getVelocityController ()
+{
+    return this.velocityController;
+}
+
 /**
  * Gets whether or not the left joystick is reversed
  *
@@ -476,11 +552,36 @@ protected double limit (double val)
     return val;
 }
 
+/**
+ * Makes a velocity controller with our right and left (front) motors as
+ * wheels RIGHT_WHEEL and LEFT_WHEEL. Subclasses add the rest of their
+ * motors to it before passing it to setVelocityController().
+ *
+ * @param rightEncoder
+ *            encoder for the right (front) motor
+ * @param leftEncoder
+ *            encoder for the left (front) motor
+ * @param maxInchesPerSecond
+ *            the speed full joystick asks for
+ * @return the new controller, not yet started
+ */
+protected WheelVelocityController makeVelocityController (
+        Encoder rightEncoder, Encoder leftEncoder,
+        double maxInchesPerSecond)
+{
+    final WheelVelocityController controller =
+            new WheelVelocityController(maxInchesPerSecond);
+    controller.addWheel(this.rightSpeedController, rightEncoder);
+    controller.addWheel(this.leftSpeedController, leftEncoder);
+    return controller;
+}
+
 /**
  * Scales the input joystick value based on the actual range of values
  * we accept from the joystick. i.e. if we have a deadband that prevents
  * values between -0.1 and +0.1, then it will scale the value so that
  * an input of .1 to 1.0 will provide the same range as 0 to 1.
+ * It's then bent along the joystick curve (see setJoystickExpo()).
  *
  * @param joystickValue
  *            original, unscaled input joystick value
@@ -492,42 +593,8 @@ protected double limit (double val)
  */
 public double scaleJoystickValue (double joystickValue)
 {
-    final double maxCurrentGearValue = this.getCurrentGearPercentage();
-
-    // ---------------------------------------------------------------
-    // This gets the difference between our
-    // absolutized input value and the deadband zone.
-    // If it's lower than zero, this means that it's too small
-    // to do anything with. Otherwise, we have a good value to scale.
-    // ---------------------------------------------------------------
-    final double absJoystickInputValue =
-            java.lang.Math.max(
-                    (Math.abs(joystickValue)
-                            - this.deadbandPercentageZone),
-                    0.0);
-
-    // -----------------------------------------
-    // The range of values we will actually use
-    // -----------------------------------------
-    final double deadbandRange = 1.0 - this.deadbandPercentageZone;
-
-    // -------------------------------------------------
-    // Compute the final scaled joystick value.
-    // Scales it by the ratio of the max gear value to
-    // the deadband range.
-    // -------------------------------------------------
-    final double scaledJoystickInput =
-            absJoystickInputValue
-                    * (maxCurrentGearValue / deadbandRange);
-
-    // -------------------------------------------------------
-    // Since we previously absolutized it, return a negative
-    // motor value if the original input was negative.
-    // -------------------------------------------------------
-    if (joystickValue < 0)
-        return -scaledJoystickInput;
-
-    return scaledJoystickInput;
+    // the deadband, curve and gear are all in the curve's table
+    return this.joystickCurve.shape(joystickValue);
 }
 
 /**
@@ -570,6 +637,7 @@ public void setGear (int gear)
         }
 
     this.gear = gear;
+    this.joystickCurve.setScale(this.gearPercentages[gear - 1]);
 
     // check for a physical transmission
     if (this.transmissionSolenoids != null)
@@ -628,6 +696,53 @@ public void setGearPercentage (int gear, double value)
 
     // Set the new gear percentage in our gear array
     this.gearPercentages[gear - 1] = value;
+    if (gear == this.gear)
+        this.joystickCurve.setScale(value);
+}
+
+/**
+ * Sets the joystick deadband; a joystick value inside it (e.g. -.1 to +.1)
+ * sends 0 to the motor.
+ *
+ * @param deadband
+ *            The deadband, 0.0 to under 1.0
+ */
+public void setDeadbandPercentageZone (double deadband)
+{
+    if ((deadband < 0.0) || (deadband >= 1.0))
+        {
+        if ((this.getDebugState() == DebugState.DEBUG_MOTOR_DATA) ||
+                (this.getDebugState() == DebugState.DEBUG_ALL))
+            {
+            System.out.println("Failed to set deadband " + deadband +
+                    " in setDeadbandPercentageZone()");
+            }
+        return;
+        }
+    this.deadbandPercentageZone = deadband;
+    this.joystickCurve.setDeadband(deadband);
+}
+
+/**
+ * Sets how the joysticks feel: 0.0 is straight (the motor value goes up
+ * evenly with the stick), and up to 1.0 is more and more cubic, so small
+ * stick movements give finer control and full stick is still full gear.
+ *
+ * @param expo
+ *            0.0 to 1.0
+ */
+public void setJoystickExpo (double expo)
+{
+    this.joystickCurve.setExpo(expo);
+}
+
+/**
+ * @return
+ *         How cubic the joystick curve is, 0.0 to 1.0.
+ */
+public double getJoystickExpo ()
+{
+    return this.joystickCurve.getExpo();
 }
 
 /**
@@ -644,6 +759,22 @@ public void setLeftJoystickReversed (boolean isReversed)
     this.leftJoystickReversed = isReversed;
 }
 
+/**
+ * Switches to a new velocity controller (or none), stopping the old one
+ * and starting the new one.
+ *
+ * @param controller
+ *            the new controller, or null to go back to open loop
+ */
+protected void setVelocityController (WheelVelocityController controller)
+{
+    if (this.velocityController != null)
+        this.velocityController.stop();
+    this.velocityController = controller;
+    if (controller != null)
+        controller.start();
+}
+
 /**
  * Sets whether or not the left (front) motor is reversed
  *
@@ -1,5 +1,6 @@
 package org.usfirst.frc.team339.HardwareInterfaces.transmission;
 
+import edu.wpi.first.wpilibj.Encoder;
 import edu.wpi.first.wpilibj.SpeedController;
 
 
@@ -14,6 +15,13 @@ private MotorDirection rightRearMotorDirection =
 private final SpeedController leftRearSpeedController;
 private MotorDirection leftRearMotorDirection = MotorDirection.FORWARD;
 
+/**
+ * The rear wheels' numbers in the velocity controller, after the front
+ * ones.
+ */
+protected static final int RIGHT_REAR_WHEEL = 2;
+protected static final int LEFT_REAR_WHEEL = 3;
+
 /**
  * Transmission object to control a four-wheel drive.
  *
@@ -36,6 +44,48 @@ public TransmissionFourWheel (SpeedController rightFrontSpeedController,
     this.leftRearSpeedController = leftRearSpeedController;
 }
 
+/**
+ * Turns on closed-loop velocity mode with one encoder per side; the front
+ * and rear motors on a side both follow that side's encoder.
+ *
+ * @param rightEncoder
+ *            encoder for the right side, in inches
+ * @param leftEncoder
+ *            encoder for the left side, in inches
+ * @param maxInchesPerSecond
+ *            the speed full joystick asks for
+ */
+@Override
+public void enableVelocityControl (Encoder rightEncoder,
+        Encoder leftEncoder, double maxInchesPerSecond)
+{
+    this.enableVelocityControl(rightEncoder, rightEncoder, leftEncoder,
+            leftEncoder, maxInchesPerSecond);
+}
+
+/**
+ * Turns on closed-loop velocity mode with an encoder for each motor.
+ *
+ * @param rightFrontEncoder
+ * @param rightRearEncoder
+ * @param leftFrontEncoder
+ * @param leftRearEncoder
+ * @param maxInchesPerSecond
+ *            the speed full joystick asks for
+ * @see WheelVelocityController
+ */
+public void enableVelocityControl (Encoder rightFrontEncoder,
+        Encoder rightRearEncoder, Encoder leftFrontEncoder,
+        Encoder leftRearEncoder, double maxInchesPerSecond)
+{
+    final WheelVelocityController controller =
+            this.makeVelocityController(rightFrontEncoder,
+                    leftFrontEncoder, maxInchesPerSecond);
+    controller.addWheel(this.rightRearSpeedController, rightRearEncoder);
+    controller.addWheel(this.leftRearSpeedController, leftRearEncoder);
+    this.setVelocityController(controller);
+}
+
 /**
  * Drives the transmission in a four wheel drive .
  * rightJoystickVal controls both right motors, and vice versa for the left.
@@ -116,6 +166,12 @@ protected void driveLeftRearMotor (double motorValue)
         }
 
     motorValue = this.limit(motorValue);
+    if (this.getVelocityController() != null)
+        {
+        this.getVelocityController().setSpeed(LEFT_REAR_WHEEL,
+                motorValue * this.leftRearMotorDirection.val);
+        return;
+        }
     this.leftRearSpeedController.set(motorValue *
             this.leftRearMotorDirection.val);
 }
@@ -146,6 +202,12 @@ protected void driveRightRearMotor (double motorValue)
         }
 
     motorValue = this.limit(motorValue);
+    if (this.getVelocityController() != null)
+        {
+        this.getVelocityController().setSpeed(RIGHT_REAR_WHEEL,
+                motorValue * this.rightRearMotorDirection.val);
+        return;
+        }
     this.rightRearSpeedController.set(motorValue *
             this.rightRearMotorDirection.val);
 }
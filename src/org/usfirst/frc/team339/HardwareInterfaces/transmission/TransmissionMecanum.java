@@ -6,14 +6,21 @@ import edu.wpi.first.wpilibj.SpeedController;
 public class TransmissionMecanum extends TransmissionFourWheel
 {
 
-    /** @description If we are within x many degrees of being
-     *              purely up, down, left, or right, then we
+    /** @description The mecanum wheel math. It also holds the
+     *              directional deadzone: if we are within x many
+     *              degrees of being purely up, down, left, or right,
+     *              then we
      *              send that "pure" degree value to account for
      *              human error in joystick control.
      *
      * @author Noah Golmant
      * @written 23 July 2015 */
-    private double directionalDeadzone = 0.0;
+    private final MecanumKinematics kinematics = new MecanumKinematics();
+
+    /** The wheel speeds worked out each drive(), kept so we don't make a
+     * new array every time. */
+    private final double[] wheelSpeeds =
+        new double[MecanumKinematics.NUM_WHEELS];
 
     /** Sets whether or not the mecanum control joystick is reversed */
     private boolean mecanumJoystickReversed = false;
@@ -74,11 +81,36 @@ public class TransmissionMecanum extends TransmissionFourWheel
      * @written 23 July 2015 */
     public void drive (double magnitude, double direction, double rotation)
     {
+    this.drive(magnitude, direction, rotation, false, 0.0);
+    }
 
-    double tempRotation = rotation, tempMagnitude = magnitude, tempDirection =
-        direction;
+    /** Drives the transmission in mecanum drive, field oriented: the
+     * direction is which way to go on the field (0 is away from the
+     * drivers), whichever way the robot is facing.
+     *
+     * @param magnitude
+     *            the magnitude of the current joystick vector
+     * @param direction
+     *            the direction of the current joystick vector, on the field
+     * @param rotation
+     *            the amount of rotation we want to apply to the current vector
+     * @param heading
+     *            which way the robot faces on the field, in degrees
+     *            clockwise from away from the drivers (e.g. from a gyro)
+     *
+     * @author Kilroy */
+    public void driveFieldOriented (double magnitude, double direction,
+        double rotation, double heading)
+    {
+    this.drive(magnitude, direction, rotation, true, heading);
+    }
 
-    // Magnitude and rotation deadzones
+    private void drive (double magnitude, double direction, double rotation,
+        boolean fieldOriented, double heading)
+    {
+    // Magnitude and rotation deadzones, and limit the rotation to -1..+1
+    double tempMagnitude = magnitude;
+    double tempRotation = this.limit(rotation);
     if (Math.abs(rotation) < this.getDeadbandPercentageZone())
         {
         tempRotation = 0.0;
@@ -88,129 +120,50 @@ public class TransmissionMecanum extends TransmissionFourWheel
         tempMagnitude = 0.0;
         }
 
-    // directional deadband code
-    // If it's within "deadzone" degrees of 0.0, we want to go forwards.
-
-    if (Math.abs(tempDirection) <= this.getDirectionalDeadzone())
-        {
-        tempDirection = 0.0;
-        }
-    else if ((Math.abs(tempDirection - 180.0) <= this
-        .getDirectionalDeadzone()) ||
-        (Math.abs(tempDirection + 180.0) <= this.getDirectionalDeadzone()))
+    // check if the joystick is reversed
+    if (this.isMecanumJoystickReversed() == true)
         {
-        tempDirection = 180.0;
+        tempRotation *= -1.0;
+        tempMagnitude *= -1.0;
         }
-    else if (Math.abs(tempDirection - 90.0) <= this
-        .getDirectionalDeadzone())
+
+    /** The directional deadzone, the wheel math and keeping the wheels
+     * in range without changing the direction we go (see
+     * MecanumKinematics) */
+    if (fieldOriented == true)
         {
-        tempDirection = 90.0;
+        this.kinematics.inversePolar(tempMagnitude, direction, tempRotation,
+            heading, this.wheelSpeeds);
         }
-    else if (Math.abs(tempDirection + 90.0) <= this
-        .getDirectionalDeadzone())
+    else
         {
-        tempDirection = -90.0;
+        this.kinematics.inversePolar(tempMagnitude, direction, tempRotation,
+            this.wheelSpeeds);
         }
 
     if ((this.getDebugState() == DebugState.DEBUG_MOTOR_DATA) ||
         (this.getDebugState() == DebugState.DEBUG_ALL))
         {
-        System.out.println("MECANUM INPUT:\n" + "Original direction: " +
-            direction + "\tReal direction: " + tempDirection + "\n" +
-            "Magnitude: " + tempMagnitude + "\n" + "Rotation: " + rotation);
-        }
-
-    // limit the rotation value between -1 and +1
-    tempRotation = this.limit(rotation);
-
-        // check if the joystick is reversed
-    if (this.isMecanumJoystickReversed() == true)
-        {
-        tempRotation *= -1.0;
-        tempMagnitude *= -1.0;
+        System.out.println("MECANUM INPUT:\n" + "Direction: " +
+            direction + "\n" + "Magnitude: " + tempMagnitude + "\n" +
+            "Rotation: " + tempRotation);
+        System.out.println("MECANUM OUTPUT:\n" + "LF: " +
+            this.wheelSpeeds[MecanumKinematics.LEFT_FRONT] + "\tRF: " +
+            this.wheelSpeeds[MecanumKinematics.RIGHT_FRONT] + "\n" +
+            "LR: " + this.wheelSpeeds[MecanumKinematics.LEFT_REAR] +
+            "\tRR: " + this.wheelSpeeds[MecanumKinematics.RIGHT_REAR]);
         }
 
-        /** MECANUM CONTROLS EXPLANATION
-     *
-     * First, we apply all of our deadzones and limits.
-     * What we start with is a goal vector to travel along, with a direction
-     * and a magnitude, i.e. how fast we move along it.
-     *
-     * We break this vector into its X and Y components, and send
-     * these components to their respective motors.
-     *
-     * The mecanum motors form an X pattern with the angled rollers.
-     *
-     * LEFT FRONT: \\ RIGHT FRONT: //
-     * LEFT REAR: // RIGHT REAR: \\
-     *
-     * As the "\\" wheels move forward, they go 45 degrees to the right.
-     * As the "//" wheels move forward, they go 45 degrees to the left.
-     *
-     * As an example of how the mecanum can move in any input vector,
-     * consider a goal of moving right, with a degree input of +90.0
-     * degrees.
-     *
-     * The correct input degree value, accounting for 45 degree rollers,
-     * is 135. cos(135 degrees) = -.707
-     * sin(135 degrees) = +.707
-     *
-     * If the left front and right rear motors (\\) receive a positive
-     * value,
-     * they will move forward and to the right.
-     *
-     * If the right front and left rear motors (//) receive a negative
-     * value,
-     * they will move backwards and to the right.
-     *
-     * Since the forward and backwards movements (theoretically) cancel out,
-     * the net movement will be completely towards the right.
-     *
-     * We can also apply a rotation amount to twist the robot as it moves
-     * along the goal vector.
-     *
-     * @author Noah Golmant
-     * @written 23 July 2015 */
-
-    // Add 45 to account for the angle of the rollers
-    // on the mecanum wheels.
-    final double dirInRad = ((tempDirection + 45.0) * 3.14159) / 180.0;
-    final double cosD = Math.cos(dirInRad);
-    final double sinD = Math.sin(dirInRad);
-
-    // Calculate the speed to send to each motor.
-    double leftFrontSpeed = (sinD * tempMagnitude) + tempRotation;
-    double rightFrontSpeed = (cosD * tempMagnitude) - tempRotation;
-    double leftRearSpeed = (cosD * tempMagnitude) + tempRotation;
-    double rightRearSpeed = (sinD * tempMagnitude) - tempRotation;
-
-    if ((this.getDebugState() == DebugState.DEBUG_MOTOR_DATA) ||
-        (this.getDebugState() == DebugState.DEBUG_ALL))
-            {
-        System.out.println("MECANUM OUTPUT:\n" + "LF: " + leftFrontSpeed +
-            "\tRF: " + rightFrontSpeed + "\n" + "LR: " + leftRearSpeed +
-            "\tRR: " + rightRearSpeed);
-            }
-
-    // limit the values to our motor range of -1..1
-    leftFrontSpeed = this.limit(leftFrontSpeed);
-    leftRearSpeed = this.limit(leftRearSpeed);
-    rightFrontSpeed = this.limit(rightFrontSpeed);
-    rightRearSpeed = this.limit(rightRearSpeed);
-
     // scale all of the motor "send" values by our current gear and
-    // deadzone.
-    leftFrontSpeed = this.scaleJoystickValue(leftFrontSpeed);
-    leftRearSpeed = this.scaleJoystickValue(leftRearSpeed);
-    rightFrontSpeed = this.scaleJoystickValue(rightFrontSpeed);
-    rightRearSpeed = this.scaleJoystickValue(rightRearSpeed);
-
-        // finally, send the scaled values to our motors.
-    this.driveLeftMotor(leftFrontSpeed);
-    this.driveLeftRearMotor(leftRearSpeed);
-    this.driveRightMotor(rightFrontSpeed);
-    this.driveRightRearMotor(rightRearSpeed);
-
+    // deadzone, and send them to our motors.
+    this.driveLeftMotor(this.scaleJoystickValue(
+        this.wheelSpeeds[MecanumKinematics.LEFT_FRONT]));
+    this.driveLeftRearMotor(this.scaleJoystickValue(
+        this.wheelSpeeds[MecanumKinematics.LEFT_REAR]));
+    this.driveRightMotor(this.scaleJoystickValue(
+        this.wheelSpeeds[MecanumKinematics.RIGHT_FRONT]));
+    this.driveRightRearMotor(this.scaleJoystickValue(
+        this.wheelSpeeds[MecanumKinematics.RIGHT_REAR]));
     }
 
     /** Gets the current directional deadzone for the joystick angle.
@@ -221,7 +174,7 @@ public class TransmissionMecanum extends TransmissionFourWheel
      * @written 23 July 2015 */
     public double getDirectionalDeadzone ()
         {
-        return this.directionalDeadzone;
+        return this.kinematics.getDirectionalDeadzone();
         }
 
 /** Gets whether or not the mecanum joystick is reversed
@@ -246,7 +199,7 @@ public class TransmissionMecanum extends TransmissionFourWheel
      * @written 23 July 2015 */
     public void setDirectionalDeadzone (double newDirectionalDeadzone)
         {
-        this.directionalDeadzone = newDirectionalDeadzone;
+        this.kinematics.setDirectionalDeadzone(newDirectionalDeadzone);
         }
 
     /** Sets whether or not the mecanum joystick is reversed
@@ -172,6 +172,19 @@ static final double DISTANCE_THRESHOLD = 0.7;
  */
 private double deadbandPercentageZone = 0.0;
 
+/**
+ * -------------------------------------------------------
+ *
+ * @description the dead-band and the drivers' curve, worked out
+ *              ahead of time into a table; the gear percentage
+ *              differs for each side, so that's still multiplied
+ *              in by mapSoftwareJoystickValues()
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+private final JoystickCurve joystickCurve = new JoystickCurve(
+        this.deadbandPercentageZone, 1.0);
+
 private debugStateValues debugState = debugStateValues.DEBUG_NONE;
 
 /**
@@ -1316,7 +1329,7 @@ public void controls (final double magnitude,
         {
         System.out.println("counter: " + this.integralUseCounter);
         System.out.println("F: " +
-                this.pidLeftController.getPIDController().getF());
+                this.pidLeftController.getF());
         }
 
     if ((Math.abs(tempMagnitude) >= this.deadbandPercentageZone) &&
@@ -1607,29 +1620,25 @@ public void controls (double leftJoystickValue,
             System.out.println("[PID] RIGHT S" +
                     this.pidRightController.getSetpoint() + "/"
                     + "P" +
-                    this.pidRightController.getPIDController()
-                            .getP()
+                    this.pidRightController.getP()
                     +
                     "/" +
                     "I" +
-                    this.pidRightController.getPIDController()
-                            .getI()
+                    this.pidRightController.getI()
                     +
                     "/" + "D" +
-                    this.pidRightController.getPIDController()
-                            .getD());
+                    this.pidRightController.getD());
             System.out.println("[PID] LEFT S" +
                     this.pidLeftController.getSetpoint() + "/" + "P"
                     +
-                    this.pidLeftController.getPIDController().getP()
+                    this.pidLeftController.getP()
                     +
                     "/" +
                     "I" +
-                    this.pidLeftController.getPIDController().getI()
+                    this.pidLeftController.getI()
                     +
                     "/" + "D" +
-                    this.pidLeftController.getPIDController()
-                            .getD());
+                    this.pidLeftController.getD());
 
             }
 
@@ -2608,12 +2617,11 @@ public boolean isMecanumDrive ()
  */
 public boolean isPIDEnabled ()
 {
-    return (this.pidLeftController.getPIDController().isEnable() &&
-            this.pidRightController.getPIDController().isEnable() &&
-            this.pidLeftRearController.getPIDController().isEnable()
+    return (this.pidLeftController.isEnabled() &&
+            this.pidRightController.isEnabled() &&
+            this.pidLeftRearController.isEnabled()
             &&
-            this.pidRightRearController.getPIDController()
-                    .isEnable());
+            this.pidRightRearController.isEnabled());
 } // end isPIDEnabled()
 
 // -------------------------------------------------------
@@ -2732,31 +2740,12 @@ private double mapSoftwareJoystickValues (
 // motor and gearing
 {
     // --------------------------------------
-    // temp computational value for joysticks
-    // to make the math easier. Absolutize the
-    // value and remove the deadband range
-    // --------------------------------------
-    final double absJoystickInputValue = Math.max(
-            (Math.abs(joystickInputValue) -
-                    this.deadbandPercentageZone),
-            0.0);
-    // --------------------------------------
-    // compute the range of the joysticks. This
-    // excludes the deadband range
-    // --------------------------------------
-    final double deadbandRange = 1.0 - this.deadbandPercentageZone;
+    // the curve's table takes out the dead-band
+    // and bends the value (keeping its sign);
+    // then scale it to this gear
     // --------------------------------------
-    // computed mapped value
-    // --------------------------------------
-    final double mappedValue = absJoystickInputValue * (gearPercentage /
-            deadbandRange);
-    // --------------------------------------
-    // return the correct value - if the original
-    // input was negative, return negative, else positive
-    // --------------------------------------
-    if (joystickInputValue < 0)
-        return (-mappedValue);
-    return (mappedValue);
+    return (this.joystickCurve.shape(joystickInputValue) *
+            gearPercentage);
 } // end mapSoftwareJoystickValues
 
 /**
@@ -3240,11 +3229,29 @@ public boolean setJoystickDeadbandRange (double percentage)
     if ((percentage >= 0) && (percentage <= 1.0))
         {
         this.deadbandPercentageZone = percentage;
+        this.joystickCurve.setDeadband(percentage);
         return (true);
         } // end if
     return (false);
 } // setJoystickDeadbandRange
 
+// -------------------------------------------------------
+/**
+ * set how the joysticks feel: 0.0 is straight, and up
+ * to 1.0 is more and more cubic, for finer control with
+ * the stick near the middle
+ *
+ * @method setJoystickExpo
+ * @param expo
+ *            the curve, 0.0 - 1.0
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+public void setJoystickExpo (final double expo)
+{
+    this.joystickCurve.setExpo(expo);
+} // end setJoystickExpo
+
 // -------------------------------------------------------
 /**
  * This function sets whether or not the joysticks respond
@@ -3948,14 +3955,14 @@ public void setPIDValues (double proportional, double integral,
         return;
 
     // update the controllers with the new values
-    this.pidLeftController.getPIDController().setPID(proportional,
+    this.pidLeftController.setPID(proportional,
             integral, derivative, feedForward);
-    this.pidLeftRearController.getPIDController().setPID(
+    this.pidLeftRearController.setPID(
             proportional,
             integral, derivative, feedForward);
-    this.pidRightController.getPIDController().setPID(proportional,
+    this.pidRightController.setPID(proportional,
             integral, derivative, feedForward);
-    this.pidRightRearController.getPIDController().setPID(
+    this.pidRightRearController.setPID(
             proportional,
             integral, derivative, feedForward);
 
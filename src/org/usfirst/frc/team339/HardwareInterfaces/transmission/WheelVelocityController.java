@@ -0,0 +1,359 @@
+package org.usfirst.frc.team339.HardwareInterfaces.transmission;
+
+import org.usfirst.frc.team339.Utils.PIDCore;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.SpeedController;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Holds each drive wheel at a speed (in inches per second) instead of a
+ * motor value, so the same joystick gives the same speed whether the battery
+ * is fresh or sagging.
+ *
+ * Every wheel gets a feedforward (the motor value we think that speed needs)
+ * plus a PID correction on the error from its encoder's rate, worked out by
+ * its own PIDCore. The output is
+ * then scaled by the nominal over the actual battery voltage, so the
+ * feedforward still means the same thing when the battery is low.
+ *
+ * All the wheels are updated together on one Notifier. Each encoder is read
+ * once per update even if more than one wheel uses it (like the front and
+ * rear motors on a side with one encoder between them), so all the wheels
+ * see the same reading. Nothing is printed and nothing is allocated while
+ * it's running.
+ *
+ * The encoder for a wheel has to count up when its motor is given a positive
+ * value; use Encoder.setReverseDirection() if it doesn't.
+ *
+ * @author Kilroy
+ *
+ */
+public class WheelVelocityController
+{
+
+/**
+ * Creates a controller with no wheels. It doesn't run until start().
+ *
+ * @param maxInchesPerSecond
+ *            The speed a setSpeed() of 1.0 asks for. This should be a bit
+ *            under the robot's real top speed on a low battery, or full
+ *            speed can't be held.
+ */
+public WheelVelocityController (double maxInchesPerSecond)
+{
+    this.maxInchesPerSecond = Math.abs(maxInchesPerSecond);
+    for (int i = 0; i < MAX_WHEELS; i++)
+        {
+        this.pids[i] = new PIDCore(DEFAULT_KP, DEFAULT_KI, DEFAULT_KD,
+                1.0 / this.maxInchesPerSecond);
+        }
+}
+
+/**
+ * Adds a wheel.
+ *
+ * @param motor
+ *            The motor driving the wheel
+ * @param encoder
+ *            The encoder measuring it, in inches. Can be the same encoder as
+ *            another wheel's.
+ * @return
+ *         The wheel's number, for setSpeed() and the getters.
+ */
+public synchronized int addWheel (SpeedController motor, Encoder encoder)
+{
+    if (this.numWheels == MAX_WHEELS)
+        throw new IllegalStateException(
+                "can't have more than " + MAX_WHEELS + " wheels");
+    if (motor == null || encoder == null)
+        throw new IllegalArgumentException(
+                "a wheel needs a motor and an encoder");
+    // share the encoder if another wheel already uses it
+    int encoderIndex = 0;
+    while (encoderIndex < this.numEncoders
+            && this.encoders[encoderIndex] != encoder)
+        encoderIndex++;
+    if (encoderIndex == this.numEncoders)
+        {
+        this.encoders[encoderIndex] = encoder;
+        this.numEncoders++;
+        }
+    this.motors[this.numWheels] = motor;
+    this.encoderOf[this.numWheels] = encoderIndex;
+    this.numWheels++;
+    return this.numWheels - 1;
+}
+
+/**
+ * Sets how fast a wheel should go.
+ *
+ * @param wheel
+ *            The number from addWheel()
+ * @param fraction
+ *            -1.0 to 1.0, the fraction of the max speed (what we'd have
+ *            sent straight to the motor)
+ */
+public synchronized void setSpeed (int wheel, double fraction)
+{
+    this.setpoints[wheel] = Math.max(-1.0, Math.min(1.0, fraction))
+            * this.maxInchesPerSecond;
+    this.pids[wheel].setSetpoint(this.setpoints[wheel]);
+}
+
+/**
+ * Sets the PID gains. They're in motor value per inch per second of error
+ * (and per inch, and per inch per second per second).
+ *
+ * @param kP
+ *            Proportional gain
+ * @param kI
+ *            Integral gain
+ * @param kD
+ *            Derivative gain
+ */
+public synchronized void setPID (double kP, double kI, double kD)
+{
+    for (int i = 0; i < MAX_WHEELS; i++)
+        {
+        this.pids[i].setPID(kP, kI, kD);
+        }
+}
+
+/**
+ * Sets the feedforward gain. It starts at 1 / max speed.
+ *
+ * @param kF
+ *            Motor value per inch per second wanted, at the nominal voltage
+ */
+public synchronized void setFeedForward (double kF)
+{
+    for (int i = 0; i < MAX_WHEELS; i++)
+        {
+        this.pids[i].setPID(this.pids[i].getP(), this.pids[i].getI(),
+                this.pids[i].getD(), kF);
+        }
+}
+
+/**
+ * Smooths the D term; see PIDCore.setDerivativeFilter().
+ *
+ * @param seconds
+ *            The filter's time constant, or 0 for none
+ */
+public synchronized void setDerivativeFilter (double seconds)
+{
+    for (int i = 0; i < MAX_WHEELS; i++)
+        {
+        this.pids[i].setDerivativeFilter(seconds);
+        }
+}
+
+/**
+ * Limits how fast each motor value can change, so the drive doesn't jerk.
+ *
+ * @param perSecond
+ *            The most a motor value can change in a second, or 0 for no
+ *            limit
+ */
+public synchronized void setSlewRate (double perSecond)
+{
+    for (int i = 0; i < MAX_WHEELS; i++)
+        {
+        this.pids[i].setSlewRate(perSecond);
+        }
+}
+
+/**
+ * Sets the voltage the gains were tuned at.
+ *
+ * @param volts
+ *            The nominal battery voltage (12 by default), or 0 to not
+ *            correct for the battery at all
+ */
+public synchronized void setNominalVoltage (double volts)
+{
+    this.nominalVoltage = volts;
+}
+
+/**
+ * Starts updating the wheels every <period> seconds (100 Hz by default).
+ */
+public synchronized void start ()
+{
+    this.reset();
+    this.notifier.startPeriodic(this.period);
+}
+
+/**
+ * Stops updating the wheels and sets all their motors to 0.
+ */
+public synchronized void stop ()
+{
+    this.notifier.stop();
+    for (int i = 0; i < this.numWheels; i++)
+        {
+        this.setpoints[i] = 0.0;
+        this.outputs[i] = 0.0;
+        this.motors[i].set(0.0);
+        }
+}
+
+/**
+ * Changes how often the wheels are updated. Takes effect at the next
+ * start().
+ *
+ * @param seconds
+ *            The time between updates
+ */
+public synchronized void setPeriod (double seconds)
+{
+    this.period = seconds;
+}
+
+/**
+ * Forgets the integral and derivative history, so we don't lurch from
+ * errors built up before.
+ */
+public synchronized void reset ()
+{
+    for (int i = 0; i < this.numWheels; i++)
+        {
+        this.pids[i].reset();
+        }
+    this.lastTime = 0.0;
+}
+
+/**
+ * @param wheel
+ *            The number from addWheel()
+ * @return
+ *         How fast the wheel was going at the last update, in inches per
+ *         second.
+ */
+public synchronized double getRate (int wheel)
+{
+    return this.rates[this.encoderOf[wheel]];
+}
+
+/**
+ * @param wheel
+ *            The number from addWheel()
+ * @return
+ *         How fast the wheel should be going, in inches per second.
+ */
+public synchronized double getSetpoint (int wheel)
+{
+    return this.setpoints[wheel];
+}
+
+/**
+ * @param wheel
+ *            The number from addWheel()
+ * @return
+ *         The motor value the wheel was given at the last update.
+ */
+public synchronized double getOutput (int wheel)
+{
+    return this.outputs[wheel];
+}
+
+/**
+ * One update of all the wheels; the Notifier calls this.
+ */
+private synchronized void update ()
+{
+    final double now = Timer.getFPGATimestamp();
+    final double dt = (this.lastTime == 0.0) ? this.period
+            : Math.max(now - this.lastTime, MIN_DT);
+    this.lastTime = now;
+
+    // one read per encoder, however many wheels share it
+    for (int i = 0; i < this.numEncoders; i++)
+        {
+        this.rates[i] = this.encoders[i].getRate();
+        }
+
+    double voltageScale = 1.0;
+    if (this.nominalVoltage > 0.0)
+        voltageScale = this.nominalVoltage / Math.max(MIN_VOLTAGE,
+                DriverStation.getInstance().getBatteryVoltage());
+
+    for (int i = 0; i < this.numWheels; i++)
+        {
+        if (this.setpoints[i] == 0.0)
+            {
+            // asked to stop: let it, without fighting what's left of the
+            // speed or carrying old errors into the next move
+            this.pids[i].reset();
+            this.outputs[i] = 0.0;
+            this.motors[i].set(0.0);
+            continue;
+            }
+        // the gains are for the nominal voltage; ask for more when the
+        // battery is low. The PID's range shrinks to match, so it knows
+        // when the motor is really maxed out and stops winding up.
+        this.pids[i].setOutputRange(-1.0 / voltageScale, 1.0 / voltageScale);
+        this.outputs[i] = Math.max(-1.0, Math.min(1.0,
+                this.pids[i].calculate(this.rates[this.encoderOf[i]], dt)
+                        * voltageScale));
+        this.motors[i].set(this.outputs[i]);
+        }
+}
+
+// the most wheels (and so encoders) we can drive
+private static final int MAX_WHEELS = 4;
+
+// don't divide by a tiny time if the Notifier runs twice in a row
+private static final double MIN_DT = 0.001;
+
+// below this the battery reading isn't worth believing
+private static final double MIN_VOLTAGE = 6.0;
+
+private static final double DEFAULT_PERIOD = 0.01;
+
+private static final double DEFAULT_KP = 0.002;
+
+private static final double DEFAULT_KI = 0.01;
+
+private static final double DEFAULT_KD = 0.0;
+
+private final double maxInchesPerSecond;
+
+private double nominalVoltage = 12.0;
+
+private double period = DEFAULT_PERIOD;
+
+private final SpeedController[] motors = new SpeedController[MAX_WHEELS];
+
+private final Encoder[] encoders = new Encoder[MAX_WHEELS];
+
+// which entry in encoders each wheel uses
+private final int[] encoderOf = new int[MAX_WHEELS];
+
+private int numWheels = 0;
+
+private int numEncoders = 0;
+
+// inches per second, by wheel
+private final double[] setpoints = new double[MAX_WHEELS];
+
+// inches per second, by encoder
+private final double[] rates = new double[MAX_WHEELS];
+
+private final PIDCore[] pids = new PIDCore[MAX_WHEELS];
+
+private final double[] outputs = new double[MAX_WHEELS];
+
+private double lastTime = 0.0;
+
+private final Notifier notifier = new Notifier(new Runnable()
+{
+@Override
+public void run ()
+{
+    WheelVelocityController.this.update();
+}
+});
+}
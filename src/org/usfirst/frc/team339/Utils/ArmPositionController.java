@@ -0,0 +1,343 @@
+package org.usfirst.frc.team339.Utils;
+
+import org.usfirst.frc.team339.HardwareInterfaces.RobotPotentiometer;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.SpeedController;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Moves the pickup arm to an angle and holds it there, instead of running
+ * the motor at a fixed speed until the pot says we've gone past.
+ *
+ * When it's given a target, it plans the move as it goes (a trapezoid):
+ * speed up at no more than the acceleration limit, cruise at the speed
+ * limit, and slow down early enough to stop on the target. Every update, a
+ * PIDCore holds the arm on where that plan says it should be by now, on top
+ * of a feedforward for gravity (which pulls hardest with the arm straight
+ * out and not at all when it's straight up) and for the planned speed and
+ * acceleration. So
+ * the PID only has to fix small errors, and the arm comes in to the target
+ * without overshooting or banging back and forth.
+ *
+ * It runs on its own Notifier (100 Hz), reading the pot fresh every update
+ * instead of the once-a-loop reading. It keeps track of the arm's speed even
+ * when it isn't moving the arm, so a move can start from wherever the arm
+ * is going.
+ *
+ * The motor has to make the pot's angle go up when it's given a positive
+ * value.
+ *
+ * @author Kilroy
+ *
+ */
+public class ArmPositionController
+{
+
+/**
+ * Creates the controller and starts its Notifier. It doesn't move the arm
+ * until it's given a target.
+ *
+ * @param motor
+ *            The arm motor
+ * @param pot
+ *            The pot on the arm, in degrees
+ * @param verticalDegrees
+ *            The pot's angle with the arm straight up, where gravity
+ *            doesn't pull it either way
+ */
+public ArmPositionController (SpeedController motor, RobotPotentiometer pot,
+        double verticalDegrees)
+{
+    this.motor = motor;
+    this.pot = pot;
+    this.verticalDegrees = verticalDegrees;
+    this.pid.setDerivativeFilter(DERIVATIVE_FILTER_SECONDS);
+    this.notifier.startPeriodic(PERIOD);
+}
+
+/**
+ * Moves the arm to an angle and holds it there, until disable(). Giving it
+ * the target it already has does nothing, so this can be called every loop.
+ * Giving it a new one while it's moving changes course without stopping.
+ *
+ * @param degrees
+ *            The pot angle to go to
+ */
+public synchronized void setTarget (double degrees)
+{
+    if (this.enabled == true)
+        {
+        this.target = degrees;
+        return;
+        }
+    // start planning from where the arm is and how fast it's going now
+    this.target = degrees;
+    this.profilePosition = this.angle;
+    this.profileVelocity = this.velocity;
+    this.pid.reset();
+    this.enabled = true;
+}
+
+/**
+ * Stops moving the arm, and sets its motor to 0. Whoever drives the arm
+ * next has to set the motor themselves.
+ */
+public synchronized void disable ()
+{
+    if (this.enabled == true)
+        {
+        this.enabled = false;
+        this.motor.set(0.0);
+        }
+}
+
+/**
+ * @return
+ *         true if it's moving or holding the arm.
+ */
+public synchronized boolean isEnabled ()
+{
+    return this.enabled;
+}
+
+/**
+ * @param tolerance
+ *            How close is close enough, in degrees
+ * @return
+ *         true once the planned move is over and the arm is within
+ *         <tolerance> of the target.
+ */
+public synchronized boolean isAtTarget (double tolerance)
+{
+    return this.enabled == true && this.profilePosition == this.target
+            && Math.abs(this.target - this.angle) <= tolerance;
+}
+
+/**
+ * Sets the PID gains, in motor value per degree of error (and per degree
+ * second, and per degree per second).
+ *
+ * @param kP
+ *            Proportional gain
+ * @param kI
+ *            Integral gain
+ * @param kD
+ *            Derivative gain
+ */
+public synchronized void setPID (double kP, double kI, double kD)
+{
+    this.pid.setPID(kP, kI, kD);
+}
+
+/**
+ * Sets the feedforward.
+ *
+ * @param kGravity
+ *            The motor value that holds the arm straight out
+ * @param kVelocity
+ *            Motor value per degree per second of planned speed
+ * @param kAcceleration
+ *            Motor value per degree per second per second of planned
+ *            acceleration
+ */
+public synchronized void setFeedForward (double kGravity, double kVelocity,
+        double kAcceleration)
+{
+    this.kGravity = kGravity;
+    this.kVelocity = kVelocity;
+    this.kAcceleration = kAcceleration;
+}
+
+/**
+ * Sets the limits the moves are planned with.
+ *
+ * @param maxDegreesPerSecond
+ *            The fastest the arm should go
+ * @param maxDegreesPerSecondSquared
+ *            The fastest it should speed up or slow down
+ * @param maxOutput
+ *            The most motor value it can have, to keep the current down
+ */
+public synchronized void setLimits (double maxDegreesPerSecond,
+        double maxDegreesPerSecondSquared, double maxOutput)
+{
+    this.maxVelocity = Math.abs(maxDegreesPerSecond);
+    this.maxAcceleration = Math.abs(maxDegreesPerSecondSquared);
+    this.maxOutput = Math.abs(maxOutput);
+}
+
+/**
+ * @return
+ *         The arm's angle at the last update.
+ */
+public synchronized double getAngle ()
+{
+    return this.angle;
+}
+
+/**
+ * @return
+ *         How fast the arm was going at the last update, in degrees per
+ *         second.
+ */
+public synchronized double getVelocity ()
+{
+    return this.velocity;
+}
+
+/**
+ * @return
+ *         Where the planned move says the arm should be now.
+ */
+public synchronized double getProfilePosition ()
+{
+    return this.profilePosition;
+}
+
+/**
+ * One update; the Notifier calls this.
+ */
+private synchronized void update ()
+{
+    final double now = Timer.getFPGATimestamp();
+    final double dt = (this.lastTime == 0.0) ? PERIOD
+            : Math.max(now - this.lastTime, MIN_DT);
+    this.lastTime = now;
+
+    // where the arm is, and a smoothed speed
+    final double newAngle = this.pot.readAngle();
+    if (this.hasAngle == true)
+        this.velocity += (dt / (VELOCITY_FILTER_SECONDS + dt))
+                * ((newAngle - this.angle) / dt - this.velocity);
+    this.angle = newAngle;
+    this.hasAngle = true;
+
+    if (this.enabled == false)
+        return;
+
+    final double lastProfileVelocity = this.profileVelocity;
+
+    // -------------------------------------
+    // move the plan along: the fastest we can go and still stop on the
+    // target, no faster than the speed limit, and changing speed no faster
+    // than the acceleration limit
+    // -------------------------------------
+    if (this.profilePosition != this.target)
+        {
+        final double remaining = this.target - this.profilePosition;
+        final double wanted = Math.signum(remaining) * Math.min(
+                this.maxVelocity,
+                Math.sqrt(2.0 * this.maxAcceleration * Math.abs(remaining)));
+        final double maxChange = this.maxAcceleration * dt;
+        this.profileVelocity = Math.max(this.profileVelocity - maxChange,
+                Math.min(this.profileVelocity + maxChange, wanted));
+        this.profilePosition += this.profileVelocity * dt;
+        // stepped past it: we're there
+        if (Math.signum(this.target - this.profilePosition) != Math
+                .signum(remaining))
+            {
+            this.profilePosition = this.target;
+            this.profileVelocity = 0.0;
+            }
+        }
+    else
+        this.profileVelocity = 0.0;
+
+    final double profileAcceleration = (this.profileVelocity
+            - lastProfileVelocity) / dt;
+
+    // -------------------------------------
+    // feedforward for gravity and the planned motion, and the PID for
+    // the rest. The PID's range is what's left after the feedforward, so
+    // it knows when the motor is maxed out and stops winding up.
+    // -------------------------------------
+    final double feedForward = this.kGravity
+            * Math.sin(Math.toRadians(this.verticalDegrees - this.angle))
+            + this.kVelocity * this.profileVelocity
+            + this.kAcceleration * profileAcceleration;
+    this.pid.setSetpoint(this.profilePosition);
+    this.pid.setOutputRange(-this.maxOutput - feedForward,
+            this.maxOutput - feedForward);
+    final double output = feedForward + this.pid.calculate(this.angle, dt);
+    this.motor.set(Math.max(-this.maxOutput,
+            Math.min(this.maxOutput, output)));
+}
+
+// 100 Hz
+private static final double PERIOD = 0.01;
+
+// don't divide by a tiny time if the Notifier runs twice in a row
+private static final double MIN_DT = 0.001;
+
+// smooths the speed worked out from the pot
+private static final double VELOCITY_FILTER_SECONDS = 0.03;
+
+private static final double DERIVATIVE_FILTER_SECONDS = 0.02;
+
+// starting gains; tune these on the robot
+private static final double DEFAULT_KP = 0.02;
+
+private static final double DEFAULT_KI = 0.01;
+
+private static final double DEFAULT_KD = 0.001;
+
+private static final double DEFAULT_K_GRAVITY = 0.2;
+
+private static final double DEFAULT_K_VELOCITY = 0.003;
+
+private static final double DEFAULT_K_ACCELERATION = 0.0003;
+
+private static final double DEFAULT_MAX_VELOCITY = 150.0;
+
+private static final double DEFAULT_MAX_ACCELERATION = 300.0;
+
+// what moveFast() used to run at
+private static final double DEFAULT_MAX_OUTPUT = 0.6;
+
+private final SpeedController motor;
+
+private final RobotPotentiometer pot;
+
+private final double verticalDegrees;
+
+private final PIDCore pid = new PIDCore(DEFAULT_KP, DEFAULT_KI, DEFAULT_KD,
+        0.0);
+
+private double kGravity = DEFAULT_K_GRAVITY;
+
+private double kVelocity = DEFAULT_K_VELOCITY;
+
+private double kAcceleration = DEFAULT_K_ACCELERATION;
+
+private double maxVelocity = DEFAULT_MAX_VELOCITY;
+
+private double maxAcceleration = DEFAULT_MAX_ACCELERATION;
+
+private double maxOutput = DEFAULT_MAX_OUTPUT;
+
+private boolean enabled = false;
+
+private double target = 0.0;
+
+// where the planned move is now, and how fast it's going
+private double profilePosition = 0.0;
+
+private double profileVelocity = 0.0;
+
+private double angle = 0.0;
+
+private boolean hasAngle = false;
+
+private double velocity = 0.0;
+
+private double lastTime = 0.0;
+
+private final Notifier notifier = new Notifier(new Runnable()
+{
+@Override
+public void run ()
+{
+    ArmPositionController.this.update();
+}
+});
+}
@@ -0,0 +1,480 @@
+package org.usfirst.frc.team339.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Runs a state machine where each state is an object and the order of the
+ * states is a table, instead of one big switch statement.
+ *
+ * The states are named by an enum. Each one gets a State object, which has
+ * enter() (called once when we get to the state), execute() (called every
+ * loop while we're in it) and exit() (called once when we leave). execute()
+ * returns STAY to keep going, or DONE or ALTERNATE to leave. Where it goes
+ * when it leaves is looked up in the transition table, so the same states can
+ * be put together in different orders (routines) without changing any code.
+ *
+ * The table is an array indexed by the state's ordinal and the outcome, so
+ * every periodic() is one execute() and at most one array lookup. Gaps in the
+ * table are filled in when start() is called: a missing ALTERNATE goes where
+ * DONE goes, and a missing DONE goes to the final state.
+ *
+ * Routines can be read from a text file, one transition per line:
+ *
+ * <pre>
+ * # comments start with #
+ * start INIT
+ * final DONE
+ * INIT -> DELAY
+ * MOVE_TO_OUTER_WORKS -> FORWARDS_OVER_OUTER_WORKS
+ * MOVE_TO_OUTER_WORKS alternate -> WAIT_FOR_ARM_DESCENT
+ * </pre>
+ *
+ * The time spent in each state is added up, so you can see where the time
+ * went once it's over.
+ *
+ * None of this is thread safe; it's meant to be run from the robot loop.
+ *
+ * @param <S>
+ *            The enum that names the states
+ * @author Kilroy
+ *
+ */
+public class AutoEngine<S extends Enum<S>>
+{
+
+/**
+ * execute() result: stay in this state.
+ */
+public static final int STAY = -1;
+
+/**
+ * execute() result: this state is finished, go to the next one.
+ */
+public static final int DONE = 0;
+
+/**
+ * execute() result: this state is finished, but go to the alternate next
+ * state (if the routine has one).
+ */
+public static final int ALTERNATE = 1;
+
+/**
+ * What one state does. Only execute() has to be written.
+ */
+public static abstract class State
+{
+/**
+ * Called once, on the loop we get to this state, before the first
+ * execute().
+ */
+public void enter ()
+{
+}
+
+/**
+ * Called every loop while we're in this state.
+ *
+ * @return
+ *         STAY, DONE or ALTERNATE
+ */
+public abstract int execute ();
+
+/**
+ * Called once, on the loop we leave this state, after the last execute().
+ */
+public void exit ()
+{
+}
+}
+
+/**
+ * Told whenever the engine changes state.
+ *
+ * @param <S>
+ *            The enum that names the states
+ */
+public static interface Listener<S>
+{
+/**
+ * @param from
+ *            The state we left, or null if we're just starting
+ * @param to
+ *            The state we're going to
+ */
+public void stateChanged (S from, S to);
+}
+
+/**
+ * Creates an engine with no states and an empty routine.
+ *
+ * @param stateType
+ *            The enum class naming the states, e.g. MainState.class
+ */
+public AutoEngine (Class<S> stateType)
+{
+    this.stateType = stateType;
+    this.names = stateType.getEnumConstants();
+    this.states = new State[this.names.length];
+    this.table = new int[this.names.length][NUM_OUTCOMES];
+    this.secondsIn = new double[this.names.length];
+    this.timesEntered = new int[this.names.length];
+    this.clearRoutine();
+}
+
+/**
+ * Sets what a state does.
+ *
+ * @param name
+ *            The state
+ * @param state
+ *            What it does
+ */
+public void setState (S name, State state)
+{
+    this.states[name.ordinal()] = state;
+}
+
+/**
+ * Sets who gets told about state changes.
+ *
+ * @param listener
+ *            The listener, or null for nobody
+ */
+public void setListener (Listener<S> listener)
+{
+    this.listener = listener;
+}
+
+/**
+ * Forgets the current routine's transitions, start and final states.
+ */
+public void clearRoutine ()
+{
+    for (int i = 0; i < this.table.length; i++)
+        {
+        for (int j = 0; j < NUM_OUTCOMES; j++)
+            {
+            this.table[i][j] = NO_TRANSITION;
+            }
+        }
+    this.startState = NO_TRANSITION;
+    this.finalState = NO_TRANSITION;
+}
+
+/**
+ * @param name
+ *            The state the routine starts in
+ */
+public void setStart (S name)
+{
+    this.startState = name.ordinal();
+}
+
+/**
+ * @param name
+ *            The state the routine ends in. Once we get there we stay
+ *            there.
+ */
+public void setFinal (S name)
+{
+    this.finalState = name.ordinal();
+}
+
+/**
+ * Adds a line to the routine's transition table.
+ *
+ * @param from
+ *            The state that's finishing
+ * @param outcome
+ *            DONE or ALTERNATE
+ * @param to
+ *            Where to go when <from> returns <outcome>
+ */
+public void addTransition (S from, int outcome, S to)
+{
+    if (outcome != DONE && outcome != ALTERNATE)
+        throw new IllegalArgumentException("bad outcome " + outcome);
+    this.table[from.ordinal()][outcome] = to.ordinal();
+}
+
+/**
+ * Replaces the current routine with one read from a file. If the file isn't
+ * there or has a mistake in it, the current routine is kept.
+ *
+ * @param fileName
+ *            The full path of the routine file
+ * @return
+ *         true if the file was read and is now the routine.
+ */
+public boolean loadRoutineFile (String fileName)
+{
+    final Path path = Paths.get(fileName);
+    if (Files.isReadable(path) == false)
+        return false;
+    try
+        {
+        this.loadRoutine(Files.readAllLines(path, StandardCharsets.UTF_8));
+        return true;
+        }
+    catch (final IOException e)
+        {
+        System.out.println("AutoEngine: can't read " + fileName + ": "
+                + e.getMessage());
+        }
+    catch (final IllegalArgumentException e)
+        {
+        System.out.println("AutoEngine: " + fileName + " " + e.getMessage());
+        }
+    return false;
+}
+
+/**
+ * Replaces the current routine with one written as text (see the class
+ * comment for what it looks like).
+ *
+ * @param lines
+ *            The routine, one line per entry
+ * @throws IllegalArgumentException
+ *             if there's a mistake in it; the current routine is kept.
+ */
+public void loadRoutine (List<String> lines)
+{
+    // parse into a copy so a mistake halfway through doesn't leave half a
+    // routine
+    final int[][] newTable = new int[this.table.length][NUM_OUTCOMES];
+    for (int i = 0; i < newTable.length; i++)
+        {
+        for (int j = 0; j < NUM_OUTCOMES; j++)
+            {
+            newTable[i][j] = NO_TRANSITION;
+            }
+        }
+    int newStart = NO_TRANSITION;
+    int newFinal = NO_TRANSITION;
+
+    for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++)
+        {
+        String line = lines.get(lineNumber - 1);
+        final int comment = line.indexOf('#');
+        if (comment >= 0)
+            line = line.substring(0, comment);
+        final String[] words = line.trim().split("\\s+");
+        if (words.length == 1 && words[0].length() == 0)
+            continue;
+
+        if (words.length == 2 && words[0].equals("start") == true)
+            newStart = this.parseState(words[1], lineNumber);
+        else if (words.length == 2 && words[0].equals("final") == true)
+            newFinal = this.parseState(words[1], lineNumber);
+        else if (words.length == 3 && words[1].equals("->") == true)
+            newTable[this.parseState(words[0], lineNumber)][DONE] = this
+                    .parseState(words[2], lineNumber);
+        else if (words.length == 4 && words[2].equals("->") == true)
+            {
+            final int outcome;
+            if (words[1].equals("done") == true)
+                outcome = DONE;
+            else if (words[1].equals("alternate") == true)
+                outcome = ALTERNATE;
+            else
+                throw new IllegalArgumentException("line " + lineNumber
+                        + ": don't know outcome " + words[1]);
+            newTable[this.parseState(words[0], lineNumber)][outcome] = this
+                    .parseState(words[3], lineNumber);
+            }
+        else
+            throw new IllegalArgumentException(
+                    "line " + lineNumber + ": can't understand \""
+                            + lines.get(lineNumber - 1) + "\"");
+        }
+    if (newStart == NO_TRANSITION || newFinal == NO_TRANSITION)
+        throw new IllegalArgumentException(
+                "needs a start and a final state");
+
+    for (int i = 0; i < newTable.length; i++)
+        {
+        System.arraycopy(newTable[i], 0, this.table[i], 0, NUM_OUTCOMES);
+        }
+    this.startState = newStart;
+    this.finalState = newFinal;
+}
+
+/**
+ * Gets ready to run the routine from the start state. The start state is
+ * entered on the next periodic(), so this is safe to call while disabled.
+ * The times spent in each state are cleared.
+ *
+ * @throws IllegalStateException
+ *             if the routine has no start or final state, or uses a state
+ *             that setState() was never called for.
+ */
+public void start ()
+{
+    if (this.startState == NO_TRANSITION || this.finalState == NO_TRANSITION)
+        throw new IllegalStateException("routine has no start or final state");
+    this.requireState(this.startState);
+    this.requireState(this.finalState);
+    // fill in the gaps now so periodic() never has to check
+    for (int i = 0; i < this.table.length; i++)
+        {
+        if (this.table[i][DONE] == NO_TRANSITION)
+            this.table[i][DONE] = this.finalState;
+        if (this.table[i][ALTERNATE] == NO_TRANSITION)
+            this.table[i][ALTERNATE] = this.table[i][DONE];
+        this.requireState(this.table[i][DONE]);
+        this.requireState(this.table[i][ALTERNATE]);
+        this.secondsIn[i] = 0.0;
+        this.timesEntered[i] = 0;
+        }
+    this.current = NO_TRANSITION;
+    this.started = true;
+}
+
+/**
+ * Runs the current state once, and moves on to the next state if it's
+ * finished. Call every loop.
+ */
+public void periodic ()
+{
+    if (this.started == false)
+        return;
+    if (this.current == NO_TRANSITION)
+        {
+        this.changeTo(this.startState);
+        }
+    final int outcome = this.states[this.current].execute();
+    if (outcome == STAY || this.current == this.finalState)
+        return;
+    this.states[this.current].exit();
+    this.changeTo(this.table[this.current][outcome == ALTERNATE ? ALTERNATE
+            : DONE]);
+}
+
+/**
+ * @return
+ *         The state we're in, or null if periodic() hasn't run since start().
+ */
+public S getCurrentState ()
+{
+    if (this.current == NO_TRANSITION)
+        return null;
+    return this.names[this.current];
+}
+
+/**
+ * @return
+ *         true once we've reached the final state.
+ */
+public boolean isFinished ()
+{
+    return this.current != NO_TRANSITION && this.current == this.finalState;
+}
+
+/**
+ * @return
+ *         How long, in seconds, we've been in the current state.
+ */
+public double getSecondsInCurrentState ()
+{
+    if (this.current == NO_TRANSITION)
+        return 0.0;
+    return Timer.getFPGATimestamp() - this.enteredAt;
+}
+
+/**
+ * @param name
+ *            A state
+ * @return
+ *         The total time, in seconds, spent in that state since start(),
+ *         including now if we're in it.
+ */
+public double getSecondsIn (S name)
+{
+    final int i = name.ordinal();
+    if (i == this.current)
+        return this.secondsIn[i] + this.getSecondsInCurrentState();
+    return this.secondsIn[i];
+}
+
+/**
+ * @param name
+ *            A state
+ * @return
+ *         How many times we've gone into that state since start().
+ */
+public int getTimesEntered (S name)
+{
+    return this.timesEntered[name.ordinal()];
+}
+
+private void changeTo (int next)
+{
+    final double now = Timer.getFPGATimestamp();
+    final int previous = this.current;
+    if (previous != NO_TRANSITION)
+        this.secondsIn[previous] += now - this.enteredAt;
+    this.current = next;
+    this.enteredAt = now;
+    this.timesEntered[next]++;
+    if (this.listener != null)
+        this.listener.stateChanged(
+                previous == NO_TRANSITION ? null : this.names[previous],
+                this.names[next]);
+    this.states[next].enter();
+}
+
+private int parseState (String name, int lineNumber)
+{
+    try
+        {
+        return Enum.valueOf(this.stateType, name).ordinal();
+        }
+    catch (final IllegalArgumentException e)
+        {
+        throw new IllegalArgumentException(
+                "line " + lineNumber + ": there's no state " + name);
+        }
+}
+
+private void requireState (int index)
+{
+    if (this.states[index] == null)
+        throw new IllegalStateException(
+                "routine uses " + this.names[index] + ", which has no State");
+}
+
+private static final int NUM_OUTCOMES = 2;
+
+private static final int NO_TRANSITION = -1;
+
+private final Class<S> stateType;
+
+private final S[] names;
+
+private final State[] states;
+
+// [state ordinal][outcome] -> next state ordinal
+private final int[][] table;
+
+private final double[] secondsIn;
+
+private final int[] timesEntered;
+
+private Listener<S> listener = null;
+
+private int startState;
+
+private int finalState;
+
+private int current = NO_TRANSITION;
+
+private boolean started = false;
+
+private double enteredAt = 0.0;
+}
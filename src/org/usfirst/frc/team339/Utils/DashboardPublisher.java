@@ -0,0 +1,323 @@
+package org.usfirst.frc.team339.Utils;
+
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Sits between our code and the SmartDashboard, so we only send values over
+ * the radio when they change, and only a few times a second.
+ *
+ * putBoolean(), putNumber() and putString() don't send anything; they just
+ * remember the value, which is cheap enough to call every loop. publish()
+ * (run on the scheduler at a fixed rate) then sends every value that's
+ * different from what was last sent, and nothing else. A value that changes
+ * and changes back between two publishes isn't sent at all.
+ *
+ * Values that belong together (like the four Guidance arrows) can be put
+ * between beginBatch() and endBatch(); a publish waits for the batch, so the
+ * dashboard never shows half of it.
+ *
+ * There's one publisher for the whole robot, from getInstance(). It's safe
+ * to use from any thread.
+ *
+ * @author Kilroy
+ *
+ */
+public class DashboardPublisher
+{
+
+/**
+ * @return
+ *         The robot's publisher.
+ */
+public static DashboardPublisher getInstance ()
+{
+    return INSTANCE;
+}
+
+private DashboardPublisher ()
+{
+}
+
+/**
+ * Sets a boolean to send at the next publish, if it's changed.
+ *
+ * @param key
+ *            The name on the SmartDashboard
+ * @param value
+ *            The value
+ */
+public void putBoolean (String key, boolean value)
+{
+    this.lock.lock();
+    try
+        {
+        final Entry entry = this.getEntry(key, TYPE_BOOLEAN);
+        entry.booleanValue = value;
+        this.markIfChanged(entry);
+        }
+    finally
+        {
+        this.lock.unlock();
+        }
+}
+
+/**
+ * Sets a number to send at the next publish, if it's changed.
+ *
+ * @param key
+ *            The name on the SmartDashboard
+ * @param value
+ *            The value
+ */
+public void putNumber (String key, double value)
+{
+    this.lock.lock();
+    try
+        {
+        final Entry entry = this.getEntry(key, TYPE_NUMBER);
+        entry.numberValue = value;
+        this.markIfChanged(entry);
+        }
+    finally
+        {
+        this.lock.unlock();
+        }
+}
+
+/**
+ * Sets a String to send at the next publish, if it's changed.
+ *
+ * @param key
+ *            The name on the SmartDashboard
+ * @param value
+ *            The value
+ */
+public void putString (String key, String value)
+{
+    this.lock.lock();
+    try
+        {
+        final Entry entry = this.getEntry(key, TYPE_STRING);
+        entry.stringValue = value;
+        this.markIfChanged(entry);
+        }
+    finally
+        {
+        this.lock.unlock();
+        }
+}
+
+/**
+ * Holds off publishing until endBatch(), so everything put in between goes
+ * out together. Batches can be inside each other; every beginBatch() needs
+ * an endBatch(), on the same thread (use a finally).
+ */
+public void beginBatch ()
+{
+    this.lock.lock();
+}
+
+/**
+ * Ends a batch started by beginBatch().
+ */
+public void endBatch ()
+{
+    this.lock.unlock();
+}
+
+/**
+ * Sends every value that has changed since it was last sent. Run this at a
+ * fixed rate, on the scheduler.
+ */
+public synchronized void publish ()
+{
+    // pick out what to send under the lock, then send it without holding up
+    // whoever's putting values. synchronized, so only one publish runs at a
+    // time and values can't go out of order.
+    int numOutgoing = 0;
+    this.lock.lock();
+    try
+        {
+        for (int i = 0; i < this.numDirty; i++)
+            {
+            final Entry entry = this.dirty[i];
+            this.dirty[i] = null;
+            entry.dirty = false;
+            if (entry.hasChanged() == false)
+                continue;
+            entry.sentType = entry.type;
+            entry.sentBoolean = entry.booleanValue;
+            entry.sentNumber = entry.numberValue;
+            entry.sentString = entry.stringValue;
+            if (numOutgoing == this.outgoing.length)
+                this.outgoing = grow(this.outgoing);
+            this.outgoing[numOutgoing++] = entry;
+            }
+        this.numDirty = 0;
+        }
+    finally
+        {
+        this.lock.unlock();
+        }
+
+    for (int i = 0; i < numOutgoing; i++)
+        {
+        final Entry entry = this.outgoing[i];
+        this.outgoing[i] = null;
+        // the sent values are only changed by publish(), so they can be
+        // read here without the lock
+        switch (entry.sentType)
+            {
+            case TYPE_BOOLEAN:
+                SmartDashboard.putBoolean(entry.key, entry.sentBoolean);
+                break;
+            case TYPE_NUMBER:
+                SmartDashboard.putNumber(entry.key, entry.sentNumber);
+                break;
+            default:
+                SmartDashboard.putString(entry.key, entry.sentString);
+                break;
+            }
+        }
+    this.sent += numOutgoing;
+}
+
+/**
+ * @return
+ *         How many values publish() has sent.
+ */
+public long getValuesSent ()
+{
+    return this.sent;
+}
+
+/**
+ * @return
+ *         How many puts didn't need anything sent, because the value hadn't
+ *         changed.
+ */
+public long getValuesSkipped ()
+{
+    return this.skipped;
+}
+
+/**
+ * Finds the entry for a key, making it the first time. Only call with the
+ * lock held.
+ */
+private Entry getEntry (String key, int type)
+{
+    Entry entry = this.entries.get(key);
+    if (entry == null)
+        {
+        entry = new Entry(key);
+        this.entries.put(key, entry);
+        }
+    entry.type = type;
+    return entry;
+}
+
+/**
+ * Puts an entry on the list for the next publish if its value is different
+ * from what was last sent. Only call with the lock held.
+ */
+private void markIfChanged (Entry entry)
+{
+    if (entry.hasChanged() == false)
+        {
+        this.skipped++;
+        return;
+        }
+    if (entry.dirty == true)
+        return;
+    if (this.numDirty == this.dirty.length)
+        this.dirty = grow(this.dirty);
+    this.dirty[this.numDirty++] = entry;
+    entry.dirty = true;
+}
+
+private static Entry[] grow (Entry[] entries)
+{
+    final Entry[] bigger = new Entry[entries.length * 2];
+    System.arraycopy(entries, 0, bigger, 0, entries.length);
+    return bigger;
+}
+
+/**
+ * One key: the value we've been given, and the value last sent.
+ */
+private static final class Entry
+{
+private final String key;
+
+private int type;
+
+private boolean booleanValue;
+
+private double numberValue;
+
+private String stringValue;
+
+// nothing's been sent yet, so anything counts as a change
+private int sentType = TYPE_NONE;
+
+private boolean sentBoolean;
+
+private double sentNumber;
+
+private String sentString;
+
+// on the list for the next publish
+private boolean dirty = false;
+
+private Entry (String key)
+{
+    this.key = key;
+}
+
+private boolean hasChanged ()
+{
+    if (this.type != this.sentType)
+        return true;
+    switch (this.type)
+        {
+        case TYPE_BOOLEAN:
+            return this.booleanValue != this.sentBoolean;
+        case TYPE_NUMBER:
+            return Double.compare(this.numberValue, this.sentNumber) != 0;
+        default:
+            if (this.stringValue == null)
+                return this.sentString != null;
+            return this.stringValue.equals(this.sentString) == false;
+        }
+}
+}
+
+private static final int TYPE_NONE = 0;
+
+private static final int TYPE_BOOLEAN = 1;
+
+private static final int TYPE_NUMBER = 2;
+
+private static final int TYPE_STRING = 3;
+
+private static final DashboardPublisher INSTANCE = new DashboardPublisher();
+
+private final ReentrantLock lock = new ReentrantLock();
+
+private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+// entries put since the last publish that might need sending
+private Entry[] dirty = new Entry[32];
+
+private int numDirty = 0;
+
+// what the current publish is sending; only touched by publish()
+private Entry[] outgoing = new Entry[32];
+
+private volatile long sent = 0;
+
+private volatile long skipped = 0;
+}
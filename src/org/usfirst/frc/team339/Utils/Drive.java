@@ -5,6 +5,8 @@ import org.usfirst.frc.team339.Hardware.Hardware;
 import org.usfirst.frc.team339.HardwareInterfaces.KilroyCamera;
 import org.usfirst.frc.team339.HardwareInterfaces.transmission.Transmission_old;
 import org.usfirst.frc.team339.Utils.ManipulatorArm.ArmPosition;
+import org.usfirst.frc.team339.Vision.ImageProcessor.ParticleReport;
+import org.usfirst.frc.team339.Vision.VisionWorker;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.Relay;
 import edu.wpi.first.wpilibj.Relay.Value;
@@ -1594,7 +1596,10 @@ public alignByCameraReturn alignByCameraStateMachine (
                     Hardware.MINIMUM_AXIS_CAMERA_BRIGHTNESS);
             // Woah, that's too dark! Someone turn on the ringlight!
             this.ringLightRelay.set(Value.kOn);
-            this.transmission.resetAllEncoders();
+            Hardware.odometry.resetEncoders();
+            // start processing pictures in the background
+            Hardware.visionWorker.setEnabled(true);
+            this.imageRequestTime = -1.0;
             // TODO I don't think this is actually necessary.
             // Hardware.rightRearEncoder.reset();
             // Hardware.leftRearEncoder.reset();
@@ -1634,58 +1639,60 @@ public alignByCameraReturn alignByCameraStateMachine (
                 }
             break;
         case TAKE_AND_PROCESS_IMAGE:
-            try
+            // The vision worker processes pictures in the background; wait
+            // (without blocking the loop) for one taken after we got here so
+            // we don't act on a picture from before our last correction.
+            if (this.imageRequestTime < 0.0)
                 {
-                Hardware.imageProcessor.processImage();
+                this.imageRequestTime = Timer.getFPGATimestamp();
                 }
-            finally
+            final VisionWorker.Snapshot snapshot = Hardware.visionWorker
+                    .getResultSince(this.imageRequestTime);
+            if (snapshot == null)
                 {
-                if (Hardware.imageProcessor
-                        .getParticleAnalysisReports().length > 0)
-                    {
-                    if (printDebugInfo == true)
-                        {
-                        System.out.println(
-                                "Largest blob X center of mass"
-                                        +
-                                        this.getRelativeXCoordinate(
-                                                Hardware.imageProcessor
-                                                        .getParticleAnalysisReports()[0].center_mass_x));
-                        System.out.println(
-                                "Largest blob Y center of mass"
-                                        +
-                                        this.getRelativeYCoordinate(
-                                                Hardware.imageProcessor
-                                                        .getParticleAnalysisReports()[0].center_mass_y));
-                        }
-                    for (int i = 0; i < Hardware.imageProcessor
-                            .getParticleAnalysisReports().length; i++)
-                        {
-                        if (Hardware.imageProcessor
-                                .getParticleAnalysisReports()[i].boundingRectWidth > widestBlobWidth)
-                            {
-                            widestBlobWidth = Hardware.imageProcessor
-                                    .getParticleAnalysisReports()[i].boundingRectWidth;
-                            widestBlobIndex = i;
-                            }
-                        }
-                    }
-                else
+                break;
+                }
+            this.imageRequestTime = -1.0;
+            this.useAlignPicture(snapshot);
+            if (this.alignBlobs.length > 0)
+                {
+                if (printDebugInfo == true)
                     {
-                    return alignByCameraReturn.NO_BLOBS_FOUND;
+                    System.out.println(
+                            "Largest blob X center of mass"
+                                    +
+                                    this.getRelativeXCoordinate(
+                                            this.alignBlobs[0].center_mass_x));
+                    System.out.println(
+                            "Largest blob Y center of mass"
+                                    +
+                                    this.getRelativeYCoordinate(
+                                            this.alignBlobs[0].center_mass_y));
                     }
-                // starts off as CHECK_Y_AXIS_CORRECTNESS, then changes when
-                // we start turn correcting
-                currentState = returnToState;
                 }
+            else
+                {
+                // nothing to align to; give up the same way QUIT does so
+                // the worker doesn't keep taking pictures and the next
+                // call starts over
+                this.transmission.setGear(savedGear);
+                currentState = alignByCameraStates.BEGINNING_SETUP;
+                returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
+                this.cameraTimer.stop();
+                this.cameraTimer.reset();
+                Hardware.visionWorker.setEnabled(false);
+                this.transmission.controls(0.0, 0.0);
+                return alignByCameraReturn.NO_BLOBS_FOUND;
+                }
+            // starts off as CHECK_Y_AXIS_CORRECTNESS, then changes when
+            // we start turn correcting
+            currentState = returnToState;
             break;
         case CHECK_Y_AXIS_CORRECTNESS:
             // if the blob is below our y deadzone
-            if (Hardware.imageProcessor
-                    .getParticleAnalysisReports().length > 0 &&
+            if (this.alignBlobs.length > 0 &&
                     getRelativeYCoordinate(
-                            Hardware.imageProcessor
-                                    .getParticleAnalysisReports()[widestBlobIndex].center_mass_y) >= ((percentageDeadbandY
+                            this.alignTarget.center_mass_y) >= ((percentageDeadbandY
                                             /
                                             2)
                                             + adjustedProportionalCenterY))
@@ -1693,11 +1700,9 @@ public alignByCameraReturn alignByCameraStateMachine (
                 currentState = alignByCameraStates.DRIVE_FORWARD;
                 }
             // if the blob is above our y deadzone
-            else if (Hardware.imageProcessor
-                    .getParticleAnalysisReports().length > 0 &&
+            else if (this.alignBlobs.length > 0 &&
                     getRelativeYCoordinate(
-                            Hardware.imageProcessor
-                                    .getParticleAnalysisReports()[widestBlobIndex].center_mass_y) <= ((-percentageDeadbandY
+                            this.alignTarget.center_mass_y) <= ((-percentageDeadbandY
                                             /
                                             2)
                                             + adjustedProportionalCenterY))
@@ -1708,8 +1713,7 @@ public alignByCameraReturn alignByCameraStateMachine (
             else
                 {
                 currentState = alignByCameraStates.QUIT;
-                if (Hardware.imageProcessor
-                        .getParticleAnalysisReports().length > 0)
+                if (this.alignBlobs.length > 0)
                     {
                     System.out.println(
                             "Y Deadzone = ("
@@ -1727,12 +1731,15 @@ public alignByCameraReturn alignByCameraStateMachine (
                                     + ")");
                     System.out
                             .println("Y axis center of mass:" +
-                                    Hardware.imageProcessor
-                                            .getParticleAnalysisReports()[widestBlobIndex].center_mass_y);
+                                    this.alignTarget.center_mass_y);
                     }
                 }
             break;
         case CHECK_X_AXIS_CORRECTNESS:
+            // if a newer picture has come in while we were turning, aim from
+            // that one instead (it only has to have a target in it)
+            this.checkForNewerAlignPicture();
+            final double alignX = this.getCompensatedAlignX();
             // if the center of our largest blob is to the left of our desired
             // deadzone
             // TODO: This is wrong. Fix. --MAK
@@ -1745,35 +1752,37 @@ public alignByCameraReturn alignByCameraStateMachine (
             // / 2)
             // + adjustedProportionalCenterX))
             // --MAK
-            if (Hardware.imageProcessor
-                    .getParticleAnalysisReports().length > 0 &&
-                    getRelativeXCoordinate(
-                            Hardware.imageProcessor
-                                    .getParticleAnalysisReports()[widestBlobIndex].center_mass_x) <= ((-percentageDeadbandX
-                                            /
-                                            2)
-                                            + adjustedProportionalCenterX))
+            if (this.alignBlobs.length > 0 &&
+                    alignX <= ((-percentageDeadbandX
+                            /
+                            2)
+                            + adjustedProportionalCenterX))
                 {
                 currentState = alignByCameraStates.ALIGN_LEFT;
                 }
             // if the center of the largest blob is to the right of our
             // acceptable zone around the center
-            else if (Hardware.imageProcessor
-                    .getParticleAnalysisReports().length > 0 &&
-                    getRelativeXCoordinate(
-                            Hardware.imageProcessor
-                                    .getParticleAnalysisReports()[widestBlobIndex].center_mass_x) >= ((percentageDeadbandX
-                                            /
-                                            2)
-                                            + adjustedProportionalCenterX))
+            else if (this.alignBlobs.length > 0 &&
+                    alignX >= ((percentageDeadbandX
+                            /
+                            2)
+                            + adjustedProportionalCenterX))
                 {
                 currentState = alignByCameraStates.ALIGN_RIGHT;
                 }
+            // the odometry says we've turned onto it since the picture:
+            // stop, and make sure with a picture taken from here
+            else if (this.alignBlobs.length > 0
+                    && this.hasTurnedSinceAlignPicture() == true)
+                {
+                this.transmission.controls(0.0, 0.0);
+                currentState = alignByCameraStates.TAKE_AND_PROCESS_IMAGE;
+                returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
+                }
             // if the blob is in our x deadzone
             else
                 {
-                if (Hardware.imageProcessor
-                        .getParticleAnalysisReports().length > 0)
+                if (this.alignBlobs.length > 0)
                     {
                     System.out.println(
                             "X Deadzone = ("
@@ -1791,8 +1800,7 @@ public alignByCameraReturn alignByCameraStateMachine (
                                     + ")");
                     System.out
                             .println("X axis center of mass:" +
-                                    Hardware.imageProcessor
-                                            .getParticleAnalysisReports()[widestBlobIndex].center_mass_x);
+                                    this.alignTarget.center_mass_x);
                     }
                 currentState = alignByCameraStates.CHECK_Y_AXIS_CORRECTNESS;
                 }
@@ -1846,8 +1854,7 @@ public alignByCameraReturn alignByCameraStateMachine (
             this.turnRightDegrees(9999.0, false,
                     -turningCorrectionSpeed,
                     turningCorrectionSpeed);
-            currentState = alignByCameraStates.TAKE_AND_PROCESS_IMAGE;
-            returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
+            this.afterAlignTurn();
             break;
         case ALIGN_LEFT:
             // turn left until it is in the zone (will be called over and
@@ -1855,8 +1862,7 @@ public alignByCameraReturn alignByCameraStateMachine (
             this.turnLeftDegrees(9999.0, false,
                     turningCorrectionSpeed,
                     -turningCorrectionSpeed);
-            currentState = alignByCameraStates.TAKE_AND_PROCESS_IMAGE;
-            returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
+            this.afterAlignTurn();
             break;
         default:
         case QUIT:
@@ -1869,6 +1875,7 @@ public alignByCameraReturn alignByCameraStateMachine (
             returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
             this.cameraTimer.stop();
             this.cameraTimer.reset();
+            Hardware.visionWorker.setEnabled(false);
             // stop the robot
             this.transmission.controls(0.0, 0.0);
             // save the image of us when we're in alignment.
@@ -1887,6 +1894,161 @@ public alignByCameraReturn alignByCameraStateMachine (
     return alignByCameraReturn.WORKING;
 }
 
+/**
+ * Picks the blob to align on: the target tracker's filtered target if it has a
+ * lock (it doesn't jump around frame to frame, so we don't oscillate), or the
+ * widest blob if it doesn't.
+ *
+ * @param snapshot
+ *            The picture we're aligning from, after the widest blob search
+ * @return
+ *         The blob to align on, or null if there are no blobs.
+ */
+private ParticleReport pickAlignTarget (VisionWorker.Snapshot snapshot)
+{
+    if (this.alignBlobs.length == 0)
+        return null;
+    if (snapshot.getTrackedTarget() != null)
+        return snapshot.getTrackedTarget();
+    return this.alignBlobs[widestBlobIndex];
+}
+
+/**
+ * Makes a picture the one alignByCameraStateMachine is working from, and
+ * picks the target in it (if there are any blobs).
+ *
+ * @param snapshot
+ *            The picture
+ */
+private void useAlignPicture (VisionWorker.Snapshot snapshot)
+{
+    this.alignBlobs = snapshot.getReports();
+    this.alignFrame = snapshot.getFrameNumber();
+    this.alignCaptureTime = snapshot.getCaptureTime();
+    if (this.alignBlobs.length == 0)
+        return;
+    widestBlobWidth = 0;
+    widestBlobIndex = 0;
+    for (int i = 0; i < this.alignBlobs.length; i++)
+        {
+        if (this.alignBlobs[i].boundingRectWidth > widestBlobWidth)
+            {
+            widestBlobWidth = this.alignBlobs[i].boundingRectWidth;
+            widestBlobIndex = i;
+            }
+        }
+    this.alignTarget = this.pickAlignTarget(snapshot);
+    this.rememberAlignYaw(snapshot);
+}
+
+/**
+ * Remembers the yaw to the align target in the picture, and which way the
+ * odometry says we were facing when the picture was taken, so
+ * getCompensatedAlignX() can tell where the target is now.
+ *
+ * @param snapshot
+ *            The picture, after alignTarget has been picked from it
+ */
+private void rememberAlignYaw (VisionWorker.Snapshot snapshot)
+{
+    this.alignCaptureYaw = Hardware.imageProcessor
+            .getYawAngleToTarget(this.alignTarget);
+    final DriveOdometry.Pose then = Hardware.odometry
+            .getPoseAt(snapshot.getCaptureTime());
+    // too old for the pose history: we can't tell how far we've turned
+    this.alignCaptureHeading = (then == null) ? Double.NaN
+            : then.getHeading();
+}
+
+/**
+ * While we're turning toward the target, picks up any picture that's come
+ * in since the one we're working from, as long as it has a target in it.
+ */
+private void checkForNewerAlignPicture ()
+{
+    final VisionWorker.Snapshot snapshot = Hardware.visionWorker
+            .getLatestResult();
+    if (snapshot.getFrameNumber() == this.alignFrame
+            || snapshot.getCaptureTime() < this.alignCaptureTime
+            || snapshot.getNumBlobs() == 0)
+        return;
+    this.useAlignPicture(snapshot);
+}
+
+/**
+ * Where the align target would be in a picture taken right now: where it
+ * was in the picture, moved over by however far the odometry says we've
+ * turned since the picture was taken. The picture is always a bit old by
+ * the time we see it, and we keep turning while it's processed, so without
+ * this we'd overshoot and have to stop and look again.
+ *
+ * @return
+ *         The target's relative X coordinate (-1.0 to 1.0, like
+ *         getRelativeXCoordinate()), or where it was in the picture if we
+ *         can't tell how far we've turned.
+ */
+private double getCompensatedAlignX ()
+{
+    if (this.alignTarget == null)
+        return 0.0;
+    if (Double.isNaN(this.alignCaptureHeading) == true)
+        return this.getRelativeXCoordinate(this.alignTarget.center_mass_x);
+    // turning right (clockwise) moves the target left in the picture
+    final double yawNow = this.alignCaptureYaw - Math.toRadians(
+            Hardware.odometry.getHeading() - this.alignCaptureHeading);
+    return this.getRelativeXCoordinate(
+            Hardware.imageProcessor.getXCoordinateAtYaw(yawNow));
+}
+
+/**
+ * @return
+ *         true if the odometry says we've turned more than a little since
+ *         the picture we're working from was taken.
+ */
+private boolean hasTurnedSinceAlignPicture ()
+{
+    return Double.isNaN(this.alignCaptureHeading) == false
+            && Math.abs(Hardware.odometry.getHeading()
+                    - this.alignCaptureHeading) > ALIGN_SETTLED_DEGREES;
+}
+
+/**
+ * Where to go once we've started turning toward the target. If we know how
+ * far we've turned since the picture, we keep checking where the target
+ * must be now while we turn (and pick up new pictures as they come), so we
+ * don't have to stop and wait for a picture after every little turn. If we
+ * don't, we wait for a new picture like we always did.
+ */
+private void afterAlignTurn ()
+{
+    if (Double.isNaN(this.alignCaptureHeading) == false)
+        {
+        currentState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
+        }
+    else
+        {
+        currentState = alignByCameraStates.TAKE_AND_PROCESS_IMAGE;
+        }
+    returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
+}
+
+/**
+ * Drops any camera alignment that's partway through (both
+ * alignByCameraStateMachine and alignByCamera), so the next call starts
+ * over, and stops the vision worker taking pictures. Call it when the robot
+ * is disabled, since nobody will finish or cancel the alignment then.
+ */
+public void stopAligningByCamera ()
+{
+    currentState = alignByCameraStates.BEGINNING_SETUP;
+    returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
+    firstTimeAlign = true;
+    needToRaiseCamera = false;
+    this.cameraTimer.stop();
+    this.cameraTimer.reset();
+    Hardware.visionWorker.setEnabled(false);
+}
+
 int widestBlobWidth = 0;
 
 int widestBlobIndex = 0;
@@ -1895,6 +2057,32 @@ alignByCameraStates currentState = alignByCameraStates.BEGINNING_SETUP;
 
 alignByCameraStates returnToState = alignByCameraStates.CHECK_X_AXIS_CORRECTNESS;
 
+// The blobs from the picture alignByCameraStateMachine is working from
+private ParticleReport[] alignBlobs = new ParticleReport[0];
+
+// The blob in that picture we're aligning on; see pickAlignTarget()
+private ParticleReport alignTarget = null;
+
+// That picture's frame number and when it was taken
+private int alignFrame = 0;
+
+private double alignCaptureTime = 0.0;
+
+// The yaw to alignTarget in that picture (radians), and the odometry's
+// heading when it was taken (degrees, NaN if we don't know)
+private double alignCaptureYaw = 0.0;
+
+private double alignCaptureHeading = Double.NaN;
+
+// Turned less than this since the picture, it's as good as one taken now
+private static final double ALIGN_SETTLED_DEGREES = 1.0;
+
+// The FPGA time we started waiting for a picture, or negative if we aren't
+private double imageRequestTime = -1.0;
+
+// The frame number of the last picture alignByCamera acted on
+private int lastAlignFrame = 0;
+
 public static enum alignByCameraReturn
     {
     // Returned when the vision processing algorithm sees no blobs.
@@ -2170,8 +2358,10 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
                     Hardware.MINIMUM_AXIS_CAMERA_BRIGHTNESS);
             // Woah, that's too dark! Someone turn on the ringlight!
             this.ringLightRelay.set(Value.kOn);
-            Hardware.rightRearEncoder.reset();
-            Hardware.leftRearEncoder.reset();
+            Hardware.odometry.resetEncoders();
+            // start processing pictures in the background
+            Hardware.visionWorker.setEnabled(true);
+            this.imageRequestTime = -1.0;
             firstTimeAlign = false;
             // if (Hardware.cameraSolenoid
             // .get() != DoubleSolenoid.Value.kReverse)
@@ -2184,33 +2374,40 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
         // the ringlight.
         if (this.cameraTimer.get() >= .25)
             {
-            // try to take a picture and save it in memory and on the
-            // "hard disk"
-            Hardware.imageProcessor.processImage();
-            // tell imageProcessor to use the image we just took to look
-            // for
-            // blobs
-            for (int i = 0; i < Hardware.imageProcessor
-                    .getParticleAnalysisReports().length; i++)
+            // the vision worker takes and processes the pictures in the
+            // background; only act on a picture we haven't looked at yet
+            // that was taken once the ringlight was on.
+            if (this.imageRequestTime < 0.0)
                 {
-                if (Hardware.imageProcessor
-                        .getParticleAnalysisReports().length > 0
-                        &&
-                        this.widestBlobWidth < Hardware.imageProcessor
-                                .getParticleAnalysisReports()[i].boundingRectWidth)
+                this.imageRequestTime = Timer.getFPGATimestamp();
+                }
+            final VisionWorker.Snapshot snapshot = Hardware.visionWorker
+                    .getResultSince(this.imageRequestTime);
+            if (snapshot == null
+                    || snapshot.getFrameNumber() == this.lastAlignFrame)
+                {
+                return alignByCameraReturn.WORKING;
+                }
+            this.lastAlignFrame = snapshot.getFrameNumber();
+            this.alignBlobs = snapshot.getReports();
+            // find the widest blob in the picture
+            this.widestBlobWidth = 0;
+            this.widestBlobIndex = 0;
+            for (int i = 0; i < this.alignBlobs.length; i++)
+                {
+                if (this.widestBlobWidth < this.alignBlobs[i].boundingRectWidth)
                     {
-                    this.widestBlobWidth = Hardware.imageProcessor
-                            .getParticleAnalysisReports()[i].boundingRectWidth;
+                    this.widestBlobWidth = this.alignBlobs[i].boundingRectWidth;
                     this.widestBlobIndex = i;
                     }
                 }
+            this.alignTarget = this.pickAlignTarget(snapshot);
             /*
              * Tell the programmers the absolute and relative x
              * coordinates
              * of the center of mass of the largest blob.
              */
-            if (Hardware.imageProcessor
-                    .getParticleAnalysisReports().length > 0)
+            if (this.alignBlobs.length > 0)
                 {
                 // System.out.println("CenterOfMass: " +
                 // Hardware.imageProcessor
@@ -2235,6 +2432,15 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
                 }
             else
                 {
+                // nothing to align to; set up for the next call and stop
+                // the worker taking pictures
+                firstTimeAlign = true;
+                needToRaiseCamera = false;
+                this.cameraTimer.stop();
+                this.cameraTimer.reset();
+                Hardware.visionWorker.setEnabled(false);
+                this.transmission.setGear(savedGear);
+                Hardware.transmission.controls(0.0, 0.0);
                 return alignByCameraReturn.NO_BLOBS_FOUND;
                 }
             // if the center of the largest blob is to the left of our
@@ -2242,7 +2448,7 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
             // if (Hardware.imageProcessor
             // .getParticleAnalysisReports().length > 0
             // && getRelativeXCoordinate(
-            // Hardware.imageProcessor.getParticleAnalysisReports()[widestBlobIndex].center_mass_x)
+            // this.alignBlobs[widestBlobIndex].center_mass_x)
             // <= ((-percentageDeadbandX
             // / 2)
             // + adjustedProportionalCenterX))
@@ -2252,17 +2458,14 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
                     Hardware.rightOperator.getRawButton(
                             11) == true) == false
                     &&
-                    Hardware.imageProcessor
-                            .getParticleAnalysisReports().length > 0
+                    this.alignBlobs.length > 0
                     &&
                     getRelativeXCoordinate(
-                            Hardware.imageProcessor
-                                    .getParticleAnalysisReports()[widestBlobIndex].center_mass_x) <= (((-percentageDeadBand// <=
+                            this.alignTarget.center_mass_x) <= (((-percentageDeadBand// <=
                                             / 2)
                                             + adjustedProportionalCenter))
                                             + ((getRelativeXCoordinate(
-                                                    Hardware.imageProcessor
-                                                            .getParticleAnalysisReports()[widestBlobIndex].center_mass_x)
+                                                    this.alignTarget.center_mass_x)
                                                     - adjustedProportionalCenter)
                                                     * (adjustDeadBandByPercentage)))
                 {
@@ -2283,17 +2486,14 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
                     Hardware.rightOperator.getRawButton(
                             11) == true) == false
                     &&
-                    Hardware.imageProcessor
-                            .getParticleAnalysisReports().length > 0
+                    this.alignBlobs.length > 0
                     &&
                     getRelativeXCoordinate(
-                            Hardware.imageProcessor
-                                    .getParticleAnalysisReports()[widestBlobIndex].center_mass_x) >= ((percentageDeadBand// >=
+                            this.alignTarget.center_mass_x) >= ((percentageDeadBand// >=
                                             / 2)
                                             + adjustedProportionalCenter
                                             + ((getRelativeXCoordinate(
-                                                    Hardware.imageProcessor
-                                                            .getParticleAnalysisReports()[widestBlobIndex].center_mass_x)
+                                                    this.alignTarget.center_mass_x)
                                                     - adjustedProportionalCenter)
                                                     * adjustDeadBandByPercentage)))
                 {
@@ -2311,19 +2511,16 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
             // deadzone
             else
                 {
-                if (Hardware.imageProcessor
-                        .getParticleAnalysisReports().length > 0)
+                if (this.alignBlobs.length > 0)
                     {
                     System.out
                             .println("CenterOfMass: " +
-                                    Hardware.imageProcessor
-                                            .getParticleAnalysisReports()[widestBlobIndex].center_mass_x);
+                                    this.alignTarget.center_mass_x);
                     System.out.println(
                             "Relative x center of Mass :"
                                     +
                                     (getRelativeCameraCoordinate(
-                                            Hardware.imageProcessor
-                                                    .getParticleAnalysisReports()[widestBlobIndex].center_mass_x,
+                                            this.alignTarget.center_mass_x,
                                             true)));
                     System.out.println(
                             "Relative Center range: ("
@@ -2362,6 +2559,7 @@ public alignByCameraReturn alignByCamera (double percentageDeadBand,
                 // delay
                 this.cameraTimer.stop();
                 this.cameraTimer.reset();
+                Hardware.visionWorker.setEnabled(false);
                 this.transmission.setGear(savedGear);
                 // Hardware.cameraSolenoid.set(savedCameraValue);//TODO
                 // hardware reference.
@@ -0,0 +1,339 @@
+package org.usfirst.frc.team339.Utils;
+
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Keeps track of where the robot is (its pose: x, y and heading) from how
+ * far each side of the drive has gone, so code doesn't have to reset the
+ * encoders and measure each move from 0.
+ *
+ * On its own Notifier (200 Hz), it reads both encoders and works out how far
+ * the middle of the robot went (the average of the two sides) and how much it
+ * turned (the difference, over the track width). It moves the pose along
+ * that distance at the heading halfway through the turn, which is close to
+ * the arc the robot really drove.
+ *
+ * The pose starts at 0, 0, 0 when it's started or resetPose() is called:
+ * x is inches forward (the way the robot was facing then), y is inches to
+ * the right, and the heading is degrees clockwise, not wrapped, so two turns
+ * right is 720.
+ *
+ * It also keeps the last second of poses, each with the time it was
+ * measured, so getPoseAt() can say where the robot was when something
+ * happened (like when a camera frame was taken) even though we only find out
+ * about it later.
+ *
+ * Anything that resets the encoders should use resetEncoders() here, so the
+ * pose doesn't jump. If they're reset behind its back, a step bigger than
+ * the robot can drive in that time is thrown out, so all that's lost is the
+ * little way the robot moved since the last update.
+ *
+ * The encoders have to count up, in inches, when the robot drives forward.
+ *
+ * @author Kilroy
+ *
+ */
+public class DriveOdometry
+{
+
+/**
+ * Where the robot was at some time. Never changed once it's made, so it's
+ * safe to pass between threads.
+ *
+ * @author Kilroy
+ *
+ */
+public static class Pose
+{
+private final double x;
+
+private final double y;
+
+private final double heading;
+
+private final double time;
+
+private Pose (double x, double y, double heading, double time)
+{
+    this.x = x;
+    this.y = y;
+    this.heading = heading;
+    this.time = time;
+}
+
+/**
+ * @return
+ *         Inches forward from where the pose was reset.
+ */
+public double getX ()
+{
+    return this.x;
+}
+
+/**
+ * @return
+ *         Inches to the right from where the pose was reset.
+ */
+public double getY ()
+{
+    return this.y;
+}
+
+/**
+ * @return
+ *         Degrees clockwise from where the pose was reset.
+ */
+public double getHeading ()
+{
+    return this.heading;
+}
+
+/**
+ * @return
+ *         The FPGA time, in seconds, the robot was here.
+ */
+public double getTime ()
+{
+    return this.time;
+}
+
+/**
+ * @param other
+ *            Another pose
+ * @return
+ *         How far it is from this one, in inches.
+ */
+public double distanceTo (Pose other)
+{
+    return Math.hypot(other.x - this.x, other.y - this.y);
+}
+}
+
+/**
+ * Creates the odometry. It doesn't run until start().
+ *
+ * @param leftEncoder
+ *            The left side's encoder, in inches
+ * @param rightEncoder
+ *            The right side's encoder, in inches
+ * @param trackWidthInches
+ *            How far apart the left and right wheels are
+ */
+public DriveOdometry (Encoder leftEncoder, Encoder rightEncoder,
+        double trackWidthInches)
+{
+    this.leftEncoder = leftEncoder;
+    this.rightEncoder = rightEncoder;
+    this.trackWidth = trackWidthInches;
+}
+
+/**
+ * Resets the pose to 0, 0, 0 and starts updating it. Set up the encoders
+ * (distance per pulse and direction) first.
+ */
+public synchronized void start ()
+{
+    this.resetPose();
+    this.notifier.startPeriodic(PERIOD);
+}
+
+/**
+ * Stops updating the pose.
+ */
+public synchronized void stop ()
+{
+    this.notifier.stop();
+}
+
+/**
+ * Says the robot is at 0, 0, facing 0, and forgets the pose history (it
+ * would be from a different starting point).
+ */
+public synchronized void resetPose ()
+{
+    this.lastLeft = this.leftEncoder.getDistance();
+    this.lastRight = this.rightEncoder.getDistance();
+    this.lastTime = Timer.getFPGATimestamp();
+    this.x = 0.0;
+    this.y = 0.0;
+    this.heading = 0.0;
+    this.historyCount = 0;
+    this.record(this.lastTime);
+}
+
+/**
+ * Resets both encoders to 0 without losing track of the pose. Use this
+ * instead of resetting them directly.
+ */
+public synchronized void resetEncoders ()
+{
+    // count what they've gone up to now, then start again from 0
+    this.update();
+    this.leftEncoder.reset();
+    this.rightEncoder.reset();
+    this.lastLeft = 0.0;
+    this.lastRight = 0.0;
+}
+
+/**
+ * @return
+ *         Where the robot is, as of the last update.
+ */
+public synchronized Pose getPose ()
+{
+    return new Pose(this.x, this.y, this.heading, this.lastTime);
+}
+
+/**
+ * @return
+ *         Degrees clockwise from where the pose was reset, as of the last
+ *         update.
+ */
+public synchronized double getHeading ()
+{
+    return this.heading;
+}
+
+/**
+ * Where the robot was at some time in the last second, worked out between
+ * the two updates either side of it.
+ *
+ * @param time
+ *            The FPGA time, in seconds
+ * @return
+ *         The pose then. If it's after the last update, the last pose. If
+ *         it's from before what we have (or before the pose was reset),
+ *         null.
+ */
+public synchronized Pose getPoseAt (double time)
+{
+    // newest first, so recent times (the usual ask) are found quickly
+    int newer = (this.historyNext - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+    if (time >= this.historyTime[newer])
+        return this.getPose();
+    for (int i = 1; i < this.historyCount; i++)
+        {
+        final int older = (newer - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+        if (time >= this.historyTime[older])
+            {
+            final double gap = this.historyTime[newer]
+                    - this.historyTime[older];
+            final double fraction = (gap > 0.0)
+                    ? (time - this.historyTime[older]) / gap : 1.0;
+            return new Pose(
+                    interpolate(this.historyX, older, newer, fraction),
+                    interpolate(this.historyY, older, newer, fraction),
+                    interpolate(this.historyHeading, older, newer,
+                            fraction),
+                    time);
+            }
+        newer = older;
+        }
+    return null;
+}
+
+/**
+ * One update; the Notifier calls this.
+ */
+private synchronized void update ()
+{
+    final double now = Timer.getFPGATimestamp();
+    final double left = this.leftEncoder.getDistance();
+    final double right = this.rightEncoder.getDistance();
+    final double leftStep = left - this.lastLeft;
+    final double rightStep = right - this.lastRight;
+    this.lastLeft = left;
+    this.lastRight = right;
+
+    // farther than we could have driven: somebody reset the encoders
+    final double maxStep = MAX_INCHES_PER_SECOND
+            * Math.max(now - this.lastTime, PERIOD);
+    this.lastTime = now;
+    if (Math.abs(leftStep) > maxStep || Math.abs(rightStep) > maxStep)
+        {
+        this.record(now);
+        return;
+        }
+
+    final double distance = (leftStep + rightStep) / 2.0;
+    final double turn = (leftStep - rightStep) / this.trackWidth;
+    final double midHeading = Math.toRadians(this.heading) + turn / 2.0;
+    this.x += distance * Math.cos(midHeading);
+    this.y += distance * Math.sin(midHeading);
+    this.heading += Math.toDegrees(turn);
+    this.record(now);
+}
+
+/**
+ * Adds the pose to the history, over the oldest one.
+ */
+private void record (double time)
+{
+    this.historyTime[this.historyNext] = time;
+    this.historyX[this.historyNext] = this.x;
+    this.historyY[this.historyNext] = this.y;
+    this.historyHeading[this.historyNext] = this.heading;
+    this.historyNext = (this.historyNext + 1) % HISTORY_SIZE;
+    if (this.historyCount < HISTORY_SIZE)
+        this.historyCount++;
+}
+
+private static double interpolate (double[] values, int older, int newer,
+        double fraction)
+{
+    return values[older] + fraction * (values[newer] - values[older]);
+}
+
+// 200 Hz
+private static final double PERIOD = 0.005;
+
+// a second of poses
+private static final int HISTORY_SIZE = 200;
+
+// a bit faster than the robot can really go
+private static final double MAX_INCHES_PER_SECOND = 240.0;
+
+private final Encoder leftEncoder;
+
+private final Encoder rightEncoder;
+
+private final double trackWidth;
+
+// the pose, in inches and degrees
+private double x = 0.0;
+
+private double y = 0.0;
+
+private double heading = 0.0;
+
+// the encoders and time at the last update
+private double lastLeft = 0.0;
+
+private double lastRight = 0.0;
+
+private double lastTime = 0.0;
+
+// the pose history, a ring: historyNext is where the next one goes
+private final double[] historyTime = new double[HISTORY_SIZE];
+
+private final double[] historyX = new double[HISTORY_SIZE];
+
+private final double[] historyY = new double[HISTORY_SIZE];
+
+private final double[] historyHeading = new double[HISTORY_SIZE];
+
+private int historyNext = 0;
+
+private int historyCount = 0;
+
+private final Notifier notifier = new Notifier(new Runnable()
+{
+@Override
+public void run ()
+{
+    DriveOdometry.this.update();
+}
+});
+}
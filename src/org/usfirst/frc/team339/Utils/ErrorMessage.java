@@ -1,9 +1,7 @@
 package org.usfirst.frc.team339.Utils;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
@@ -636,31 +634,28 @@ private String appendErrorMessage (String errorMessage)
 /** Overwrites the current log. */
 public void clearErrorlog ()
 {
-    try
-        {
-        final PrintWriter log = new PrintWriter(
-                new BufferedWriter(new FileWriter(
-                        errorlogLocation, false)));
-        log.print("\n");
-        log.close();
-        }
-    catch (final IOException e)
-        {
-        e.printStackTrace();
-        }
+    // done by the appender's thread, after anything already queued
+    LogAppender.forFile(errorlogLocation).clear();
 }
 
-/** deletes the error log from the file system. */
+/**
+ * Waits for every error log's queued messages to be written to the RoboRIO.
+ * Call this from disabledInit() so nothing from the match is lost when the
+ * robot is turned off.
+ */
+public static void flushAll ()
+{
+    LogAppender.flushAll();
+}
+
+/**
+ * Gets rid of everything in the error log. The appender keeps the file open,
+ * so it's emptied by the appender's thread (like clearErrorlog()) instead of
+ * being deleted out from under it.
+ */
 public void deleteErrorLog ()
 {
-    try
-        {
-        Runtime.getRuntime().exec("/bin/rm -f " + errorlogLocation);
-        }
-    catch (final IOException e)
-        {
-        e.printStackTrace();
-        }
+    LogAppender.forFile(errorlogLocation).clear();
 }
 
 /**
@@ -918,19 +913,9 @@ private void PrintsToRIO (String errorMessage)
     // final String modifiedErrorMessage =
     // appendedErrorMessage.replace('\n', ' '); // removes all
     // newlines.
-    try
-        {
-        final PrintWriter log = new PrintWriter(
-                new BufferedWriter(new FileWriter(
-                        errorlogLocation, true)));
-        log.print(errorMessage + "\n");
-        log.close();
-        }
-    catch (final IOException e)
-        {
-        e.printStackTrace();
-        System.out.println("More errors with your error?");
-        }
+    // Just queues it; the appender's thread does the actual writing, so
+    // this doesn't touch the file system
+    LogAppender.forFile(errorlogLocation).append(errorMessage);
 
 }
 
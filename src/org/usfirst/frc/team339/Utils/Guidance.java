@@ -1,11 +1,12 @@
 package org.usfirst.frc.team339.Utils;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-
 /**
  * 
  * Used to light up arrows on the Smart Dashboard.
  * 
+ * Everything goes through the DashboardPublisher, so the values are only
+ * sent when they change.
+ * 
  * @author Michael Andrzej Klaczynski
  *
  */
@@ -29,11 +30,11 @@ public static void updateBallStatus (boolean robotHasBall)
 {
     if (robotHasBall == true)
         {
-        SmartDashboard.putBoolean("Has Ball", true);
+        DashboardPublisher.getInstance().putBoolean("Has Ball", true);
         }
     else
         {
-        SmartDashboard.putBoolean("Has Ball", false);
+        DashboardPublisher.getInstance().putBoolean("Has Ball", false);
         }
 }
 
@@ -43,35 +44,45 @@ public static void updateBallStatus (boolean robotHasBall)
  */
 public void update ()
 {
-    switch (direction)
+    final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+    // all four go out together, so the drivers never see half a change
+    dashboard.beginBatch();
+    try
+        {
+        switch (direction)
+            {
+            case left:
+                dashboard.putBoolean("Left", true);
+                dashboard.putBoolean("Right", false);
+                dashboard.putBoolean("Straight", false);
+                dashboard.putBoolean("Stop", false);
+                break;
+
+            case right:
+                dashboard.putBoolean("Right", true);
+                dashboard.putBoolean("Left", false);
+                dashboard.putBoolean("Straight", false);
+                dashboard.putBoolean("Stop", false);
+                break;
+
+            case neutral:
+                dashboard.putBoolean("Right", false);
+                dashboard.putBoolean("Left", false);
+                dashboard.putBoolean("Straight", false);
+                dashboard.putBoolean("Stop", false);
+                break;
+
+            case linedUp:
+                dashboard.putBoolean("Straight", false);
+                dashboard.putBoolean("Right", false);
+                dashboard.putBoolean("Left", false);
+                dashboard.putBoolean("Stop", false);
+                break;
+            }
+        }
+    finally
         {
-        case left:
-            SmartDashboard.putBoolean("Left", true);
-            SmartDashboard.putBoolean("Right", false);
-            SmartDashboard.putBoolean("Straight", false);
-            SmartDashboard.putBoolean("Stop", false);
-            break;
-
-        case right:
-            SmartDashboard.putBoolean("Right", true);
-            SmartDashboard.putBoolean("Left", false);
-            SmartDashboard.putBoolean("Straight", false);
-            SmartDashboard.putBoolean("Stop", false);
-            break;
-
-        case neutral:
-            SmartDashboard.putBoolean("Right", false);
-            SmartDashboard.putBoolean("Left", false);
-            SmartDashboard.putBoolean("Straight", false);
-            SmartDashboard.putBoolean("Stop", false);
-            break;
-
-        case linedUp:
-            SmartDashboard.putBoolean("Straight", false);
-            SmartDashboard.putBoolean("Right", false);
-            SmartDashboard.putBoolean("Left", false);
-            SmartDashboard.putBoolean("Stop", false);
-            break;
+        dashboard.endBatch();
         }
 }
 
@@ -0,0 +1,230 @@
+package org.usfirst.frc.team339.Utils;
+
+/**
+ * Throws out the crazy values from a noisy sensor (like the ultrasonic) one
+ * sample at a time.
+ *
+ * It keeps the last <window> samples, sorted. Each new sample is compared to
+ * the median of the window: if it's further from the median than both
+ * <sigmas> standard deviations (estimated from the median absolute deviation,
+ * which one bad sample can't throw off) and the gate (how far the reading
+ * could really have moved since the last sample), it's an outlier and the
+ * median is used instead. Otherwise the sample is used as it is, so we don't
+ * lag behind when things are actually moving.
+ *
+ * If something really did jump (a robot drove in front of us), the median
+ * catches up once more than half the window agrees with it.
+ *
+ * Adding a sample takes the same amount of work every time, and it depends
+ * only on the window size (which should be small and odd, like 5), not on
+ * how many samples we've seen. Nothing is allocated after it's made.
+ *
+ * Not thread safe; if samples are added on one thread and reset() is called
+ * on another, synchronize on the filter.
+ *
+ * @author Kilroy
+ *
+ */
+public class HampelFilter
+{
+
+/**
+ * Creates a filter.
+ *
+ * @param window
+ *            How many samples to keep (at least 3; odd is best)
+ * @param sigmas
+ *            How many standard deviations from the median a sample has to be
+ *            to be an outlier (3 is usual)
+ * @param gate
+ *            The smallest change from the median that can be an outlier, in
+ *            the sensor's units. The window is often all the same value, so
+ *            without this anything different would be thrown out.
+ */
+public HampelFilter (int window, double sigmas, double gate)
+{
+    this.sorted = new double[Math.max(3, window)];
+    this.history = new double[this.sorted.length];
+    this.deviations = new double[this.sorted.length];
+    this.sigmas = sigmas;
+    this.setGate(gate);
+}
+
+/**
+ * @param gate
+ *            The smallest change from the median that can be an outlier, in
+ *            the sensor's units.
+ */
+public void setGate (double gate)
+{
+    this.gate = Math.abs(gate);
+}
+
+/**
+ * @return
+ *         The smallest change from the median that can be an outlier.
+ */
+public double getGate ()
+{
+    return this.gate;
+}
+
+/**
+ * Adds a sample, and works out the filtered value.
+ *
+ * @param sample
+ *            The newest value from the sensor
+ * @return
+ *         The filtered value: the sample, or the median if the sample was an
+ *         outlier.
+ */
+public double add (double sample)
+{
+    // take the oldest sample out of the sorted window, put the new one in
+    if (this.count == this.history.length)
+        this.remove(this.history[this.next]);
+    else
+        this.count++;
+    this.history[this.next] = sample;
+    this.next = (this.next + 1) % this.history.length;
+    this.insert(sample);
+
+    final double median = this.median();
+    final double threshold = Math.max(this.gate,
+            this.sigmas * MAD_TO_SIGMA * this.medianAbsoluteDeviation(median));
+    this.outlier = Math.abs(sample - median) > threshold;
+    if (this.outlier == true)
+        this.value = median;
+    else
+        this.value = sample;
+    return this.value;
+}
+
+/**
+ * @return
+ *         The last filtered value, or NaN if there haven't been any samples
+ *         since the last reset().
+ */
+public double get ()
+{
+    if (this.count == 0)
+        return Double.NaN;
+    return this.value;
+}
+
+/**
+ * @return
+ *         true if the last sample was thrown out.
+ */
+public boolean wasOutlier ()
+{
+    return this.outlier;
+}
+
+/**
+ * Forgets all the samples, for when the sensor has moved or we're starting
+ * over.
+ */
+public void reset ()
+{
+    this.count = 0;
+    this.next = 0;
+    this.outlier = false;
+}
+
+/**
+ * Takes one copy of a value out of the sorted part of the window.
+ */
+private void remove (double old)
+{
+    int i = 0;
+    while (i < this.count - 1 && this.sorted[i] != old)
+        i++;
+    System.arraycopy(this.sorted, i + 1, this.sorted, i,
+            this.count - 1 - i);
+}
+
+/**
+ * Puts a value into the sorted window, which has count - 1 values in it.
+ */
+private void insert (double sample)
+{
+    int i = this.count - 1;
+    while (i > 0 && this.sorted[i - 1] > sample)
+        {
+        this.sorted[i] = this.sorted[i - 1];
+        i--;
+        }
+    this.sorted[i] = sample;
+}
+
+private double median ()
+{
+    final int middle = this.count / 2;
+    if (this.count % 2 == 1)
+        return this.sorted[middle];
+    return (this.sorted[middle - 1] + this.sorted[middle]) / 2.0;
+}
+
+/**
+ * The median of how far each sample is from the median. The window is
+ * sorted, so the distances are already in order on each side of the median;
+ * merging the two sides from the middle outwards gives them sorted without
+ * sorting them.
+ */
+private double medianAbsoluteDeviation (double median)
+{
+    int below = (this.count - 1) / 2;
+    int above = this.count / 2;
+    // skip the middle value(s); merge outwards from there
+    if (this.count % 2 == 1)
+        {
+        this.deviations[0] = 0.0;
+        below--;
+        above++;
+        }
+    for (int i = (this.count % 2 == 1) ? 1 : 0; i < this.count; i++)
+        {
+        if (above >= this.count || (below >= 0
+                && median - this.sorted[below] <= this.sorted[above] - median))
+            {
+            this.deviations[i] = median - this.sorted[below];
+            below--;
+            }
+        else
+            {
+            this.deviations[i] = this.sorted[above] - median;
+            above++;
+            }
+        }
+    final int middle = this.count / 2;
+    if (this.count % 2 == 1)
+        return this.deviations[middle];
+    return (this.deviations[middle - 1] + this.deviations[middle]) / 2.0;
+}
+
+// For normally distributed noise, the standard deviation is about 1.4826
+// times the median absolute deviation
+private static final double MAD_TO_SIGMA = 1.4826;
+
+private final double sigmas;
+
+private double gate;
+
+// the samples in the order they came in (a ring)
+private final double[] history;
+
+// the same samples, smallest first
+private final double[] sorted;
+
+// scratch space for the median absolute deviation
+private final double[] deviations;
+
+private int count = 0;
+
+private int next = 0;
+
+private double value = 0.0;
+
+private boolean outlier = false;
+}
@@ -0,0 +1,157 @@
+package org.usfirst.frc.team339.Utils;
+
+/**
+ * A histogram of times, in microseconds, that can give percentiles (median,
+ * 99th percentile, ...) without keeping every sample.
+ *
+ * It works like HdrHistogram: times under 64 us each get their own bucket,
+ * and above that every doubling (64-127, 128-255, ...) is split into 32
+ * buckets, so every bucket is within about 3% of the times in it. That covers
+ * 1 us to about 17 minutes in under a thousand buckets, and adding a sample
+ * is a couple of shifts and an array increment.
+ *
+ * @author Kilroy
+ *
+ */
+public class LatencyHistogram
+{
+
+/**
+ * Adds a sample.
+ *
+ * @param micros
+ *            The time, in microseconds. Negative times count as 0, times too
+ *            big for the histogram count as the biggest it can hold.
+ */
+public void record (long micros)
+{
+    final long value = Math.max(0, Math.min(micros, MAX_VALUE));
+    this.counts[bucketOf(value)]++;
+    this.totalCount++;
+    this.total += value;
+    if (value > this.max)
+        this.max = value;
+}
+
+/**
+ * Empties the histogram.
+ */
+public void reset ()
+{
+    for (int i = 0; i < this.counts.length; i++)
+        {
+        this.counts[i] = 0;
+        }
+    this.totalCount = 0;
+    this.total = 0;
+    this.max = 0;
+}
+
+/**
+ * @return
+ *         How many samples have been recorded.
+ */
+public long getCount ()
+{
+    return this.totalCount;
+}
+
+/**
+ * @return
+ *         The biggest sample, in microseconds.
+ */
+public long getMax ()
+{
+    return this.max;
+}
+
+/**
+ * @return
+ *         The average of the samples, in microseconds, or 0 if there aren't
+ *         any.
+ */
+public double getMean ()
+{
+    if (this.totalCount == 0)
+        return 0.0;
+    return (double) this.total / this.totalCount;
+}
+
+/**
+ * Gets a percentile of the samples.
+ *
+ * @param percentile
+ *            The percentile, 0 to 100 (50 is the median)
+ * @return
+ *         The time, in microseconds, that <percentile> percent of the
+ *         samples are at or under (to within a bucket), or 0 if there are no
+ *         samples.
+ */
+public long getPercentile (double percentile)
+{
+    if (this.totalCount == 0)
+        return 0;
+    final long target = Math.max(1, (long) Math
+            .ceil(this.totalCount * Math.min(100.0, percentile) / 100.0));
+    long seen = 0;
+    for (int i = 0; i < this.counts.length; i++)
+        {
+        seen += this.counts[i];
+        if (seen >= target)
+            // the top of the bucket, but never more than the real max
+            return Math.min(highestValueIn(i), this.max);
+        }
+    return this.max;
+}
+
+/**
+ * @param value
+ *            A time in microseconds, 0 to MAX_VALUE
+ * @return
+ *         The bucket it goes in
+ */
+private static int bucketOf (long value)
+{
+    if (value < LINEAR_BUCKETS)
+        return (int) value;
+    // which doubling it's in, and which 32nd of that doubling
+    final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+    final int shift = magnitude - SUB_BUCKET_BITS;
+    return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+            + (int) (value >> shift) - SUB_BUCKETS;
+}
+
+/**
+ * @param bucket
+ *            A bucket number
+ * @return
+ *         The largest time that goes in that bucket
+ */
+private static long highestValueIn (int bucket)
+{
+    if (bucket < LINEAR_BUCKETS)
+        return bucket;
+    final int shift = (bucket / SUB_BUCKETS) - 1;
+    final long lowest = (long) ((bucket % SUB_BUCKETS) + SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+}
+
+// 32 buckets per doubling
+private static final int SUB_BUCKET_BITS = 5;
+
+private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+// everything under this gets its own bucket
+private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+
+// about 17 minutes
+private static final long MAX_VALUE = (1L << 30) - 1;
+
+private final long[] counts = new long[bucketOf(MAX_VALUE) + 1];
+
+private long totalCount = 0;
+
+private long total = 0;
+
+private long max = 0;
+}
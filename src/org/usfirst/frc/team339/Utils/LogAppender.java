@@ -0,0 +1,443 @@
+package org.usfirst.frc.team339.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes lines to a log file on its own thread, so whoever is logging (usually
+ * the robot loop, through ErrorMessage) only pays for putting a String on a
+ * queue.
+ *
+ * Any thread can append(); the queue is lock free. One writer thread per file
+ * keeps the file open, wakes up every so often, and writes everything that
+ * piled up in one go. When the file gets bigger than the size limit it is
+ * rotated: errorlog.txt becomes errorlog.txt.1, .1 becomes .2, and so on,
+ * and the oldest one is deleted.
+ *
+ * If more than <capacity> lines are waiting (something is logging every loop
+ * and the flash can't keep up), new lines are dropped rather than making the
+ * caller wait or eating all the memory, and a note saying how many were
+ * dropped goes in the log.
+ *
+ * Call flushAll() from disabledInit() so everything from the match is on the
+ * flash before someone turns the robot off.
+ *
+ * @author Kilroy
+ *
+ */
+public class LogAppender implements Runnable
+{
+
+/**
+ * Gets the appender for a log file, making it (and starting its thread) the
+ * first time. Everything logging to the same file shares one appender.
+ *
+ * @param logLocation
+ *            The full path of the log file
+ * @return
+ *         The appender for that file
+ */
+public static LogAppender forFile (String logLocation)
+{
+    synchronized (appenders)
+        {
+        LogAppender appender = appenders.get(logLocation);
+        if (appender == null)
+            {
+            appender = new LogAppender(logLocation);
+            appenders.put(logLocation, appender);
+            }
+        return appender;
+        }
+}
+
+/**
+ * Flushes every log file, waiting (up to a limit) for them to be written.
+ */
+public static void flushAll ()
+{
+    LogAppender[] all;
+    synchronized (appenders)
+        {
+        all = appenders.values().toArray(new LogAppender[appenders.size()]);
+        }
+    for (int i = 0; i < all.length; i++)
+        {
+        all[i].flush();
+        }
+}
+
+private LogAppender (String logLocation)
+{
+    this.logFile = Paths.get(logLocation);
+    this.thread = new Thread(this, "LogAppender " + logLocation);
+    this.thread.setDaemon(true);
+    this.thread.setPriority(Thread.MIN_PRIORITY);
+    this.thread.start();
+}
+
+/**
+ * Queues a line to be written. Never blocks. A newline is added to the end.
+ *
+ * @param line
+ *            The line to write
+ * @return
+ *         true if it was queued, false if the queue was full and it was
+ *         dropped.
+ */
+public boolean append (String line)
+{
+    return this.offer(line);
+}
+
+/**
+ * Queues emptying the log file. Lines appended before this are gone, lines
+ * appended after it are kept.
+ */
+public void clear ()
+{
+    // always let this through, even if the queue is full
+    this.pending.incrementAndGet();
+    this.queue.offer(CLEAR);
+}
+
+/**
+ * Waits until everything appended before this call is written and on the
+ * flash, or until the flush timeout runs out.
+ *
+ * @return
+ *         true if everything was written in time.
+ */
+public boolean flush ()
+{
+    final long target = this.enqueued.get();
+    this.flushRequested = true;
+    LockSupport.unpark(this.thread);
+    final long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MS);
+    synchronized (this.flushLock)
+        {
+        while (this.written < target)
+            {
+            // ask again, in case the writer was already partway through an
+            // unforced batch when we asked the first time
+            this.flushRequested = true;
+            LockSupport.unpark(this.thread);
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            try
+                {
+                this.flushLock.wait(
+                        Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                }
+            catch (final InterruptedException e)
+                {
+                Thread.currentThread().interrupt();
+                return false;
+                }
+            }
+        }
+    return true;
+}
+
+/**
+ * Sets the most lines that can be waiting to be written before new ones are
+ * dropped.
+ *
+ * @param capacity
+ *            The queue limit, in lines
+ */
+public void setCapacity (int capacity)
+{
+    this.capacity = Math.max(1, capacity);
+}
+
+/**
+ * Sets when the log file gets rotated.
+ *
+ * @param maxBytes
+ *            How big the log can get before it's rotated
+ * @param maxOldFiles
+ *            How many old logs (.1, .2, ...) to keep
+ */
+public void setRotation (long maxBytes, int maxOldFiles)
+{
+    this.maxBytes = maxBytes;
+    this.maxOldFiles = Math.max(0, maxOldFiles);
+}
+
+/**
+ * @return
+ *         How many lines have been dropped because the queue was full.
+ */
+public int getDroppedCount ()
+{
+    return this.dropped.get();
+}
+
+/**
+ * The writer loop. Don't call this directly; the thread is started when the
+ * appender is made.
+ */
+@Override
+public void run ()
+{
+    while (true)
+        {
+        if (this.flushRequested == false)
+            LockSupport.parkNanos(this,
+                    TimeUnit.MILLISECONDS.toNanos(BATCH_PERIOD_MS));
+        final boolean forceToDisk = this.flushRequested;
+        this.flushRequested = false;
+        try
+            {
+            this.drain(forceToDisk);
+            }
+        catch (final IOException e)
+            {
+            // Drop what we couldn't write and try to reopen next time
+            System.out.println("LogAppender: can't write "
+                    + this.logFile + ": " + e.getMessage());
+            this.closeChannel();
+            this.discardQueue();
+            }
+        synchronized (this.flushLock)
+            {
+            this.flushLock.notifyAll();
+            }
+        }
+}
+
+private boolean offer (String line)
+{
+    // Only count up if there's room; the writer counts down as it takes lines
+    // off, so this is the only limit we need.
+    if (this.pending.incrementAndGet() > this.capacity)
+        {
+        this.pending.decrementAndGet();
+        this.dropped.incrementAndGet();
+        return false;
+        }
+    this.enqueued.incrementAndGet();
+    this.queue.offer(line);
+    return true;
+}
+
+/**
+ * Writes everything in the queue in as few writes as we can.
+ */
+private void drain (boolean forceToDisk) throws IOException
+{
+    String line;
+    boolean wroteAnything = false;
+    while ((line = this.queue.poll()) != null)
+        {
+        this.pending.decrementAndGet();
+        if (line == CLEAR)
+            {
+            this.writeBuffer.clear();
+            this.openChannel();
+            this.channel.truncate(0);
+            continue;
+            }
+        this.put(line);
+        this.taken++;
+        wroteAnything = true;
+        }
+    final int droppedNow = this.dropped.get();
+    if (droppedNow != this.droppedReported)
+        {
+        this.put("LogAppender: dropped "
+                + (droppedNow - this.droppedReported)
+                + " messages, the log couldn't keep up");
+        this.droppedReported = droppedNow;
+        wroteAnything = true;
+        }
+    if (wroteAnything == true)
+        this.writeOut();
+    if (forceToDisk == true)
+        {
+        if (this.channel != null)
+            this.channel.force(false);
+        // only now is everything we took off the queue really on the flash
+        this.written = this.taken;
+        }
+}
+
+/**
+ * Adds a line to the write buffer, writing the buffer out first if it's full.
+ */
+private void put (String line) throws IOException
+{
+    final byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > this.writeBuffer.remaining())
+        {
+        this.writeOut();
+        if (bytes.length > this.writeBuffer.capacity())
+            {
+            // too big for the buffer; write it straight out
+            this.write(ByteBuffer.wrap(bytes));
+            return;
+            }
+        }
+    this.writeBuffer.put(bytes);
+}
+
+private void writeOut () throws IOException
+{
+    this.writeBuffer.flip();
+    this.write(this.writeBuffer);
+    this.writeBuffer.clear();
+}
+
+private void write (ByteBuffer data) throws IOException
+{
+    if (data.hasRemaining() == false)
+        return;
+    this.openChannel();
+    if (this.channel.size() + data.remaining() > this.maxBytes)
+        {
+        this.rotate();
+        this.openChannel();
+        }
+    while (data.hasRemaining() == true)
+        {
+        this.channel.write(data);
+        }
+}
+
+/**
+ * Moves errorlog.txt to errorlog.txt.1 (and .1 to .2 and so on), so the next
+ * write starts a new file.
+ */
+private void rotate () throws IOException
+{
+    this.closeChannel();
+    final String name = this.logFile.toString();
+    if (this.maxOldFiles == 0)
+        {
+        Files.deleteIfExists(this.logFile);
+        return;
+        }
+    Files.deleteIfExists(Paths.get(name + "." + this.maxOldFiles));
+    for (int i = this.maxOldFiles - 1; i >= 1; i--)
+        {
+        final Path older = Paths.get(name + "." + i);
+        if (Files.exists(older) == true)
+            Files.move(older, Paths.get(name + "." + (i + 1)),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    Files.move(this.logFile, Paths.get(name + ".1"),
+            StandardCopyOption.REPLACE_EXISTING);
+}
+
+private void openChannel () throws IOException
+{
+    if (this.channel != null)
+        return;
+    final Path directory = this.logFile.getParent();
+    if (directory != null)
+        Files.createDirectories(directory);
+    this.channel = FileChannel.open(this.logFile,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+}
+
+private void closeChannel ()
+{
+    if (this.channel == null)
+        return;
+    try
+        {
+        this.channel.close();
+        }
+    catch (final IOException e)
+        {
+        // nothing else we can do with it
+        }
+    this.channel = null;
+}
+
+private void discardQueue ()
+{
+    this.writeBuffer.clear();
+    while (this.queue.poll() != null)
+        {
+        this.pending.decrementAndGet();
+        this.taken++;
+        }
+    // they're never going to be written, so don't make flush() wait on them
+    this.written = this.taken;
+}
+
+// How often the writer thread wakes up to write what's piled up
+private static final long BATCH_PERIOD_MS = 250;
+
+// The longest flush() will wait
+private static final long FLUSH_TIMEOUT_MS = 500;
+
+private static final int DEFAULT_CAPACITY = 1024;
+
+private static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+private static final int DEFAULT_MAX_OLD_FILES = 3;
+
+// Put in the queue by clear(); compared with ==, so it has to be its own
+// String object
+private static final String CLEAR = new String("CLEAR");
+
+private static final HashMap<String, LogAppender> appenders = new HashMap<String, LogAppender>();
+
+private final Path logFile;
+
+private final Thread thread;
+
+private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+
+// lines in the queue (plus clears)
+private final AtomicInteger pending = new AtomicInteger(0);
+
+// lines that have ever been queued, for flush()
+private final AtomicLong enqueued = new AtomicLong(0);
+
+private final AtomicInteger dropped = new AtomicInteger(0);
+
+private final Object flushLock = new Object();
+
+private volatile boolean flushRequested = false;
+
+private volatile int capacity = DEFAULT_CAPACITY;
+
+private volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+private volatile int maxOldFiles = DEFAULT_MAX_OLD_FILES;
+
+// lines that are written and forced to the flash (or thrown away); only the
+// writer thread changes it, flush() waits on it
+private volatile long written = 0;
+
+// Everything below is only touched by the writer thread
+
+// lines the writer has taken off the queue
+private long taken = 0;
+
+private int droppedReported = 0;
+
+private FileChannel channel = null;
+
+private final ByteBuffer writeBuffer = ByteBuffer.allocate(8 * 1024);
+}
@@ -0,0 +1,284 @@
+package org.usfirst.frc.team339.Utils;
+
+import org.usfirst.frc.team339.Utils.ErrorMessage.PrintsTo;
+
+/**
+ * Times every robot loop, and the parts of it we care about, so we know how
+ * close we are to running out of time before the motor safeties find out for
+ * us.
+ *
+ * Robot calls startLoop() and endLoop() around each periodic call; the code in
+ * between wraps the parts that might be slow with startSection() and
+ * endSection(). Every loop the total time, each section's time and the time
+ * since the last loop started (to see jitter) go into LatencyHistograms.
+ *
+ * If a loop takes longer than the budget, a line saying how long each section
+ * took is put in the error log. Once a second the median, 99th percentile and
+ * max of everything are put on the SmartDashboard.
+ *
+ * Everything here is only called from the robot loop, so none of it is thread
+ * safe.
+ *
+ * @author Kilroy
+ *
+ */
+public class LoopProfiler
+{
+
+/**
+ * The parts of the loop we time separately.
+ */
+public static enum Section
+    {
+    VISION, DRIVE, ARM, PRINTING, AUTO_STATE_MACHINE
+    }
+
+/**
+ * Creates a loop profiler with the normal 20 ms loop budget.
+ *
+ * @param log
+ *            Where to log overruns
+ */
+public LoopProfiler (ErrorMessage log)
+{
+    this(log, DEFAULT_LOOP_BUDGET_SECONDS);
+}
+
+/**
+ * Creates a loop profiler.
+ *
+ * @param log
+ *            Where to log overruns
+ * @param loopBudgetSeconds
+ *            How long, in seconds, a loop can take before it's an overrun
+ */
+public LoopProfiler (ErrorMessage log, double loopBudgetSeconds)
+{
+    this.log = log;
+    this.setLoopBudget(loopBudgetSeconds);
+    for (int i = 0; i < NUM_SECTIONS; i++)
+        {
+        this.sectionHistograms[i] = new LatencyHistogram();
+        }
+}
+
+/**
+ * Sets how long a loop can take before it's an overrun.
+ *
+ * @param loopBudgetSeconds
+ *            The budget, in seconds
+ */
+public void setLoopBudget (double loopBudgetSeconds)
+{
+    this.loopBudgetNanos = (long) (loopBudgetSeconds * 1.0e9);
+}
+
+/**
+ * Call at the very beginning of each periodic method.
+ */
+public void startLoop ()
+{
+    final long now = System.nanoTime();
+    if (this.lastLoopStart != 0)
+        this.periodHistogram.record((now - this.lastLoopStart) / 1000);
+    this.lastLoopStart = now;
+    for (int i = 0; i < NUM_SECTIONS; i++)
+        {
+        this.sectionNanos[i] = 0;
+        this.sectionRan[i] = false;
+        }
+}
+
+/**
+ * Starts timing a section of the loop. A section can be started and ended
+ * more than once in a loop; the times are added up.
+ *
+ * @param section
+ *            The section that's starting
+ */
+public void startSection (Section section)
+{
+    this.sectionStart[section.ordinal()] = System.nanoTime();
+}
+
+/**
+ * Stops timing a section of the loop.
+ *
+ * @param section
+ *            The section that's done
+ */
+public void endSection (Section section)
+{
+    final int i = section.ordinal();
+    this.sectionNanos[i] += System.nanoTime() - this.sectionStart[i];
+    this.sectionRan[i] = true;
+}
+
+/**
+ * Call at the very end of each periodic method.
+ */
+public void endLoop ()
+{
+    final long now = System.nanoTime();
+    final long loopNanos = now - this.lastLoopStart;
+    this.loopHistogram.record(loopNanos / 1000);
+    for (int i = 0; i < NUM_SECTIONS; i++)
+        {
+        if (this.sectionRan[i] == true)
+            this.sectionHistograms[i].record(this.sectionNanos[i] / 1000);
+        }
+    if (loopNanos > this.loopBudgetNanos)
+        {
+        this.overruns++;
+        this.logOverrun(loopNanos);
+        }
+    if (now - this.lastPublish >= PUBLISH_PERIOD_NANOS)
+        {
+        this.lastPublish = now;
+        this.publish();
+        }
+}
+
+/**
+ * Forgets everything recorded so far, for example at the start of a match.
+ */
+public void reset ()
+{
+    this.loopHistogram.reset();
+    this.periodHistogram.reset();
+    for (int i = 0; i < NUM_SECTIONS; i++)
+        {
+        this.sectionHistograms[i].reset();
+        }
+    this.overruns = 0;
+    // the time since the last loop in the old mode doesn't mean anything
+    this.lastLoopStart = 0;
+}
+
+/**
+ * @return
+ *         The histogram of how long whole loops took, in microseconds.
+ */
+public LatencyHistogram getLoopHistogram ()
+{
+    return this.loopHistogram;
+}
+
+/**
+ * @return
+ *         The histogram of the time from the start of one loop to the start of
+ *         the next, in microseconds.
+ */
+public LatencyHistogram getPeriodHistogram ()
+{
+    return this.periodHistogram;
+}
+
+/**
+ * @param section
+ *            A section of the loop
+ * @return
+ *         The histogram of how long that section took, in microseconds.
+ */
+public LatencyHistogram getSectionHistogram (Section section)
+{
+    return this.sectionHistograms[section.ordinal()];
+}
+
+/**
+ * @return
+ *         How many loops went over budget since the last reset().
+ */
+public int getOverrunCount ()
+{
+    return this.overruns;
+}
+
+private void logOverrun (long loopNanos)
+{
+    // Only when something's already gone wrong, so building a String is ok
+    final StringBuilder message = new StringBuilder("Loop overrun: ");
+    message.append(loopNanos / 1000).append(" us (budget ")
+            .append(this.loopBudgetNanos / 1000).append(" us)");
+    for (int i = 0; i < NUM_SECTIONS; i++)
+        {
+        if (this.sectionRan[i] == true)
+            message.append(", ").append(SECTIONS[i].name()).append(' ')
+                    .append(this.sectionNanos[i] / 1000).append(" us");
+        }
+    this.log.printError(message.toString(), PrintsTo.roboRIO);
+}
+
+private void publish ()
+{
+    publish("Loop", this.loopHistogram);
+    publish("Loop period", this.periodHistogram);
+    final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+    // how far apart the slow and fast loop periods are
+    dashboard.putNumber("Loop jitter ms",
+            (this.periodHistogram.getPercentile(99)
+                    - this.periodHistogram.getPercentile(1)) / 1000.0);
+    for (int i = 0; i < NUM_SECTIONS; i++)
+        {
+        publish(SECTION_LABELS[i], this.sectionHistograms[i]);
+        }
+    dashboard.putNumber("Loop overruns", this.overruns);
+}
+
+/**
+ * Puts a histogram's median, 99th percentile and max on the SmartDashboard,
+ * in milliseconds.
+ */
+private static void publish (String label, LatencyHistogram histogram)
+{
+    final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+    dashboard.putNumber(label + " p50 ms",
+            histogram.getPercentile(50) / 1000.0);
+    dashboard.putNumber(label + " p99 ms",
+            histogram.getPercentile(99) / 1000.0);
+    dashboard.putNumber(label + " max ms",
+            histogram.getMax() / 1000.0);
+}
+
+// Iterative robot loops are every 20 ms
+private static final double DEFAULT_LOOP_BUDGET_SECONDS = .020;
+
+private static final long PUBLISH_PERIOD_NANOS = 1000000000L;
+
+private static final Section[] SECTIONS = Section.values();
+
+private static final int NUM_SECTIONS = SECTIONS.length;
+
+// SmartDashboard names for the sections, made once
+private static final String[] SECTION_LABELS = new String[NUM_SECTIONS];
+static
+    {
+    for (int i = 0; i < NUM_SECTIONS; i++)
+        {
+        SECTION_LABELS[i] = "Loop " + SECTIONS[i].name().toLowerCase();
+        }
+    }
+
+private final ErrorMessage log;
+
+private long loopBudgetNanos;
+
+private final LatencyHistogram loopHistogram = new LatencyHistogram();
+
+private final LatencyHistogram periodHistogram = new LatencyHistogram();
+
+private final LatencyHistogram[] sectionHistograms = new LatencyHistogram[NUM_SECTIONS];
+
+// this loop's times for each section
+private final long[] sectionStart = new long[NUM_SECTIONS];
+
+private final long[] sectionNanos = new long[NUM_SECTIONS];
+
+private final boolean[] sectionRan = new boolean[NUM_SECTIONS];
+
+private long lastLoopStart = 0;
+
+private long lastPublish = 0;
+
+private int overruns = 0;
+}
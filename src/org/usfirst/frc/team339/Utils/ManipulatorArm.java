@@ -18,6 +18,8 @@ public ManipulatorArm (SpeedController armMotorController,
     this.armPot = armPot;
     this.intakeMotor = intakeMotor;
     this.hasBallSensor = ballIsInArmSensor;
+    this.positionController = new ArmPositionController(armMotorController,
+            armPot, REASONABLE_DECELERATION_ANGLE);
 }
 
 // TODO change so it doens't move beyond soft limit from encoder.
@@ -59,7 +61,7 @@ public void moveReasonably (int direction, boolean override)
     if (direction > 0)
     // Going UP!
         {
-        if (armPot.get() < REASONABLE_DECELERATION_ANGLE)
+        if (armPot.getAngle() < REASONABLE_DECELERATION_ANGLE)
         // Starting up, has to work hard.
             {
             move(REASONABLE_UP_FACTOR, override);
@@ -73,7 +75,7 @@ public void moveReasonably (int direction, boolean override)
     else
     // going down.
         {
-        if (armPot.get() > REASONABLE_DECELERATION_ANGLE)
+        if (armPot.getAngle() > REASONABLE_DECELERATION_ANGLE)
             {
             move(REASONABLE_DOWN_FACTOR, override);
             }
@@ -94,6 +96,8 @@ public void moveReasonably (int direction, boolean override)
  */
 public void move (double speed, boolean override)
 {
+    // we're driving it by hand now
+    this.positionController.disable();
 
     // If we're currently beyond our soft limits, don't do anything that would
     // bring up further out of them. Otherwise do what the user wants.
@@ -125,9 +129,9 @@ public void move (double speed, boolean override)
         }
     else
         {
-        if ((speed > 0 && this.armPot.get() < MIN_SOFT_ARM_STOP) ||
+        if ((speed > 0 && this.armPot.getAngle() < MIN_SOFT_ARM_STOP) ||
                 (speed < 0 && this.armPot
-                        .get() > this.MAX_SOFT_ARM_STOP))
+                        .getAngle() > this.MAX_SOFT_ARM_STOP))
             {
             this.stopArmMotor(); // if override false, and we are at our
             // arm limits, don't move
@@ -148,15 +152,18 @@ public void move (double speed)
 
 public void stopArmMotor ()
 {
-    if (armPot.get() >= MIN_SOFT_ARM_STOP
+    // the position controller is holding it; leave it alone
+    if (this.positionController.isEnabled() == true)
+        return;
+    if (armPot.getAngle() >= MIN_SOFT_ARM_STOP
             && armPot
-                    .get() < BRAKE_ARM_WITH_FORWARD_VOLTAGE_DEGREES)
+                    .getAngle() < BRAKE_ARM_WITH_FORWARD_VOLTAGE_DEGREES)
         {
         this.motor.set(0.15);// TODO magic number?
         }
-    else if (armPot.get() <= this.MAX_SOFT_ARM_STOP
+    else if (armPot.getAngle() <= this.MAX_SOFT_ARM_STOP
             && armPot
-                    .get() >= BRAKE_ARM_WITH_FORWARD_VOLTAGE_DEGREES)
+                    .getAngle() >= BRAKE_ARM_WITH_FORWARD_VOLTAGE_DEGREES)
         {
         this.motor.set(-0.025);
         }
@@ -183,7 +190,7 @@ public void pullInBall (boolean override)
 
 
     if (Hardware.armIR.isOn() == true && override == false
-            && armPot.get() <= DEPOSIT_POSITION
+            && armPot.getAngle() <= DEPOSIT_POSITION
             && Hardware.kilroyTimer
                     .get() > DELAY_AFTER_BALL_DETECTION)
         {
@@ -254,7 +261,7 @@ public void setIntakeArmsSpeed (double speed)
  */
 public boolean isDown ()
 {
-    if (this.armPot.get() <= MIN_SOFT_ARM_STOP)
+    if (this.armPot.getAngle() <= MIN_SOFT_ARM_STOP)
         {
         return true;
         }
@@ -270,7 +277,7 @@ public boolean isDown ()
  */
 public boolean isUp ()
 {
-    if (this.armPot.get() >= MAX_SOFT_ARM_STOP)
+    if (this.armPot.getAngle() >= MAX_SOFT_ARM_STOP)
         {
         return true;
         }
@@ -283,7 +290,7 @@ public boolean isUp ()
 
 public boolean isUnderBar ()
 {
-    if (this.armPot.get() <= UNDER_BAR_VALUE)
+    if (this.armPot.getAngle() <= UNDER_BAR_VALUE)
         {
         return true;
         }
@@ -300,7 +307,7 @@ public boolean isUnderBar ()
  */
 public boolean isClearOfArm ()
 {
-    if (armPot.get() <= this.ARM_OUT_OF_WAY_DEGREES)
+    if (armPot.getAngle() <= this.ARM_OUT_OF_WAY_DEGREES)
         {
         return true;
         }
@@ -310,8 +317,8 @@ public boolean isClearOfArm ()
 
 public boolean isInDepositPosition ()
 {
-    if (armPot.get() < DEPOSIT_POSITION - DEPOSIT_POSITION_THRESHOLD
-            && armPot.get() > DEPOSIT_POSITION
+    if (armPot.getAngle() < DEPOSIT_POSITION - DEPOSIT_POSITION_THRESHOLD
+            && armPot.getAngle() > DEPOSIT_POSITION
                     + DEPOSIT_POSITION_THRESHOLD)
         {
         return true;
@@ -319,26 +326,20 @@ public boolean isInDepositPosition ()
     return false;
 }
 
+/**
+ * Moves the arm to the holding position with the position controller, and
+ * keeps it there.
+ */
 public void holdInHoldingPosition ()
 {
-    if (armPot.get() < HOLDING_POSITION
-            - HOLDING_POSITION_THRESHOLD)
-        {
-        move(MAX_ARM_SPEED);
-        }
-    else if (armPot.get() > HOLDING_POSITION
-            + HOLDING_POSITION_THRESHOLD)
-        {
-        move(-MAX_ARM_SPEED);
-        }
-    else
-        {
-        move(HOLDING_SPEED);
-        }
+    this.positionController.setTarget(HOLDING_POSITION);
 }
 
 /**
- * Moves the arm at full speed to the desired position.
+ * Moves the arm to the desired position with the position controller, and
+ * keeps it there (except all the way up or down, where it rests on the
+ * stops). Call it every loop until it's done; moving the arm by hand
+ * (move(), moveReasonably(), ...) takes it back.
  * 
  * @param position
  *            desired.
@@ -351,46 +352,38 @@ public boolean moveToPosition (ArmPosition position)
     switch (position)
         {
         case FULL_DOWN:
-
-            move(-MAX_ARM_SPEED);
-            if (this.isDown())
+            if (this.isDown() == true)
                 {
-                move(0.0);
+                // resting on the floor; no need to push on it
+                this.positionController.disable();
                 done = true;
                 }
+            else
+                this.positionController.setTarget(
+                        MIN_SOFT_ARM_STOP - END_STOP_OVERTRAVEL);
             break;
         case FULL_UP:
-            move(MAX_ARM_SPEED);
-            if (this.isUp())
+            if (this.isUp() == true)
                 {
-                move(0.0);
+                this.positionController.disable();
                 done = true;
                 }
+            else
+                this.positionController.setTarget(
+                        MAX_SOFT_ARM_STOP + END_STOP_OVERTRAVEL);
             break;
         case DEPOSIT:
-            if (armPot.get() < DEPOSIT_POSITION
-                    - DEPOSIT_POSITION_THRESHOLD)
-                {
-                move(MAX_ARM_SPEED);
-                }
-            else if (armPot.get() > DEPOSIT_POSITION
-                    + DEPOSIT_POSITION_THRESHOLD)
-                {
-                move(-MAX_ARM_SPEED);
-                }
-            else
-                {
-                move(0.0);
-                done = true;
-                }
+            this.positionController.setTarget(DEPOSIT_POSITION);
+            done = this.positionController
+                    .isAtTarget(DEPOSIT_POSITION_THRESHOLD);
             break;
         case CLEAR_OF_FIRING_ARM:
-            move(-MAX_ARM_SPEED);
+            // if it's already out of the way, leave it be
             if (this.isClearOfArm() == true)
-                {
-                move(0.0);
                 done = true;
-                }
+            else
+                this.positionController.setTarget(
+                        this.ARM_OUT_OF_WAY_DEGREES - CLEAR_OF_ARM_MARGIN);
             break;
         default:
         case HOLD:
@@ -401,6 +394,15 @@ public boolean moveToPosition (ArmPosition position)
     return done;
 }
 
+/**
+ * Lets go of the arm if the position controller has it, and stops the arm
+ * motor.
+ */
+public void disablePositionControl ()
+{
+    this.positionController.disable();
+}
+
 /**
  * 
  * A set of positions the arm can be in.
@@ -438,6 +440,8 @@ private RobotPotentiometer armPot = null;
 
 private IRSensor hasBallSensor = null;
 
+private final ArmPositionController positionController;
+
 private boolean ballHasBeenPreviouslyDetected = false;
 
 // default maximum arm turn speed proportion
@@ -486,9 +490,11 @@ private final double HOLDING_POSITION = 0.349
         * (MAX_SOFT_ARM_STOP - MIN_SOFT_ARM_STOP)
         + MIN_SOFT_ARM_STOP;// 143;
 
-private static final int HOLDING_POSITION_THRESHOLD = 10;
+// how far past the soft stops to aim, so we're sure to get there
+private static final double END_STOP_OVERTRAVEL = 5.0;
 
-private static final double HOLDING_SPEED = -0.15; // -.15 // .25
+// how far past clear of the firing arm to aim
+private static final double CLEAR_OF_ARM_MARGIN = 10.0;
 
 private static final double DELAY_AFTER_BALL_DETECTION = 0.12;
 
@@ -0,0 +1,306 @@
+package org.usfirst.frc.team339.Utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.SpeedController;
+
+/**
+ * Drives a list of DriveInstructions on its own fast Notifier (200 Hz), so
+ * we check how far we've gone every 5 ms instead of every 20 ms robot loop,
+ * and stop closer to where we meant to.
+ *
+ * Give it a path with followPath(); it hands back a path number. The robot
+ * loop just checks isPathDone(path number) every loop and goes on when it's
+ * true. Each instruction either turns (if its rotational distance, in
+ * degrees, isn't 0: positive is left, negative is right) or drives straight
+ * (forward distance, in inches; negative backs up). The motors are stopped
+ * at the end of the path.
+ *
+ * It doesn't go through Drive or the transmission (neither is thread safe).
+ * It reads the encoders itself (Encoders are) and sets the motors itself.
+ * The speeds in the instructions are what the transmission would be given in
+ * autonomous (first gear at 100%, no deadband, positive is forward).
+ *
+ * While a path is running the executor owns the drive motors: nothing else
+ * should drive them until isPathDone() says so, or cancel() is called. The
+ * Notifier is started by followPath() and stopped by cancel().
+ *
+ * The encoders have to count up, in inches, when the robot drives forward.
+ *
+ * @author Kilroy
+ *
+ */
+public class MotionExecutor
+{
+
+/**
+ * Creates the executor. It doesn't do anything until it's given a path.
+ *
+ * @param leftEncoder
+ *            The left side's encoder, in inches
+ * @param rightEncoder
+ *            The right side's encoder, in inches
+ * @param trackWidthInches
+ *            How far apart the left and right wheels are
+ * @param leftMotors
+ *            The left side's motors
+ * @param rightMotors
+ *            The right side's motors
+ * @param motorsReversed
+ *            true if a negative motor value drives the robot forward (as
+ *            with the transmission's joysticks reversed)
+ */
+public MotionExecutor (Encoder leftEncoder, Encoder rightEncoder,
+        double trackWidthInches, SpeedController[] leftMotors,
+        SpeedController[] rightMotors, boolean motorsReversed)
+{
+    this.leftEncoder = leftEncoder;
+    this.rightEncoder = rightEncoder;
+    this.turningRadius = trackWidthInches / 2.0;
+    this.leftMotors = leftMotors;
+    this.rightMotors = rightMotors;
+    this.motorDirection = (motorsReversed == true) ? -1.0 : 1.0;
+}
+
+/**
+ * Queues a path to be driven after any paths already queued, and starts the
+ * Notifier if it isn't running.
+ *
+ * @param path
+ *            The instructions, in order. A terminator in the list is ignored;
+ *            the end of the list is the end of the path.
+ * @return
+ *         The path's number, for isPathDone() and wasPathCancelled().
+ */
+public synchronized int followPath (DriveInstruction... path)
+{
+    for (int i = 0; i < path.length; i++)
+        {
+        if (path[i].isTerminator() == false)
+            this.queue.offer(path[i]);
+        }
+    this.queue.offer(new DriveInstruction(true));
+    this.pathsQueued++;
+    if (this.running == false)
+        {
+        this.notifier.startPeriodic(this.period);
+        this.running = true;
+        }
+    return this.pathsQueued;
+}
+
+/**
+ * @param pathNumber
+ *            A number from followPath()
+ * @return
+ *         true when that path has been driven, or cancelled.
+ */
+public boolean isPathDone (int pathNumber)
+{
+    return this.pathsFinished >= pathNumber;
+}
+
+/**
+ * @param pathNumber
+ *            A number from followPath()
+ * @return
+ *         true if that path was thrown out by the last cancel() instead of
+ *         being finished.
+ */
+public boolean wasPathCancelled (int pathNumber)
+{
+    return pathNumber >= this.firstCancelledPath
+            && pathNumber <= this.lastCancelledPath;
+}
+
+/**
+ * @return
+ *         true if there's a path running or waiting to run.
+ */
+public boolean isBusy ()
+{
+    return this.pathsFinished < this.pathsQueued;
+}
+
+/**
+ * Stops the path that's running, throws out the rest, stops the motors if
+ * we were driving them, and stops the Notifier. Every path queued so far
+ * counts as done (and cancelled).
+ */
+public synchronized void cancel ()
+{
+    this.notifier.stop();
+    this.running = false;
+    this.queue.clear();
+    this.current = null;
+    if (this.pathsFinished < this.pathsQueued)
+        {
+        this.setMotors(0.0, 0.0);
+        this.firstCancelledPath = this.pathsFinished + 1;
+        this.lastCancelledPath = this.pathsQueued;
+        this.pathsFinished = this.pathsQueued;
+        }
+}
+
+/**
+ * Changes how often the instructions are checked. Takes effect the next
+ * time the Notifier is started.
+ *
+ * @param seconds
+ *            The time between checks
+ */
+public synchronized void setPeriod (double seconds)
+{
+    this.period = seconds;
+}
+
+/**
+ * Sets how much the side that's ahead is slowed down when driving straight.
+ *
+ * @param correctionFactor
+ *            What the ahead side's speed is multiplied by, 0.0 to 1.0; 1.0
+ *            is no correction
+ */
+public synchronized void setCorrectionFactor (double correctionFactor)
+{
+    this.correctionFactor = Math.max(0.0, Math.min(1.0, correctionFactor));
+}
+
+/**
+ * One check of the running instruction; the Notifier calls this.
+ */
+private synchronized void tick ()
+{
+    if (this.current == null)
+        {
+        this.current = this.queue.poll();
+        if (this.current == null)
+            return;
+        if (this.current.isTerminator() == true)
+            {
+            // the end of a path: stop, and let whoever's waiting know
+            this.current = null;
+            this.setMotors(0.0, 0.0);
+            this.pathsFinished++;
+            return;
+            }
+        // measure the instruction from here, instead of resetting the
+        // encoders out from under the odometry
+        this.leftStart = this.leftEncoder.getDistance();
+        this.rightStart = this.rightEncoder.getDistance();
+        }
+
+    if (this.runInstruction(this.current) == true)
+        this.current = null;
+}
+
+/**
+ * Sets the motors for one check of an instruction.
+ *
+ * @return
+ *         true when the instruction is finished.
+ */
+private boolean runInstruction (DriveInstruction instruction)
+{
+    final double left = this.leftEncoder.getDistance() - this.leftStart;
+    final double right = this.rightEncoder.getDistance() - this.rightStart;
+
+    final double degrees = instruction.getRotationalDistance();
+    if (degrees != 0.0)
+        {
+        // how far each side goes around the middle of the robot
+        final double arc = Math.toRadians(Math.min(180.0, Math.abs(degrees)))
+                * this.turningRadius;
+        final double speed = Math.abs(instruction.getRotationalSpeedRatio());
+        if (degrees > 0.0)
+            {
+            // left: the right side forwards, the left side back
+            if (right >= arc || left <= -arc)
+                return true;
+            this.setMotors(-speed, speed);
+            }
+        else
+            {
+            if (left >= arc || right <= -arc)
+                return true;
+            this.setMotors(speed, -speed);
+            }
+        return false;
+        }
+
+    final double distance = instruction.getForwardDistance();
+    if (Math.abs(left) >= Math.abs(distance)
+            || Math.abs(right) >= Math.abs(distance))
+        return true;
+    final double speed = Math.copySign(
+            Math.abs(instruction.getForwardSpeedRatio()), distance);
+    // slow down whichever side is ahead
+    double leftSpeed = speed;
+    double rightSpeed = speed;
+    if (Math.abs(left) > Math.abs(right))
+        leftSpeed *= this.correctionFactor;
+    else if (Math.abs(right) > Math.abs(left))
+        rightSpeed *= this.correctionFactor;
+    this.setMotors(leftSpeed, rightSpeed);
+    return false;
+}
+
+private void setMotors (double left, double right)
+{
+    for (int i = 0; i < this.leftMotors.length; i++)
+        this.leftMotors[i].set(left * this.motorDirection);
+    for (int i = 0; i < this.rightMotors.length; i++)
+        this.rightMotors[i].set(right * this.motorDirection);
+}
+
+// 200 Hz
+private static final double DEFAULT_PERIOD_SECONDS = 0.005;
+
+private final Encoder leftEncoder;
+
+private final Encoder rightEncoder;
+
+private final double turningRadius;
+
+private final SpeedController[] leftMotors;
+
+private final SpeedController[] rightMotors;
+
+private final double motorDirection;
+
+private final Notifier notifier = new Notifier(new Runnable()
+{
+@Override
+public void run ()
+{
+    MotionExecutor.this.tick();
+}
+});
+
+// instructions waiting to run; the terminators mark where paths end
+private final ConcurrentLinkedQueue<DriveInstruction> queue = new ConcurrentLinkedQueue<DriveInstruction>();
+
+// Everything below that isn't volatile is only touched while synchronized
+
+private DriveInstruction current = null;
+
+// the encoders when the current instruction started
+private double leftStart = 0.0;
+
+private double rightStart = 0.0;
+
+private double period = DEFAULT_PERIOD_SECONDS;
+
+private double correctionFactor = 1.0;
+
+private boolean running = false;
+
+private volatile int pathsQueued = 0;
+
+private volatile int pathsFinished = 0;
+
+private volatile int firstCancelledPath = 0;
+
+private volatile int lastCancelledPath = 0;
+}
@@ -0,0 +1,321 @@
+package org.usfirst.frc.team339.Utils;
+
+/**
+ * A speed and distance for every few milliseconds of a drive, worked out
+ * ahead of time from a list of DriveInstructions, so that during autonomous
+ * all we do is look up the speed for how long we've been driving.
+ *
+ * generate() drives the instructions on paper: it speeds up at no more than
+ * the acceleration limit, cruises at each instruction's speed, and slows
+ * down early enough to be at the next instruction's speed when it gets
+ * there (a trapezoid). If there's a jerk limit, the speeds are then smoothed
+ * with a moving average as long as it takes to reach full acceleration,
+ * which rounds off the corners of the trapezoid (an S-curve) without changing
+ * how far it goes.
+ *
+ * Speeds are motor ratios (what Drive takes), positions are inches. Only
+ * straight instructions can be profiled; turns are left to Drive.
+ *
+ * Once it's made nothing changes, so it can be shared between threads.
+ *
+ * @author Kilroy
+ *
+ */
+public class MotionProfile
+{
+
+/**
+ * Works out a profile.
+ *
+ * @param instructions
+ *            The straight drives, in order. A negative distance drives
+ *            backwards; we stop before changing direction.
+ * @param endSpeedRatio
+ *            The speed ratio to finish the last instruction at (0 to stop,
+ *            or the last instruction's speed to keep going into whatever's
+ *            next)
+ * @param maxAcceleration
+ *            The most the speed ratio can change in a second
+ * @param maxJerk
+ *            The most the acceleration can change in a second, or 0 for
+ *            sharp corners (a plain trapezoid)
+ * @param inchesPerSecondAtFullSpeed
+ *            How fast the robot goes at a speed ratio of 1.0
+ * @param period
+ *            Seconds between points; what the profile is looked up with
+ *            is rounded to this
+ * @return
+ *         The profile
+ * @throws IllegalArgumentException
+ *             if an instruction turns, or a limit isn't positive.
+ */
+public static MotionProfile generate (DriveInstruction[] instructions,
+        double endSpeedRatio, double maxAcceleration, double maxJerk,
+        double inchesPerSecondAtFullSpeed, double period)
+{
+    if (maxAcceleration <= 0.0 || inchesPerSecondAtFullSpeed <= 0.0
+            || period <= 0.0)
+        throw new IllegalArgumentException(
+                "acceleration, speed and period have to be positive");
+    final int numSegments = instructions.length;
+    final double[] distances = new double[numSegments];
+    final double[] cruise = new double[numSegments];
+    for (int i = 0; i < numSegments; i++)
+        {
+        if (instructions[i].getRotationalDistance() != 0.0)
+            throw new IllegalArgumentException(
+                    "instruction " + i + " turns; only straight drives "
+                            + "can be profiled");
+        distances[i] = instructions[i].getForwardDistance();
+        cruise[i] = Math.abs(instructions[i].getForwardSpeedRatio())
+                * inchesPerSecondAtFullSpeed;
+        }
+    final double acceleration = maxAcceleration * inchesPerSecondAtFullSpeed;
+
+    // -------------------------------------
+    // the trapezoid, in inches per second, one point per period
+    // -------------------------------------
+    final Points speeds = new Points();
+    double speed = 0.0;
+    for (int i = 0; i < numSegments; i++)
+        {
+        final double sign = Math.signum(distances[i]);
+        final double length = Math.abs(distances[i]);
+        // what we have to be down to by the end of this one
+        double exitSpeed;
+        if (i == numSegments - 1)
+            exitSpeed = Math.min(cruise[i],
+                    Math.abs(endSpeedRatio) * inchesPerSecondAtFullSpeed);
+        else if (Math.signum(distances[i + 1]) == sign)
+            exitSpeed = Math.min(cruise[i], cruise[i + 1]);
+        else
+            exitSpeed = 0.0;
+
+        double traveled = 0.0;
+        while (traveled < length)
+            {
+            // fastest we can go and still slow down to exitSpeed in time
+            final double braking = Math.sqrt(exitSpeed * exitSpeed
+                    + 2.0 * acceleration * (length - traveled));
+            final double target = Math.min(cruise[i], braking);
+            if (speed < target)
+                speed = Math.min(speed + acceleration * period, target);
+            else
+                speed = target;
+            // always make some progress, or we'd never get there
+            speed = Math.max(speed, acceleration * period);
+            traveled += speed * period;
+            speeds.add(sign * speed);
+            }
+        // the direction flips between instructions: start again from 0
+        if (exitSpeed == 0.0)
+            speed = 0.0;
+        }
+
+    // -------------------------------------
+    // round off the corners: a moving average over the time it takes
+    // to reach full acceleration. Padding the end with the last speed keeps
+    // the distance the same; we cut it off when we've gone far enough.
+    // -------------------------------------
+    final double[] raw = speeds.toArray();
+    double[] smooth = raw;
+    if (maxJerk > 0.0 && raw.length > 0)
+        {
+        final int width = Math.max(1,
+                (int) Math.round((maxAcceleration / maxJerk) / period));
+        smooth = new double[raw.length + width - 1];
+        double sum = 0.0;
+        for (int k = 0; k < smooth.length; k++)
+            {
+            sum += (k < raw.length) ? raw[k] : raw[raw.length - 1];
+            if (k >= width)
+                sum -= (k - width < raw.length) ? raw[k - width]
+                        : raw[raw.length - 1];
+            smooth[k] = sum / width;
+            }
+        }
+
+    // -------------------------------------
+    // positions, and where each instruction starts
+    // -------------------------------------
+    double total = 0.0;
+    for (int i = 0; i < numSegments; i++)
+        {
+        total += Math.abs(distances[i]);
+        }
+    final Points positions = new Points();
+    final Points velocities = new Points();
+    final int[] segmentStart = new int[numSegments + 1];
+    double position = 0.0;
+    double covered = 0.0;
+    double nextBoundary = (numSegments > 0) ? Math.abs(distances[0]) : 0.0;
+    int segment = 0;
+    for (int k = 0; k < smooth.length && covered < total; k++)
+        {
+        while (segment < numSegments - 1 && covered >= nextBoundary)
+            {
+            segment++;
+            segmentStart[segment] = k;
+            nextBoundary += Math.abs(distances[segment]);
+            }
+        position += smooth[k] * period;
+        covered += Math.abs(smooth[k]) * period;
+        velocities.add(smooth[k] / inchesPerSecondAtFullSpeed);
+        positions.add(position);
+        }
+    for (int i = segment + 1; i < numSegments; i++)
+        {
+        segmentStart[i] = velocities.size();
+        }
+    segmentStart[numSegments] = velocities.size();
+
+    return new MotionProfile(velocities.toArray(), positions.toArray(),
+            segmentStart, period);
+}
+
+private MotionProfile (double[] velocities, double[] positions,
+        int[] segmentStart, double period)
+{
+    this.velocities = velocities;
+    this.positions = positions;
+    this.segmentStart = segmentStart;
+    this.period = period;
+}
+
+/**
+ * @return
+ *         How long the whole profile takes, in seconds.
+ */
+public double getDuration ()
+{
+    return this.velocities.length * this.period;
+}
+
+/**
+ * @return
+ *         How many instructions the profile was made from.
+ */
+public int getNumSegments ()
+{
+    return this.segmentStart.length - 1;
+}
+
+/**
+ * @param segment
+ *            An instruction's index
+ * @return
+ *         The time, in seconds from the start of the profile, when the
+ *         profile gets to that instruction.
+ */
+public double getSegmentStartTime (int segment)
+{
+    return this.segmentStart[segment] * this.period;
+}
+
+/**
+ * @param seconds
+ *            Time since the start of the profile
+ * @return
+ *         The speed ratio to drive at then. After the end, the last speed.
+ */
+public double getVelocity (double seconds)
+{
+    return this.velocities[this.indexOf(seconds, 0,
+            this.velocities.length)];
+}
+
+/**
+ * @param seconds
+ *            Time since the start of the profile
+ * @return
+ *         How far, in inches, we should have gone by then.
+ */
+public double getPosition (double seconds)
+{
+    return this.positions[this.indexOf(seconds, 0, this.positions.length)];
+}
+
+/**
+ * Gets the speed for one instruction, timed from when we started it. If we
+ * take longer than the profile thought, we stay at the instruction's last
+ * speed instead of going on to the next one's.
+ *
+ * @param segment
+ *            An instruction's index
+ * @param seconds
+ *            Time since we started that instruction
+ * @return
+ *         The speed ratio to drive at
+ */
+public double getVelocity (int segment, double seconds)
+{
+    return this.velocities[this.indexOf(seconds,
+            this.segmentStart[segment], this.segmentStart[segment + 1])];
+}
+
+/**
+ * @param seconds
+ *            Time since the start of the profile
+ * @return
+ *         true once the profile is over.
+ */
+public boolean isFinished (double seconds)
+{
+    return seconds >= this.getDuration();
+}
+
+/**
+ * The point <seconds> after <start>, kept within [start, end).
+ */
+private int indexOf (double seconds, int start, int end)
+{
+    if (end <= start)
+        return Math.max(0, Math.min(start, this.velocities.length - 1));
+    final int index = start + (int) (Math.max(0.0, seconds) / this.period);
+    return Math.min(index, end - 1);
+}
+
+/**
+ * A growable list of doubles, so making a profile doesn't box every point.
+ */
+private static final class Points
+{
+private double[] values = new double[256];
+
+private int size = 0;
+
+void add (double value)
+{
+    if (this.size == this.values.length)
+        {
+        final double[] bigger = new double[this.values.length * 2];
+        System.arraycopy(this.values, 0, bigger, 0, this.size);
+        this.values = bigger;
+        }
+    this.values[this.size++] = value;
+}
+
+int size ()
+{
+    return this.size;
+}
+
+double[] toArray ()
+{
+    final double[] array = new double[this.size];
+    System.arraycopy(this.values, 0, array, 0, this.size);
+    return array;
+}
+}
+
+// speed ratio at each point
+private final double[] velocities;
+
+// inches at each point
+private final double[] positions;
+
+// the first point of each instruction, plus the end
+private final int[] segmentStart;
+
+private final double period;
+}
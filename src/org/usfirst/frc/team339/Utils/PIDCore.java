@@ -0,0 +1,266 @@
+package org.usfirst.frc.team339.Utils;
+
+/**
+ * Just the math of a PID controller with feedforward, with no thread of its
+ * own. Whoever owns it calls calculate() with a new measurement and how long
+ * it's been since the last one, so any number of these can be stepped from
+ * one loop (a Notifier, the robot loop, ...).
+ *
+ * On top of plain PID it has:
+ * - anti-windup: the error stops adding up while the output is pinned at
+ * the end of its range and the error would push it further
+ * - a low-pass filter on the derivative, so encoder noise doesn't come
+ * straight out of the D term
+ * - a slew limit: the output can only change so fast
+ *
+ * The gains are per second: the I term is kI times the error added up over
+ * time in seconds, and the D term is kD times the error's change per second.
+ * The feedforward is kF times the setpoint.
+ *
+ * Nothing is allocated and nothing is synchronized; if it's stepped on one
+ * thread and tuned on another, synchronize on it.
+ *
+ * @author Kilroy
+ *
+ */
+public class PIDCore
+{
+
+/**
+ * Creates a controller.
+ *
+ * @param kP
+ *            Proportional gain
+ * @param kI
+ *            Integral gain, per second
+ * @param kD
+ *            Derivative gain, in seconds
+ * @param kF
+ *            Feedforward gain (output per unit of setpoint)
+ */
+public PIDCore (double kP, double kI, double kD, double kF)
+{
+    this.setPID(kP, kI, kD, kF);
+}
+
+/**
+ * Works out the output for a new measurement.
+ *
+ * @param measurement
+ *            The sensor's value now
+ * @param dt
+ *            Seconds since the last calculate(); if it isn't positive,
+ *            the last output is given back
+ * @return
+ *         The output, within the output range and the slew limit
+ */
+public double calculate (double measurement, double dt)
+{
+    if (dt <= 0.0)
+        return this.output;
+
+    this.error = this.setpoint - measurement;
+
+    // filtered derivative; nothing to compare to the first time
+    if (this.hasLastError == true)
+        {
+        final double rawDerivative = (this.error - this.lastError) / dt;
+        if (this.derivativeTimeConstant > 0.0)
+            this.derivative += (dt / (this.derivativeTimeConstant + dt))
+                    * (rawDerivative - this.derivative);
+        else
+            this.derivative = rawDerivative;
+        }
+    this.lastError = this.error;
+    this.hasLastError = true;
+
+    final double withoutIntegral = this.kF * this.setpoint
+            + this.kP * this.error + this.kD * this.derivative;
+    final double integral = this.integral + this.error * dt;
+    double newOutput = withoutIntegral + this.kI * integral;
+
+    // anti-windup: only keep the new integral if we aren't pinned, or it
+    // pulls us back in
+    if ((newOutput < this.maxOutput && newOutput > this.minOutput)
+            || Math.signum(this.error) != Math.signum(newOutput))
+        this.integral = integral;
+    else
+        newOutput = withoutIntegral + this.kI * this.integral;
+
+    newOutput = Math.max(this.minOutput, Math.min(this.maxOutput, newOutput));
+
+    if (this.maxSlewRate > 0.0)
+        {
+        final double maxChange = this.maxSlewRate * dt;
+        newOutput = Math.max(this.output - maxChange,
+                Math.min(this.output + maxChange, newOutput));
+        }
+    this.output = newOutput;
+    return this.output;
+}
+
+/**
+ * Forgets the integral, the derivative and the last output, for when we
+ * start controlling again after a break.
+ */
+public void reset ()
+{
+    this.integral = 0.0;
+    this.derivative = 0.0;
+    this.error = 0.0;
+    this.lastError = 0.0;
+    this.hasLastError = false;
+    this.output = 0.0;
+}
+
+/**
+ * @param kP
+ *            Proportional gain
+ * @param kI
+ *            Integral gain, per second
+ * @param kD
+ *            Derivative gain, in seconds
+ */
+public void setPID (double kP, double kI, double kD)
+{
+    this.kP = kP;
+    this.kI = kI;
+    this.kD = kD;
+}
+
+/**
+ * @param kP
+ *            Proportional gain
+ * @param kI
+ *            Integral gain, per second
+ * @param kD
+ *            Derivative gain, in seconds
+ * @param kF
+ *            Feedforward gain
+ */
+public void setPID (double kP, double kI, double kD, double kF)
+{
+    this.setPID(kP, kI, kD);
+    this.kF = kF;
+}
+
+public double getP ()
+{
+    return this.kP;
+}
+
+public double getI ()
+{
+    return this.kI;
+}
+
+public double getD ()
+{
+    return this.kD;
+}
+
+public double getF ()
+{
+    return this.kF;
+}
+
+/**
+ * @param setpoint
+ *            What we want the measurement to be
+ */
+public void setSetpoint (double setpoint)
+{
+    this.setpoint = setpoint;
+}
+
+public double getSetpoint ()
+{
+    return this.setpoint;
+}
+
+/**
+ * Sets the range the output is kept within (-1 to 1 to start with).
+ *
+ * @param min
+ *            The smallest output
+ * @param max
+ *            The biggest output
+ */
+public void setOutputRange (double min, double max)
+{
+    this.minOutput = min;
+    this.maxOutput = max;
+}
+
+/**
+ * Sets how much the derivative is smoothed.
+ *
+ * @param seconds
+ *            The filter's time constant; about how long it takes the
+ *            filtered derivative to catch up to a change. 0 turns the filter
+ *            off.
+ */
+public void setDerivativeFilter (double seconds)
+{
+    this.derivativeTimeConstant = Math.max(0.0, seconds);
+}
+
+/**
+ * Sets how fast the output can change.
+ *
+ * @param perSecond
+ *            The most the output can change in a second, or 0 for no limit
+ */
+public void setSlewRate (double perSecond)
+{
+    this.maxSlewRate = Math.abs(perSecond);
+}
+
+/**
+ * @return
+ *         The setpoint minus the measurement, at the last calculate().
+ */
+public double getError ()
+{
+    return this.error;
+}
+
+/**
+ * @return
+ *         The output from the last calculate().
+ */
+public double getOutput ()
+{
+    return this.output;
+}
+
+private double kP;
+
+private double kI;
+
+private double kD;
+
+private double kF;
+
+private double setpoint = 0.0;
+
+private double minOutput = -1.0;
+
+private double maxOutput = 1.0;
+
+private double derivativeTimeConstant = 0.0;
+
+private double maxSlewRate = 0.0;
+
+private double error = 0.0;
+
+private double lastError = 0.0;
+
+private boolean hasLastError = false;
+
+private double integral = 0.0;
+
+private double derivative = 0.0;
+
+private double output = 0.0;
+}
@@ -0,0 +1,229 @@
+package org.usfirst.frc.team339.Utils;
+
+/**
+ * Fits a straight line to the last few points from a sensor (ultrasonic
+ * distances, encoder distances, pot angles...) as they come in, so we can
+ * tell which way it's heading and how fast.
+ *
+ * It keeps running sums of x, y, x*x, x*y and y*y over the window. Adding a
+ * point adds the new point's terms and takes away the oldest point's, so it's
+ * the same small amount of work no matter how big the window is, and nothing
+ * is allocated. Every so often the sums are added up again from scratch so
+ * rounding errors can't pile up.
+ *
+ * x values are kept relative to the first x after a reset(), so using
+ * something like the FPGA time for x doesn't lose precision.
+ *
+ * Not thread safe.
+ *
+ * @author Kilroy
+ *
+ */
+public class SlidingRegression
+{
+
+/**
+ * Creates a regression over the last <window> points.
+ *
+ * @param window
+ *            How many points to fit the line to (at least 2)
+ */
+public SlidingRegression (int window)
+{
+    this.xs = new double[Math.max(2, window)];
+    this.ys = new double[this.xs.length];
+}
+
+/**
+ * Adds a point, using how many points have been added so far as the x. Use
+ * this when the points come at a steady rate; the slope is then per point.
+ *
+ * @param y
+ *            The sensor value
+ */
+public void add (double y)
+{
+    this.add(this.samples, y);
+}
+
+/**
+ * Adds a point. If the window is full, the oldest point is dropped.
+ *
+ * @param x
+ *            Usually the time
+ * @param y
+ *            The sensor value
+ */
+public void add (double x, double y)
+{
+    if (this.samples == 0)
+        this.xOrigin = x;
+    final double relativeX = x - this.xOrigin;
+
+    if (this.count == this.xs.length)
+        {
+        final double oldX = this.xs[this.next];
+        final double oldY = this.ys[this.next];
+        this.sumX -= oldX;
+        this.sumY -= oldY;
+        this.sumXX -= oldX * oldX;
+        this.sumXY -= oldX * oldY;
+        this.sumYY -= oldY * oldY;
+        }
+    else
+        this.count++;
+
+    this.xs[this.next] = relativeX;
+    this.ys[this.next] = y;
+    this.next = (this.next + 1) % this.xs.length;
+    this.sumX += relativeX;
+    this.sumY += y;
+    this.sumXX += relativeX * relativeX;
+    this.sumXY += relativeX * y;
+    this.sumYY += y * y;
+    this.samples++;
+
+    if (this.samples % RESUM_PERIOD == 0)
+        this.resum();
+}
+
+/**
+ * @return
+ *         The slope of the line, in y units per x unit, or 0 if there are
+ *         fewer than 2 points (or they all have the same x).
+ */
+public double getSlope ()
+{
+    if (this.count < 2)
+        return 0.0;
+    final double sxx = this.sumXX - this.sumX * this.sumX / this.count;
+    if (sxx <= 0.0)
+        return 0.0;
+    return (this.sumXY - this.sumX * this.sumY / this.count) / sxx;
+}
+
+/**
+ * @return
+ *         The y value of the line where x is the first x added after the
+ *         last reset() (or 0, for add(y)), or the average y if there aren't
+ *         enough points for a slope.
+ */
+public double getIntercept ()
+{
+    if (this.count == 0)
+        return 0.0;
+    return (this.sumY - this.getSlope() * this.sumX) / this.count;
+}
+
+/**
+ * Gets where the line says y is at an x.
+ *
+ * @param x
+ *            The x, in the same units as add(x, y)
+ * @return
+ *         The y on the line
+ */
+public double predict (double x)
+{
+    return this.getIntercept() + this.getSlope() * (x - this.xOrigin);
+}
+
+/**
+ * @return
+ *         How well the line fits the points, from 0 (not at all) to 1
+ *         (perfectly). 0 if there are fewer than 2 points, 1 if the points
+ *         are all the same y.
+ */
+public double getRSquared ()
+{
+    if (this.count < 2)
+        return 0.0;
+    final double sxx = this.sumXX - this.sumX * this.sumX / this.count;
+    final double syy = this.sumYY - this.sumY * this.sumY / this.count;
+    final double sxy = this.sumXY - this.sumX * this.sumY / this.count;
+    if (syy <= 0.0)
+        return 1.0;
+    if (sxx <= 0.0)
+        return 0.0;
+    return Math.min(1.0, (sxy * sxy) / (sxx * syy));
+}
+
+/**
+ * @return
+ *         How many points are in the window.
+ */
+public int getCount ()
+{
+    return this.count;
+}
+
+/**
+ * @return
+ *         true once the window has filled up.
+ */
+public boolean isFull ()
+{
+    return this.count == this.xs.length;
+}
+
+/**
+ * Forgets all the points.
+ */
+public void reset ()
+{
+    this.count = 0;
+    this.next = 0;
+    this.samples = 0;
+    this.sumX = 0.0;
+    this.sumY = 0.0;
+    this.sumXX = 0.0;
+    this.sumXY = 0.0;
+    this.sumYY = 0.0;
+}
+
+/**
+ * Adds the sums up again from the points in the window.
+ */
+private void resum ()
+{
+    this.sumX = 0.0;
+    this.sumY = 0.0;
+    this.sumXX = 0.0;
+    this.sumXY = 0.0;
+    this.sumYY = 0.0;
+    for (int i = 0; i < this.count; i++)
+        {
+        this.sumX += this.xs[i];
+        this.sumY += this.ys[i];
+        this.sumXX += this.xs[i] * this.xs[i];
+        this.sumXY += this.xs[i] * this.ys[i];
+        this.sumYY += this.ys[i] * this.ys[i];
+        }
+}
+
+// how many points between adding the sums up from scratch
+private static final int RESUM_PERIOD = 1024;
+
+private final double[] xs;
+
+private final double[] ys;
+
+private int count = 0;
+
+private int next = 0;
+
+// points added since the last reset
+private long samples = 0;
+
+private double xOrigin = 0.0;
+
+private double sumX = 0.0;
+
+private double sumY = 0.0;
+
+private double sumXX = 0.0;
+
+private double sumXY = 0.0;
+
+private double sumYY = 0.0;
+}
@@ -0,0 +1,393 @@
+package org.usfirst.frc.team339.Utils;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.usfirst.frc.team339.Utils.ErrorMessage.PrintsTo;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Runs the robot's periodic jobs (tasks) each at its own rate, instead of
+ * everything at the robot loop's 20 ms, on a few worker threads (one per
+ * core) so slow jobs like printing and the dashboard stay out of the way of
+ * the robot loop.
+ *
+ * Each task has a period and a priority. A small Notifier ticks every few
+ * milliseconds and queues every task that's due. The workers take queued
+ * tasks earliest deadline first, with each priority level counting as
+ * PRIORITY_STEP_SECONDS earlier. So an important task gets in ahead of
+ * others that are due about the same time, but a task that has been
+ * waiting long enough always gets its turn.
+ *
+ * It's cooperative: a task runs until it returns, and nothing can stop it
+ * halfway, so tasks have to be short. A task is never queued again while
+ * it's still queued or running. Each time it finishes after its deadline
+ * (its release plus its period), or a release is skipped because it was
+ * still going, that's a deadline miss; these are counted for each task.
+ *
+ * A task with a period of 0 only runs when runSoon() asks it to, for work
+ * that happens now and then (like processing a camera image) without
+ * holding up whoever asked.
+ *
+ * Tasks run on other threads than the robot loop, so anything they share
+ * with it has to be safe for that.
+ *
+ * @author Kilroy
+ *
+ */
+public class TaskScheduler
+{
+
+/**
+ * For tasks that keep the robot moving, and must not wait.
+ */
+public static final int PRIORITY_CRITICAL = 3;
+
+/**
+ * For things the drivers see or feel, like lights.
+ */
+public static final int PRIORITY_HIGH = 2;
+
+/**
+ * For the dashboard and the like.
+ */
+public static final int PRIORITY_NORMAL = 1;
+
+/**
+ * For printing, logging and anything else that can wait.
+ */
+public static final int PRIORITY_LOW = 0;
+
+/**
+ * Creates a scheduler with a worker for each core and a 5 ms tick. Nothing
+ * runs until start().
+ *
+ * @param log
+ *            Where to report tasks that throw
+ */
+public TaskScheduler (ErrorMessage log)
+{
+    this(log, Runtime.getRuntime().availableProcessors(),
+            DEFAULT_TICK_SECONDS);
+}
+
+/**
+ * Creates a scheduler. Nothing runs until start().
+ *
+ * @param log
+ *            Where to report tasks that throw
+ * @param workers
+ *            How many threads run tasks
+ * @param tickSeconds
+ *            How often to check for tasks that are due; no task can run
+ *            more often than this
+ */
+public TaskScheduler (ErrorMessage log, int workers, double tickSeconds)
+{
+    this.log = log;
+    this.tickSeconds = tickSeconds;
+    this.pool = new ThreadPoolExecutor(Math.max(1, workers),
+            Math.max(1, workers), 0, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<Runnable>());
+}
+
+/**
+ * Adds a task. Tasks can be added while the scheduler is running.
+ *
+ * @param name
+ *            What to call it in the statistics
+ * @param periodSeconds
+ *            How often to run it, or 0 to only run it on runSoon()
+ * @param priority
+ *            PRIORITY_LOW to PRIORITY_CRITICAL (or higher)
+ * @param work
+ *            What to run
+ * @return
+ *         The task's number, for the other methods
+ */
+public synchronized int addTask (String name, double periodSeconds,
+        int priority, Runnable work)
+{
+    if (this.numTasks == this.tasks.length)
+        {
+        final Task[] bigger = new Task[this.tasks.length * 2];
+        System.arraycopy(this.tasks, 0, bigger, 0, this.numTasks);
+        this.tasks = bigger;
+        }
+    final Task task = new Task(name, periodSeconds, priority, work);
+    task.nextRelease = Timer.getFPGATimestamp();
+    this.tasks[this.numTasks] = task;
+    return this.numTasks++;
+}
+
+/**
+ * Starts checking for tasks that are due.
+ */
+public void start ()
+{
+    this.ticker.startPeriodic(this.tickSeconds);
+}
+
+/**
+ * Stops queuing tasks. Tasks already queued still run.
+ */
+public void stop ()
+{
+    this.ticker.stop();
+}
+
+/**
+ * Turns a task on or off. A task that's turned back on is due right away.
+ *
+ * @param task
+ *            The number from addTask()
+ * @param enabled
+ *            true to run it, false to stop running it
+ */
+public synchronized void setEnabled (int task, boolean enabled)
+{
+    if (enabled == true && this.tasks[task].enabled == false)
+        this.tasks[task].nextRelease = Timer.getFPGATimestamp();
+    this.tasks[task].enabled = enabled;
+}
+
+/**
+ * Asks for a task to run as soon as it can (at the next tick), whatever its
+ * period. If it's already queued or running, it runs once more after it
+ * finishes.
+ *
+ * @param task
+ *            The number from addTask()
+ */
+public synchronized void runSoon (int task)
+{
+    this.tasks[task].requested = true;
+}
+
+/**
+ * @param task
+ *            The number from addTask()
+ * @return
+ *         How many times it has run.
+ */
+public int getRuns (int task)
+{
+    return this.tasks[task].runs;
+}
+
+/**
+ * @param task
+ *            The number from addTask()
+ * @return
+ *         How many times it has finished late, or been skipped because it
+ *         was still running.
+ */
+public int getDeadlineMisses (int task)
+{
+    return this.tasks[task].misses;
+}
+
+/**
+ * @param task
+ *            The number from addTask()
+ * @return
+ *         The longest it has taken to run, in seconds.
+ */
+public double getMaxRunSeconds (int task)
+{
+    return this.tasks[task].maxRunSeconds;
+}
+
+/**
+ * Puts every task's runs, deadline misses and longest run on the
+ * SmartDashboard. Can be added as a task itself.
+ */
+public void publishStatistics ()
+{
+    final int count;
+    final Task[] snapshot;
+    synchronized (this)
+        {
+        count = this.numTasks;
+        snapshot = this.tasks;
+        }
+    final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+    for (int i = 0; i < count; i++)
+        {
+        final Task task = snapshot[i];
+        dashboard.putNumber(task.name + " runs", task.runs);
+        dashboard.putNumber(task.name + " misses", task.misses);
+        dashboard.putNumber(task.name + " max ms",
+                task.maxRunSeconds * 1000.0);
+        }
+}
+
+/**
+ * Clears every task's statistics.
+ */
+public synchronized void resetStatistics ()
+{
+    for (int i = 0; i < this.numTasks; i++)
+        {
+        this.tasks[i].runs = 0;
+        this.tasks[i].misses = 0;
+        this.tasks[i].maxRunSeconds = 0.0;
+        }
+}
+
+/**
+ * Queues every task that's due; the Notifier calls this.
+ */
+private synchronized void tick ()
+{
+    final double now = Timer.getFPGATimestamp();
+    for (int i = 0; i < this.numTasks; i++)
+        {
+        final Task task = this.tasks[i];
+        if (task.enabled == false)
+            continue;
+
+        final boolean due;
+        if (task.requested == true)
+            due = true;
+        else
+            due = task.period > 0.0 && now >= task.nextRelease;
+        if (due == false)
+            continue;
+
+        if (task.busy == true)
+            {
+            // still going from last time: that release is lost
+            if (task.requested == false)
+                {
+                task.misses++;
+                task.nextRelease += task.period;
+                }
+            continue;
+            }
+
+        task.requested = false;
+        if (task.period > 0.0)
+            {
+            task.deadline = task.nextRelease + task.period;
+            // if we've fallen more than a whole period behind, count the
+            // releases we lost and start again from now
+            if (now - task.nextRelease > task.period)
+                {
+                task.misses += (int) ((now - task.nextRelease)
+                        / task.period);
+                task.nextRelease = now;
+                task.deadline = now + task.period;
+                }
+            task.nextRelease += task.period;
+            }
+        else
+            task.deadline = Double.MAX_VALUE;
+        task.sortKey = Math.min(task.deadline, now + MAX_DEADLINE_SECONDS)
+                - task.priority * PRIORITY_STEP_SECONDS;
+        task.busy = true;
+        this.pool.execute(task);
+        }
+}
+
+/**
+ * One task, and everything we keep track of for it. It's the Runnable the
+ * workers run, so nothing new is made each time it's queued.
+ */
+private final class Task implements Runnable, Comparable<Task>
+{
+private final String name;
+
+private final double period;
+
+private final int priority;
+
+private final Runnable work;
+
+private volatile boolean enabled = true;
+
+private volatile boolean busy = false;
+
+private boolean requested = false;
+
+private double nextRelease;
+
+private double deadline;
+
+private double sortKey;
+
+private volatile int runs = 0;
+
+private volatile int misses = 0;
+
+private volatile double maxRunSeconds = 0.0;
+
+private Task (String name, double period, int priority, Runnable work)
+{
+    this.name = name;
+    this.period = Math.max(0.0, period);
+    this.priority = priority;
+    this.work = work;
+}
+
+@Override
+public void run ()
+{
+    final double start = Timer.getFPGATimestamp();
+    try
+        {
+        this.work.run();
+        }
+    catch (final RuntimeException e)
+        {
+        TaskScheduler.this.log.printError("Task " + this.name + " threw "
+                + e.toString(), PrintsTo.roboRIO);
+        }
+    final double end = Timer.getFPGATimestamp();
+    synchronized (TaskScheduler.this)
+        {
+        this.runs++;
+        if (end - start > this.maxRunSeconds)
+            this.maxRunSeconds = end - start;
+        if (end > this.deadline)
+            this.misses++;
+        this.busy = false;
+        }
+}
+
+@Override
+public int compareTo (Task other)
+{
+    return Double.compare(this.sortKey, other.sortKey);
+}
+}
+
+// 200 Hz
+private static final double DEFAULT_TICK_SECONDS = 0.005;
+
+// how much sooner a task's deadline is treated as, per priority level
+private static final double PRIORITY_STEP_SECONDS = 0.02;
+
+// run-on-request tasks sort as if they were due this far from now
+private static final double MAX_DEADLINE_SECONDS = 0.1;
+
+private final ErrorMessage log;
+
+private final double tickSeconds;
+
+private final ThreadPoolExecutor pool;
+
+private Task[] tasks = new Task[8];
+
+private int numTasks = 0;
+
+private final Notifier ticker = new Notifier(new Runnable()
+{
+@Override
+public void run ()
+{
+    TaskScheduler.this.tick();
+}
+});
+}
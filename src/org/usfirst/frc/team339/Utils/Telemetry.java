@@ -0,0 +1,526 @@
+package org.usfirst.frc.team339.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Records a set of values (channels) every robot loop into a binary file on
+ * the roboRIO, instead of printing them.
+ *
+ * Channels are added once, before recording starts, each with a name and
+ * something to read the value from. Then record() is called once per loop:
+ * it reads every channel into the next spot of a ring buffer that was made
+ * ahead of time, so it never allocates or touches the file system. A
+ * background thread writes the buffer out every so often. If the thread falls
+ * so far behind that the buffer is full, new records are dropped (and
+ * counted) rather than making the loop wait.
+ *
+ * Every start() makes a new numbered file (telemetry_0.bin, telemetry_1.bin,
+ * ...) in the directory. Copy them off the robot and run TelemetryDecoder on
+ * them to get a CSV file.
+ *
+ * File format (big endian): the header is the magic number, the version, the
+ * record size in bytes and the number of channels, then each channel's type
+ * and name (and for enum channels, the names of the values). After that come
+ * the records, each the FPGA time as a double followed by every channel's
+ * value in the order they were added.
+ *
+ * @author Kilroy
+ *
+ */
+public class Telemetry implements Runnable
+{
+
+/**
+ * Something to read a decimal value from. Stored as a float.
+ */
+public static interface DoubleChannel
+{
+public double get ();
+}
+
+/**
+ * Something to read a whole number from.
+ */
+public static interface IntChannel
+{
+public int get ();
+}
+
+/**
+ * Something to read a true/false value from.
+ */
+public static interface BooleanChannel
+{
+public boolean get ();
+}
+
+/**
+ * Something to read a state machine's state from. The value's name is saved
+ * in the file header, so the CSV shows the state names.
+ */
+public static interface EnumChannel
+{
+public Enum<?> get ();
+}
+
+/**
+ * Creates a telemetry recorder with room for DEFAULT_BUFFER_RECORDS records
+ * waiting to be written.
+ *
+ * @param directory
+ *            Where to save the recordings, made if it doesn't exist
+ */
+public Telemetry (String directory)
+{
+    this(directory, DEFAULT_BUFFER_RECORDS);
+}
+
+/**
+ * Creates a telemetry recorder.
+ *
+ * @param directory
+ *            Where to save the recordings, made if it doesn't exist
+ * @param bufferRecords
+ *            How many records can be waiting to be written before new ones
+ *            are dropped
+ */
+public Telemetry (String directory, int bufferRecords)
+{
+    this.directory = directory;
+    this.bufferRecords = Math.max(1, bufferRecords);
+}
+
+/**
+ * Adds a decimal channel. Only works before the first start().
+ *
+ * @param name
+ *            The name of the channel; the column name in the CSV
+ * @param channel
+ *            Where to read the value from
+ */
+public void addDouble (String name, DoubleChannel channel)
+{
+    this.addChannel(name, TYPE_DOUBLE, channel, null);
+}
+
+/**
+ * Adds a whole number channel. Only works before the first start().
+ *
+ * @param name
+ *            The name of the channel; the column name in the CSV
+ * @param channel
+ *            Where to read the value from
+ */
+public void addInt (String name, IntChannel channel)
+{
+    this.addChannel(name, TYPE_INT, channel, null);
+}
+
+/**
+ * Adds a true/false channel. Only works before the first start().
+ *
+ * @param name
+ *            The name of the channel; the column name in the CSV
+ * @param channel
+ *            Where to read the value from
+ */
+public void addBoolean (String name, BooleanChannel channel)
+{
+    this.addChannel(name, TYPE_BOOLEAN, channel, null);
+}
+
+/**
+ * Adds a state channel. Only works before the first start().
+ *
+ * @param name
+ *            The name of the channel; the column name in the CSV
+ * @param values
+ *            Every value the enum can have (EnumName.values())
+ * @param channel
+ *            Where to read the value from
+ */
+public void addEnum (String name, Enum<?>[] values, EnumChannel channel)
+{
+    this.addChannel(name, TYPE_ENUM, channel, values);
+}
+
+/**
+ * Starts recording to a new file. Does nothing if we're already recording.
+ * Call from an init method, not periodic; this opens the file.
+ */
+public synchronized void start ()
+{
+    if (this.recording == true)
+        return;
+    if (this.sources == null)
+        this.buildBuffer();
+    try
+        {
+        final Path dir = Paths.get(this.directory);
+        Files.createDirectories(dir);
+        int fileNumber = 0;
+        while (new File(this.directory, FILE_PREFIX + fileNumber
+                + FILE_EXTENSION).exists() == true)
+            {
+            fileNumber++;
+            }
+        this.channel = FileChannel.open(
+                dir.resolve(FILE_PREFIX + fileNumber + FILE_EXTENSION),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.wrap(this.buildHeader());
+        while (header.hasRemaining() == true)
+            {
+            this.channel.write(header);
+            }
+        }
+    catch (final IOException e)
+        {
+        System.out.println("Telemetry: can't start recording: "
+                + e.getMessage());
+        this.closeChannel();
+        return;
+        }
+    this.recorded = 0;
+    this.flushed = 0;
+    if (this.thread == null)
+        {
+        this.thread = new Thread(this, "Telemetry");
+        this.thread.setDaemon(true);
+        this.thread.setPriority(Thread.MIN_PRIORITY);
+        this.thread.start();
+        }
+    this.recording = true;
+}
+
+/**
+ * Stops recording, writes out everything that's left and closes the file.
+ * Call from disabledInit().
+ */
+public synchronized void stop ()
+{
+    if (this.recording == false)
+        return;
+    this.recording = false;
+    try
+        {
+        this.writeOut();
+        this.channel.force(false);
+        }
+    catch (final IOException e)
+        {
+        System.out.println("Telemetry: lost the end of the recording: "
+                + e.getMessage());
+        }
+    this.closeChannel();
+}
+
+/**
+ * Records every channel's current value. Call once per loop, after the robot
+ * has done its thing. Does nothing if we aren't recording.
+ */
+public void record ()
+{
+    if (this.recording == false)
+        return;
+    final long sequence = this.recorded;
+    if (sequence - this.flushed >= this.bufferRecords)
+        {
+        this.dropped++;
+        return;
+        }
+    int offset = (int) (sequence % this.bufferRecords) * this.recordSize;
+    this.buffer.putDouble(offset, Timer.getFPGATimestamp());
+    offset += 8;
+    for (int i = 0; i < this.types.length; i++)
+        {
+        switch (this.types[i])
+            {
+            case TYPE_DOUBLE:
+                this.buffer.putFloat(offset,
+                        (float) ((DoubleChannel) this.sources[i]).get());
+                offset += 4;
+                break;
+            case TYPE_INT:
+                this.buffer.putInt(offset,
+                        ((IntChannel) this.sources[i]).get());
+                offset += 4;
+                break;
+            case TYPE_BOOLEAN:
+                this.buffer.put(offset,
+                        ((BooleanChannel) this.sources[i]).get() ? (byte) 1
+                                : (byte) 0);
+                offset += 1;
+                break;
+            case TYPE_ENUM:
+                final Enum<?> state = ((EnumChannel) this.sources[i])
+                        .get();
+                this.buffer.put(offset,
+                        state == null ? (byte) -1 : (byte) state.ordinal());
+                offset += 1;
+                break;
+            default:
+                break;
+            }
+        }
+    // publishes the record to the writer thread
+    this.recorded = sequence + 1;
+}
+
+/**
+ * @return
+ *         true if we're recording.
+ */
+public boolean isRecording ()
+{
+    return this.recording;
+}
+
+/**
+ * @return
+ *         How many records have been dropped because the writer fell behind.
+ */
+public int getDroppedCount ()
+{
+    return this.dropped;
+}
+
+/**
+ * @return
+ *         How many records are in the current (or last) recording.
+ */
+public long getRecordCount ()
+{
+    return this.recorded;
+}
+
+/**
+ * The writer loop. Don't call this directly; it's started by start().
+ */
+@Override
+public void run ()
+{
+    while (true)
+        {
+        LockSupport.parkNanos(this,
+                TimeUnit.MILLISECONDS.toNanos(WRITE_PERIOD_MS));
+        synchronized (this)
+            {
+            if (this.recording == true)
+                {
+                try
+                    {
+                    this.writeOut();
+                    }
+                catch (final IOException e)
+                    {
+                    System.out.println("Telemetry: write failed, stopping: "
+                            + e.getMessage());
+                    this.recording = false;
+                    this.closeChannel();
+                    }
+                }
+            }
+        }
+}
+
+private void addChannel (String name, byte type, Object source,
+        Enum<?>[] values)
+{
+    if (this.sources != null)
+        {
+        System.out.println("Telemetry: too late to add " + name
+                + ", recording has already started");
+        return;
+        }
+    this.pendingNames.add(name);
+    this.pendingTypes.add(type);
+    this.pendingSources.add(source);
+    this.pendingEnumValues.add(values);
+}
+
+/**
+ * Locks in the channels and makes the ring buffer.
+ */
+private void buildBuffer ()
+{
+    final int numChannels = this.pendingNames.size();
+    this.names = this.pendingNames.toArray(new String[numChannels]);
+    this.sources = this.pendingSources.toArray(new Object[numChannels]);
+    this.enumValues = this.pendingEnumValues
+            .toArray(new Enum<?>[numChannels][]);
+    this.types = new byte[numChannels];
+    int size = 8;
+    for (int i = 0; i < numChannels; i++)
+        {
+        this.types[i] = this.pendingTypes.get(i);
+        size += sizeOf(this.types[i]);
+        }
+    this.recordSize = size;
+    this.buffer = ByteBuffer.allocate(this.recordSize * this.bufferRecords);
+    this.writeView = this.buffer.duplicate();
+}
+
+private byte[] buildHeader () throws IOException
+{
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    out.writeInt(this.recordSize);
+    out.writeShort(this.types.length);
+    for (int i = 0; i < this.types.length; i++)
+        {
+        out.writeByte(this.types[i]);
+        out.writeUTF(this.names[i]);
+        if (this.types[i] == TYPE_ENUM)
+            {
+            out.writeShort(this.enumValues[i].length);
+            for (int j = 0; j < this.enumValues[i].length; j++)
+                {
+                out.writeUTF(this.enumValues[i][j].name());
+                }
+            }
+        }
+    out.flush();
+    return bytes.toByteArray();
+}
+
+/**
+ * Writes every record that's been published and not written yet.
+ */
+private void writeOut () throws IOException
+{
+    final long end = this.recorded;
+    long start = this.flushed;
+    while (start < end)
+        {
+        // up to the end of the ring at most; the rest goes next time
+        // around the loop
+        final int first = (int) (start % this.bufferRecords);
+        final int count = (int) Math.min(end - start,
+                this.bufferRecords - first);
+        this.writeView.limit((first + count) * this.recordSize);
+        this.writeView.position(first * this.recordSize);
+        while (this.writeView.hasRemaining() == true)
+            {
+            this.channel.write(this.writeView);
+            }
+        start += count;
+        // lets record() reuse the space
+        this.flushed = start;
+        }
+}
+
+private void closeChannel ()
+{
+    if (this.channel == null)
+        return;
+    try
+        {
+        this.channel.close();
+        }
+    catch (final IOException e)
+        {
+        // nothing else we can do with it
+        }
+    this.channel = null;
+}
+
+/**
+ * @param type
+ *            A channel type
+ * @return
+ *         How many bytes a value of that type takes in a record.
+ */
+static int sizeOf (byte type)
+{
+    switch (type)
+        {
+        case TYPE_DOUBLE:
+        case TYPE_INT:
+            return 4;
+        case TYPE_BOOLEAN:
+        case TYPE_ENUM:
+        default:
+            return 1;
+        }
+}
+
+// Shared with TelemetryDecoder
+static final int MAGIC = 0x4B544C4D; // "KTLM"
+
+static final int VERSION = 1;
+
+static final byte TYPE_DOUBLE = 0;
+
+static final byte TYPE_INT = 1;
+
+static final byte TYPE_BOOLEAN = 2;
+
+static final byte TYPE_ENUM = 3;
+
+private static final String FILE_PREFIX = "telemetry_";
+
+private static final String FILE_EXTENSION = ".bin";
+
+// About 40 seconds of loops at 50 Hz
+private static final int DEFAULT_BUFFER_RECORDS = 2048;
+
+private static final long WRITE_PERIOD_MS = 500;
+
+private final String directory;
+
+private final int bufferRecords;
+
+// Filled in by add*(), then turned into the arrays below at the first start()
+private final ArrayList<String> pendingNames = new ArrayList<String>();
+
+private final ArrayList<Byte> pendingTypes = new ArrayList<Byte>();
+
+private final ArrayList<Object> pendingSources = new ArrayList<Object>();
+
+private final ArrayList<Enum<?>[]> pendingEnumValues = new ArrayList<Enum<?>[]>();
+
+private String[] names = null;
+
+private byte[] types = null;
+
+private Object[] sources = null;
+
+private Enum<?>[][] enumValues = null;
+
+private int recordSize = 8;
+
+// the ring buffer; record() writes to it with absolute puts, the writer thread
+// reads it through writeView
+private ByteBuffer buffer = null;
+
+private ByteBuffer writeView = null;
+
+private FileChannel channel = null;
+
+private Thread thread = null;
+
+private volatile boolean recording = false;
+
+// records put in the buffer, and records written to the file, since start()
+private volatile long recorded = 0;
+
+private volatile long flushed = 0;
+
+// only changed by the robot loop
+private volatile int dropped = 0;
+}
@@ -0,0 +1,158 @@
+package org.usfirst.frc.team339.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Turns a recording made by Telemetry into a CSV file you can open in a
+ * spreadsheet. This runs on a laptop, not the robot:
+ *
+ * java -cp bin org.usfirst.frc.team339.Utils.TelemetryDecoder
+ * telemetry_0.bin [telemetry_0.csv]
+ *
+ * The first column is the FPGA time in seconds, then one column per channel.
+ * State channels are written as the state's name.
+ *
+ * @author Kilroy
+ *
+ */
+public class TelemetryDecoder
+{
+
+/**
+ * Decodes the file named by the first argument into the file named by the
+ * second, or the same name ending in .csv if there's only one.
+ *
+ * @param args
+ *            input file [output file]
+ */
+public static void main (String[] args)
+{
+    if (args.length < 1)
+        {
+        System.out.println(
+                "Usage: TelemetryDecoder <telemetry file> [csv file]");
+        return;
+        }
+    String output;
+    if (args.length > 1)
+        output = args[1];
+    else if (args[0].endsWith(".bin") == true)
+        output = args[0].substring(0, args[0].length() - 4) + ".csv";
+    else
+        output = args[0] + ".csv";
+    try
+        {
+        final int records = decode(args[0], output);
+        System.out.println("Wrote " + records + " records to " + output);
+        }
+    catch (final IOException e)
+        {
+        System.out.println("Couldn't decode " + args[0] + ": "
+                + e.getMessage());
+        }
+}
+
+/**
+ * Decodes a telemetry recording into a CSV file.
+ *
+ * @param inputFile
+ *            The recording
+ * @param outputFile
+ *            The CSV file to write
+ * @return
+ *         The number of records decoded
+ * @throws IOException
+ *             if the recording can't be read (or isn't one) or the CSV
+ *             can't be written
+ */
+public static int decode (String inputFile, String outputFile)
+        throws IOException
+{
+    final DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(inputFile)));
+    final PrintWriter out = new PrintWriter(
+            new BufferedWriter(new FileWriter(outputFile)));
+    int records = 0;
+    try
+        {
+        if (in.readInt() != Telemetry.MAGIC)
+            throw new IOException("not a telemetry recording");
+        final int version = in.readShort();
+        if (version != Telemetry.VERSION)
+            throw new IOException("don't know version " + version);
+        in.readInt(); // record size; we work it out from the types
+        final int numChannels = in.readShort();
+        final byte[] types = new byte[numChannels];
+        final String[][] enumNames = new String[numChannels][];
+        final StringBuilder line = new StringBuilder("time");
+        for (int i = 0; i < numChannels; i++)
+            {
+            types[i] = in.readByte();
+            line.append(',').append(in.readUTF());
+            if (types[i] == Telemetry.TYPE_ENUM)
+                {
+                enumNames[i] = new String[in.readShort()];
+                for (int j = 0; j < enumNames[i].length; j++)
+                    {
+                    enumNames[i][j] = in.readUTF();
+                    }
+                }
+            }
+        out.println(line);
+
+        while (true)
+            {
+            line.setLength(0);
+            try
+                {
+                line.append(in.readDouble());
+                for (int i = 0; i < numChannels; i++)
+                    {
+                    line.append(',');
+                    switch (types[i])
+                        {
+                        case Telemetry.TYPE_DOUBLE:
+                            line.append(in.readFloat());
+                            break;
+                        case Telemetry.TYPE_INT:
+                            line.append(in.readInt());
+                            break;
+                        case Telemetry.TYPE_BOOLEAN:
+                            line.append(in.readByte() != 0);
+                            break;
+                        case Telemetry.TYPE_ENUM:
+                            final int ordinal = in.readUnsignedByte();
+                            if (ordinal < enumNames[i].length)
+                                line.append(enumNames[i][ordinal]);
+                            break;
+                        default:
+                            throw new IOException(
+                                    "unknown channel type " + types[i]);
+                        }
+                    }
+                }
+            catch (final EOFException e)
+                {
+                // the end of the file (or a record cut off when the robot
+                // was turned off)
+                break;
+                }
+            out.println(line);
+            records++;
+            }
+        }
+    finally
+        {
+        in.close();
+        out.close();
+        }
+    return records;
+}
+}
@@ -1,7 +1,6 @@
 package org.usfirst.frc.team339.Vision;
 
 import java.util.Comparator;
-import java.util.Vector;
 import com.ni.vision.NIVision;
 import com.ni.vision.NIVision.Image;
 import org.usfirst.frc.team339.Hardware.Hardware;
@@ -9,9 +8,11 @@ import org.usfirst.frc.team339.HardwareInterfaces.KilroyCamera;
 import org.usfirst.frc.team339.Vision.operators.ConvexHullOperator;
 import org.usfirst.frc.team339.Vision.operators.HSLColorThresholdOperator;
 import org.usfirst.frc.team339.Vision.operators.LoadColorImageJPEGOperator;
+import org.usfirst.frc.team339.Vision.operators.RegionOfInterestOperator;
 import org.usfirst.frc.team339.Vision.operators.RemoveSmallObjectsOperator;
 import org.usfirst.frc.team339.Vision.operators.SaveBinaryImagePNGOperator;
 import org.usfirst.frc.team339.Vision.operators.VisionOperatorInterface;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.image.NIVisionException;
 
 // TODO a processImageNoUpdate
@@ -58,7 +59,8 @@ public class ImageProcessor
  * @author Kilroy
  *
  */
-public class ParticleReport implements Comparator<ParticleReport>,
+public static class ParticleReport
+        implements Comparator<ParticleReport>,
         Comparable<ParticleReport>
 {
 // TODO: actually initialize these values
@@ -91,6 +93,28 @@ public double PercentAreaToImageArea;
 
 public double ConvexHullArea;
 
+/**
+ * @return
+ *         A new ParticleReport with the same values as this one.
+ */
+public ParticleReport copy ()
+{
+    final ParticleReport particle = new ParticleReport();
+    particle.area = this.area;
+    particle.boundingRectLeft = this.boundingRectLeft;
+    particle.boundingRectTop = this.boundingRectTop;
+    particle.boundingRectRight = this.boundingRectRight;
+    particle.boundingRectBottom = this.boundingRectBottom;
+    particle.center_mass_x = this.center_mass_x;
+    particle.center_mass_y = this.center_mass_y;
+    particle.imageHeight = this.imageHeight;
+    particle.imageWidth = this.imageWidth;
+    particle.boundingRectWidth = this.boundingRectWidth;
+    particle.PercentAreaToImageArea = this.PercentAreaToImageArea;
+    particle.ConvexHullArea = this.ConvexHullArea;
+    return particle;
+}
+
 @Override
 public int compare (ParticleReport r1, ParticleReport r2)
 {
@@ -148,9 +172,65 @@ private double cameraYRes;
 // TODO should this be public? Use a getter, methinks
 public ParticleReport[] reports = new ParticleReport[0];
 
+// The default for the most particles we keep reports on each frame
+private static final int DEFAULT_MAX_PARTICLES = 20;
+
+// Picks the largest particles each frame; owns the report objects, which are
+// reused every frame so processing doesn't make garbage
+private ParticleHeap<ParticleReport> largestParticles = null;
+
+// reportViews[n] is an array of length n; reports points to one of these
+private ParticleReport[][] reportViews = new ParticleReport[][]
+    {new ParticleReport[0]};
+
+// Everything we measure on each particle, in one imaqMeasureParticles call.
+// The MEASURE_ constants below are the indexes into this array.
+private static final NIVision.MeasurementType[] PARTICLE_MEASUREMENTS =
+    {
+            NIVision.MeasurementType.MT_AREA_BY_IMAGE_AREA,
+            NIVision.MeasurementType.MT_AREA,
+            NIVision.MeasurementType.MT_CONVEX_HULL_AREA,
+            NIVision.MeasurementType.MT_BOUNDING_RECT_TOP,
+            NIVision.MeasurementType.MT_BOUNDING_RECT_LEFT,
+            NIVision.MeasurementType.MT_BOUNDING_RECT_BOTTOM,
+            NIVision.MeasurementType.MT_BOUNDING_RECT_RIGHT,
+            NIVision.MeasurementType.MT_BOUNDING_RECT_WIDTH,
+            NIVision.MeasurementType.MT_CENTER_OF_MASS_X,
+            NIVision.MeasurementType.MT_CENTER_OF_MASS_Y
+    };
+
+private static final int MEASURE_AREA_BY_IMAGE_AREA = 0;
+
+private static final int MEASURE_AREA = 1;
+
+private static final int MEASURE_CONVEX_HULL_AREA = 2;
+
+private static final int MEASURE_BOUNDING_RECT_TOP = 3;
+
+private static final int MEASURE_BOUNDING_RECT_LEFT = 4;
+
+private static final int MEASURE_BOUNDING_RECT_BOTTOM = 5;
+
+private static final int MEASURE_BOUNDING_RECT_RIGHT = 6;
+
+private static final int MEASURE_BOUNDING_RECT_WIDTH = 7;
+
+private static final int MEASURE_CENTER_OF_MASS_X = 8;
+
+private static final int MEASURE_CENTER_OF_MASS_Y = 9;
+
+// The region of interest operator the last frame went through, if any
+private RegionOfInterestOperator regionOfInterest = null;
+
+// Follows the target across frames, if we were given one
+private TargetTracker targetTracker = null;
+
 private boolean newImageIsFresh = false;// TODO @AHK use to determine if we
                                         // actually process an image
 
+// The FPGA time, in seconds, the current image was pulled from the camera
+private double imageTimestamp = 0.0;
+
 /**
  * Creates an ImageProcessor object with camera <camera> and a default
  * processing script. The script consists of:
@@ -192,6 +272,7 @@ public ImageProcessor (KilroyCamera camera, VisionScript script)
 {
     this.camera = camera;
     this.operators = script;
+    this.setMaxParticles(DEFAULT_MAX_PARTICLES);
     this.cameraXRes = camera.getHorizontalResolution();
     this.cameraYRes = camera.getVerticalResolution();
     this.cameraFocalLengthPixels = (this.cameraXRes / 2.0)
@@ -219,6 +300,7 @@ public ImageProcessor (KilroyCamera camera,
     this.cameraXRes = camera.getHorizontalResolution();
     this.cameraYRes = camera.getVerticalResolution();
     this.operators = new VisionScript();
+    this.setMaxParticles(DEFAULT_MAX_PARTICLES);
     this.cameraFocalLengthPixels = (this.cameraXRes / 2.0)
             / Math.tan(camera.getHorizFieldOfView() * .5
                     * (Math.PI / 180));
@@ -296,10 +378,16 @@ public void applyOperators ()
     if (this.camera.gethaveCamera() == true && this.currentImage != null
             && this.newImageIsFresh == true)
         {
+        this.regionOfInterest = null;
         for (int i = 0; i < operators.size(); i++)
             {
-            this.currentImage = this.operators.get(i)
-                    .operate(this.currentImage);
+            final VisionOperatorInterface operator = this.operators
+                    .get(i);
+            this.currentImage = operator.operate(this.currentImage);
+            // remember the crop so we can put the blobs back into
+            // full-frame coordinates
+            if (operator instanceof RegionOfInterestOperator)
+                this.regionOfInterest = (RegionOfInterestOperator) operator;
             }
         }
 }
@@ -434,10 +522,19 @@ public double getMountAngleToRightOfCenter ()
 /**
  * Pulls a new image from the camera and processes the image through the
  * operator list, only if the new image it received was fresh.
+ * 
+ * @return
+ *         true if a fresh image was processed and the reports were updated,
+ *         false if there was no camera or no new image.
  */
-public void processImage ()
-{
-    if (this.camera != null)
+public boolean processImage ()
+{
+    // With no camera, KilroyCamera.freshImage() always says true and
+    // getImage() hands back a new empty image, so this would report a
+    // "fresh" frame every call and the VisionWorker would spin making
+    // images instead of sleeping. applyOperators() and the reports
+    // already skip the work without a camera, so nothing is lost.
+    if (this.camera != null && this.camera.gethaveCamera() == true)
         {
         this.updateImage();
         if (this.newImageIsFresh == true)
@@ -445,8 +542,20 @@ public void processImage ()
             this.applyOperators();
             this.updateParticalAnalysisReports();// TODO test for mem usage and
                                                  // time
+            return true;
             }
         }
+    return false;
+}
+
+/**
+ * @return
+ *         The FPGA time, in seconds, the image the current reports came from
+ *         was pulled from the camera.
+ */
+public double getImageTimestamp ()
+{
+    return this.imageTimestamp;
 }
 
 /**
@@ -458,6 +567,7 @@ public void updateImage ()
         {
         if (this.camera.freshImage() == true)
             {
+            this.imageTimestamp = Timer.getFPGATimestamp();
             this.currentImage = this.camera.getImage().image;
             this.newImageIsFresh = true;
             }
@@ -477,87 +587,165 @@ public void updateImage ()
 /**
  * Takes the processed image and writes information on each particle (blob) into
  * the global <reports> array, in order of overall particle area.
+ * 
+ * All of the measurements are fetched in one imaqMeasureParticles call, and
+ * the results are written into report objects that are reused every frame.
+ * Only the <maxParticles> largest particles are kept; they're picked with a
+ * heap, so only those few get sorted.
  */
 public void updateParticalAnalysisReports ()
 {
     if (this.camera.gethaveCamera() == true
             && this.currentImage != null)
         {
-        final int numParticles = NIVision
-                .imaqCountParticles(this.currentImage, 0);
-
-        System.out.println("Object removal blobs: " +
-                NIVision.imaqCountParticles(this.currentImage, 0));
-
-        // Measure particles and sort by particle size
-        final Vector<ParticleReport> particles = new Vector<ParticleReport>();
-
-        if (numParticles > 0)
+        final NIVision.MeasureParticlesReport measurements = NIVision
+                .imaqMeasureParticles(this.currentImage,
+                        NIVision.MeasureParticlesCalibrationMode.CALIBRATION_MODE_PIXEL,
+                        PARTICLE_MEASUREMENTS);
+        this.largestParticles.clear();
+        if (measurements.numParticles > 0)
             {
-
-            for (int particleIndex = 0; particleIndex < numParticles; particleIndex++)
+            // only ask for the image size once per frame
+            final NIVision.GetImageSizeResult imageSize = NIVision
+                    .imaqGetImageSize(this.currentImage);
+            // If the script cropped the image, the measurements are relative
+            // to the crop; shift them back to full-frame coordinates.
+            int xOffset = 0;
+            int yOffset = 0;
+            int imageWidth = imageSize.width;
+            int imageHeight = imageSize.height;
+            // and NIVision's percent of the image is a percent of the crop
+            double percentAreaScale = 1.0;
+            if (this.regionOfInterest != null)
                 {
-
-                final ParticleReport particle = new ParticleReport();
-                particle.PercentAreaToImageArea = NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_AREA_BY_IMAGE_AREA);
-                particle.area = NIVision.imaqMeasureParticle(
-                        this.currentImage,
-                        particleIndex, 0,
-                        NIVision.MeasurementType.MT_AREA);
-                particle.ConvexHullArea = NIVision
-                        .imaqMeasureParticle(
-                                this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_CONVEX_HULL_AREA);
-                particle.boundingRectTop = (int) NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_BOUNDING_RECT_TOP);
-                particle.boundingRectLeft = (int) NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_BOUNDING_RECT_LEFT);
-                particle.boundingRectBottom = (int) NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_BOUNDING_RECT_BOTTOM);
-                particle.boundingRectRight = (int) NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_BOUNDING_RECT_RIGHT);
-                particle.boundingRectWidth = (int) NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_BOUNDING_RECT_WIDTH);// par.boundingRectRight
-                // -
-                // par.boundingRectLeft;
-                particle.center_mass_x = (int) NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_CENTER_OF_MASS_X);
-                particle.center_mass_y = (int) NIVision
-                        .imaqMeasureParticle(this.currentImage,
-                                particleIndex, 0,
-                                NIVision.MeasurementType.MT_CENTER_OF_MASS_Y);
-                particle.imageWidth = NIVision
-                        .imaqGetImageSize(this.currentImage).width;
-                particles.add(particle);
+                xOffset = this.regionOfInterest.getLeft();
+                yOffset = this.regionOfInterest.getTop();
+                imageWidth = this.regionOfInterest.getFullWidth();
+                imageHeight = this.regionOfInterest.getFullHeight();
+                percentAreaScale = ((double) imageSize.width
+                        * imageSize.height)
+                        / ((double) imageWidth * imageHeight);
                 }
-            particles.sort(null);
 
+            for (int particleIndex = 0; particleIndex < measurements.numParticles; particleIndex++)
+                {
+                final double[] values = measurements.pixelMeasurements[particleIndex];
+                // Only fill in the particle if it's one of the largest
+                final ParticleReport particle = this.largestParticles
+                        .offer(values[MEASURE_AREA]);
+                if (particle == null)
+                    continue;
+                particle.PercentAreaToImageArea = values[MEASURE_AREA_BY_IMAGE_AREA]
+                        * percentAreaScale;
+                particle.area = values[MEASURE_AREA];
+                particle.ConvexHullArea = values[MEASURE_CONVEX_HULL_AREA];
+                particle.boundingRectTop = (int) values[MEASURE_BOUNDING_RECT_TOP]
+                        + yOffset;
+                particle.boundingRectLeft = (int) values[MEASURE_BOUNDING_RECT_LEFT]
+                        + xOffset;
+                particle.boundingRectBottom = (int) values[MEASURE_BOUNDING_RECT_BOTTOM]
+                        + yOffset;
+                particle.boundingRectRight = (int) values[MEASURE_BOUNDING_RECT_RIGHT]
+                        + xOffset;
+                particle.boundingRectWidth = (int) values[MEASURE_BOUNDING_RECT_WIDTH];
+                particle.center_mass_x = (int) values[MEASURE_CENTER_OF_MASS_X]
+                        + xOffset;
+                particle.center_mass_y = (int) values[MEASURE_CENTER_OF_MASS_Y]
+                        + yOffset;
+                particle.imageWidth = imageWidth;
+                particle.imageHeight = imageHeight;
+                }
+            }
+        // Largest first, straight into the pre-built array of exactly the
+        // right length so reports.length is still the number of blobs.
+        final int numReports = this.largestParticles.size();
+        this.largestParticles.drainLargestFirst(
+                this.reportViews[numReports]);
+        this.reports = this.reportViews[numReports];
+        measurements.free();
+
+        // Let the tracker (or, without one, a tracking region of interest)
+        // follow the target
+        if (this.targetTracker != null)
+            {
+            this.targetTracker.update(this.reports, this.imageTimestamp);
+            }
+        else if (this.regionOfInterest != null)
+            {
+            if (numReports > 0)
+                this.regionOfInterest.trackTarget(
+                        this.reports[0].center_mass_x,
+                        this.reports[0].center_mass_y);
+            else
+                this.regionOfInterest.lostTarget();
             }
-        this.reports = new ParticleReport[particles.size()];
-        particles.copyInto(this.reports);
         }
 }
 
+/**
+ * Gives the processor a TargetTracker to update after every frame. If the
+ * tracker has a region of interest, the tracker moves it instead of the
+ * processor.
+ * 
+ * @param tracker
+ *            The tracker to update, or null to stop tracking.
+ */
+public void setTargetTracker (TargetTracker tracker)
+{
+    this.targetTracker = tracker;
+}
+
+/**
+ * @return
+ *         The TargetTracker updated after every frame, or null if there isn't
+ *         one.
+ */
+public TargetTracker getTargetTracker ()
+{
+    return this.targetTracker;
+}
+
+/**
+ * Sets the most particles we will keep reports on each frame. The largest
+ * particles are the ones that are kept, so set this to the number of blobs
+ * you actually look at (if you only ever use getNthSizeBlob(0..2), use 3).
+ * Don't call this every loop, it allocates the report objects.
+ * 
+ * @param maxParticles
+ *            The number of particles to keep, at least 1.
+ */
+public void setMaxParticles (int maxParticles)
+{
+    final int numReports = Math.max(1, maxParticles);
+    final ParticleReport[] pool = new ParticleReport[numReports];
+    final ParticleReport[][] views = new ParticleReport[numReports
+            + 1][];
+    for (int i = 0; i < numReports; i++)
+        {
+        pool[i] = new ParticleReport();
+        views[i] = new ParticleReport[i];
+        }
+    views[numReports] = new ParticleReport[numReports];
+    this.reportViews = views;
+    this.largestParticles = new ParticleHeap<ParticleReport>(pool);
+    this.reports = views[0];
+}
+
+/**
+ * @return
+ *         The most particles we will keep reports on each frame.
+ */
+public int getMaxParticles ()
+{
+    return this.largestParticles.capacity();
+}
+
 // TODO document the null handling
 /**
  * Finds the angle to the target to the right of center from the position of the
- * camera.
+ * camera. The blob's coordinates are always full-frame coordinates, even if
+ * the script has a RegionOfInterestOperator in it, so the crop doesn't change
+ * the angle.
  * 
  * @param target
  *            The blob we're targeting
@@ -575,9 +763,26 @@ public double getYawAngleToTarget (ParticleReport target)
     return 0.0;
 }
 
+/**
+ * The other way around from getYawAngleToTarget(): where (full-frame X, in
+ * pixels) something at a yaw angle shows up in the picture.
+ *
+ * @param yaw
+ *            The angle to the right of center (left is negative), in
+ *            radians
+ * @return
+ *         The X coordinate, in pixels. It can be off the picture.
+ */
+public double getXCoordinateAtYaw (double yaw)
+{
+    return Math.tan(yaw) * this.cameraFocalLengthPixels
+            + ((this.cameraXRes / 2) - .5);
+}
+
 /**
  * Finds the angle to the target above the horizontal from the height of the
- * camera.
+ * camera. Like getYawAngleToTarget, this works from full-frame coordinates
+ * whether or not the image was cropped.
  * 
  * @param target
  *            The blob to calculate the angle to.
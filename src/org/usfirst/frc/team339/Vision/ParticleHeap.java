@@ -0,0 +1,161 @@
+package org.usfirst.frc.team339.Vision;
+
+/**
+ * Keeps the K largest particles seen in a frame without sorting all of them.
+ *
+ * The heap owns a fixed set of report objects (whatever kind of particle
+ * report the processor uses) and a size for each one. offer() is called once
+ * per particle with its size; if the particle is one of the K largest so far,
+ * it hands back a report object for the caller to fill in. When the frame is
+ * done, drainLargestFirst() puts the kept reports in order.
+ *
+ * That makes a frame with n particles cost O(n log K) instead of sorting all
+ * n of them, and nothing is allocated after the heap is built.
+ *
+ * @param <T>
+ *            The particle report type
+ * @author Kilroy
+ *
+ */
+public class ParticleHeap<T>
+{
+
+/**
+ * Creates a heap that keeps the slots.length largest particles.
+ *
+ * @param slots
+ *            The report objects to reuse, one per particle we keep. Must all
+ *            be non-null and there must be at least one.
+ */
+public ParticleHeap (T[] slots)
+{
+    this.slots = slots;
+    this.sizes = new double[slots.length];
+    this.count = 0;
+}
+
+/**
+ * Empties the heap for a new frame. The report objects are kept.
+ */
+public void clear ()
+{
+    this.count = 0;
+}
+
+/**
+ * @return
+ *         How many particles are currently in the heap.
+ */
+public int size ()
+{
+    return this.count;
+}
+
+/**
+ * @return
+ *         The most particles this heap will keep.
+ */
+public int capacity ()
+{
+    return this.slots.length;
+}
+
+/**
+ * Offers a particle to the heap.
+ *
+ * @param particleSize
+ *            The size (usually area) of the particle
+ * @return
+ *         The report object to fill in with this particle's information, or
+ *         null if the particle isn't one of the largest and should be skipped.
+ *         The returned report may have old values in it from another
+ *         particle, so every field should be written.
+ */
+public T offer (double particleSize)
+{
+    if (this.count < this.slots.length)
+        {
+        // still room; add it at the bottom and sift it up
+        int child = this.count;
+        this.count++;
+        final T slot = this.slots[child];
+        while (child > 0)
+            {
+            final int parent = (child - 1) / 2;
+            if (this.sizes[parent] <= particleSize)
+                break;
+            this.slots[child] = this.slots[parent];
+            this.sizes[child] = this.sizes[parent];
+            child = parent;
+            }
+        this.slots[child] = slot;
+        this.sizes[child] = particleSize;
+        return slot;
+        }
+    if (particleSize <= this.sizes[0])
+        return null;
+    // bigger than the smallest one we have; reuse the smallest one's slot
+    final T slot = this.slots[0];
+    this.siftDown(slot, particleSize, this.count);
+    return slot;
+}
+
+/**
+ * Empties the heap into <out>, largest particle first.
+ *
+ * @param out
+ *            The array to write the reports into; must hold at least size()
+ *            reports.
+ * @return
+ *         The number of reports written.
+ */
+public int drainLargestFirst (T[] out)
+{
+    final int numParticles = this.count;
+    // Pull the smallest off the top each time and put it at the back, the
+    // same as a heap sort. The report objects stay in slots[] so they get
+    // reused next frame.
+    for (int end = numParticles - 1; end >= 0; end--)
+        {
+        final T smallest = this.slots[0];
+        final double smallestSize = this.sizes[0];
+        out[end] = smallest;
+        this.siftDown(this.slots[end], this.sizes[end], end);
+        this.slots[end] = smallest;
+        this.sizes[end] = smallestSize;
+        }
+    this.count = 0;
+    return numParticles;
+}
+
+/**
+ * Puts <slot> at the top of the first <heapSize> entries and moves it down
+ * until the heap is in order again.
+ */
+private void siftDown (T slot, double particleSize, int heapSize)
+{
+    int parent = 0;
+    while (true)
+        {
+        int child = (2 * parent) + 1;
+        if (child >= heapSize)
+            break;
+        if (child + 1 < heapSize
+                && this.sizes[child + 1] < this.sizes[child])
+            child++;
+        if (particleSize <= this.sizes[child])
+            break;
+        this.slots[parent] = this.slots[child];
+        this.sizes[parent] = this.sizes[child];
+        parent = child;
+        }
+    this.slots[parent] = slot;
+    this.sizes[parent] = particleSize;
+}
+
+private final T[] slots;
+
+private final double[] sizes;
+
+private int count;
+}
@@ -0,0 +1,448 @@
+package org.usfirst.frc.team339.Vision;
+
+import org.usfirst.frc.team339.Vision.ImageProcessor.ParticleReport;
+import org.usfirst.frc.team339.Vision.operators.RegionOfInterestOperator;
+
+/**
+ * Follows one target (the goal) from frame to frame instead of starting over
+ * every picture.
+ *
+ * The target's center of mass and bounding rectangle size are each run
+ * through a small Kalman filter (position and velocity), which smooths out
+ * the jitter in the blob coordinates and lets us predict where the goal will
+ * be in the next frame. Each frame, the blob closest to the prediction is
+ * taken as the target, as long as it's close enough to be believable.
+ *
+ * If a RegionOfInterestOperator is given, the next frame is cropped to a
+ * window around the prediction, sized by how sure the filter is. After
+ * <maxMisses> frames in a row without a believable blob the lock is dropped
+ * and the region goes back to its default, full search area. The lock is
+ * also dropped if there's been no frame for longer than <maxGap> seconds
+ * (the camera was off, or we weren't processing), as the robot could have
+ * moved anywhere since.
+ *
+ * Give it to the ImageProcessor with setTargetTracker() and it will be
+ * updated every frame.
+ *
+ * @author Kilroy
+ *
+ */
+public class TargetTracker
+{
+
+/**
+ * A constant velocity Kalman filter for one coordinate.
+ */
+private static class Axis
+{
+private double position = 0.0;
+
+private double velocity = 0.0;
+
+// covariance matrix [[p00, p01], [p01, p11]]
+private double p00 = 0.0;
+
+private double p01 = 0.0;
+
+private double p11 = 0.0;
+
+// the variance of the last innovation, used to gate measurements
+private double innovationVariance = 0.0;
+
+private void reset (double measurement, double positionVariance,
+        double velocityVariance)
+{
+    this.position = measurement;
+    this.velocity = 0.0;
+    this.p00 = positionVariance;
+    this.p01 = 0.0;
+    this.p11 = velocityVariance;
+}
+
+private void predict (double dt, double accelerationNoise)
+{
+    this.position += this.velocity * dt;
+    // P = F P F' + Q, with Q for a random acceleration
+    final double dt2 = dt * dt;
+    final double q = accelerationNoise;
+    this.p00 += (2 * dt * this.p01) + (dt2 * this.p11)
+            + (q * dt2 * dt2 / 4);
+    this.p01 += (dt * this.p11) + (q * dt2 * dt / 2);
+    this.p11 += q * dt2;
+}
+
+private double getInnovationVariance (double measurementNoise)
+{
+    return this.p00 + measurementNoise;
+}
+
+private void correct (double measurement, double measurementNoise)
+{
+    this.innovationVariance = this.p00 + measurementNoise;
+    final double k0 = this.p00 / this.innovationVariance;
+    final double k1 = this.p01 / this.innovationVariance;
+    final double innovation = measurement - this.position;
+    this.position += k0 * innovation;
+    this.velocity += k1 * innovation;
+    final double newP00 = (1 - k0) * this.p00;
+    final double newP01 = (1 - k0) * this.p01;
+    this.p11 -= k1 * this.p01;
+    this.p00 = newP00;
+    this.p01 = newP01;
+}
+
+private double predictPosition (double dt)
+{
+    return this.position + (this.velocity * dt);
+}
+}
+
+/**
+ * Creates a tracker that doesn't crop the image.
+ */
+public TargetTracker ()
+{
+    this(null);
+}
+
+/**
+ * Creates a tracker that moves <searchRegion> to follow the target.
+ *
+ * @param searchRegion
+ *            The region of interest operator in the vision script, or null
+ *            to always search the whole frame.
+ */
+public TargetTracker (RegionOfInterestOperator searchRegion)
+{
+    this.searchRegion = searchRegion;
+}
+
+/**
+ * Drops the lock; the next blob we see starts a new track.
+ */
+public void reset ()
+{
+    this.locked = false;
+    this.misses = 0;
+    if (this.searchRegion != null)
+        this.searchRegion.lostTarget();
+}
+
+/**
+ * Updates the tracker with the blobs from a new frame. Called by the
+ * ImageProcessor after each frame.
+ *
+ * @param blobs
+ *            The blobs from the frame, largest first, in full-frame
+ *            coordinates.
+ * @param timestamp
+ *            The time, in seconds, the frame was captured.
+ * @return
+ *         true if we have a lock on the target after this frame.
+ */
+public boolean update (ParticleReport[] blobs, double timestamp)
+{
+    // too long since the last frame for the prediction to mean anything
+    if (this.locked == true && timestamp - this.lastTimestamp > this.maxGap)
+        this.reset();
+
+    if (this.locked == true)
+        {
+        final double dt = Math.max(0.0, timestamp - this.lastTimestamp);
+        // keep a running guess at how often we get frames, for the search
+        // window
+        if (dt > 0.0)
+            this.framePeriod += FRAME_PERIOD_SMOOTHING
+                    * (dt - this.framePeriod);
+        this.centerX.predict(dt, this.accelerationNoise);
+        this.centerY.predict(dt, this.accelerationNoise);
+        this.width.predict(dt, this.accelerationNoise);
+        this.height.predict(dt, this.accelerationNoise);
+
+        final ParticleReport match = this.findMatch(blobs);
+        if (match != null)
+            {
+            this.correct(match);
+            this.misses = 0;
+            }
+        else
+            {
+            this.misses++;
+            if (this.misses > this.maxMisses)
+                {
+                this.locked = false;
+                }
+            }
+        }
+    else if (blobs.length > 0)
+        {
+        // Nothing being tracked; start on the largest blob
+        final ParticleReport largest = blobs[0];
+        this.centerX.reset(largest.center_mass_x,
+                this.measurementNoise, INITIAL_VELOCITY_VARIANCE);
+        this.centerY.reset(largest.center_mass_y,
+                this.measurementNoise, INITIAL_VELOCITY_VARIANCE);
+        this.width.reset(largest.boundingRectRight
+                - largest.boundingRectLeft,
+                this.measurementNoise, INITIAL_VELOCITY_VARIANCE);
+        this.height.reset(largest.boundingRectBottom
+                - largest.boundingRectTop,
+                this.measurementNoise, INITIAL_VELOCITY_VARIANCE);
+        this.copyExtras(largest);
+        this.locked = true;
+        this.misses = 0;
+        }
+    this.lastTimestamp = timestamp;
+    this.updateTarget();
+    this.updateSearchRegion();
+    return this.locked;
+}
+
+/**
+ * @return
+ *         true if we're currently tracking the target.
+ */
+public boolean isLocked ()
+{
+    return this.locked;
+}
+
+/**
+ * @return
+ *         The tracked target with its filtered center and bounding rectangle,
+ *         or null if we don't have a lock. This object is reused every
+ *         frame; copy() it if it has to be handed to another thread.
+ */
+public ParticleReport getTarget ()
+{
+    if (this.locked == true)
+        return this.target;
+    return null;
+}
+
+/**
+ * @return
+ *         The time, in seconds, of the frame the tracker was last updated
+ *         with.
+ */
+public double getLastTimestamp ()
+{
+    return this.lastTimestamp;
+}
+
+/**
+ * Predicts where the center of the target will be.
+ *
+ * @param timestamp
+ *            The time, in seconds, to predict for.
+ * @return
+ *         The predicted x coordinate of the target's center, in pixels.
+ */
+public double predictX (double timestamp)
+{
+    return this.centerX.predictPosition(timestamp - this.lastTimestamp);
+}
+
+/**
+ * Predicts where the center of the target will be.
+ *
+ * @param timestamp
+ *            The time, in seconds, to predict for.
+ * @return
+ *         The predicted y coordinate of the target's center, in pixels.
+ */
+public double predictY (double timestamp)
+{
+    return this.centerY.predictPosition(timestamp - this.lastTimestamp);
+}
+
+/**
+ * Sets how many frames in a row we can miss the target before giving up on
+ * it and searching the whole frame again.
+ *
+ * @param maxMisses
+ *            The number of missed frames allowed
+ */
+public void setMaxMisses (int maxMisses)
+{
+    this.maxMisses = maxMisses;
+}
+
+/**
+ * Sets how long we can go without a frame before the lock is dropped and the
+ * next blob starts a new track.
+ *
+ * @param maxGap
+ *            The longest gap between frames, in seconds
+ */
+public void setMaxGap (double maxGap)
+{
+    this.maxGap = maxGap;
+}
+
+/**
+ * Tunes the filter.
+ *
+ * @param measurementNoise
+ *            How much the blob coordinates jitter, as a variance in pixels
+ *            squared. Bigger values smooth more but lag more.
+ * @param accelerationNoise
+ *            How hard the target can change speed across the image, as a
+ *            variance in (pixels/s^2)^2. Bigger values follow turns faster.
+ */
+public void setNoise (double measurementNoise,
+        double accelerationNoise)
+{
+    this.measurementNoise = measurementNoise;
+    this.accelerationNoise = accelerationNoise;
+}
+
+/**
+ * Sets how far, in standard deviations of the prediction, a blob can be and
+ * still count as the target.
+ *
+ * @param gateSigmas
+ *            The gate size, in standard deviations
+ */
+public void setGate (double gateSigmas)
+{
+    this.gateSigmas = gateSigmas;
+}
+
+/**
+ * Finds the blob closest to the prediction that is within the gate.
+ */
+private ParticleReport findMatch (ParticleReport[] blobs)
+{
+    final double varianceX = this.centerX
+            .getInnovationVariance(this.measurementNoise);
+    final double varianceY = this.centerY
+            .getInnovationVariance(this.measurementNoise);
+    ParticleReport best = null;
+    double bestDistance = this.gateSigmas * this.gateSigmas;
+    for (int i = 0; i < blobs.length; i++)
+        {
+        final double dx = blobs[i].center_mass_x
+                - this.centerX.position;
+        final double dy = blobs[i].center_mass_y
+                - this.centerY.position;
+        // squared distance in standard deviations
+        final double distance = ((dx * dx) / varianceX)
+                + ((dy * dy) / varianceY);
+        if (distance <= bestDistance)
+            {
+            best = blobs[i];
+            bestDistance = distance;
+            }
+        }
+    return best;
+}
+
+private void correct (ParticleReport match)
+{
+    this.centerX.correct(match.center_mass_x, this.measurementNoise);
+    this.centerY.correct(match.center_mass_y, this.measurementNoise);
+    this.width.correct(
+            match.boundingRectRight - match.boundingRectLeft,
+            this.measurementNoise);
+    this.height.correct(
+            match.boundingRectBottom - match.boundingRectTop,
+            this.measurementNoise);
+    this.copyExtras(match);
+}
+
+/**
+ * Copies the values we don't filter from the blob we matched.
+ */
+private void copyExtras (ParticleReport match)
+{
+    this.target.area = match.area;
+    this.target.ConvexHullArea = match.ConvexHullArea;
+    this.target.PercentAreaToImageArea = match.PercentAreaToImageArea;
+    this.target.imageWidth = match.imageWidth;
+    this.target.imageHeight = match.imageHeight;
+}
+
+/**
+ * Writes the filtered values into the target report.
+ */
+private void updateTarget ()
+{
+    final int halfWidth = (int) Math.round(this.width.position / 2);
+    final int halfHeight = (int) Math.round(this.height.position / 2);
+    this.target.center_mass_x = (int) Math.round(this.centerX.position);
+    this.target.center_mass_y = (int) Math.round(this.centerY.position);
+    this.target.boundingRectLeft = this.target.center_mass_x - halfWidth;
+    this.target.boundingRectRight = this.target.center_mass_x
+            + halfWidth;
+    this.target.boundingRectTop = this.target.center_mass_y - halfHeight;
+    this.target.boundingRectBottom = this.target.center_mass_y
+            + halfHeight;
+    this.target.boundingRectWidth = 2 * halfWidth;
+}
+
+/**
+ * Points the region of interest at where we expect the target in the next
+ * frame, or gives it the full search area back if we lost it.
+ */
+private void updateSearchRegion ()
+{
+    if (this.searchRegion == null)
+        return;
+    if (this.locked == false)
+        {
+        this.searchRegion.lostTarget();
+        return;
+        }
+    final double nextX = this.centerX.predictPosition(this.framePeriod);
+    final double nextY = this.centerY.predictPosition(this.framePeriod);
+    // the target, plus room for how unsure we are where it will be
+    final double marginX = this.gateSigmas
+            * Math.sqrt(this.centerX.p00 + this.measurementNoise);
+    final double marginY = this.gateSigmas
+            * Math.sqrt(this.centerY.p00 + this.measurementNoise);
+    this.searchRegion.trackTarget((int) nextX, (int) nextY,
+            (int) (Math.abs(this.width.position) + (2 * marginX)),
+            (int) (Math.abs(this.height.position) + (2 * marginY)));
+}
+
+// how much of each new frame period goes into the running average
+private static final double FRAME_PERIOD_SMOOTHING = .2;
+
+// how unsure we are of the target's speed when we first see it
+private static final double INITIAL_VELOCITY_VARIANCE = 10000.0;
+
+private final RegionOfInterestOperator searchRegion;
+
+private final Axis centerX = new Axis();
+
+private final Axis centerY = new Axis();
+
+private final Axis width = new Axis();
+
+private final Axis height = new Axis();
+
+// reused every frame
+private final ParticleReport target = new ParticleReport();
+
+private boolean locked = false;
+
+private int misses = 0;
+
+private int maxMisses = 3;
+
+// a handful of frames at 15 fps
+private double maxGap = 0.5;
+
+private double lastTimestamp = 0.0;
+
+private double framePeriod = 1.0 / 15.0;
+
+// pixels squared
+private double measurementNoise = 4.0;
+
+// (pixels/s^2)^2
+private double accelerationNoise = 250000.0;
+
+private double gateSigmas = 4.0;
+}
@@ -0,0 +1,369 @@
+package org.usfirst.frc.team339.Vision;
+
+import org.usfirst.frc.team339.Vision.ImageProcessor.ParticleReport;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Runs an ImageProcessor on its own thread so the robot loop never has to wait
+ * on NIVision. The worker grabs frames from the processor's camera, runs the
+ * VisionScript on them and publishes the blobs it finds as a Snapshot.
+ *
+ * Snapshots are never changed once they are published, so the robot loop can
+ * read the latest one at any time without locking.
+ *
+ * Usage: call start() once (robotInit), then setEnabled(true) while you
+ * actually want pictures processed, and read getLatestResult() or
+ * getResultSince() from the periodic code.
+ *
+ * @author Kilroy
+ *
+ */
+public class VisionWorker implements Runnable
+{
+
+/**
+ * One processed frame. Holds copies of the blobs the ImageProcessor found,
+ * largest first, along with when the frame was captured and when it finished
+ * processing (both in FPGA seconds).
+ *
+ * @author Kilroy
+ *
+ */
+public static class Snapshot
+{
+private final ParticleReport[] reports;
+
+private final double captureTime;
+
+private final double processedTime;
+
+private final int frameNumber;
+
+private final ParticleReport trackedTarget;
+
+private Snapshot (ParticleReport[] reports, ParticleReport trackedTarget,
+        double captureTime, double processedTime, int frameNumber)
+{
+    this.reports = reports;
+    this.trackedTarget = trackedTarget;
+    this.captureTime = captureTime;
+    this.processedTime = processedTime;
+    this.frameNumber = frameNumber;
+}
+
+/**
+ * @return
+ *         The blobs found in this frame, largest first. DO NOT modify the
+ *         array or its reports, other threads may be reading them.
+ */
+public ParticleReport[] getReports ()
+{
+    return this.reports;
+}
+
+/**
+ * @return
+ *         How many blobs were found in this frame
+ */
+public int getNumBlobs ()
+{
+    return this.reports.length;
+}
+
+/**
+ * @param n
+ *            The size rank of the blob, 0 being the largest
+ * @return
+ *         The nth largest blob, or null if there aren't that many.
+ */
+public ParticleReport getNthSizeBlob (int n)
+{
+    if (n >= 0 && n < this.reports.length)
+        return this.reports[n];
+    return null;
+}
+
+/**
+ * @return
+ *         The largest blob in the frame, or null if there are none.
+ */
+public ParticleReport getLargestBlob ()
+{
+    return this.getNthSizeBlob(0);
+}
+
+/**
+ * @return
+ *         The target as filtered by the processor's TargetTracker, or null if
+ *         there is no tracker or it didn't have a lock on this frame. Steadier
+ *         than the raw blobs, so prefer it for aiming.
+ */
+public ParticleReport getTrackedTarget ()
+{
+    return this.trackedTarget;
+}
+
+/**
+ * @return
+ *         The FPGA time, in seconds, the frame was pulled from the camera.
+ */
+public double getCaptureTime ()
+{
+    return this.captureTime;
+}
+
+/**
+ * @return
+ *         The FPGA time, in seconds, the frame was done being processed.
+ */
+public double getProcessedTime ()
+{
+    return this.processedTime;
+}
+
+/**
+ * @return
+ *         How many frames the worker had processed when this one was
+ *         published. 0 means nothing has been processed yet.
+ */
+public int getFrameNumber ()
+{
+    return this.frameNumber;
+}
+
+/**
+ * @return
+ *         How old the frame is right now, in seconds.
+ */
+public double getAge ()
+{
+    return Timer.getFPGATimestamp() - this.captureTime;
+}
+}
+
+/**
+ * Creates a vision worker. Does not start the thread, call start() for that.
+ *
+ * @param processor
+ *            The ImageProcessor to run in the background. Nothing else should
+ *            call processImage() on it once the worker is started.
+ */
+public VisionWorker (ImageProcessor processor)
+{
+    this(processor, DEFAULT_IDLE_PERIOD_MS);
+}
+
+/**
+ * Creates a vision worker. Does not start the thread, call start() for that.
+ *
+ * @param processor
+ *            The ImageProcessor to run in the background. Nothing else should
+ *            call processImage() on it once the worker is started.
+ * @param idlePeriodMs
+ *            How long, in milliseconds, the worker sleeps between checks for
+ *            a new frame when the camera didn't have a fresh one or the
+ *            worker is disabled.
+ */
+public VisionWorker (ImageProcessor processor, long idlePeriodMs)
+{
+    this.processor = processor;
+    this.idlePeriodMs = idlePeriodMs;
+}
+
+/**
+ * Starts the worker thread, if it isn't running already. The worker won't
+ * process anything until setEnabled(true) is called.
+ */
+public synchronized void start ()
+{
+    if (this.thread == null)
+        {
+        this.running = true;
+        this.thread = new Thread(this, "VisionWorker");
+        this.thread.setDaemon(true);
+        // the control loop is more important than vision
+        this.thread.setPriority(Thread.NORM_PRIORITY - 1);
+        this.thread.start();
+        }
+}
+
+/**
+ * Stops the worker thread. The last published snapshot stays available.
+ */
+public synchronized void stop ()
+{
+    this.running = false;
+    if (this.thread != null)
+        {
+        this.thread.interrupt();
+        this.thread = null;
+        }
+}
+
+/**
+ * @return
+ *         true if the worker thread has been started and not stopped.
+ */
+public boolean isRunning ()
+{
+    return this.running;
+}
+
+/**
+ * Tells the worker whether or not to process frames. Turn it off when no one
+ * is looking at the camera so we don't burn the roboRIO's CPU on NIVision.
+ * Turning it on starts the processor's TargetTracker over, so a lock (and
+ * search region) from the last time doesn't carry over.
+ *
+ * @param enabled
+ *            true to process frames, false to idle.
+ */
+public void setEnabled (boolean enabled)
+{
+    if (enabled == true && this.enabled == false)
+        {
+        // the worker thread does the reset, as it's the one using the
+        // tracker
+        this.trackerResetRequested = true;
+        }
+    this.enabled = enabled;
+}
+
+/**
+ * @return
+ *         Whether or not the worker is processing frames.
+ */
+public boolean isEnabled ()
+{
+    return this.enabled;
+}
+
+/**
+ * @return
+ *         The most recently published snapshot. Never null; before the first
+ *         frame is processed this is an empty snapshot with frame number 0.
+ */
+public Snapshot getLatestResult ()
+{
+    return this.latest;
+}
+
+/**
+ * Gets the latest snapshot, but only if its frame was captured at or after
+ * <timestamp>. Use this when the robot has just moved and an older picture
+ * would be wrong.
+ *
+ * @param timestamp
+ *            The FPGA time, in seconds, the frame must be newer than.
+ * @return
+ *         The latest snapshot, or null if the worker has not produced a new
+ *         enough one yet.
+ */
+public Snapshot getResultSince (double timestamp)
+{
+    final Snapshot current = this.latest;
+    if (current.frameNumber > 0 && current.captureTime >= timestamp)
+        return current;
+    return null;
+}
+
+/**
+ * @return
+ *         How old, in seconds, the latest published frame is.
+ */
+public double getResultAge ()
+{
+    return this.latest.getAge();
+}
+
+/**
+ * The worker loop. Don't call this directly, use start().
+ */
+@Override
+public void run ()
+{
+    while (this.running == true
+            && Thread.currentThread().isInterrupted() == false)
+        {
+        boolean processedFrame = false;
+        if (this.enabled == true)
+            {
+            if (this.trackerResetRequested == true)
+                {
+                this.trackerResetRequested = false;
+                final TargetTracker tracker = this.processor
+                        .getTargetTracker();
+                if (tracker != null)
+                    tracker.reset();
+                }
+            try
+                {
+                processedFrame = this.processor.processImage();
+                if (processedFrame == true)
+                    {
+                    this.publish();
+                    }
+                }
+            catch (final RuntimeException e)
+                {
+                // Never let a bad frame kill the thread
+                e.printStackTrace();
+                }
+            }
+        if (processedFrame == false)
+            {
+            try
+                {
+                Thread.sleep(this.idlePeriodMs);
+                }
+            catch (final InterruptedException e)
+                {
+                // stop() interrupts us; keep the flag so the loop exits.
+                Thread.currentThread().interrupt();
+                }
+            }
+        }
+}
+
+/**
+ * Copies the processor's reports into a new snapshot and swaps it in.
+ */
+private void publish ()
+{
+    final ParticleReport[] source = this.processor.reports;
+    final ParticleReport[] copies = new ParticleReport[source.length];
+    for (int i = 0; i < source.length; i++)
+        {
+        copies[i] = source[i].copy();
+        }
+    ParticleReport trackedTarget = null;
+    final TargetTracker tracker = this.processor.getTargetTracker();
+    if (tracker != null && tracker.isLocked() == true)
+        trackedTarget = tracker.getTarget().copy();
+    this.frameCount++;
+    this.latest = new Snapshot(copies, trackedTarget,
+            this.processor.getImageTimestamp(),
+            Timer.getFPGATimestamp(), this.frameCount);
+}
+
+private static final long DEFAULT_IDLE_PERIOD_MS = 10;
+
+private final ImageProcessor processor;
+
+private final long idlePeriodMs;
+
+private Thread thread = null;
+
+private volatile boolean running = false;
+
+private volatile boolean enabled = false;
+
+// set by setEnabled(true), done by the worker thread
+private volatile boolean trackerResetRequested = false;
+
+private volatile Snapshot latest = new Snapshot(new ParticleReport[0],
+        null, 0.0, 0.0, 0);
+
+// only touched by the worker thread
+private int frameCount = 0;
+}
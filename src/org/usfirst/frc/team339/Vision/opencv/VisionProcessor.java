@@ -1,7 +1,6 @@
 package org.usfirst.frc.team339.Vision.opencv;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import org.opencv.core.Mat;
@@ -10,6 +9,7 @@ import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
+import org.usfirst.frc.team339.Vision.ParticleHeap;
 import edu.wpi.cscore.VideoCamera;
 import edu.wpi.first.wpilibj.CameraServer;
 
@@ -152,6 +152,15 @@ private Mat image = new Mat(); // The stored "image" (in a matrix format)
 
 private ParticleReport[] particleReports = new ParticleReport[0];
 
+// The default number of blobs kept each frame
+private static final int DEFAULT_MAX_BLOBS = 10;
+
+// Picks the largest blobs each frame and owns the reusable report objects
+private ParticleHeap<ParticleReport> largestBlobs = null;
+
+// reportViews[n] is an array of length n; particleReports points to one
+private ParticleReport[][] reportViews = null;
+
 private final int horizontalFieldOfView;
 
 private final int verticalFieldOfView;
@@ -195,6 +204,7 @@ public VisionProcessor (String ip, CameraModel camera)
             this.verticalFieldOfView = 1;
         }
 
+    this.setMaxBlobs(DEFAULT_MAX_BLOBS);
 }
 
 /**
@@ -229,6 +239,7 @@ public VisionProcessor (int usbPort, CameraModel camera)
             this.verticalFieldOfView = 1;
         }
 
+    this.setMaxBlobs(DEFAULT_MAX_BLOBS);
 }
 
 // ==========================END INIT===================================
@@ -261,9 +272,8 @@ public void processImage ()
     super.process(image);
     // If this throws an error, make sure the GRIP project ends with a
     // filterContours function.
+    // This also keeps only the largest blobs, largest first.
     this.createParticleReports(super.filterContoursOutput());
-    // Sort the particles from largest to smallest
-    Arrays.sort(particleReports);
     // for (int i = 0; i < particleReports.length; i++)
     // {
     // System.out.println(i + " " + particleReports[i].area);
@@ -435,26 +445,65 @@ public ParticleReport getNthSizeBlob (int n)
 
 /**
  * Takes the base OpenCV list of contours and changes the output to be easier to
- * work with.
+ * work with. Only the <maxBlobs> largest contours are kept, in descending order
+ * of size; they are picked with a heap so the rest never get sorted, and the
+ * report objects are reused from frame to frame.
  * 
  * @param contours
  *            The input from the base OpenCV contours output
  */
 private void createParticleReports (List<MatOfPoint> contours)
 {
-    ParticleReport[] reports = new ParticleReport[contours.size()];
-
-    for (int i = 0; i < reports.length; i++)
+    this.largestBlobs.clear();
+    for (int i = 0; i < contours.size(); i++)
         {
-        reports[i] = new ParticleReport();
         Rect r = Imgproc.boundingRect(contours.get(i));
-        reports[i].area = r.area();
-        reports[i].center = new Point(r.x + (r.width / 2),
-                r.y + (r.height / 2));
-        reports[i].boundingRect = r;
+        ParticleReport report = this.largestBlobs.offer(r.area());
+        if (report == null)
+            continue;
+        report.area = r.area();
+        report.center.x = r.x + (r.width / 2);
+        report.center.y = r.y + (r.height / 2);
+        report.boundingRect = r;
         }
 
-    this.particleReports = reports;
+    // Write them largest first into the pre-built array of the right length
+    int numReports = this.largestBlobs.size();
+    this.largestBlobs.drainLargestFirst(this.reportViews[numReports]);
+    this.particleReports = this.reportViews[numReports];
+}
+
+/**
+ * Sets how many blobs are kept each frame. Only the largest are kept, so set
+ * this to the number of blobs you actually use (if you only ever call
+ * getNthSizeBlob(0..2), use 3). Don't call this every loop, it allocates the
+ * report objects.
+ * 
+ * @param maxBlobs
+ *            How many blobs to keep, at least 1.
+ */
+public void setMaxBlobs (int maxBlobs)
+{
+    int numReports = Math.max(1, maxBlobs);
+    ParticleReport[] pool = new ParticleReport[numReports];
+    ParticleReport[][] views = new ParticleReport[numReports + 1][];
+    for (int i = 0; i < numReports; i++)
+        {
+        pool[i] = new ParticleReport();
+        views[i] = new ParticleReport[i];
+        }
+    views[numReports] = new ParticleReport[numReports];
+    this.reportViews = views;
+    this.largestBlobs = new ParticleHeap<ParticleReport>(pool);
+    this.particleReports = views[0];
+}
+
+/**
+ * @return how many blobs are kept each frame.
+ */
+public int getMaxBlobs ()
+{
+    return this.largestBlobs.capacity();
 }
 
 /**
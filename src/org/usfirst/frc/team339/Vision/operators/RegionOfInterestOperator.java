@@ -0,0 +1,291 @@
+package org.usfirst.frc.team339.Vision.operators;
+
+import com.ni.vision.NIVision;
+import com.ni.vision.NIVision.Image;
+import com.ni.vision.NIVision.ImageType;
+
+/**
+ * Crops the image down to a region of interest so that the operators after it
+ * only threshold and morph the part of the picture the goal can actually be
+ * in. Put it first in the VisionScript.
+ *
+ * The region is given as fractions of the frame (0.0 to 1.0), so it works at
+ * any camera resolution. After every frame, getLeft() and getTop() give the
+ * pixel offset of the crop, which the ImageProcessor adds back on to the
+ * blobs so their coordinates are still full-frame coordinates.
+ *
+ * If tracking is turned on, the processor calls trackTarget() with the last
+ * blob it found (or a TargetTracker calls it with where it expects the target
+ * next) and the next frame is cropped to a smaller window around it.
+ * When the target is lost the region goes back to the default one.
+ *
+ * @author Kilroy
+ */
+public class RegionOfInterestOperator implements VisionOperatorInterface
+{
+
+/**
+ * Creates a region of interest operator for the color images we get from the
+ * camera (HSL).
+ *
+ * @param left
+ *            The left edge of the region, as a fraction of the image width.
+ * @param top
+ *            The top edge of the region, as a fraction of the image height.
+ * @param width
+ *            The width of the region, as a fraction of the image width.
+ * @param height
+ *            The height of the region, as a fraction of the image height.
+ */
+public RegionOfInterestOperator (double left, double top, double width,
+        double height)
+{
+    this(ImageType.IMAGE_HSL, left, top, width, height);
+}
+
+/**
+ * Creates a region of interest operator.
+ *
+ * @param imageType
+ *            The type of image this operator will be given (and hand back).
+ * @param left
+ *            The left edge of the region, as a fraction of the image width.
+ * @param top
+ *            The top edge of the region, as a fraction of the image height.
+ * @param width
+ *            The width of the region, as a fraction of the image width.
+ * @param height
+ *            The height of the region, as a fraction of the image height.
+ */
+public RegionOfInterestOperator (ImageType imageType, double left,
+        double top, double width, double height)
+{
+    this.imageType = imageType;
+    this.defaultLeft = clamp(left);
+    this.defaultTop = clamp(top);
+    this.defaultWidth = clamp(width);
+    this.defaultHeight = clamp(height);
+}
+
+/**
+ * Turns on tracking. While we have a target, each frame is cropped to a
+ * window of this size centered on where the target was in the last frame.
+ *
+ * @param windowWidth
+ *            The width of the tracking window, as a fraction of the image
+ *            width.
+ * @param windowHeight
+ *            The height of the tracking window, as a fraction of the image
+ *            height.
+ */
+public void enableTracking (double windowWidth, double windowHeight)
+{
+    this.trackWidth = clamp(windowWidth);
+    this.trackHeight = clamp(windowHeight);
+    this.tracking = true;
+}
+
+/**
+ * Turns tracking off and goes back to the default region.
+ */
+public void disableTracking ()
+{
+    this.tracking = false;
+    this.hasTarget = false;
+}
+
+/**
+ * @return
+ *         Whether or not this operator moves its window to follow the target.
+ */
+public boolean isTracking ()
+{
+    return this.tracking;
+}
+
+/**
+ * Tells the operator where the target was in the last frame, in full-frame
+ * pixel coordinates. Does nothing if tracking is off.
+ *
+ * @param centerX
+ *            The x coordinate of the target's center
+ * @param centerY
+ *            The y coordinate of the target's center
+ */
+public void trackTarget (int centerX, int centerY)
+{
+    if (this.tracking == true)
+        {
+        this.targetX = centerX;
+        this.targetY = centerY;
+        this.targetWindowWidth = -1;
+        this.targetWindowHeight = -1;
+        this.hasTarget = true;
+        }
+}
+
+/**
+ * Tells the operator where to look in the next frame, with a window size in
+ * pixels instead of the one from enableTracking(). Used by the TargetTracker,
+ * which knows how big the target is and how sure it is of where it will be.
+ * Does nothing if tracking is off.
+ *
+ * @param centerX
+ *            The x coordinate of the center of the window
+ * @param centerY
+ *            The y coordinate of the center of the window
+ * @param windowWidth
+ *            The width of the window, in pixels
+ * @param windowHeight
+ *            The height of the window, in pixels
+ */
+public void trackTarget (int centerX, int centerY, int windowWidth,
+        int windowHeight)
+{
+    if (this.tracking == true)
+        {
+        this.targetX = centerX;
+        this.targetY = centerY;
+        this.targetWindowWidth = windowWidth;
+        this.targetWindowHeight = windowHeight;
+        this.hasTarget = true;
+        }
+}
+
+/**
+ * Tells the operator we lost the target, so the next frame uses the default
+ * region again.
+ */
+public void lostTarget ()
+{
+    this.hasTarget = false;
+}
+
+/**
+ * @return
+ *         The x pixel offset of the last crop in the full frame.
+ */
+public int getLeft ()
+{
+    return this.rect.left;
+}
+
+/**
+ * @return
+ *         The y pixel offset of the last crop in the full frame.
+ */
+public int getTop ()
+{
+    return this.rect.top;
+}
+
+/**
+ * @return
+ *         The width of the full frame the last crop was taken from.
+ */
+public int getFullWidth ()
+{
+    return this.fullWidth;
+}
+
+/**
+ * @return
+ *         The height of the full frame the last crop was taken from.
+ */
+public int getFullHeight ()
+{
+    return this.fullHeight;
+}
+
+@Override
+public Image operate (Image Source)
+{
+    final NIVision.GetImageSizeResult size = NIVision
+            .imaqGetImageSize(Source);
+    this.fullWidth = size.width;
+    this.fullHeight = size.height;
+
+    if (this.tracking == true && this.hasTarget == true)
+        {
+        int width = (int) (this.trackWidth * size.width);
+        int height = (int) (this.trackHeight * size.height);
+        if (this.targetWindowWidth > 0 && this.targetWindowHeight > 0)
+            {
+            width = this.targetWindowWidth;
+            height = this.targetWindowHeight;
+            }
+        this.setRect(this.targetX - (width / 2),
+                this.targetY - (height / 2), width, height, size);
+        }
+    else
+        {
+        this.setRect((int) (this.defaultLeft * size.width),
+                (int) (this.defaultTop * size.height),
+                (int) (this.defaultWidth * size.width),
+                (int) (this.defaultHeight * size.height), size);
+        }
+
+    // Scaling by 1 with a rectangle just copies that rectangle out
+    final Image cropped = NIVision.imaqCreateImage(this.imageType, 0);
+    NIVision.imaqScale(cropped, Source, 1, 1,
+            NIVision.ScalingMode.SCALE_LARGER, this.rect);
+    Source.free();
+    return cropped;
+}
+
+/**
+ * Sets the crop rectangle, keeping it inside the image.
+ */
+private void setRect (int left, int top, int width, int height,
+        NIVision.GetImageSizeResult size)
+{
+    final int clampedWidth = Math.max(1, Math.min(width, size.width));
+    final int clampedHeight = Math.max(1,
+            Math.min(height, size.height));
+    this.rect.left = Math.max(0,
+            Math.min(left, size.width - clampedWidth));
+    this.rect.top = Math.max(0,
+            Math.min(top, size.height - clampedHeight));
+    this.rect.width = clampedWidth;
+    this.rect.height = clampedHeight;
+}
+
+private static double clamp (double fraction)
+{
+    return Math.max(0.0, Math.min(1.0, fraction));
+}
+
+private final ImageType imageType;
+
+private final double defaultLeft;
+
+private final double defaultTop;
+
+private final double defaultWidth;
+
+private final double defaultHeight;
+
+private double trackWidth = 1.0;
+
+private double trackHeight = 1.0;
+
+private boolean tracking = false;
+
+private boolean hasTarget = false;
+
+private int targetX = 0;
+
+private int targetY = 0;
+
+// window size in pixels from the tracker; -1 means use trackWidth/Height
+private int targetWindowWidth = -1;
+
+private int targetWindowHeight = -1;
+
+private int fullWidth = 0;
+
+private int fullHeight = 0;
+
+// reused every frame
+private final NIVision.Rect rect = new NIVision.Rect(0, 0, 0, 0);
+}
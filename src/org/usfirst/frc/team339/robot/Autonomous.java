@@ -33,10 +33,16 @@ package org.usfirst.frc.team339.robot;
 
 import org.usfirst.frc.team339.Hardware.Hardware;
 import org.usfirst.frc.team339.HardwareInterfaces.transmission.Transmission_old.debugStateValues;
+import org.usfirst.frc.team339.Utils.AutoEngine;
 import org.usfirst.frc.team339.Utils.Drive;
+import org.usfirst.frc.team339.Utils.DriveInstruction;
 import org.usfirst.frc.team339.Utils.ErrorMessage.PrintsTo;
+import org.usfirst.frc.team339.Utils.LoopProfiler;
 import org.usfirst.frc.team339.Utils.ManipulatorArm;
 import org.usfirst.frc.team339.Utils.ManipulatorArm.ArmPosition;
+import org.usfirst.frc.team339.Utils.MotionProfile;
+import org.usfirst.frc.team339.Utils.SlidingRegression;
+import org.usfirst.frc.team339.Utils.Telemetry;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
 import edu.wpi.first.wpilibj.Relay;
 
@@ -67,7 +73,9 @@ public class Autonomous
  * The overarching states of autonomous mode.
  * Each state represents a set of instructions the robot must execute
  * periodically at a given time.
- * These states are mainly used in the runMainStateMachine() method
+ * What each state does is set up in makeEngine(). The order they run in
+ * is the routine, set up in loadRoutine(); the "Proceeds to" below are
+ * the routine we drive when there is no routine file.
  * 
  */
 private static enum MainState
@@ -77,43 +85,31 @@ private static enum MainState
      * Initializes things if necessary,
      * though most things are initialized
      * in init().
-     * Proceeds to INIT_DELAY, or BEGIN_LOWERING_ARM, if in lane 1 or 6.
+     * Proceeds to DELAY, or BEGIN_LOWERING_ARM, if in lane 1 or 6.
      */
     INIT,
     /**
      * Sets arm to head downward.
      * Used at the beginning for going under the low bar.
-     * Proceeds to INIT_DELAY
+     * Proceeds to DELAY
      */
     BEGIN_LOWERING_ARM,
 
-    /**
-     * Resets and starts delay timer.
-     * Proceeds to DELAY.
-     */
-    INIT_DELAY,
-
     /**
      * Waits.
-     * Waits until the delay is up.
-     * Proceeds to ACCELERATE_FROM_ZERO.
-     */
-    DELAY,
-
-    /**
-     * Slowly increases speed from 0;
-     * Used at the start, as sudden movements can cause unpredictable
-     * turning.
+     * Resets and starts the delay timer, then waits until the delay is up.
      * Proceeds to MOVE_TO_OUTER_WORKS.
      */
-    ACCELERATE_FROM_ZERO,
+    DELAY,
 
     /**
      * Moves to outer works at a lane-specific speed.
+     * Speeds up slowly from 0 along crossingProfile, as sudden movements can
+     * cause unpredictable turning.
      * Proceeds to FORWARDS_OVER_OUTER_WORKS.
      * <p>
-     * UNLESS we are in lanes 1 0r 6. Then,
      * If it reaches the end of the distance, and the arm is not fully down,
+     * it finishes with ALTERNATE. In lanes 1 or 6, that
      * proceeds to WAIT_FOR_ARM_DESCENT.
      */
     MOVE_TO_OUTER_WORKS,
@@ -126,7 +122,9 @@ private static enum MainState
 
     /**
      * Go the distance over the outer works at lane-specific speed.
-     * Proceeds to FORWARDS_BASED_ON_ENCODERS_OR_IR.
+     * In lane 1 (or "6"), proceeds to FORWARDS_TO_TAPE_BY_DISTANCE,
+     * in lane 5 to DRIVE_UNTIL_CLOSE_TO_WALL,
+     * else to FORWARDS_UNTIL_TAPE.
      * TODO: Continuing after this point has been temporarily disabled for
      * lane 3.
      */
@@ -138,16 +136,6 @@ private static enum MainState
      */
     DRIVE_UNTIL_CLOSE_TO_WALL,
 
-    /**
-     * This state checks to see if we are in lane 1 (or "6").
-     * If so, we go until we reach an encoder distance (set to distance to
-     * alignment tape),
-     * Else, we go until the sensors find the Alignment tape.
-     * Proceeds to FORWARDS_TO_TAPE_BY_DISTANCE or FORWARDS_UNTIL_TAPE
-     */
-    FORWARDS_BASED_ON_ENCODERS_OR_IR,
-
-
     /**
      * Goes forward until it reaches the set distance to the Alignment tape.
      * Proceeds to CENTER_TO_TAPE.
@@ -292,7 +280,10 @@ private static final double MAXIMUM_ULTRASONIC_SLOPE = 0;
  */
 private static MainState mainState = MainState.INIT;
 
-private static MainState prevState = MainState.DONE;
+/**
+ * Runs the main states.
+ */
+private static final AutoEngine<MainState> engine = makeEngine();
 
 
 /**
@@ -320,9 +311,21 @@ public static double delay; // time to delay before beginning.
 public static int lane;
 
 /**
- * The current index in the Acceleration arrays.
+ * Speeds for driving to and over the outer works without stopping,
+ * worked out in init().
+ */
+private static MotionProfile crossingProfile = null;
+
+/**
+ * Speeds for driving over the outer works after stopping for the arm.
  */
-private static int accelerationStage = 0;
+private static MotionProfile overOuterWorksProfile = null;
+
+/**
+ * true if we stopped in front of the outer works, so we have to speed up
+ * from 0 again to cross them.
+ */
+private static boolean stoppedBeforeOuterWorks = false;
 
 /**
  * The sum of all encoder distances before reset.
@@ -330,11 +333,15 @@ private static int accelerationStage = 0;
 private static double totalDistance = 0;
 
 /**
- * Array of distances collected from ultrasonic
+ * The motion executor's number for the path the current state is driving.
  */
-private static double[] ultrasonicDistances;
+private static int drivingPath = 0;
 
-private static int ultrasonicDistancesIndex = 0;
+/**
+ * Line fitted to the distances collected from ultrasonic
+ */
+private static final SlidingRegression ultrasonicDistances =
+        new SlidingRegression(Autonomous.ULTRASONIC_POINTS_REQUIRED);
 
 private static int pointCollectionIntervalCheck = 0;
 
@@ -351,14 +358,8 @@ public static boolean debug;
 // the following are for testing and debugging.
 // created to print a statement only once in the run of the program.
 // TODO: remove.
-private static boolean oneTimePrint1 = true;
-
-private static boolean oneTimePrint2 = false;
-
 private static boolean oneTimePrint3 = true;
 
-private static boolean oneTimePrint4 = false;
-
 private static int iterationCounter = 0;
 
 // ==========================================
@@ -394,7 +395,8 @@ public static void init ()
         // set Auto state to INIT.
         initAutoState();
 
-        ultrasonicDistances = new double[ULTRASONIC_POINTS_REQUIRED];
+        ultrasonicDistances.reset();
+        pointCollectionIntervalCheck = 0;
 
         // do not print from transmission
         Hardware.transmission.setDebugState(
@@ -421,8 +423,7 @@ public static void init ()
         // --------------------------------------
         // Encoder Initialization
         // --------------------------------------
-        Hardware.leftRearEncoder.reset();
-        Hardware.rightRearEncoder.reset();
+        Hardware.odometry.resetEncoders();
 
 
         // Sets Resolution of camera
@@ -454,6 +455,10 @@ public static void init ()
         else
             labScalingFactor = 1.0;
 
+        // work out the speeds for crossing the outer works now, so we only
+        // have to look them up while driving.
+        makeCrossingProfiles();
+
         // clear error log, so as not to take up space needlessly.
         // this can be buggy, hence the try/catch.
 
@@ -487,7 +492,11 @@ public static void periodic ()
     if (autonomousEnabled == true)
         {
         // runs the overarching state machine.
+        Hardware.loopProfiler
+                .startSection(LoopProfiler.Section.AUTO_STATE_MACHINE);
         runMainStateMachine();
+        Hardware.loopProfiler
+                .endSection(LoopProfiler.Section.AUTO_STATE_MACHINE);
         }
 
     // Czecks if we are running any arm functions.
@@ -495,7 +504,9 @@ public static void periodic ()
     // run the arm state machine.
         {
         // System.out.println("\t" + armState);
+        Hardware.loopProfiler.startSection(LoopProfiler.Section.ARM);
         runArmStates();
+        Hardware.loopProfiler.endSection(LoopProfiler.Section.ARM);
         }
     else
     // if not, we do not want the arm to move.
@@ -538,36 +549,222 @@ public static int initDelayTime ()
 
 
 /**
- * Sets the main state to INIT.
+ * Sets up the routine for the lane, and sets the main state to INIT.
+ * The routine starts on the next call to periodic().
  */
 public static void initAutoState ()
 {
+    loadRoutine(lane);
+    engine.start();
     mainState = MainState.INIT;
 }
 
 
 /**
- * Called periodically to run the overarching states.
- * The state machine works by periodically executing a switch statement,
- * which is based off of the value of the enum, mainState.
- * A case that corresponds to a value of the enum is referred to as a
- * "state."
- * A state, therefore, is executed periodically until its end conditions are
- * met, at which point it changes the value of mainState, thereby proceeding
- * to the next state.
+ * Runs the overarching states.
+ * What each state does is in the State objects made in makeEngine(); which
+ * state comes after which is the routine's transition table, set up by
+ * loadRoutine(). Each call runs the current state once, and moves to the
+ * next state when it is finished.
  * <p>
  * For information on the individual states, @see MainState.
  */
 private static void runMainStateMachine ()
 {
+    engine.periodic();
+}
+
+/**
+ * Works out the speeds for driving up to and over the outer works in this
+ * lane, so that while driving we only have to look them up.
+ * The drive over the outer works finishes at full speed, as whatever comes
+ * next keeps driving.
+ */
+private static void makeCrossingProfiles ()
+{
+    final DriveInstruction toOuterWorks = new DriveInstruction(
+            DriveInformation.DISTANCE_TO_OUTER_WORKS * labScalingFactor,
+            DriveInformation.MOTOR_RATIO_TO_OUTER_WORKS[lane], 0.0, 0.0);
+    final DriveInstruction overOuterWorks = new DriveInstruction(
+            DriveInformation.DISTANCE_OVER_OUTER_WORKS * labScalingFactor
+                    + DriveInformation.ADDED_DISTANCE_FROM_OW[lane],
+            DriveInformation.DRIVE_OVER_OUTER_WORKS_MOTOR_RATIOS[lane], 0.0,
+            0.0);
+
+    crossingProfile = MotionProfile.generate(new DriveInstruction[]
+        {toOuterWorks, overOuterWorks},
+            DriveInformation.DRIVE_OVER_OUTER_WORKS_MOTOR_RATIOS[lane],
+            DriveInformation.PROFILE_ACCELERATION,
+            DriveInformation.PROFILE_JERK,
+            DriveInformation.INCHES_PER_SECOND_AT_FULL_SPEED,
+            DriveInformation.PROFILE_PERIOD);
+    overOuterWorksProfile = MotionProfile.generate(new DriveInstruction[]
+        {overOuterWorks},
+            DriveInformation.DRIVE_OVER_OUTER_WORKS_MOTOR_RATIOS[lane],
+            DriveInformation.PROFILE_ACCELERATION,
+            DriveInformation.PROFILE_JERK,
+            DriveInformation.INCHES_PER_SECOND_AT_FULL_SPEED,
+            DriveInformation.PROFILE_PERIOD);
+}
+
+/**
+ * Looks up the speed to drive at from a profile, for how long we have been
+ * in the current state.
+ * 
+ * @param profile
+ *            the profile worked out in makeCrossingProfiles().
+ * @param segment
+ *            which part of the profile the current state is driving.
+ * @return the motor ratio to drive at; never less than
+ *         MINIMUM_PROFILE_SPEED, so we never sit still at the very start.
+ */
+private static double getProfileSpeed (MotionProfile profile, int segment)
+{
+    return Math.max(DriveInformation.MINIMUM_PROFILE_SPEED,
+            profile.getVelocity(segment, engine.getSecondsInCurrentState()));
+}
+
+/**
+ * Sets up the routine for a lane.
+ * If there is a routine file for the lane (ROUTINE_DIRECTORY/laneN.txt), it
+ * is used. Otherwise, we use the routine built in to the code, which is the
+ * path we have always driven in that lane.
+ * 
+ * @param lane
+ *            the lane we are starting in.
+ */
+private static void loadRoutine (int lane)
+{
+    // the routine we have always driven.
+    engine.clearRoutine();
+    engine.setStart(MainState.INIT);
+    engine.setFinal(MainState.DONE);
+
+    // if we are in a lane that goes beneath the low bar,
+    if (DriveInformation.BRING_ARM_DOWN_BEFORE_DEFENSES[lane] == true)
+    // lower the arm to pass beneath the bar.
+        {
+        engine.addTransition(MainState.INIT, AutoEngine.DONE,
+                MainState.BEGIN_LOWERING_ARM);
+        // if the arm is not down in time, stop and wait for it.
+        engine.addTransition(MainState.MOVE_TO_OUTER_WORKS,
+                AutoEngine.ALTERNATE, MainState.WAIT_FOR_ARM_DESCENT);
+        }
+    else
+    // lowering the arm would get in the way. Skip to delay.
+        {
+        engine.addTransition(MainState.INIT, AutoEngine.DONE,
+                MainState.DELAY);
+        }
+    engine.addTransition(MainState.BEGIN_LOWERING_ARM, AutoEngine.DONE,
+            MainState.DELAY);
+    engine.addTransition(MainState.DELAY, AutoEngine.DONE,
+            MainState.MOVE_TO_OUTER_WORKS);
+    engine.addTransition(MainState.MOVE_TO_OUTER_WORKS, AutoEngine.DONE,
+            MainState.FORWARDS_OVER_OUTER_WORKS);
+    engine.addTransition(MainState.WAIT_FOR_ARM_DESCENT, AutoEngine.DONE,
+            MainState.FORWARDS_OVER_OUTER_WORKS);
+
+    // temporary; stops after over outer works.
+    // 3 is chosen for this arbitrarily.
+    if (lane == 3)
+        {
+        engine.addTransition(MainState.FORWARDS_OVER_OUTER_WORKS,
+                AutoEngine.DONE, MainState.DONE);
+        }
+    // Drive until we are close enough to a wall to know we are
+    // over Outer Works.
+    // lane 5 chosen arbitrarily.
+    else if (lane == 5)
+        {
+        engine.addTransition(MainState.FORWARDS_OVER_OUTER_WORKS,
+                AutoEngine.DONE, MainState.DRIVE_UNTIL_CLOSE_TO_WALL);
+        }
+    // in lane 1 (or "6"), move forwards the distance to the A-tape.
+    else if (lane == 1 || lane == 6)
+        {
+        engine.addTransition(MainState.FORWARDS_OVER_OUTER_WORKS,
+                AutoEngine.DONE, MainState.FORWARDS_TO_TAPE_BY_DISTANCE);
+        }
+    // in another lane, move forwards until we detect the A-tape.
+    else
+        {
+        engine.addTransition(MainState.FORWARDS_OVER_OUTER_WORKS,
+                AutoEngine.DONE, MainState.FORWARDS_UNTIL_TAPE);
+        }
 
-    // use the debug flag
-    if (debug == true)
+    engine.addTransition(MainState.DRIVE_UNTIL_CLOSE_TO_WALL,
+            AutoEngine.DONE, MainState.DONE);
+    engine.addTransition(MainState.FORWARDS_TO_TAPE_BY_DISTANCE,
+            AutoEngine.DONE, MainState.CENTER_TO_TAPE);
+    engine.addTransition(MainState.FORWARDS_UNTIL_TAPE, AutoEngine.DONE,
+            MainState.CENTER_TO_TAPE);
+    engine.addTransition(MainState.CENTER_TO_TAPE, AutoEngine.DONE,
+            MainState.DELAY_IF_REVERSE);
+    engine.addTransition(MainState.DELAY_IF_REVERSE, AutoEngine.DONE,
+            MainState.ROTATE_ON_ALIGNMENT_LINE);
+    engine.addTransition(MainState.ROTATE_ON_ALIGNMENT_LINE,
+            AutoEngine.DONE, MainState.FORWARDS_FROM_ALIGNMENT_LINE);
+    engine.addTransition(MainState.FORWARDS_FROM_ALIGNMENT_LINE,
+            AutoEngine.DONE, MainState.TURN_TO_FACE_GOAL);
+    engine.addTransition(MainState.TURN_TO_FACE_GOAL, AutoEngine.DONE,
+            MainState.DRIVE_UP_TO_GOAL);
+    // TODO Changed this at Rumble; do not change until fixed
+    // (should be DRIVE_BY_CAMERA)
+    engine.addTransition(MainState.DRIVE_UP_TO_GOAL, AutoEngine.DONE,
+            MainState.DONE);
+    engine.addTransition(MainState.DRIVE_BY_CAMERA, AutoEngine.DONE,
+            MainState.ALIGN_IN_FRONT_OF_GOAL);
+    engine.addTransition(MainState.ALIGN_IN_FRONT_OF_GOAL, AutoEngine.DONE,
+            MainState.SHOOT);
+    engine.addTransition(MainState.SHOOT, AutoEngine.DONE,
+            MainState.DELAY_AFTER_SHOOT);
+    engine.addTransition(MainState.DELAY_AFTER_SHOOT, AutoEngine.DONE,
+            MainState.DONE);
+
+    // a routine file for this lane replaces all of that.
+    final String routineFile = ROUTINE_DIRECTORY + "lane" + lane + ".txt";
+    if (engine.loadRoutineFile(routineFile) == true)
         {
-        // print out states ONCE.
-        if (mainState != prevState)
+        System.out.println("Autonomous routine: " + routineFile);
+        }
+}
+
+/**
+ * A state that drives by the encoders, so they are reset when it is
+ * finished, ready for the next state.
+ */
+private static abstract class DrivingState extends AutoEngine.State
+{
+@Override
+public void exit ()
+{
+    resetEncoders();
+}
+}
+
+/**
+ * Makes the engine that runs the main states, and the objects that say what
+ * each state does.
+ * 
+ * @return the engine.
+ */
+private static AutoEngine<MainState> makeEngine ()
+{
+    final AutoEngine<MainState> newEngine = new AutoEngine<MainState>(
+            MainState.class);
+
+    // print out states ONCE, and keep mainState up to date for the
+    // telemetry.
+    newEngine.setListener(new AutoEngine.Listener<MainState>()
+    {
+    @Override
+    public void stateChanged (MainState from, MainState to)
+    {
+        mainState = to;
+        // use the debug flag
+        if (debug == true)
             {
-            prevState = mainState;
             System.out.println(
                     "Legnth: " + Hardware.kilroyTimer.get() +
                             " seconds.\n");
@@ -576,421 +773,366 @@ private static void runMainStateMachine ()
                     "MainState" + mainState, PrintsTo.roboRIO,
                     false);
             }
-        }
-
-    switch (mainState)
-        {
-        case INIT:
-            // Doesn't do much.
-            // Just a Platypus.
-            mainInit();
-
-            // if we are in a lane that goes beneath the low bar,
-            if (DriveInformation.BRING_ARM_DOWN_BEFORE_DEFENSES[lane] == true)
-            // lower the arm to pass beneath the bar.
-                {
-                mainState = MainState.BEGIN_LOWERING_ARM;
-                }
-            else
-            // lowering the arm would get in the way. Skip to delay.
-                {
-                mainState = MainState.INIT_DELAY;
-                }
-
-            break;
+    }
+    });
 
-        case BEGIN_LOWERING_ARM:
-            // starts the arm movement to the floor
-            // runArmStates = true;
-            // armState = ArmState.MOVE_DOWN;//TODO GROSSNESS
-            Hardware.pickupArm.move(.25);
-            // goes into initDelay
-            mainState = MainState.INIT_DELAY;
-            break;
+    newEngine.setState(MainState.INIT, new AutoEngine.State()
+    {
+    @Override
+    public int execute ()
+    {
+        // Doesn't do much.
+        // Just a Platypus.
+        mainInit();
+        return AutoEngine.DONE;
+    }
+    });
 
-        case INIT_DELAY:
-            // reset and start timer
-            initDelay();
-            // run DELAY state.
-            mainState = MainState.DELAY;
-            break;
+    newEngine.setState(MainState.BEGIN_LOWERING_ARM, new AutoEngine.State()
+    {
+    @Override
+    public int execute ()
+    {
+        // starts the arm movement to the floor
+        // runArmStates = true;
+        // armState = ArmState.MOVE_DOWN;//TODO GROSSNESS
+        Hardware.pickupArm.move(.25);
+        return AutoEngine.DONE;
+    }
+    });
 
-        case DELAY:
-            // check whether done or not until done.
-            if (delayIsDone() == true)
-            // go to move forwards when finished.
-                {
-                mainState = MainState.ACCELERATE_FROM_ZERO;
+    newEngine.setState(MainState.DELAY, new AutoEngine.State()
+    {
+    @Override
+    public void enter ()
+    {
+        // reset and start timer
+        initDelay();
+    }
 
-                // start a timer for ACCELERATE.
-                Hardware.delayTimer.reset();
-                Hardware.delayTimer.start();
-                }
-            break;
+    @Override
+    public int execute ()
+    {
+        // check whether done or not until done.
+        if (delayIsDone() == true)
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
+    });
 
+    newEngine.setState(MainState.MOVE_TO_OUTER_WORKS, new DrivingState()
+    {
+    @Override
+    public void enter ()
+    {
+        stoppedBeforeOuterWorks = false;
+        // print out the first loop of this state from the transmission.
+        Hardware.transmission.setDebugState(
+                debugStateValues.DEBUG_ALL);
+        Hardware.errorMessage.printError("Left: " +
+                Hardware.leftRearEncoder.getDistance(),
+                PrintsTo.roboRIO,
+                false);
+        Hardware.errorMessage.printError("Right: " +
+                Hardware.leftRearEncoder.getDistance(),
+                PrintsTo.roboRIO,
+                false);
+    }
 
-        case ACCELERATE_FROM_ZERO:
-            // Allows us to slowly accelerate from zero without turning
+    @Override
+    public int execute ()
+    {
+        // goes forwards to outer works, speeding up along the profile.
+        final double speed = getProfileSpeed(crossingProfile, 0);
+        final boolean done = Hardware.drive.driveStraightByInches(
+                DriveInformation.DISTANCE_TO_OUTER_WORKS *
+                        labScalingFactor,
+                false, speed, speed);
 
-            // So long as there are more acceleration numbers in the series.
-            if (accelerationStage < DriveInformation.ACCELERATION_RATIOS.length)
-                {
-                // Drive continuously at speed increments
-                Hardware.drive.driveStraightByInches(99999, false,
-                        DriveInformation.ACCELERATION_RATIOS[accelerationStage],
-                        DriveInformation.ACCELERATION_RATIOS[accelerationStage]);
-
-                // When the time has come,
-                if (Hardware.delayTimer
-                        .get() > DriveInformation.ACCELERATION_TIMES[accelerationStage])
-                    {
-                    // go to next stage.
-                    accelerationStage++;
-                    }
-                }
-            else
-            // there are no stages left. continue onwards.
-                {
-                // stop timer.
-                Hardware.delayTimer.stop();
-                Hardware.delayTimer.reset();
-                // continue forwards at regular speed.
-                mainState = MainState.MOVE_TO_OUTER_WORKS;
-                }
+        Hardware.transmission.setDebugState(
+                debugStateValues.DEBUG_NONE);
 
-            break;
+        if (done == true)
+            {
+            // continue over the Outer Works,
+            // UNLESS the arm is going to get in the way.
+            if (Hardware.pickupArm.isUnderBar() == false)
+                return AutoEngine.ALTERNATE;
+            return AutoEngine.DONE;
+            }
+        return AutoEngine.STAY;
+    }
+    });
 
-        case MOVE_TO_OUTER_WORKS:
+    newEngine.setState(MainState.WAIT_FOR_ARM_DESCENT,
+            new AutoEngine.State()
+            {
+            @Override
+            public void enter ()
+            {
+                // we will have to speed up again afterwards.
+                stoppedBeforeOuterWorks = true;
+            }
 
-            if (oneTimePrint4 == false)
-                {
-                Hardware.transmission.setDebugState(
-                        debugStateValues.DEBUG_ALL);
-                Hardware.errorMessage.printError("Left: " +
-                        Hardware.leftRearEncoder.getDistance(),
-                        PrintsTo.roboRIO,
-                        false);
-                Hardware.errorMessage.printError("Right: " +
-                        Hardware.leftRearEncoder.getDistance(),
-                        PrintsTo.roboRIO,
-                        false);
-                oneTimePrint4 = true;
-                }
-            else
-                {
+            @Override
+            public int execute ()
+            {
                 Hardware.transmission.setDebugState(
                         debugStateValues.DEBUG_NONE);
-                }
-
-            // goes forwards to outer works.
-            if (Hardware.drive.driveStraightByInches(
-                    DriveInformation.DISTANCE_TO_OUTER_WORKS *
-                            labScalingFactor,
-                    false,
-                    DriveInformation.MOTOR_RATIO_TO_OUTER_WORKS[lane],
-                    DriveInformation.MOTOR_RATIO_TO_OUTER_WORKS[lane]) == true)
-            // continue over the outer works unless the arm is going to get in
-            // the way.
-                {
-
-                // continue over the Outer Works
-                mainState = MainState.FORWARDS_OVER_OUTER_WORKS;
-                resetEncoders();
 
-                // UNLESS...
-                // if we are in a lane that goes beneath the low bar,
-                if ((DriveInformation.BRING_ARM_DOWN_BEFORE_DEFENSES[lane] == true)
-                        &&
-                        (Hardware.pickupArm.isUnderBar() == false))
-                // arm is not down in time. STOP.
-                    {
-                    mainState = MainState.WAIT_FOR_ARM_DESCENT;
-                    }
-                }
-            break;
-
-        case WAIT_FOR_ARM_DESCENT:
-            Hardware.transmission.setDebugState(
-                    debugStateValues.DEBUG_NONE);
-
-            // Stop during the wait. We do not want to ram the bar.
-            Hardware.transmission.controls(0.0, 0.0);
+                // Stop during the wait. We do not want to ram the bar.
+                Hardware.transmission.controls(0.0, 0.0);
 
-            // Put the arm down,
-            // and when that is done, continue.
-            if (Hardware.pickupArm.moveToPosition(
-                    ManipulatorArm.ArmPosition.FULL_DOWN) == true)
-                {
-                // drive over the outer works.
-                mainState = MainState.FORWARDS_OVER_OUTER_WORKS;
-                }
-            break;
+                // Put the arm down,
+                // and when that is done, continue.
+                if (Hardware.pickupArm.moveToPosition(
+                        ManipulatorArm.ArmPosition.FULL_DOWN) == true)
+                    return AutoEngine.DONE;
+                return AutoEngine.STAY;
+            }
+            });
 
+    newEngine.setState(MainState.FORWARDS_OVER_OUTER_WORKS,
+            new DrivingState()
+            {
+            @Override
+            public int execute ()
+            {
+                // Drive over Outer Works, carrying on from the drive up
+                // to them, or from 0 if we stopped for the arm.
+                final double speed;
+                if (stoppedBeforeOuterWorks == true)
+                    speed = getProfileSpeed(overOuterWorksProfile, 0);
+                else
+                    speed = getProfileSpeed(crossingProfile, 1);
+                if (Hardware.drive.driveStraightByInches(
+                        DriveInformation.DISTANCE_OVER_OUTER_WORKS *
+                                labScalingFactor +
+                                DriveInformation.ADDED_DISTANCE_FROM_OW[lane],
+                        false, speed, speed) == true)
+                    return AutoEngine.DONE;
+                return AutoEngine.STAY;
+            }
 
-        case FORWARDS_OVER_OUTER_WORKS:
-            // Drive over Outer Works.
-            if (Hardware.drive.driveStraightByInches(
-                    DriveInformation.DISTANCE_OVER_OUTER_WORKS *
-                            labScalingFactor +
-                            DriveInformation.ADDED_DISTANCE_FROM_OW[lane],
-                    false,
-                    DriveInformation.DRIVE_OVER_OUTER_WORKS_MOTOR_RATIOS[lane],
-                    DriveInformation.DRIVE_OVER_OUTER_WORKS_MOTOR_RATIOS[lane]) == true)
-            // put up all the things we had to put down under the low bar.
-            // begin loading the catapult.
-                {
+            @Override
+            public void exit ()
+            {
+                // put up all the things we had to put down under the low
+                // bar.
 
                 // put up camera.
                 Hardware.cameraSolenoid.set(Value.kReverse);
 
                 Hardware.ringLightRelay.set(Relay.Value.kOn);
 
-                // Teleop.printStatements();
-                // System.out.println("Encoders: "
-                // + Hardware.leftRearEncoder.getDistance() + "\t"
-                // + Hardware.rightRearEncoder.getDistance());
                 resetEncoders();
 
                 // We are over the outer works. Start the arm back up.
                 // armState = ArmState.MOVE_UP_TO_DEPOSIT;
                 // runArmStates = true;//TODO broken arm time
+            }
+            });
 
-                // decide whether to stop next by encoder distance, or when
-                // IRs detect tape.
-                mainState = MainState.FORWARDS_BASED_ON_ENCODERS_OR_IR;
-
-                // temporary; stops after over outer works.
-                // 3 is chosen for this arbitrarily.
-                if (lane == 3)
-                    {
-                    mainState = MainState.DONE;
-                    }
-
-                // Drive until we are close enough to a wall to know we are
-                // over Outer Works.
-                // lane 5 chosen arbitrarily.
-                if (lane == 5)
-                    {
-                    mainState = MainState.DRIVE_UNTIL_CLOSE_TO_WALL;
-                    }
-
-                // TODO Fix this; we commented it out during rumble in roads
-
-                // if (DriveInformation.SKIP_TO_DRIVE_BY_CAMERA[lane] == true)
-                // {
-                // mainState = MainState.DRIVE_BY_CAMERA;
-                // }
-
-                }
-            break;
-
-
-        case DRIVE_UNTIL_CLOSE_TO_WALL:
-
-            if (driveUntilUltrasonicDistance(48.0, 0.6, false))
-                {
-                mainState = MainState.DONE;
-                resetEncoders();
-                }
-
-            break;
-
-
-        case FORWARDS_BASED_ON_ENCODERS_OR_IR:
-
-            // Check if we are in lane One.
-            if (lane == 1 || lane == 6)
-            // If so, move forwards the distance to the A-tape.
-                {
-                mainState = MainState.FORWARDS_TO_TAPE_BY_DISTANCE;
-                }
-            else
-            // If in another lane, move forwards until we detect the A-tape.
-                {
-                mainState = MainState.FORWARDS_UNTIL_TAPE;
-                }
-            break;
-
-        case FORWARDS_TO_TAPE_BY_DISTANCE:
-            // Drive the distance from outer works to A-Line.
-            if ((Hardware.drive.driveStraightByInches(
-                    DriveInformation.DISTANCE_TO_TAPE *
-                            labScalingFactor,
-                    false, DriveInformation.MOTOR_RATIO_TO_A_LINE[lane],
-                    DriveInformation.MOTOR_RATIO_TO_A_LINE[lane]) == true))
-            // when done, proceed from Alignment line.
-                {
-
-                // Teleop.printStatements();
-
-                // reset Encoders to prepare for next state.
-                resetEncoders();
-
-
-                // Move the center of the robot to the tape.
-                mainState = MainState.CENTER_TO_TAPE;
-                }
-            break;
-
-
-        case FORWARDS_UNTIL_TAPE:
-            // Drive until IR sensors pick up tape.
-            if (hasMovedToTape() == true)
-                {
-                // reset Encoders to prepare for next state.
-                resetEncoders();
-
-                // When done, possibly rotate.
-                mainState = MainState.CENTER_TO_TAPE;
-                }
-            break;
+    newEngine.setState(MainState.DRIVE_UNTIL_CLOSE_TO_WALL,
+            new DrivingState()
+            {
+            @Override
+            public int execute ()
+            {
+                if (driveUntilUltrasonicDistance(48.0, 0.6, false))
+                    return AutoEngine.DONE;
+                return AutoEngine.STAY;
+            }
+            });
 
-        case CENTER_TO_TAPE:
-            // Drive up from front of the Alignment Line to put the pivoting
-            // center of the robot on the Line.
-            if (Hardware.drive.driveStraightByInches(
-                    DriveInformation.DISTANCE_TO_CENTRE_OF_ROBOT,
-                    DriveInformation.BREAK_ON_ALIGNMENT_LINE[lane],
-                    DriveInformation.CENTRE_TO_ALIGNMENT_LINE_MOTOR_RATIO[lane],
-                    DriveInformation.CENTRE_TO_ALIGNMENT_LINE_MOTOR_RATIO[lane]))
-                {
-                // Next, we will stop if necessary.
-                mainState = MainState.DELAY_IF_REVERSE;
+    newEngine.setState(MainState.FORWARDS_TO_TAPE_BY_DISTANCE,
+            new DrivingState()
+            {
+            @Override
+            public int execute ()
+            {
+                // Drive the distance from outer works to A-Line.
+                if ((Hardware.drive.driveStraightByInches(
+                        DriveInformation.DISTANCE_TO_TAPE *
+                                labScalingFactor,
+                        false, DriveInformation.MOTOR_RATIO_TO_A_LINE[lane],
+                        DriveInformation.MOTOR_RATIO_TO_A_LINE[lane]) == true))
+                    return AutoEngine.DONE;
+                return AutoEngine.STAY;
+            }
+            });
 
+    newEngine.setState(MainState.FORWARDS_UNTIL_TAPE, new DrivingState()
+    {
+    @Override
+    public int execute ()
+    {
+        // Drive until IR sensors pick up tape.
+        if (hasMovedToTape() == true)
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
+    });
 
-                // start timer for the coming delay.
-                Hardware.delayTimer.reset();
-                Hardware.delayTimer.start();
-                }
-            break;
+    newEngine.setState(MainState.CENTER_TO_TAPE, new AutoEngine.State()
+    {
+    @Override
+    public int execute ()
+    {
+        // Drive up from front of the Alignment Line to put the pivoting
+        // center of the robot on the Line.
+        if (Hardware.drive.driveStraightByInches(
+                DriveInformation.DISTANCE_TO_CENTRE_OF_ROBOT,
+                DriveInformation.BREAK_ON_ALIGNMENT_LINE[lane],
+                DriveInformation.CENTRE_TO_ALIGNMENT_LINE_MOTOR_RATIO[lane],
+                DriveInformation.CENTRE_TO_ALIGNMENT_LINE_MOTOR_RATIO[lane]))
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
+    });
 
-        case DELAY_IF_REVERSE:
+    newEngine.setState(MainState.DELAY_IF_REVERSE, new AutoEngine.State()
+    {
+    @Override
+    public void enter ()
+    {
+        // start timer for the delay.
+        Hardware.delayTimer.reset();
+        Hardware.delayTimer.start();
+    }
 
-            // when the delay is up,
-            if (Hardware.delayTimer
-                    .get() >= DriveInformation.DELAY_IF_REVERSE[lane])
-            // continue driving.
-                {
-                // stop the timer
-                Hardware.delayTimer.stop();
-                // rotate, possibly
-                mainState = MainState.ROTATE_ON_ALIGNMENT_LINE;
-                }
-            break;
+    @Override
+    public int execute ()
+    {
+        // when the delay is up, continue driving.
+        if (Hardware.delayTimer
+                .get() >= DriveInformation.DELAY_IF_REVERSE[lane])
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
 
+    @Override
+    public void exit ()
+    {
+        // stop the timer
+        Hardware.delayTimer.stop();
+    }
+    });
 
-        case ROTATE_ON_ALIGNMENT_LINE:
-            // Rotates until we are pointed at the place from whence we want to
-            // shoot.
-            if (hasTurnedBasedOnSign(
-                    DriveInformation.ROTATE_ON_ALIGNMENT_LINE_DISTANCE[lane]
-                            *
-                            labScalingFactor) == true)
-                {
-                // reset Encoders to prepare for next state.
-                resetEncoders();
-                // then move.
-                mainState = MainState.FORWARDS_FROM_ALIGNMENT_LINE;
-                }
-            break;
+    newEngine.setState(MainState.ROTATE_ON_ALIGNMENT_LINE,
+            new DrivingState()
+            {
+            @Override
+            public void enter ()
+            {
+                // Rotates until we are pointed at the place from whence we
+                // want to shoot. The motion executor does the turning.
+                drivingPath = Hardware.motionExecutor.followPath(
+                        new DriveInstruction(0.0, 0.0,
+                                DriveInformation.ROTATE_ON_ALIGNMENT_LINE_DISTANCE[lane]
+                                        * labScalingFactor,
+                                DriveInformation.DEFAULT_TURN_SPEED));
+            }
 
-        case FORWARDS_FROM_ALIGNMENT_LINE:
-            // Drive until we reach the line normal to the goal.
-            if (Hardware.drive.driveStraightByInches(
-                    DriveInformation.FORWARDS_FROM_ALIGNMENT_LINE_DISTANCE[lane]
-                            *
-                            labScalingFactor,
-                    false, // breaking here is preferable.//@AHK turned off
-                           // because brake is stupid
-                    DriveInformation.FORWARDS_FROM_ALIGNMENT_LINE_MOTOR_RATIO[lane],
-                    DriveInformation.FORWARDS_FROM_ALIGNMENT_LINE_MOTOR_RATIO[lane]) == true)
-                {
-                // reset Encoders to prepare for next state.
-                resetEncoders();
-                // turn once more.
-                mainState = MainState.TURN_TO_FACE_GOAL;
-                }
-            break;
+            @Override
+            public int execute ()
+            {
+                if (Hardware.motionExecutor.isPathDone(drivingPath) == true)
+                    return AutoEngine.DONE;
+                return AutoEngine.STAY;
+            }
+            });
 
-        case TURN_TO_FACE_GOAL:
-            // Turns until we are facing the goal.
-            if (hasTurnedBasedOnSign(
-                    DriveInformation.TURN_TO_FACE_GOAL_DEGREES[lane]) == true)
-            // when done move up to the batter.
-                {
-                // reset Encoders to prepare for next state
-                resetEncoders();
+    newEngine.setState(MainState.FORWARDS_FROM_ALIGNMENT_LINE,
+            new DrivingState()
+            {
+            @Override
+            public void enter ()
+            {
+                // Drive until we reach the line normal to the goal.
+                // The motion executor does the driving, and stops at the
+                // end (no braking; brake is stupid).
+                drivingPath = Hardware.motionExecutor.followPath(
+                        new DriveInstruction(
+                                DriveInformation.FORWARDS_FROM_ALIGNMENT_LINE_DISTANCE[lane]
+                                        * labScalingFactor,
+                                DriveInformation.FORWARDS_FROM_ALIGNMENT_LINE_MOTOR_RATIO[lane],
+                                0.0, 0.0));
+            }
 
-                // Hardware.ringLightRelay.set(Relay.Value.kOn);
+            @Override
+            public int execute ()
+            {
+                if (Hardware.motionExecutor.isPathDone(drivingPath) == true)
+                    return AutoEngine.DONE;
+                return AutoEngine.STAY;
+            }
+            });
 
-                // Hold the arm up (Out of the Way).
-                armState = ArmState.HOLD;
+    newEngine.setState(MainState.TURN_TO_FACE_GOAL, new DrivingState()
+    {
+    @Override
+    public void enter ()
+    {
+        // Turns until we are facing the goal, on the motion executor.
+        drivingPath = Hardware.motionExecutor.followPath(
+                new DriveInstruction(0.0, 0.0,
+                        DriveInformation.TURN_TO_FACE_GOAL_DEGREES[lane],
+                        DriveInformation.DEFAULT_TURN_SPEED));
+    }
 
+    @Override
+    public int execute ()
+    {
+        if (Hardware.motionExecutor.isPathDone(drivingPath) == true)
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
 
-                Hardware.transmission.controls(0.0, 0.0);
+    @Override
+    public void exit ()
+    {
+        // print encoders before they are reset.
+        System.out
+                .println(mainState + "\n\tLeft Encoder: " +
+                        Hardware.leftRearEncoder
+                                .getDistance()
+                        +
+                        "\n\tRight Encoder: " +
+                        Hardware.rightRearEncoder
+                                .getDistance());
+        printMotors();
 
-                // then drive.
-                mainState = MainState.DRIVE_UP_TO_GOAL;// MainState.DRIVE_UP_TO_GOAL;
-
-                System.out
-                        .println(mainState + "\n\tLeft Encoder: " +
-                                Hardware.leftRearEncoder
-                                        .getDistance()
-                                +
-                                "\n\tRight Encoder: " +
-                                Hardware.rightRearEncoder
-                                        .getDistance());
-                System.out.println("Left Front Motor: "
-                        + Hardware.leftFrontMotor.get());
-                System.out.println("Left Rear Motor: "
-                        + Hardware.leftRearMotor.get());
-                System.out.println("Right Front Motor: "
-                        + Hardware.rightFrontMotor.get());
-                System.out.println("Right Rear Motor: "
-                        + Hardware.rightRearMotor.get());
-                }
-            break;
+        // reset Encoders to prepare for next state
+        resetEncoders();
 
-        case DRIVE_UP_TO_GOAL:
+        // Hold the arm up (Out of the Way).
+        armState = ArmState.HOLD;
 
-            // print encoders once
-            // TODO: remove.
-            if (oneTimePrint1 == false)
-                {
-                oneTimePrint1 = true;
-                System.out
-                        .println(mainState + "\n\tLeft Encoder: " +
-                                Hardware.leftRearEncoder
-                                        .getDistance()
-                                +
-                                "\n\tRight Encoder: " +
-                                Hardware.rightRearEncoder
-                                        .getDistance());
-
-                System.out.println("Left Front Motor: "
-                        + Hardware.leftFrontMotor.get());
-                System.out.println("Left Rear Motor: "
-                        + Hardware.leftRearMotor.get());
-                System.out.println("Right Front Motor: "
-                        + Hardware.rightFrontMotor.get());
-                System.out.println("Right Rear Motor: "
-                        + Hardware.rightRearMotor.get());
-                }
+        Hardware.transmission.controls(0.0, 0.0);
+    }
+    });
 
-        // System.out.println(mainState +
-        // "\n\tLeft Encoder: " +
-        // Hardware.leftRearEncoder.getDistance() +
-        // "\n\tRight Encoder: " +
-        // Hardware.rightRearEncoder.getDistance());
-        // System.out.println("Left Front Motor: "
-        // + Hardware.leftFrontMotor.get());
-        // System.out.println("Left Rear Motor: "
-        // + Hardware.leftRearMotor.get());
-        // System.out.println("Right Front Motor: "
-        // + Hardware.rightFrontMotor.get());
-        // System.out.println("Right Rear Motor: "
-        // + Hardware.rightRearMotor.get());
+    newEngine.setState(MainState.DRIVE_UP_TO_GOAL, new DrivingState()
+    {
+    @Override
+    public void enter ()
+    {
+        // print encoders once
+        System.out.println(mainState +
+                "\n\tLeft Encoder: " +
+                Hardware.leftRearEncoder
+                        .getDistance()
+                +
+                "\n\tRight Encoder: " +
+                Hardware.rightRearEncoder
+                        .getDistance());
+        printMotors();
+    }
 
+    @Override
+    public int execute ()
+    {
         // Moves to goal. Stops to align.
         // TODO deleted for RITR, replace
         // if (((Hardware.drive.driveStraightByInches(
@@ -1000,113 +1142,133 @@ private static void runMainStateMachine ()
         // DriveInformation.DRIVE_UP_TO_GOAL_MOTOR_RATIO[lane],
         // DriveInformation.DRIVE_UP_TO_GOAL_MOTOR_RATIO[lane]) == true)))
         // // Go to align.
-            {
-
-            if (oneTimePrint2 == false)
-                {
-                oneTimePrint2 = true;
-                System.out.println(mainState +
-                        "\n\tLeft Encoder: " +
-                        Hardware.leftRearEncoder
-                                .getDistance()
-                        +
-                        "\n\tLeft Encoder: " +
-                        Hardware.leftRearEncoder
-                                .getDistance());
-                System.out.println("Left Front Motor: "
-                        + Hardware.leftFrontMotor.get());
-                System.out.println("Left Rear Motor: "
-                        + Hardware.leftRearMotor.get());
-                System.out.println("Right Front Motor: "
-                        + Hardware.rightFrontMotor.get());
-                System.out.println("Right Rear Motor: "
-                        + Hardware.rightRearMotor.get());
-                }
-
-
-            // reset Encoders to prepare for next state.
-            resetEncoders();
+        return AutoEngine.DONE;
+    }
+    });
 
-            // go to align.
-            // TODO Changed this at Rumble; do not change until fixed
-            mainState = MainState.DONE;
-            // MainState.DRIVE_BY_CAMERA;
+    newEngine.setState(MainState.ALIGN_IN_FRONT_OF_GOAL,
+            new AutoEngine.State()
+            {
+            @Override
+            public int execute ()
+            {
+                // align based on the camera until we are facing the goal.
+                // head-on.
+                if (Hardware.drive.alignByCamera(
+                        Autonomous.CAMERA_ALIGN_X_DEADBAND,
+                        DriveInformation.ALIGNMENT_SPEED,
+                        CAMERA_X_AXIS_ADJUSTED_PROPORTIONAL_CENTER,
+                        ADJUST_DEADBAND_BY_PERCENTAGE,
+                        false) == Drive.alignByCameraReturn.DONE)
+                // Once we are in position, we shoot!
+                    return AutoEngine.DONE;
+                return AutoEngine.STAY;
             }
+            });
 
-            // print IR values once if they are on.
-            // if (oneTimePrint3 == false &&
-            // (Hardware.leftIR.isOn() || Hardware.rightIR.isOn()))
-            // {
-            // oneTimePrint3 = true;
-            // System.out.println("An IR found something.");
-            // }
-            break;
+    newEngine.setState(MainState.DRIVE_BY_CAMERA, new AutoEngine.State()
+    {
+    @Override
+    public int execute ()
+    {
+        if (Hardware.drive.alignByCameraStateMachine(
+                CAMERA_ALIGN_X_DEADBAND,
+                CAMERA_ALIGN_Y_DEADBAND,
+                CAMERA_X_AXIS_ADJUSTED_PROPORTIONAL_CENTER,
+                CAMERA_Y_AXIS_ADJUSTED_PROPORTIONAL_CENTER,
+                ALIGN_BY_CAMERA_TURNING_SPEED,
+                ALIGN_BY_CAMERA_DRIVE_SPEED,
+                false,
+                false, false) == Drive.alignByCameraReturn.DONE)
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
+    });
 
-        case ALIGN_IN_FRONT_OF_GOAL:
-            // align based on the camera until we are facing the goal. head-on.
-            // Hardware.transmission.controls(0.0, 0.0);
-
-            if (Hardware.drive.alignByCamera(
-                    Autonomous.CAMERA_ALIGN_X_DEADBAND,
-                    DriveInformation.ALIGNMENT_SPEED,
-                    CAMERA_X_AXIS_ADJUSTED_PROPORTIONAL_CENTER,
-                    ADJUST_DEADBAND_BY_PERCENTAGE,
-                    false) == Drive.alignByCameraReturn.DONE)
-            // Once we are in position, we shoot!
-                {
-                mainState = MainState.SHOOT;
-                }
-            break;
+    newEngine.setState(MainState.SHOOT, new AutoEngine.State()
+    {
+    @Override
+    public int execute ()
+    {
+        // FIRE!!!
+        if (shoot() == true)
+        // go to wait a little bit, before turning off solenoids
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
+    });
 
-        case DRIVE_BY_CAMERA:
-
-            if (Hardware.drive.alignByCameraStateMachine(
-                    CAMERA_ALIGN_X_DEADBAND,
-                    CAMERA_ALIGN_Y_DEADBAND,
-                    CAMERA_X_AXIS_ADJUSTED_PROPORTIONAL_CENTER,
-                    CAMERA_Y_AXIS_ADJUSTED_PROPORTIONAL_CENTER,
-                    ALIGN_BY_CAMERA_TURNING_SPEED,
-                    ALIGN_BY_CAMERA_DRIVE_SPEED,
-                    false,
-                    false, false) == Drive.alignByCameraReturn.DONE)
-                {
-                mainState = MainState.ALIGN_IN_FRONT_OF_GOAL;
-                }
+    newEngine.setState(MainState.DELAY_AFTER_SHOOT, new AutoEngine.State()
+    {
+    @Override
+    public int execute ()
+    {
+        // Check if enough time has passed for the air to have been
+        // released. hasShot() closes all the solenoids, allowing the
+        // catapult to go back down.
+        if (hasShot() == true)
+            return AutoEngine.DONE;
+        return AutoEngine.STAY;
+    }
+    });
 
-            break;
+    newEngine.setState(MainState.DONE, new AutoEngine.State()
+    {
+    @Override
+    public void enter ()
+    {
+        // where did the time go?
+        if (debug == true)
+            printStateTimes();
+    }
 
-        case SHOOT:
-            // FIRE!!!
-            if (shoot() == true)
-                {
-                // go to wait a little bit, before turning off solenoids
-                mainState = MainState.DELAY_AFTER_SHOOT;
-                }
-            break;
+    @Override
+    public int execute ()
+    {
+        // clean everything up;
+        // the blood of our enemies stains quickly.
+        done();
+        return AutoEngine.STAY;
+    }
+    });
 
-        case DELAY_AFTER_SHOOT:
-            // Check if enough time has passed for the air to have been
-            // released.
-            if (hasShot() == true)
-                {
-                // This block will close all solenoids,
-                // allowing the catapult to go back down.
-                Hardware.catapultSolenoid0.set(false);
-                Hardware.catapultSolenoid1.set(false);
-                Hardware.catapultSolenoid2.set(false);
-
-                // finish it.
-                mainState = MainState.DONE;
-                }
-            break;
+    return newEngine;
+}
 
-        default:
-        case DONE:
-            // clean everything up;
-            // the blood of our enemies stains quickly.
-            done();
-            break;
+/**
+ * Prints how long we spent in each state that we went through.
+ */
+private static void printStateTimes ()
+{
+    final StringBuilder times = new StringBuilder("State times:");
+    final MainState[] states = MainState.values();
+    for (int i = 0; i < states.length; i++)
+        {
+        if (engine.getTimesEntered(states[i]) > 0)
+            {
+            times.append(' ').append(states[i]).append('=')
+                    .append(Math.round(
+                            engine.getSecondsIn(states[i]) * 1000.0))
+                    .append("ms");
+            }
         }
+    Hardware.errorMessage.printError(times.toString(), PrintsTo.roboRIO,
+            false);
+}
+
+/**
+ * Prints what all the drive motors are set to.
+ */
+private static void printMotors ()
+{
+    System.out.println("Left Front Motor: "
+            + Hardware.leftFrontMotor.get());
+    System.out.println("Left Rear Motor: "
+            + Hardware.leftRearMotor.get());
+    System.out.println("Right Front Motor: "
+            + Hardware.rightFrontMotor.get());
+    System.out.println("Right Rear Motor: "
+            + Hardware.rightRearMotor.get());
 }
 
 
@@ -1268,6 +1430,7 @@ private static void done ()
     // including the arm.
     // end any surviving arm motions.
     armState = ArmState.DONE;
+    Hardware.pickupArm.disablePositionControl();
     Hardware.armMotor.set(0.0);
 
     // reset delay timer
@@ -1297,8 +1460,8 @@ private static void runArmStates ()
     switch (armState)
         {
         case INIT_DOWN:
-            // begin moving arm down
-            Hardware.pickupArm.move(-1.0);
+            // begin moving arm down, on the position controller
+            Hardware.pickupArm.moveToPosition(ArmPosition.FULL_DOWN);
             // go to periodically check.
             armState = ArmState.MOVE_DOWN;
             break;
@@ -1316,18 +1479,17 @@ private static void runArmStates ()
             break;
 
         case INIT_UP:
-            // begin moving arm up.
-            Hardware.pickupArm.move(1.0);
+            // begin moving arm up, on the position controller.
+            Hardware.pickupArm.moveToPosition(ArmPosition.FULL_UP);
             // go to periodically check.
             armState = ArmState.CHECK_UP;
             break;
 
         case CHECK_UP:
-            // check if up.
-            if (Hardware.pickupArm.isUp() == true)
+            // check if up; it lets go of the arm when it is.
+            if (Hardware.pickupArm.moveToPosition(
+                    ArmPosition.FULL_UP) == true)
                 {
-                // stop.
-                Hardware.pickupArm.move(0.0);
                 armState = ArmState.DONE;
                 }
             break;
@@ -1336,9 +1498,8 @@ private static void runArmStates ()
             // check is in up position so that we may deposit the ball.
             if (Hardware.pickupArm.moveToPosition(
                     ArmPosition.DEPOSIT) == true)
-            // stop, and go to deposit.
+            // go to deposit; the arm is held where it is meanwhile.
                 {
-                Hardware.pickupArm.move(0.0);
                 armState = ArmState.INIT_DEPOSIT;
                 }
             break;
@@ -1379,6 +1540,35 @@ private static void runArmStates ()
 
 // TODO: Remove unecessary TODOs
 
+/**
+ * Adds the autonomous state machines' states to the telemetry recording.
+ * Call once from robotInit().
+ * 
+ * @param telemetry
+ *            The telemetry recorder to add the channels to
+ */
+public static void registerTelemetry (Telemetry telemetry)
+{
+    telemetry.addEnum("autoMainState", MainState.values(),
+            new Telemetry.EnumChannel()
+            {
+            @Override
+            public Enum<?> get ()
+            {
+                return mainState;
+            }
+            });
+    telemetry.addEnum("autoArmState", ArmState.values(),
+            new Telemetry.EnumChannel()
+            {
+            @Override
+            public Enum<?> get ()
+            {
+                return armState;
+            }
+            });
+}
+
 /**
  * Return the starting position based on 6-position switch on the robot.
  * 
@@ -1413,8 +1603,7 @@ public static void resetEncoders ()
             Hardware.rightRearEncoder.get()) / 2;
 
     // reset.
-    Hardware.leftRearEncoder.reset();
-    Hardware.rightRearEncoder.reset();
+    Hardware.odometry.resetEncoders();
 }
 
 /**
@@ -1481,24 +1670,23 @@ private static boolean isGettingCloserToWall (double point)
         // reset
         pointCollectionIntervalCheck = 0;
 
-        // add the point to the array
-        ultrasonicDistances[ultrasonicDistancesIndex] = (int) point;
-        ultrasonicDistancesIndex++;
+        // add the point to the line
+        ultrasonicDistances.add(point);
 
-        // if the array is full, check the slope.
-        if (ultrasonicDistancesIndex == ultrasonicDistances.length)
+        // if the line has all its points, check the slope.
+        if (ultrasonicDistances.isFull() == true)
             {
 
             // if the slope is negative, we are getting closer.
-            if (getRegressionSlopeOfArray(
-                    ultrasonicDistances) < MAXIMUM_ULTRASONIC_SLOPE)
+            // slope technically is in inches per point.
+            if (ultrasonicDistances
+                    .getSlope() < MAXIMUM_ULTRASONIC_SLOPE)
                 {
                 // and so, we will return true.
                 isCloser = true;
                 }
-            // reset the array.
-            ultrasonicDistances = new double[ULTRASONIC_POINTS_REQUIRED];
-            ultrasonicDistancesIndex = 0;
+            // start over for the next check.
+            ultrasonicDistances.reset();
             }
 
         }
@@ -1507,51 +1695,6 @@ private static boolean isGettingCloserToWall (double point)
     return isCloser;
 }
 
-/**
- * Used by isGettingCloserToWall to determine the direction of the robot.
- * 
- * @param data
- *            in which index is the x axis.
- * @return slope technically is in inches per fifth of a second.
- */
-private static double getRegressionSlopeOfArray (double[] data)
-{
-
-    /*
-     * Formula: (Sigma --> E)
-     * E ((x-(mean x))(y-(mean y))) / E ((x-(mean x))^2)
-     */
-
-    int slope;
-    int ySum = 0;
-    int xSum = 0;
-    int bigN = data.length;
-
-    // sum all values for regression calculation
-    for (int i = 0; i < data.length; i++)
-        {
-        ySum += data[i];
-        xSum += i;
-        }
-
-    int xBar = xSum / bigN;
-    int yBar = ySum / bigN;
-
-    int numeratorSum = 0;
-    int denomenatorSum = 0;
-    for (int i = 0; i < data.length; i++)
-        {
-        numeratorSum += ((i - xBar) * (data[i] - yBar));
-        denomenatorSum += ((i - xBar) * (i - xBar));
-        }
-
-    // calculate regression line slope
-    slope = numeratorSum / denomenatorSum;
-
-    return slope;
-
-}
-
 /**
  * Drives until the ultrasonic detects something below a certain distance.
  * 
@@ -1634,31 +1777,37 @@ private static final class DriveInformation
 {
 
 /**
- * A set of motor ratios that will be used in succession
- * when accelerating from zero.
- * 
- * Index here does not correspond to lane, but rather order of
- * execution.
+ * How fast the motor ratio may go up (or down) while crossing the outer
+ * works, per second.
+ * Speeding up from 0 this way replaces the old steps of 0.1 every 0.1
+ * seconds, so it is the same rate.
  */
-private static final double[] ACCELERATION_RATIOS =
-    {
-            0.1,
-            0.2,
-            0.3
-    };
+private static final double PROFILE_ACCELERATION = 1.0;
 
 /**
- * The time at which each acceleration stage will end.
- * 
- * Index here does not correspond to lane, but rather order of
- * execution.
+ * How fast the acceleration may change, per second.
+ * Takes the jolt out of starting and stopping speeding up, which is what
+ * makes us turn.
  */
-private static final double[] ACCELERATION_TIMES =
-    {
-            0.1,// .2
-            0.2,// .4
-            0.3// .6
-    };
+private static final double PROFILE_JERK = 10.0;
+
+/**
+ * Roughly how fast the robot goes at a motor ratio of 1.0.
+ * Only used to work out when the profile should slow down; the encoders
+ * still decide when we have gone far enough.
+ */
+private static final double INCHES_PER_SECOND_AT_FULL_SPEED = 150.0;
+
+/**
+ * Time between points in the profiles, in seconds.
+ */
+private static final double PROFILE_PERIOD = 0.005;
+
+/**
+ * The slowest we will drive while following a profile; the first step of
+ * the old acceleration.
+ */
+private static final double MINIMUM_PROFILE_SPEED = 0.1;
 
 /**
  * The speed at which we want to go over the outer works, for each lane.
@@ -1976,4 +2125,9 @@ private static final int ULTRASONIC_POINTS_REQUIRED = 5;
 
 private static final int ITERATIONS_PER_POINT = 11;
 
+/**
+ * Where routine files are kept. The routine for lane N is laneN.txt.
+ */
+private static final String ROUTINE_DIRECTORY = "/home/lvuser/autonomous/";
+
 } // end class
@@ -60,7 +60,13 @@
 package org.usfirst.frc.team339.robot;
 
 import org.usfirst.frc.team339.Hardware.Hardware;
+import org.usfirst.frc.team339.HardwareInterfaces.RobotPotentiometer;
 import org.usfirst.frc.team339.HardwareInterfaces.transmission.Transmission_old.debugStateValues;
+import org.usfirst.frc.team339.Utils.DashboardPublisher;
+import org.usfirst.frc.team339.Utils.ErrorMessage;
+import org.usfirst.frc.team339.Utils.Guidance;
+import org.usfirst.frc.team339.Utils.TaskScheduler;
+import org.usfirst.frc.team339.Utils.Telemetry;
 import edu.wpi.first.wpilibj.CameraServer;
 import edu.wpi.first.wpilibj.IterativeRobot;
 import edu.wpi.first.wpilibj.Relay;
@@ -114,6 +120,17 @@ public void autonomousInit ()
     // -------------------------------------
     Autonomous.init();
 
+    // wherever we start autonomous is 0, 0, facing 0
+    Hardware.odometry.resetPose();
+
+    // the teleop-only jobs stay off
+    setTeleopTasksEnabled(false);
+
+    // a new recording for every time we're enabled
+    Hardware.telemetry.start();
+    // and fresh loop timing
+    Hardware.loopProfiler.reset();
+
     // ---------------------------------------
     // done setup - tell the user we are complete
     // setup
@@ -135,6 +152,10 @@ public void autonomousInit ()
 @Override
 public void autonomousPeriodic ()
 {
+    Hardware.loopProfiler.startLoop();
+    // the pots read again (once) this loop
+    RobotPotentiometer.startLoop();
+
     // -------------------------------------
     // Call the Autonomous class's Periodic function,
     // which contains the user code.
@@ -148,6 +169,10 @@ public void autonomousPeriodic ()
     Hardware.leftFrontMotorSafety.feed();
     Hardware.rightFrontMotorSafety.feed();
 
+    // record what everything did this loop
+    Hardware.telemetry.record();
+
+    Hardware.loopProfiler.endLoop();
 } // end autonomousPeriodic
 
 // -------------------------------------------------------
@@ -171,6 +196,22 @@ public void disabledInit ()
     // =========================================================
     // User code goes below here
     // =========================================================
+    // Stop any path that's still driving
+    Hardware.motionExecutor.cancel();
+
+    // and any camera alignment, so the vision worker stops taking pictures
+    Hardware.drive.stopAligningByCamera();
+
+    // and let go of the arm, so it doesn't jump when we're enabled again
+    Hardware.pickupArm.disablePositionControl();
+
+    // and the teleop-only jobs
+    setTeleopTasksEnabled(false);
+
+    // Make sure everything logged during the match is on the flash
+    Hardware.telemetry.stop();
+    ErrorMessage.flushAll();
+
     try
         {
         // check the Autonomous ENABLED/DISABLED switch.
@@ -203,8 +244,7 @@ public void disabledInit ()
         // --------------------------------------
         // Encoder Initialization
         // --------------------------------------
-        Hardware.leftRearEncoder.reset();
-        Hardware.rightRearEncoder.reset();
+        Hardware.odometry.resetEncoders();
 
         // Sets Resolution of camera
         Hardware.ringLightRelay.set(Relay.Value.kOff);
@@ -220,8 +260,7 @@ public void disabledInit ()
         Hardware.kilroyTimer.stop();
         Hardware.kilroyTimer.reset();
 
-        Hardware.leftRearEncoder.reset();
-        Hardware.rightRearEncoder.reset();
+        Hardware.odometry.resetEncoders();
         Hardware.leftFrontMotor.set(0.0);
         Hardware.leftRearMotor.set(0.0);
         Hardware.rightFrontMotor.set(0.0);
@@ -266,6 +305,9 @@ public void disabledPeriodic ()
     // -------------------------------------
     // Watch dog code used to go here.
     // -------------------------------------
+    Hardware.loopProfiler.startLoop();
+    // the pots read again (once) this loop
+    RobotPotentiometer.startLoop();
     // =========================================================
     // User code goes below here
     // =========================================================
@@ -273,6 +315,7 @@ public void disabledPeriodic ()
     // User code goes above here
     // =========================================================
 
+    Hardware.loopProfiler.endLoop();
 } // end disabledPeriodic
 
 // -------------------------------------------------------
@@ -405,6 +448,22 @@ public void robotInit ()
     // Hardware.axisCamera
     // .writeWhiteBalance(AxisCamera.WhiteBalance.kFixedIndoor);
     Hardware.imageProcessor.updateResolution();
+    // Drive and Autonomous only ever look at the few largest blobs, so
+    // don't spend time sorting the rest.
+    Hardware.imageProcessor.setMaxParticles(MAX_VISION_BLOBS);
+    Hardware.testVision.setMaxBlobs(MAX_VISION_BLOBS);
+    // Once we've seen the goal, only search the part of the picture around it
+    Hardware.goalRegionOfInterest.enableTracking(
+            Hardware.VISION_TRACKING_WINDOW,
+            Hardware.VISION_TRACKING_WINDOW);
+    // ...with the tracker predicting where "around it" is next frame
+    Hardware.imageProcessor.setTargetTracker(Hardware.goalTracker);
+    // Vision runs on its own thread from here on out; it stays idle until
+    // something (like alignByCamera) enables it.
+    Hardware.visionWorker.start();
+    // Everything the telemetry records has to be added before the first
+    // recording starts
+    registerTelemetryChannels();
     // switch (Hardware.axisCamera.getResolution())
     // {
     // case k640x480:
@@ -522,6 +581,17 @@ public void robotInit ()
         Autonomous.labScalingFactor = 1.0;
         }
 
+    // ---------------------------------------
+    // start the jobs that run outside the
+    // robot loop
+    // ---------------------------------------
+    addScheduledTasks();
+    Hardware.scheduler.start();
+
+    // and keeping track of where the robot is, now the encoders are set
+    // up
+    Hardware.odometry.start();
+
     // =========================================================
     // User code goes above here
     // =========================================================
@@ -536,6 +606,76 @@ public void robotInit ()
 } // end
   // robotInit
 
+// -------------------------------------------------------
+/**
+ * Gives the scheduler the jobs that don't need to be in the robot loop,
+ * so they run at their own (slower) rates on the scheduler's thread and
+ * don't add to the loop's time. The teleop ones start turned off.
+ *
+ * The drive and the arm stay in the robot loop (and the MotionExecutor's
+ * and velocity controllers' own Notifiers), as they share state with Teleop and
+ * Autonomous that isn't thread safe: runArmStates() and moveToPosition() are
+ * called from the middle of Teleop's and Autonomous' own state logic, and
+ * Drive and the transmission keep per-call state. So the scheduler only
+ * gets the light and the dashboard, and has just the one worker.
+ *
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+private static void addScheduledTasks ()
+{
+    // the drivers' has-ball light.
+    dashboardTask = Hardware.scheduler.addTask("dashboard",
+            DASHBOARD_PERIOD, TaskScheduler.PRIORITY_NORMAL, new Runnable()
+            {
+            @Override
+            public void run ()
+            {
+                Guidance.updateBallStatus(Hardware.armIR.isOn());
+            }
+            });
+    setTeleopTasksEnabled(false);
+
+    // sends whatever's changed on the dashboard since last time; everything
+    // else only remembers values for this to send.
+    Hardware.scheduler.addTask("dashboard publish",
+            DASHBOARD_PUBLISH_PERIOD, TaskScheduler.PRIORITY_NORMAL,
+            new Runnable()
+            {
+            @Override
+            public void run ()
+            {
+                DashboardPublisher.getInstance().publish();
+            }
+            });
+
+    // how the scheduler itself is doing.
+    Hardware.scheduler.addTask("scheduler statistics",
+            SCHEDULER_STATISTICS_PERIOD, TaskScheduler.PRIORITY_LOW,
+            new Runnable()
+            {
+            @Override
+            public void run ()
+            {
+                Hardware.scheduler.publishStatistics();
+            }
+            });
+} // end addScheduledTasks
+
+// -------------------------------------------------------
+/**
+ * Turns the scheduled jobs that only make sense in teleop on or off.
+ *
+ * @param enabled
+ *            true in teleop
+ * @author Kilroy
+ *          -------------------------------------------------------
+ */
+private static void setTeleopTasksEnabled (boolean enabled)
+{
+    Hardware.scheduler.setEnabled(dashboardTask, enabled);
+} // end setTeleopTasksEnabled
+
 // -------------------------------------------------------
 /**
  * Non-User initialization code for teleop mode should go here. Will be
@@ -561,8 +701,17 @@ public void teleopInit ()
     // -------------------------------------
     // Hardware.cameraServer.startAutomaticCapture(Hardware.usbCam);
 
+    // the drivers get the drive train, not whatever autonomous left running
+    Hardware.motionExecutor.cancel();
+
     Teleop.init();
 
+    // start updating the dashboard
+    setTeleopTasksEnabled(true);
+
+    Hardware.telemetry.start();
+    Hardware.loopProfiler.reset();
+
     // ---------------------------------------
     // done setup - tell the user we are complete
     // setup
@@ -587,6 +736,12 @@ public void teleopPeriodic ()
     // Watch dog code used to go here.
     // -------------------------------------
 
+    Hardware.loopProfiler.startLoop();
+    // the pots read again (once) this loop
+    RobotPotentiometer.startLoop();
+    // and the buttons, running any button handlers
+    Hardware.buttons.sample();
+
     // -------------------------------------
     // Call the Teleop class's Periodic function,
     // which contains the user code.
@@ -599,6 +754,10 @@ public void teleopPeriodic ()
     Hardware.leftFrontMotorSafety.feed();
     Hardware.rightFrontMotorSafety.feed();
 
+    // record what everything did this loop
+    Hardware.telemetry.record();
+
+    Hardware.loopProfiler.endLoop();
 } // end teleopPeriodic
 
 // -------------------------------------------------------
@@ -640,6 +799,7 @@ public void testPeriodic ()
     // =========================================================
     // User code goes below here
     // =========================================================
+    RobotPotentiometer.startLoop();
 
     boolean runTest = false;
     if (Hardware.leftDriver.getTrigger() == true)
@@ -666,6 +826,147 @@ public void testPeriodic ()
 
 } // end testPeriodic
 
+/**
+ * Adds the sensors, motors and autonomous states we want recorded every loop
+ * to Hardware.telemetry. Called once from robotInit().
+ */
+private static void registerTelemetryChannels ()
+{
+    Hardware.telemetry.addDouble("leftRearEncoderDistance",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.leftRearEncoder.getDistance();
+            }
+            });
+    Hardware.telemetry.addDouble("rightRearEncoderDistance",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.rightRearEncoder.getDistance();
+            }
+            });
+    Hardware.telemetry.addDouble("leftRearEncoderRate",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.leftRearEncoder.getRate();
+            }
+            });
+    Hardware.telemetry.addDouble("rightRearEncoderRate",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.rightRearEncoder.getRate();
+            }
+            });
+    Hardware.telemetry.addInt("ultrasonic", new Telemetry.IntChannel()
+    {
+    @Override
+    public int get ()
+    {
+        return Hardware.ultrasonic.getRefinedDistanceValue();
+    }
+    });
+    Hardware.telemetry.addInt("armPot", new Telemetry.IntChannel()
+    {
+    @Override
+    public int get ()
+    {
+        return Hardware.armPot.get();
+    }
+    });
+    Hardware.telemetry.addInt("transducer", new Telemetry.IntChannel()
+    {
+    @Override
+    public int get ()
+    {
+        return Hardware.transducer.get();
+    }
+    });
+    Hardware.telemetry.addDouble("pdpTotalCurrent",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.pdp.getTotalCurrent();
+            }
+            });
+    Hardware.telemetry.addDouble("pdpVoltage",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.pdp.getVoltage();
+            }
+            });
+    Hardware.telemetry.addDouble("leftFrontMotor",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.leftFrontMotor.get();
+            }
+            });
+    Hardware.telemetry.addDouble("leftRearMotor",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.leftRearMotor.get();
+            }
+            });
+    Hardware.telemetry.addDouble("rightFrontMotor",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.rightFrontMotor.get();
+            }
+            });
+    Hardware.telemetry.addDouble("rightRearMotor",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.rightRearMotor.get();
+            }
+            });
+    Hardware.telemetry.addDouble("armMotor",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.armMotor.get();
+            }
+            });
+    Hardware.telemetry.addDouble("armIntakeMotor",
+            new Telemetry.DoubleChannel()
+            {
+            @Override
+            public double get ()
+            {
+                return Hardware.armIntakeMotor.get();
+            }
+            });
+    Autonomous.registerTelemetry(Hardware.telemetry);
+}
+
 // ==========================================
 // TUNEABLES
 // ==========================================
@@ -679,4 +980,17 @@ public static final double JOYSTICK_DEADBAND_ZONE = 0.20;
 public static final double FIRST_GEAR_PERCENTAGE = .50;
 
 public static final double SECOND_GEAR_PERCENTAGE = .90;// previously 0.7;//.85
+
+// How many of the largest blobs the vision processors keep each frame
+public static final int MAX_VISION_BLOBS = 3;
+
+// How often, in seconds, the scheduled jobs run
+private static final double DASHBOARD_PERIOD = 0.1;
+
+private static final double SCHEDULER_STATISTICS_PERIOD = 1.0;
+
+private static final double DASHBOARD_PUBLISH_PERIOD = 0.1;
+
+// The scheduler's numbers for the jobs we turn on and off
+private static int dashboardTask;
 } // end class
@@ -32,9 +32,11 @@
 package org.usfirst.frc.team339.robot;
 
 import org.usfirst.frc.team339.Hardware.Hardware;
+import org.usfirst.frc.team339.HardwareInterfaces.ButtonEventBus;
 import org.usfirst.frc.team339.HardwareInterfaces.transmission.Transmission_old.debugStateValues;
 import org.usfirst.frc.team339.Utils.Drive;
 import org.usfirst.frc.team339.Utils.Guidance;
+import org.usfirst.frc.team339.Utils.LoopProfiler;
 import org.usfirst.frc.team339.Utils.ManipulatorArm;
 import org.usfirst.frc.team339.Utils.ManipulatorArm.ArmPosition;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
@@ -138,8 +140,7 @@ public static void init ()
     Hardware.transmission.setLeftJoystickIsReversed(true);
     // Reset all timers, encoders, and stop all the motors.
     Hardware.delayTimer.reset();
-    Hardware.rightRearEncoder.reset();
-    Hardware.leftRearEncoder.reset();
+    Hardware.odometry.resetEncoders();
     Hardware.leftFrontMotor.set(0.0);
     Hardware.leftRearMotor.set(0.0);
     Hardware.rightFrontMotor.set(0.0);
@@ -229,7 +230,13 @@ public static void periodic ()
     // driveRobot();
     // Hardware.speedTester.watchJoystick(Hardware.rightDriver.getY()); // @AHK
     // REMOVE
-    if (Hardware.overrideDemoPot.isOnCheckNow() == true)
+    // The toggles get the button as it is every loop (what isOnCheckNow()
+    // did), not just when it changes: Drive flips the camera toggle with
+    // update(true), and only an update(false) after that lets the next
+    // press count.
+    Hardware.overrideDemoPot.update(Hardware.buttons.isDown(
+            Hardware.leftDriver, DEMO_POT_OVERRIDE_BUTTON));
+    if (Hardware.overrideDemoPot.isOn() == true)
         {
         Hardware.transmission.setSecondGearPercentage(1.0);
         }
@@ -278,7 +285,7 @@ public static void periodic ()
     else
         {
 
-        if (Hardware.leftOperator.getRawButton(8))
+        if (Hardware.buttons.isDown(Hardware.leftOperator, 8))
             {
             if (Hardware.inDemo.isOn() == false)// TODO use on a
                                                 // demo-by-demo basis
@@ -292,6 +299,8 @@ public static void periodic ()
             }
         if (testingAlignByCamera == true)
             {
+            Hardware.loopProfiler
+                    .startSection(LoopProfiler.Section.VISION);
             currentCameraReturn = Hardware.drive
                     .alignByCameraStateMachine(
                             CAMERA_ALIGN_X_DEADBAND,
@@ -304,12 +313,10 @@ public static void periodic ()
                                            // ugly,
                                            // fix
                             ALIGN_BY_CAMERA_DRIVE_SPEED * 1.25,
-                            (Hardware.rightOperator
-                                    .getRawButton(10) == true
-                                    && Hardware.rightOperator
-                                            .getRawButton(
-                                                    11) == true),
+                            Hardware.buttons.isHeld(
+                                    Hardware.rightOperator, CANCEL_CHORD),
                             true, true);
+            Hardware.loopProfiler.endSection(LoopProfiler.Section.VISION);
             if (currentCameraReturn == Drive.alignByCameraReturn.DONE)
                 {
                 // isFiringByCamera = false;
@@ -350,6 +357,7 @@ public static void periodic ()
 
 
         // Begin arm movement code
+        Hardware.loopProfiler.startSection(LoopProfiler.Section.ARM);
         if (Math.abs(Hardware.rightOperator
                 .getY()) >= PICKUP_ARM_CONTROL_DEADZONE)
             {
@@ -380,15 +388,15 @@ public static void periodic ()
             // arm.
             Hardware.pickupArm.stopArmMotor();
             }
+        Hardware.loopProfiler.endSection(LoopProfiler.Section.ARM);
         // End arm movement code
 
         // When the driver hits button 2, the robot will turn 180
         // degrees to the right so we can drive back through the Sally
         // Port.
-        if (Hardware.leftDriver.getRawButton(2) == true)
+        if (Hardware.buttons.isDown(Hardware.leftDriver, 2) == true)
             {
-            Hardware.leftRearEncoder.reset();
-            Hardware.rightRearEncoder.reset();
+            Hardware.odometry.resetEncoders();
             // System.out.println("Turning 180 Degrees? " +
             // isTurning180Degrees);
             // only set to true if we are actually reversing
@@ -406,8 +414,7 @@ public static void periodic ()
                     -.6) == true)
                 {
                 isTurning180Degrees = false;
-                Hardware.leftRearEncoder.reset();
-                Hardware.rightRearEncoder.reset();
+                Hardware.odometry.resetEncoders();
                 Hardware.transmission.controls(0.0, 0.0);
                 Hardware.transmission
                         .setJoysticksAreReversed(false);
@@ -416,8 +423,8 @@ public static void periodic ()
 
         // Begin Ball manipulation code
         // pull in the ball if the pull in button is pressed.
-        if (Hardware.rightOperator
-                .getRawButton(TAKE_IN_BALL_BUTTON) == true)
+        if (Hardware.buttons.isDown(Hardware.rightOperator,
+                TAKE_IN_BALL_BUTTON) == true)
             {
             // if they press the 3rd button on the rightOperator
             // joystick
@@ -425,12 +432,12 @@ public static void periodic ()
             Hardware.pickupArm
                     .pullInBall(
 
-                            Hardware.rightOperator
-                                    .getRawButton(3));
+                            Hardware.buttons.isDown(Hardware.rightOperator,
+                                    3));
             }
         // push out the ball if the push out button is pressed
-        else if (Hardware.rightOperator
-                .getRawButton(PUSH_OUT_BALL_BUTTON) == true)
+        else if (Hardware.buttons.isDown(Hardware.rightOperator,
+                PUSH_OUT_BALL_BUTTON) == true)
             {
             Hardware.pickupArm.pushOutBall();
             }
@@ -492,11 +499,10 @@ public static void periodic ()
         // If the drivers decided they were being stupid and we don't want
         // to
         // fire anymore
-        if (Hardware.leftOperator
-                .getRawButton(FIRE_CANCEL_BUTTON) == true
-                || (Hardware.rightOperator.getRawButton(10) == true
-                        && Hardware.rightOperator
-                                .getRawButton(11) == true))
+        if (Hardware.buttons.isDown(Hardware.leftOperator,
+                FIRE_CANCEL_BUTTON) == true
+                || Hardware.buttons.isHeld(Hardware.rightOperator,
+                        CANCEL_CHORD) == true)
             {
             // Stop asking the code to fire
             fireRequested = false;
@@ -512,8 +518,8 @@ public static void periodic ()
                         ManipulatorArm.ArmPosition.CLEAR_OF_FIRING_ARM) == true
                 && Hardware.armOutOfWayTimer
                         .get() >= ARM_IS_OUT_OF_WAY_TIME
-                && Hardware.leftOperator
-                        .getRawButton(FIRE_OVERRIDE_BUTTON) != true)
+                && Hardware.buttons.isDown(Hardware.leftOperator,
+                        FIRE_OVERRIDE_BUTTON) != true)
             {
             // fire, if we're ready to
             if (fire(firingPower, false) == true)
@@ -528,7 +534,9 @@ public static void periodic ()
         // Hardware.ringLightRelay.set(Value.kOn);
         // Begin raise/lower camera block
         // If the camera is down and we press the button.
-        if (Hardware.cameraToggleButton.isOnCheckNow() == true)
+        Hardware.cameraToggleButton.update(Hardware.buttons.isDown(
+                Hardware.leftOperator, CAMERA_TOGGLE_BUTTON));
+        if (Hardware.cameraToggleButton.isOn() == true)
         // && testingAlignByCamera == false */
             {
             // raise the camera
@@ -589,7 +597,7 @@ public static void periodic ()
             }
 
         // Align, but do not fire.
-        if (Hardware.leftOperator.getRawButton(5))
+        if (Hardware.buttons.isDown(Hardware.leftOperator, 5))
             {
             if (Hardware.inDemo.isOn() == false)
                 {
@@ -620,12 +628,15 @@ public static void periodic ()
                 }
 
             // Keep trying to point at the goal
+            Hardware.loopProfiler
+                    .startSection(LoopProfiler.Section.VISION);
             currentCameraReturn = Hardware.drive.alignByCamera(
                     PERCENT_IMAGE_PROCESSING_DEADBAND,
                     CAMERA_ALIGNMENT_TURNING_SPEED,
                     CAMERA_X_AXIS_ADJUSTED_PROPORTIONAL_CENTER,
                     ADJUST_DEADBAND_BY_PERCENTAGE,
                     false);// -.375
+            Hardware.loopProfiler.endSection(LoopProfiler.Section.VISION);
             // if (Hardware.drive.alignByCamera(
             // PERCENT_IMAGE_PROCESSING_DEADBAND,
             // CAMERA_ALIGNMENT_TURNING_SPEED, -.30, //-.483,
@@ -640,10 +651,10 @@ public static void periodic ()
 
                 // If using right trigger. FIRE.
                 if (isFiringByCamera == true
-                        && Hardware.rightOperator
-                                .getRawButton(10) == false
-                        && Hardware.rightOperator
-                                .getRawButton(11) == false)
+                        && Hardware.buttons.isDown(Hardware.rightOperator,
+                                10) == false
+                        && Hardware.buttons.isDown(Hardware.rightOperator,
+                                11) == false)
                     {
                     fireRequested = true;
                     Hardware.armOutOfWayTimer.reset();
@@ -685,8 +696,8 @@ public static void periodic ()
             Hardware.armOutOfWayTimer.start();
             }
         // if the override button is pressed and we want to fire
-        if (Hardware.leftOperator
-                .getRawButton(FIRE_OVERRIDE_BUTTON) == true
+        if (Hardware.buttons.isDown(Hardware.leftOperator,
+                FIRE_OVERRIDE_BUTTON) == true
                 && fireRequested == true)
             {
             // FIRE NO MATTER WHAT!!!!!
@@ -702,8 +713,8 @@ public static void periodic ()
         // to
         //
         // fire anymore
-        if (Hardware.leftOperator
-                .getRawButton(FIRE_CANCEL_BUTTON) == true)
+        if (Hardware.buttons.isDown(Hardware.leftOperator,
+                FIRE_CANCEL_BUTTON) == true)
             {
             // Stop asking the code to fire
             isFiringByCamera = false;
@@ -716,8 +727,8 @@ public static void periodic ()
                         ManipulatorArm.ArmPosition.CLEAR_OF_FIRING_ARM) == true
                 && Hardware.armOutOfWayTimer
                         .get() >= ARM_IS_OUT_OF_WAY_TIME
-                && Hardware.leftOperator
-                        .getRawButton(FIRE_OVERRIDE_BUTTON) != true)
+                && Hardware.buttons.isDown(Hardware.leftOperator,
+                        FIRE_OVERRIDE_BUTTON) != true)
             {
             if (Hardware.armIR.isOn() == true)
                 {
@@ -810,17 +821,8 @@ public static void periodic ()
         // Hardware.arrowDashboard.update();
 
 
-        // If the ball is in the robot, update the driver station with
-        // that info. This will also light up the Driver Station green
-        // when it updates the status.
-        if (Hardware.armIR.isOn() == true)
-            {
-            Guidance.updateBallStatus(true);
-            }
-        else
-            {
-            Guidance.updateBallStatus(false);
-            }
+        // The has-ball light on the driver station is updated by the
+        // scheduler; see Robot.addScheduledTasks().
 
 
         // System.out
@@ -851,9 +853,11 @@ public static void periodic ()
         // Only let the drivers drive if we're not speed testing or aligning
         // by camera
 
+        Hardware.loopProfiler.startSection(LoopProfiler.Section.DRIVE);
         driveRobot();
+        Hardware.loopProfiler.endSection(LoopProfiler.Section.DRIVE);
 
-        if (Hardware.leftOperator.getRawButton(9))
+        if (Hardware.buttons.isDown(Hardware.leftOperator, 9))
             {
             Hardware.axisCamera.writeBrightness(
                     Hardware.NORMAL_AXIS_CAMERA_BRIGHTNESS);
@@ -907,14 +911,14 @@ public static void driveRobot ()
     Hardware.transmission.controls(Hardware.leftDriver.getY(),
             Hardware.rightDriver.getY());
     // If we're pressing the upshift button, shift up.
-    if (Hardware.rightDriver
-            .getRawButton(GEAR_UPSHIFT_JOYSTICK_BUTTON) == true)
+    if (Hardware.buttons.isDown(Hardware.rightDriver,
+            GEAR_UPSHIFT_JOYSTICK_BUTTON) == true)
         {
         Hardware.transmission.upshift(1);
         }
     // If we press the downshift button, shift down.
-    if (Hardware.rightDriver
-            .getRawButton(GEAR_DOWNSHIFT_JOYSTICK_BUTTON) == true)
+    if (Hardware.buttons.isDown(Hardware.rightDriver,
+            GEAR_DOWNSHIFT_JOYSTICK_BUTTON) == true)
         {
         Hardware.transmission.downshift(1);
         }
@@ -1025,8 +1029,8 @@ public static void takePicture ()
     // ringlight and we don't take a picture. We added a timer to delay
     // taking the picture for the brightness to dim and for the ring
     // light to turn on.
-    if (Hardware.leftOperator.getRawButton(6) == true
-            && Hardware.leftOperator.getRawButton(7) == true)
+    if (Hardware.buttons.isHeld(Hardware.leftOperator,
+            LIT_PICTURE_CHORD) == true)
         {
         if (prepPic == true)
             {
@@ -1065,19 +1069,13 @@ public static void takePicture ()
         }
 
     // If we click buttons 10+11, we take a picture without the
-    // ringlight and set the boolean to true so we don't take a bunch of
+    // ringlight; only when they go down, so we don't take a bunch of
     // other pictures.
-    if (Hardware.leftOperator.getRawButton(10) == true &&
-            Hardware.leftOperator.getRawButton(11) == true)
+    if (Hardware.buttons.wasPressed(Hardware.leftOperator,
+            UNLIT_PICTURE_CHORD) == true)
         {
-        if (takingUnlitImage == false)
-            {
-            takingUnlitImage = true;
-            Hardware.axisCamera.saveImagesSafely();
-            }
+        Hardware.axisCamera.saveImagesSafely();
         }
-    else
-        takingUnlitImage = false;
 
     // if the left operator trigger is pressed, then we check to see if
     // we're taking a processed picture through the boolean. If we are
@@ -1285,6 +1283,19 @@ private static final int BRAKE_JOYSTICK_BUTTON_FIVE = 5;
 // left operator 2
 private static final int CAMERA_TOGGLE_BUTTON = 2;
 
+// left driver 7
+private static final int DEMO_POT_OVERRIDE_BUTTON = 7;
+
+// right operator 10 + 11: general purpose cancel
+private static final int CANCEL_CHORD = ButtonEventBus.chord(10, 11);
+
+// left operator 6 + 7
+private static final int LIT_PICTURE_CHORD = ButtonEventBus.chord(6, 7);
+
+// left operator 10 + 11
+private static final int UNLIT_PICTURE_CHORD = ButtonEventBus.chord(10,
+        11);
+
 // Right operator 2
 private static final int FIRE_OVERRIDE_BUTTON = 4;
 
@@ -1335,8 +1346,6 @@ private static boolean processingImage = true;
 // Boolean to check if we're taking a lit picture
 private static boolean takingLitImage = false;
 
-// Boolean to check if we're taking an unlit picture
-private static boolean takingUnlitImage = false;
 
 // this is for preparing to take a picture with the timer; changes
 // brightness, turns on ringlight, starts timer